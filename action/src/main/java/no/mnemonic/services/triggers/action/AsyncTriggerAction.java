@@ -0,0 +1,36 @@
+package no.mnemonic.services.triggers.action;
+
+import no.mnemonic.services.triggers.action.exceptions.ParameterException;
+import no.mnemonic.services.triggers.action.exceptions.TriggerExecutionException;
+
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * {@link TriggerAction} which can complete its execution in the background.
+ * <p>
+ * Instead of {@link TriggerAction#trigger(Map)} the caller invokes {@link #triggerAsync(Map)}, which only hands the
+ * execution over and returns immediately. The outcome of the execution is reported through the returned
+ * {@link CompletionStage}, such that the caller can react to failures (e.g. retry the execution) without blocking a
+ * thread for the whole execution.
+ * <p>
+ * Like {@link TriggerAction#trigger(Map)}, {@link #triggerAsync(Map)} is never called by multiple threads at the same
+ * time, but executions handed over by previous calls might still be running. {@link TriggerAction#close()} should
+ * give those executions the chance to complete.
+ */
+public interface AsyncTriggerAction extends TriggerAction {
+
+  /**
+   * Start executing an action with a map of dynamic trigger parameters.
+   * <p>
+   * An implementation should throw a {@link ParameterException} if required parameters are missing or parameter values
+   * are invalid, and a {@link TriggerExecutionException} if the execution could not be started at all. If the
+   * execution fails later on, the returned stage completes exceptionally with a {@link TriggerExecutionException}.
+   *
+   * @param triggerParameters Dynamic trigger parameters populated from a TriggerRule
+   * @return Stage which completes once the action has been executed
+   * @throws ParameterException        Thrown if parameters are missing or invalid
+   * @throws TriggerExecutionException Thrown if the execution could not be started
+   */
+  CompletionStage<Void> triggerAsync(Map<String, String> triggerParameters) throws ParameterException, TriggerExecutionException;
+}
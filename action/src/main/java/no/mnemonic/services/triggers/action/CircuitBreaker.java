@@ -0,0 +1,168 @@
+package no.mnemonic.services.triggers.action;
+
+import no.mnemonic.commons.logging.Logger;
+import no.mnemonic.commons.logging.Logging;
+import no.mnemonic.commons.metrics.MetricException;
+import no.mnemonic.commons.metrics.Metrics;
+import no.mnemonic.commons.metrics.MetricsData;
+import no.mnemonic.commons.metrics.MetricsGroup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker protecting a single endpoint (host) from requests while it's failing.
+ * <p>
+ * The breaker opens after a number of consecutive failures and rejects all requests while it's open. Once the open
+ * period has passed, a single probe request is let through (half-open). If the probe succeeds the breaker closes
+ * again, otherwise it stays open for another period.
+ * <p>
+ * Breakers are shared per endpoint. Breakers which are closed and haven't seen a failure carry no state, thus, they are
+ * evicted once they have been idle for {@link #IDLE_EXPIRY_MILLIS} or when more than {@link #MAXIMUM_BREAKERS} breakers
+ * exist, such that the registry doesn't grow with every endpoint ever contacted.
+ */
+class CircuitBreaker {
+
+  static final int DEFAULT_FAILURE_THRESHOLD = 5;
+  static final long DEFAULT_OPEN_MILLIS = 30_000;
+  static final long IDLE_EXPIRY_MILLIS = 10 * 60_000;
+  static final int MAXIMUM_BREAKERS = 10_000;
+
+  private static final Logger LOGGER = Logging.getLogger(CircuitBreaker.class);
+  private static final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+  private static final AtomicLong nextEviction = new AtomicLong();
+
+  enum State {
+    Closed, Open, HalfOpen
+  }
+
+  private final String endpoint;
+  private final int failureThreshold;
+  private final long openMillis;
+  private final LongSupplier clock;
+  private final AtomicLong rejectedRequests = new AtomicLong();
+
+  private State state = State.Closed;
+  private int consecutiveFailures;
+  private long openUntil;
+  private volatile long lastUsed;
+
+  CircuitBreaker(String endpoint, int failureThreshold, long openMillis, LongSupplier clock) {
+    this.endpoint = endpoint;
+    this.failureThreshold = failureThreshold;
+    this.openMillis = openMillis;
+    this.clock = clock;
+  }
+
+  /**
+   * Return the circuit breaker shared by all {@link HttpClientAction} instances for an endpoint.
+   *
+   * @param endpoint Endpoint, e.g. scheme, host and port of a URL
+   * @return Shared circuit breaker
+   */
+  static CircuitBreaker forEndpoint(String endpoint) {
+    long now = System.currentTimeMillis();
+    CircuitBreaker breaker = breakers.computeIfAbsent(endpoint, e -> new CircuitBreaker(e, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS, System::currentTimeMillis));
+    breaker.lastUsed = now;
+
+    // Evict at most once per expiry period unless the registry exceeds its size limit. Only one caller evicts.
+    long eviction = nextEviction.get();
+    if ((now >= eviction || breakers.size() > MAXIMUM_BREAKERS) && nextEviction.compareAndSet(eviction, now + IDLE_EXPIRY_MILLIS)) {
+      evictIdle(now);
+    }
+    return breaker;
+  }
+
+  /**
+   * Remove closed breakers without failures which haven't been used since {@link #IDLE_EXPIRY_MILLIS}. If the registry
+   * still exceeds {@link #MAXIMUM_BREAKERS} afterwards, all closed breakers without failures which haven't been used
+   * right now are removed. Open breakers are always kept because they protect failing endpoints.
+   *
+   * @param now Current time in milliseconds
+   */
+  static void evictIdle(long now) {
+    breakers.values().removeIf(breaker -> breaker.isIdle(now - IDLE_EXPIRY_MILLIS));
+    if (breakers.size() > MAXIMUM_BREAKERS) {
+      breakers.values().removeIf(breaker -> breaker.isIdle(now));
+    }
+  }
+
+  /**
+   * @return Number of registered circuit breakers
+   */
+  static int size() {
+    return breakers.size();
+  }
+
+  /**
+   * Return the state of all circuit breakers which are not closed.
+   *
+   * @return Circuit breaker metrics
+   * @throws MetricException If metrics could not be collected
+   */
+  static Metrics getMetrics() throws MetricException {
+    MetricsGroup metrics = new MetricsGroup();
+    for (CircuitBreaker breaker : breakers.values()) {
+      State state = breaker.getState();
+      if (state == State.Closed && breaker.rejectedRequests.get() == 0) continue;
+      metrics.addSubMetrics(breaker.endpoint, new MetricsData()
+          .addData("open", state == State.Closed ? 0 : 1)
+          .addData("rejectedRequests", breaker.rejectedRequests.get()));
+    }
+    return metrics;
+  }
+
+  /**
+   * Remove all circuit breakers. Should only be used for testing.
+   */
+  static void resetAll() {
+    breakers.clear();
+    nextEviction.set(0);
+  }
+
+  /**
+   * Check whether a request may be sent to the endpoint. Every permitted request must be followed by a call to
+   * either {@link #onSuccess()} or {@link #onFailure()}.
+   *
+   * @return True if the request is permitted, false if the endpoint is considered unavailable
+   */
+  synchronized boolean tryAcquire() {
+    if (state == State.Closed) return true;
+
+    if (state == State.Open && clock.getAsLong() >= openUntil) {
+      // Let a single request through to probe whether the endpoint has recovered.
+      state = State.HalfOpen;
+      LOGGER.info("Probing endpoint %s after circuit breaker was open.", endpoint);
+      return true;
+    }
+
+    rejectedRequests.incrementAndGet();
+    return false;
+  }
+
+  synchronized void onSuccess() {
+    if (state != State.Closed) LOGGER.info("Closing circuit breaker for endpoint %s.", endpoint);
+    state = State.Closed;
+    consecutiveFailures = 0;
+  }
+
+  synchronized void onFailure() {
+    consecutiveFailures++;
+    if (state == State.HalfOpen || (state == State.Closed && consecutiveFailures >= failureThreshold)) {
+      LOGGER.warning("Opening circuit breaker for endpoint %s for %d ms after %d consecutive failures.",
+          endpoint, openMillis, consecutiveFailures);
+      state = State.Open;
+      openUntil = clock.getAsLong() + openMillis;
+    }
+  }
+
+  synchronized State getState() {
+    return state;
+  }
+
+  private synchronized boolean isIdle(long usedBefore) {
+    return state == State.Closed && consecutiveFailures == 0 && lastUsed < usedBefore;
+  }
+}
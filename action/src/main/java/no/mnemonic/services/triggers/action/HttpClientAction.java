@@ -2,6 +2,9 @@ package no.mnemonic.services.triggers.action;
 
 import no.mnemonic.commons.logging.Logger;
 import no.mnemonic.commons.logging.Logging;
+import no.mnemonic.commons.metrics.MetricException;
+import no.mnemonic.commons.metrics.Metrics;
+import no.mnemonic.commons.metrics.MetricsGroup;
 import no.mnemonic.commons.utilities.collections.MapUtils;
 import no.mnemonic.commons.utilities.collections.SetUtils;
 import no.mnemonic.commons.utilities.lambda.LambdaUtils;
@@ -9,21 +12,38 @@ import no.mnemonic.services.triggers.action.exceptions.ParameterException;
 import no.mnemonic.services.triggers.action.exceptions.TriggerExecutionException;
 import no.mnemonic.services.triggers.action.exceptions.TriggerInitializationException;
 import org.apache.hc.client5.http.HttpResponseException;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.impl.DefaultHttpRequestRetryStrategy;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.FutureCallback;
 import org.apache.hc.core5.http.*;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
-import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
+import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.core5.http.message.StatusLine;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.net.URIAuthority;
 import org.apache.hc.core5.io.CloseMode;
 
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.io.IOException;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * {@link TriggerAction} implementation for calling HTTP(s) webhooks.
@@ -31,9 +51,40 @@ import java.util.Set;
  * It has the following initialization parameters:
  * <ul>
  * <li><b>proxy</b>: URL of a server which will be used to proxy requests (optional).</li>
+ * <li><b>async</b>: If 'true' requests are executed asynchronously (optional, defaults to false).</li>
+ * <li><b>maxInFlightRequests</b>: Maximum number of asynchronous requests an instance executes concurrently
+ * (optional, defaults to 100, ignored if async parameter is not 'true').</li>
+ * <li><b>connectTimeoutMillis</b>: Maximum time to establish a connection (optional, defaults to 10000).</li>
+ * <li><b>connectionRequestTimeoutMillis</b>: Maximum time to wait for a pooled connection (optional, defaults to 10000).</li>
+ * <li><b>socketTimeoutMillis</b>: Maximum time of inactivity while waiting for response data (optional, defaults to 30000).</li>
+ * <li><b>deadlineMillis</b>: Maximum time of the whole request after which it's cancelled (optional, defaults to 60000).</li>
+ * <li><b>retryableStatusCodes</b>: Comma-separated list of HTTP status codes for which failed requests can be retried
+ * (optional, defaults to 408,429,500,502,503,504).</li>
+ * <li><b>circuitBreaker</b>: If 'false' the per-endpoint circuit breaker is disabled (optional, defaults to true).</li>
  * <li>All other parameters will be ignored.</li>
  * </ul>
  * <p>
+ * All instances using the same proxy configuration share one pool of kept-alive connections (at most
+ * {@value SharedConnectionManager#MAX_CONNECTIONS_PER_ROUTE} connections per route and
+ * {@value SharedConnectionManager#MAX_CONNECTIONS_TOTAL} connections in total). Statistics about the connection pools
+ * are available from {@link #getConnectionPoolMetrics()}.
+ * <p>
+ * In asynchronous mode {@link #triggerAsync(Map)} hands the request over to a shared asynchronous client and returns
+ * immediately, instead of blocking the calling thread for the whole round trip. The client uses HTTP/2 (multiplexing
+ * concurrent requests over one connection) with endpoints supporting it and HTTP/1.1 otherwise. Invalid trigger
+ * parameters are reported to the caller right away, failed requests complete the returned stage exceptionally. If the
+ * maximum number of in-flight requests is reached, {@link #triggerAsync(Map)} blocks until one of them has completed.
+ * {@link #trigger(Map)} behaves the same, but failed requests are only logged. {@link #close()} waits for in-flight
+ * requests to complete. In synchronous mode {@link #triggerAsync(Map)} executes the request like {@link #trigger(Map)}
+ * and returns a completed stage.
+ * <p>
+ * Failed requests due to I/O errors (e.g. timeouts or refused connections) or a retryable status code are reported as
+ * retryable {@link TriggerExecutionException}s. Requests to the same endpoint (scheme, host and port) share a circuit
+ * breaker which opens after {@value CircuitBreaker#DEFAULT_FAILURE_THRESHOLD} consecutive failures. While open,
+ * requests fail immediately without contacting the endpoint. After {@value CircuitBreaker#DEFAULT_OPEN_MILLIS} ms a
+ * single request is let through to probe whether the endpoint has recovered. Asynchronous requests are subject to the
+ * circuit breaker and report retryable failures in the same way.
+ * <p>
  * It has the following trigger parameters:
  * <ul>
  * <li><b>url</b>: URL of the webhook to call (required).</li>
@@ -41,14 +92,24 @@ import java.util.Set;
  * <li><b>body</b>: Body send in request (optional).</li>
  * <li><b>contentType</b>: Media type of body data (optional, defaults to text/plain, ignored if body parameter is not specified).</li>
  * <li>Parameters starting with the prefix <b>header@</b> will be sent as additional request headers (without the prefix).</li>
+ * <li><b>connectionRequestTimeoutMillis</b>, <b>socketTimeoutMillis</b> and <b>deadlineMillis</b>: Override the
+ * timeouts configured as initialization parameters for a single request (optional). The connect timeout is applied to
+ * the shared connection pool and can't be overridden per request.</li>
  * <li>All other parameters will be ignored.</li>
  * </ul>
  */
-public class HttpClientAction implements TriggerAction {
+public class HttpClientAction implements AsyncTriggerAction {
 
   private static final Logger LOGGER = Logging.getLogger(HttpClientAction.class);
 
   private static final String INIT_PARAMETER_PROXY = "proxy";
+  private static final String INIT_PARAMETER_ASYNC = "async";
+  private static final String INIT_PARAMETER_MAX_IN_FLIGHT_REQUESTS = "maxInFlightRequests";
+  private static final String INIT_PARAMETER_RETRYABLE_STATUS_CODES = "retryableStatusCodes";
+  private static final String INIT_PARAMETER_CIRCUIT_BREAKER = "circuitBreaker";
+  private static final Set<Integer> DEFAULT_RETRYABLE_STATUS_CODES = Collections.unmodifiableSet(SetUtils.set(408, 429, 500, 502, 503, 504));
+  private static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 100;
+  private static final long CLOSE_TIMEOUT_SECONDS = 30;
   private static final String TRIGGER_PARAMETER_METHOD = "method";
   private static final String TRIGGER_PARAMETER_URL = "url";
   private static final String TRIGGER_PARAMETER_BODY = "body";
@@ -56,7 +117,42 @@ public class HttpClientAction implements TriggerAction {
   private static final String TRIGGER_PARAMETER_HEADER_PREFIX = "header@";
   private static final Set<String> SUPPORTED_PROTOCOLS = Collections.unmodifiableSet(SetUtils.set("http", "https"));
 
+  private SharedConnectionManager connectionManager;
   private CloseableHttpClient client;
+  private SharedAsyncClient asyncClient;
+  private Semaphore inFlightLimiter;
+  private int maxInFlightRequests;
+  private RequestTimeouts timeouts;
+  private Set<Integer> retryableStatusCodes;
+  private boolean circuitBreakerEnabled;
+
+  /**
+   * Return statistics (leased, available and pending connections) about all connection pools currently in use,
+   * grouped by proxy configuration.
+   *
+   * @return Connection pool metrics
+   * @throws MetricException If metrics could not be collected
+   */
+  public static Metrics getConnectionPoolMetrics() throws MetricException {
+    MetricsGroup metrics = new MetricsGroup();
+    for (Map.Entry<String, Metrics> pool : SharedConnectionManager.getMetrics().getSubMetrics().entrySet()) {
+      metrics.addSubMetrics(pool.getKey(), pool.getValue());
+    }
+    for (Map.Entry<String, Metrics> pool : SharedAsyncClient.getMetrics().getSubMetrics().entrySet()) {
+      metrics.addSubMetrics("async@" + pool.getKey(), pool.getValue());
+    }
+    return metrics;
+  }
+
+  /**
+   * Return the state of all circuit breakers which are open or have rejected requests, grouped by endpoint.
+   *
+   * @return Circuit breaker metrics
+   * @throws MetricException If metrics could not be collected
+   */
+  public static Metrics getCircuitBreakerMetrics() throws MetricException {
+    return CircuitBreaker.getMetrics();
+  }
 
   @Override
   public void init(Map<String, String> initParameters) throws ParameterException, TriggerInitializationException {
@@ -64,8 +160,26 @@ public class HttpClientAction implements TriggerAction {
     Map<String, String> params = MapUtils.map(initParameters);
 
     try {
+      HttpHost proxy = extractProxy(params);
+      timeouts = RequestTimeouts.from(params, RequestTimeouts.DEFAULTS);
+      retryableStatusCodes = extractRetryableStatusCodes(params);
+      circuitBreakerEnabled = extractBoolean(params, INIT_PARAMETER_CIRCUIT_BREAKER, true);
+      if (extractBoolean(params, INIT_PARAMETER_ASYNC, false)) {
+        maxInFlightRequests = extractMaxInFlightRequests(params);
+        inFlightLimiter = new Semaphore(maxInFlightRequests);
+        asyncClient = SharedAsyncClient.acquire(proxy, timeouts);
+        return;
+      }
+
+      // Share the connection pool between all instances using the same proxy and connect timeout. The pool is closed
+      // when it's released by the last instance, not when closing the client.
+      connectionManager = SharedConnectionManager.acquire(proxy != null ? proxy.toURI() : null, timeouts);
       // Create HTTP client by applying provided initialization parameters and system properties as a fallback.
-      client = applyProxySettings(HttpClients.custom(), params)
+      client = HttpClients.custom()
+          .setProxy(proxy)
+          .setConnectionManager(connectionManager.getManager())
+          .setConnectionManagerShared(true)
+          .setRetryStrategy(new StatusCodeIgnoringRetryStrategy())
           .useSystemProperties()
           .build();
     } catch (ParameterException ex) {
@@ -75,12 +189,20 @@ public class HttpClientAction implements TriggerAction {
     } catch (Exception catchAll) {
       // All other exceptions are treated as action initialization failed.
       LOGGER.error(catchAll, "Could not initialize HTTP client.");
+      // Don't keep a reference to the shared connection pool if initialization failed.
+      close();
       throw new TriggerInitializationException("Could not initialize HTTP client.", catchAll);
     }
   }
 
   @Override
   public void trigger(Map<String, String> triggerParameters) throws ParameterException, TriggerExecutionException {
+    if (asyncClient != null) {
+      // Nobody waits for the result, failures have been logged already.
+      executeAsync(MapUtils.map(triggerParameters));
+      return;
+    }
+
     if (client == null) {
       throw new IllegalStateException("Cannot execute action because HTTP client is not initialized. Forgot to call init()?");
     }
@@ -88,8 +210,26 @@ public class HttpClientAction implements TriggerAction {
     // Copy trigger parameters into an internal variable, such that it's safe to change them.
     Map<String, String> params = MapUtils.map(triggerParameters);
 
+    HttpUriRequestBase request;
+    RequestTimeouts requestTimeouts;
     try {
-      client.execute(createHttpRequest(params), response -> {
+      requestTimeouts = RequestTimeouts.from(params, timeouts);
+      request = createHttpRequest(params);
+    } catch (ParameterException ex) {
+      // If creating the HTTP request throws a ParameterException just log and re-throw it.
+      LOGGER.warning(ex, "Could not execute HTTP request. Parameter '%s' is invalid", ex.getParameter());
+      throw ex;
+    }
+
+    CircuitBreaker circuitBreaker = acquireCircuitBreaker(request);
+    ScheduledFuture<?> deadline = null;
+    try {
+      // Abort the request if it doesn't complete before its deadline, regardless of which phase it hangs in.
+      deadline = requestTimeouts.scheduleDeadline(request::cancel);
+
+      HttpClientContext context = HttpClientContext.create();
+      context.setRequestConfig(requestTimeouts.getRequestConfig());
+      client.execute(request, context, response -> {
         // Everything which is not a 2xx status code is considered an error. Also ignore any response body.
         StatusLine statusLine = new StatusLine(response);
         int code = statusLine.getStatusCode();
@@ -104,26 +244,181 @@ public class HttpClientAction implements TriggerAction {
 
         return response;
       });
-    } catch (ParameterException ex) {
-      // If executing the HTTP request throws a ParameterException just log and re-throw it.
-      LOGGER.warning(ex, "Could not execute HTTP request. Parameter '%s' is invalid", ex.getParameter());
-      throw ex;
+      recordResult(circuitBreaker, true);
+    } catch (HttpResponseException ex) {
+      // The endpoint responded, but only some status codes indicate that it's (temporarily) unavailable.
+      boolean retryable = retryableStatusCodes.contains(ex.getStatusCode());
+      recordResult(circuitBreaker, !retryable);
+      LOGGER.error(ex, "Could not execute HTTP request.");
+      throw new TriggerExecutionException("Could not execute HTTP request.", ex, retryable);
     } catch (Exception catchAll) {
+      recordResult(circuitBreaker, false);
+      // I/O errors (e.g. refused connections or timeouts) are likely transient and can be retried.
+      boolean retryable = catchAll instanceof IOException;
+      if (request.isCancelled()) {
+        LOGGER.error(catchAll, "HTTP request was cancelled after exceeding its deadline.");
+        throw new TriggerExecutionException("HTTP request was cancelled after exceeding its deadline.", catchAll, retryable);
+      }
       // All other exceptions are treated as action execution failed. Especially this will contain IOExceptions and
       // ClientProtocolExceptions thrown by the HTTP client on execute().
       LOGGER.error(catchAll, "Could not execute HTTP request.");
-      throw new TriggerExecutionException("Could not execute HTTP request.", catchAll);
+      throw new TriggerExecutionException("Could not execute HTTP request.", catchAll, retryable);
+    } finally {
+      if (deadline != null) deadline.cancel(false);
     }
   }
 
+  @Override
+  public CompletionStage<Void> triggerAsync(Map<String, String> triggerParameters) throws ParameterException, TriggerExecutionException {
+    if (asyncClient != null) return executeAsync(MapUtils.map(triggerParameters));
+
+    trigger(triggerParameters);
+    return CompletableFuture.completedFuture(null);
+  }
+
   @Override
   public void close() {
-    client.close(CloseMode.GRACEFUL);
+    if (asyncClient != null) {
+      // Give in-flight requests the chance to complete before releasing the shared client.
+      LambdaUtils.tryTo(() -> {
+        if (!inFlightLimiter.tryAcquire(maxInFlightRequests, CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+          LOGGER.warning("Closing HTTP client action while asynchronous requests are still in flight.");
+        }
+      }, ex -> LOGGER.warning(ex, "Interrupted while waiting for asynchronous requests to complete."));
+      asyncClient.release();
+      asyncClient = null;
+    }
+
+    if (client != null) {
+      client.close(CloseMode.GRACEFUL);
+      client = null;
+    }
+
+    if (connectionManager != null) {
+      connectionManager.release();
+      connectionManager = null;
+    }
   }
 
-  private HttpClientBuilder applyProxySettings(HttpClientBuilder builder, Map<String, String> initParameters)
-      throws ParameterException {
-    if (!initParameters.containsKey(INIT_PARAMETER_PROXY)) return builder;
+  private CompletableFuture<Void> executeAsync(Map<String, String> params) throws ParameterException, TriggerExecutionException {
+    SimpleHttpRequest request;
+    RequestTimeouts requestTimeouts;
+    try {
+      requestTimeouts = RequestTimeouts.from(params, timeouts);
+      request = createAsyncHttpRequest(params);
+      request.setConfig(requestTimeouts.getRequestConfig());
+    } catch (ParameterException ex) {
+      LOGGER.warning(ex, "Could not execute HTTP request. Parameter '%s' is invalid", ex.getParameter());
+      throw ex;
+    }
+
+    try {
+      // Block the calling thread if too many requests are in flight already.
+      inFlightLimiter.acquire();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new TriggerExecutionException("Interrupted while waiting for in-flight HTTP requests to complete.", ex);
+    }
+
+    CircuitBreaker circuitBreaker;
+    try {
+      circuitBreaker = acquireCircuitBreaker(request);
+    } catch (TriggerExecutionException ex) {
+      inFlightLimiter.release();
+      throw ex;
+    }
+
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    try {
+      AtomicReference<ScheduledFuture<?>> deadline = new AtomicReference<>();
+      Future<SimpleHttpResponse> future = asyncClient.execute(request, new FutureCallback<>() {
+        @Override
+        public void completed(SimpleHttpResponse response) {
+          inFlightLimiter.release();
+          cancelDeadline(deadline);
+          int code = response.getCode();
+          recordResult(circuitBreaker, !retryableStatusCodes.contains(code));
+          if (!(code >= 200 && code < 300)) {
+            LOGGER.error("Asynchronous HTTP request to %s failed with status: %d %s", request.getRequestUri(), code, response.getReasonPhrase());
+            if (LOGGER.isDebug()) {
+              LOGGER.debug("HTTP request failed with code %d and response:%n%s", code, response.getBodyText());
+            }
+            result.completeExceptionally(new TriggerExecutionException("Could not execute HTTP request.",
+                new HttpResponseException(code, response.getReasonPhrase()), retryableStatusCodes.contains(code)));
+            return;
+          }
+
+          if (LOGGER.isInfo()) {
+            LOGGER.info("Successfully executed asynchronous HTTP request. Received response with status: %d %s", code, response.getReasonPhrase());
+          }
+          result.complete(null);
+        }
+
+        @Override
+        public void failed(Exception ex) {
+          inFlightLimiter.release();
+          cancelDeadline(deadline);
+          recordResult(circuitBreaker, false);
+          LOGGER.error(ex, "Could not execute asynchronous HTTP request to %s.", request.getRequestUri());
+          // I/O errors (e.g. refused connections or timeouts) are likely transient and can be retried.
+          result.completeExceptionally(new TriggerExecutionException("Could not execute HTTP request.", ex, ex instanceof IOException));
+        }
+
+        @Override
+        public void cancelled() {
+          inFlightLimiter.release();
+          cancelDeadline(deadline);
+          recordResult(circuitBreaker, false);
+          LOGGER.error("Asynchronous HTTP request to %s was cancelled after exceeding its deadline of %d ms.",
+              request.getRequestUri(), requestTimeouts.getDeadline());
+          result.completeExceptionally(new TriggerExecutionException("HTTP request was cancelled after exceeding its deadline.", null, true));
+        }
+      });
+      deadline.set(requestTimeouts.scheduleDeadline(() -> future.cancel(true)));
+      // The request might have completed before the deadline was scheduled.
+      if (future.isDone()) cancelDeadline(deadline);
+      return result;
+    } catch (Exception catchAll) {
+      inFlightLimiter.release();
+      recordResult(circuitBreaker, false);
+      LOGGER.error(catchAll, "Could not execute HTTP request.");
+      throw new TriggerExecutionException("Could not execute HTTP request.", catchAll);
+    }
+  }
+
+  private CircuitBreaker acquireCircuitBreaker(HttpRequest request) throws TriggerExecutionException {
+    if (!circuitBreakerEnabled) return null;
+
+    // Only use scheme, host and port, such that credentials in the URL never end up in logs or metrics.
+    URIAuthority authority = request.getAuthority();
+    String endpoint = authority.getPort() < 0 ? String.format("%s://%s", request.getScheme(), authority.getHostName()) :
+        String.format("%s://%s:%d", request.getScheme(), authority.getHostName(), authority.getPort());
+    CircuitBreaker circuitBreaker = CircuitBreaker.forEndpoint(endpoint);
+    if (!circuitBreaker.tryAcquire()) {
+      // Fail fast while the endpoint is unavailable. The execution can be retried after the circuit breaker closed.
+      LOGGER.warning("Circuit breaker for endpoint %s is open, skipping HTTP request.", endpoint);
+      throw new TriggerExecutionException(String.format("Circuit breaker for endpoint %s is open.", endpoint), null, true);
+    }
+
+    return circuitBreaker;
+  }
+
+  private static void recordResult(CircuitBreaker circuitBreaker, boolean available) {
+    if (circuitBreaker == null) return;
+    if (available) {
+      circuitBreaker.onSuccess();
+    } else {
+      circuitBreaker.onFailure();
+    }
+  }
+
+  private static void cancelDeadline(AtomicReference<ScheduledFuture<?>> deadline) {
+    ScheduledFuture<?> scheduled = deadline.get();
+    if (scheduled != null) scheduled.cancel(false);
+  }
+
+  private HttpHost extractProxy(Map<String, String> initParameters) throws ParameterException {
+    if (!initParameters.containsKey(INIT_PARAMETER_PROXY)) return null;
 
     String proxy = initParameters.get(INIT_PARAMETER_PROXY);
     try {
@@ -133,37 +428,105 @@ public class HttpClientAction implements TriggerAction {
         LOGGER.debug("Configured HTTP client to use proxy: %s", host.toURI());
       }
 
-      return builder.setProxy(host);
+      return host;
     } catch (Exception ex) {
       throw new ParameterException(String.format("Provided proxy '%s' is invalid.", proxy), ex, INIT_PARAMETER_PROXY);
     }
   }
 
-  private ClassicHttpRequest createHttpRequest(Map<String, String> triggerParameters) throws ParameterException {
+  private HttpUriRequestBase createHttpRequest(Map<String, String> triggerParameters) throws ParameterException {
+    Method method = extractMethod(triggerParameters);
+    URI uri = extractUri(triggerParameters);
+    String body = triggerParameters.get(TRIGGER_PARAMETER_BODY);
+    ContentType contentType = extractContentType(triggerParameters);
+
+    // Use HttpUriRequestBase instead of ClassicRequestBuilder because the request must be cancellable.
+    HttpUriRequestBase request = new HttpUriRequestBase(method.name(), uri);
+
+    // Request body is optional.
+    if (body != null) {
+      request.setEntity(new StringEntity(body, contentType));
+    }
+
+    addHeaders(request, triggerParameters);
+    logRequest(method, uri, body);
+
+    return request;
+  }
+
+  private SimpleHttpRequest createAsyncHttpRequest(Map<String, String> triggerParameters) throws ParameterException {
     Method method = extractMethod(triggerParameters);
     URI uri = extractUri(triggerParameters);
     String body = triggerParameters.get(TRIGGER_PARAMETER_BODY);
     ContentType contentType = extractContentType(triggerParameters);
 
-    ClassicRequestBuilder requestBuilder = ClassicRequestBuilder.create(method.name())
-        .setUri(uri);
+    SimpleHttpRequest request = SimpleRequestBuilder.create(method.name())
+        .setUri(uri)
+        .build();
 
     // Request body is optional.
     if (body != null) {
-      requestBuilder.setEntity(body, contentType);
+      request.setBody(body, contentType);
     }
 
+    addHeaders(request, triggerParameters);
+    logRequest(method, uri, body);
+
+    return request;
+  }
+
+  private void addHeaders(HttpMessage request, Map<String, String> triggerParameters) {
     // All parameters starting with "header@" are considered headers.
     for (String parameter : triggerParameters.keySet()) {
       if (!parameter.startsWith(TRIGGER_PARAMETER_HEADER_PREFIX)) continue;
-      requestBuilder.addHeader(parameter.replaceFirst(TRIGGER_PARAMETER_HEADER_PREFIX, ""), triggerParameters.get(parameter));
+      request.addHeader(parameter.replaceFirst(TRIGGER_PARAMETER_HEADER_PREFIX, ""), triggerParameters.get(parameter));
     }
+  }
 
+  private void logRequest(Method method, URI uri, String body) {
     if (LOGGER.isDebug()) {
       LOGGER.debug("Created %s request to URL %s with body:%n%s", method, uri, body);
     }
+  }
+
+  private boolean extractBoolean(Map<String, String> initParameters, String parameter, boolean defaultValue)
+      throws ParameterException {
+    if (!initParameters.containsKey(parameter)) return defaultValue;
 
-    return requestBuilder.build();
+    String value = initParameters.get(parameter);
+    if ("true".equalsIgnoreCase(value)) return true;
+    if ("false".equalsIgnoreCase(value)) return false;
+    throw new ParameterException(String.format("Provided %s setting '%s' is invalid.", parameter, value), parameter);
+  }
+
+  private Set<Integer> extractRetryableStatusCodes(Map<String, String> initParameters) throws ParameterException {
+    if (!initParameters.containsKey(INIT_PARAMETER_RETRYABLE_STATUS_CODES)) return DEFAULT_RETRYABLE_STATUS_CODES;
+
+    String statusCodes = initParameters.get(INIT_PARAMETER_RETRYABLE_STATUS_CODES);
+    try {
+      Set<Integer> result = new HashSet<>();
+      for (String code : statusCodes.split(",")) {
+        if (!code.isBlank()) result.add(Integer.parseInt(code.trim()));
+      }
+      return Collections.unmodifiableSet(result);
+    } catch (Exception ex) {
+      throw new ParameterException(String.format("Provided retryable status codes '%s' are invalid.", statusCodes),
+          ex, INIT_PARAMETER_RETRYABLE_STATUS_CODES);
+    }
+  }
+
+  private int extractMaxInFlightRequests(Map<String, String> initParameters) throws ParameterException {
+    if (!initParameters.containsKey(INIT_PARAMETER_MAX_IN_FLIGHT_REQUESTS)) return DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+
+    String maxInFlightRequests = initParameters.get(INIT_PARAMETER_MAX_IN_FLIGHT_REQUESTS);
+    try {
+      int result = Integer.parseInt(maxInFlightRequests);
+      if (result <= 0) throw new NumberFormatException("Value must be > 0.");
+      return result;
+    } catch (Exception ex) {
+      throw new ParameterException(String.format("Provided maximum number of in-flight requests '%s' is invalid.",
+          maxInFlightRequests), ex, INIT_PARAMETER_MAX_IN_FLIGHT_REQUESTS);
+    }
   }
 
   private Method extractMethod(Map<String, String> triggerParameters) throws ParameterException {
@@ -208,6 +571,17 @@ public class HttpClientAction implements TriggerAction {
     }
   }
 
+  /**
+   * Retry strategy which only retries requests on I/O errors (e.g. stale pooled connections), but never based on the
+   * response status code. Retrying failed executions is up to the retry policy of the TriggerActionDefinition.
+   */
+  private static class StatusCodeIgnoringRetryStrategy extends DefaultHttpRequestRetryStrategy {
+    @Override
+    public boolean retryRequest(HttpResponse response, int execCount, HttpContext context) {
+      return false;
+    }
+  }
+
   private void logResponse(int statusCode, HttpEntity responseBody) {
     if (!LOGGER.isDebug()) return;
     // Just ignore any exceptions, logging the response shouldn't interrupt the ordinary method flow.
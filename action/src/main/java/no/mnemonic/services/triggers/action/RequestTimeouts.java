@@ -0,0 +1,130 @@
+package no.mnemonic.services.triggers.action;
+
+import no.mnemonic.services.triggers.action.exceptions.ParameterException;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.core5.util.Timeout;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timeouts applied to requests executed by {@link HttpClientAction}. All timeouts are specified in milliseconds:
+ * <ul>
+ * <li><b>connectTimeoutMillis</b>: Maximum time to establish a connection (defaults to 10000).</li>
+ * <li><b>connectionRequestTimeoutMillis</b>: Maximum time to wait for a connection from the pool (defaults to 10000).</li>
+ * <li><b>socketTimeoutMillis</b>: Maximum time of inactivity while waiting for response data (defaults to 30000).</li>
+ * <li><b>deadlineMillis</b>: Maximum time of the whole request, after which it's cancelled (defaults to 60000).</li>
+ * </ul>
+ * The connect timeout is part of the configuration of the (shared) connection manager instead of the request
+ * configuration, thus, it is only applied from the initialization parameters.
+ */
+class RequestTimeouts {
+
+  static final String CONNECT_TIMEOUT = "connectTimeoutMillis";
+  static final String CONNECTION_REQUEST_TIMEOUT = "connectionRequestTimeoutMillis";
+  static final String SOCKET_TIMEOUT = "socketTimeoutMillis";
+  static final String DEADLINE = "deadlineMillis";
+
+  static final RequestTimeouts DEFAULTS = new RequestTimeouts(10_000, 10_000, 30_000, 60_000);
+
+  // All instances share one timer thread for cancelling requests exceeding their deadline.
+  private static final ScheduledThreadPoolExecutor deadlineTimer = createDeadlineTimer();
+
+  private final long connectTimeout;
+  private final long connectionRequestTimeout;
+  private final long socketTimeout;
+  private final long deadline;
+  private final RequestConfig requestConfig;
+
+  private RequestTimeouts(long connectTimeout, long connectionRequestTimeout, long socketTimeout, long deadline) {
+    this.connectTimeout = connectTimeout;
+    this.connectionRequestTimeout = connectionRequestTimeout;
+    this.socketTimeout = socketTimeout;
+    this.deadline = deadline;
+    this.requestConfig = RequestConfig.custom()
+        .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionRequestTimeout))
+        .setResponseTimeout(Timeout.ofMilliseconds(socketTimeout))
+        .build();
+  }
+
+  /**
+   * Read timeouts from parameters. Timeouts which are not specified are taken from the fallback.
+   *
+   * @param parameters Initialization or trigger parameters
+   * @param fallback   Timeouts used if not specified in the parameters
+   * @return Timeouts
+   * @throws ParameterException If a timeout is not a positive number
+   */
+  static RequestTimeouts from(Map<String, String> parameters, RequestTimeouts fallback) throws ParameterException {
+    if (!parameters.containsKey(CONNECT_TIMEOUT) && !parameters.containsKey(CONNECTION_REQUEST_TIMEOUT) &&
+        !parameters.containsKey(SOCKET_TIMEOUT) && !parameters.containsKey(DEADLINE)) {
+      // Avoid creating a new RequestConfig for every request if timeouts aren't overridden.
+      return fallback;
+    }
+
+    return new RequestTimeouts(
+        extractTimeout(parameters, CONNECT_TIMEOUT, fallback.connectTimeout),
+        extractTimeout(parameters, CONNECTION_REQUEST_TIMEOUT, fallback.connectionRequestTimeout),
+        extractTimeout(parameters, SOCKET_TIMEOUT, fallback.socketTimeout),
+        extractTimeout(parameters, DEADLINE, fallback.deadline)
+    );
+  }
+
+  /**
+   * Schedule cancellation of a request once its deadline has passed. The returned future must be cancelled when the
+   * request has completed before the deadline.
+   *
+   * @param cancellation Task cancelling the request
+   * @return Future of the scheduled cancellation
+   */
+  ScheduledFuture<?> scheduleDeadline(Runnable cancellation) {
+    return deadlineTimer.schedule(cancellation, deadline, TimeUnit.MILLISECONDS);
+  }
+
+  RequestConfig getRequestConfig() {
+    return requestConfig;
+  }
+
+  /**
+   * @return Connection configuration applying the connect timeout, used when creating a connection manager
+   */
+  ConnectionConfig.Builder customConnectionConfig() {
+    return ConnectionConfig.custom()
+        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout));
+  }
+
+  long getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  long getDeadline() {
+    return deadline;
+  }
+
+  private static long extractTimeout(Map<String, String> parameters, String parameter, long fallback) throws ParameterException {
+    if (!parameters.containsKey(parameter)) return fallback;
+
+    String timeout = parameters.get(parameter);
+    try {
+      long result = Long.parseLong(timeout);
+      if (result <= 0) throw new NumberFormatException("Value must be > 0.");
+      return result;
+    } catch (Exception ex) {
+      throw new ParameterException(String.format("Provided timeout '%s' is invalid.", timeout), ex, parameter);
+    }
+  }
+
+  private static ScheduledThreadPoolExecutor createDeadlineTimer() {
+    ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "http-request-deadline");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // Most requests complete before their deadline, don't keep cancelled tasks around until they would have expired.
+    timer.setRemoveOnCancelPolicy(true);
+    return timer;
+  }
+}
@@ -0,0 +1,172 @@
+package no.mnemonic.services.triggers.action;
+
+import no.mnemonic.commons.logging.Logger;
+import no.mnemonic.commons.logging.Logging;
+import no.mnemonic.commons.metrics.MetricException;
+import no.mnemonic.commons.metrics.Metrics;
+import no.mnemonic.commons.metrics.MetricsData;
+import no.mnemonic.commons.metrics.MetricsGroup;
+import no.mnemonic.commons.utilities.ObjectUtils;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous HTTP client shared between all {@link HttpClientAction} instances using the same proxy configuration
+ * and connect timeout in asynchronous mode.
+ * <p>
+ * The client negotiates HTTP/2 via ALPN with endpoints supporting it, such that concurrent requests to the same
+ * endpoint are multiplexed over a single connection, and falls back to pooled HTTP/1.1 connections otherwise. It is
+ * started when the first instance acquires it and shut down when the last instance releases it again.
+ */
+class SharedAsyncClient {
+
+  private static final Logger LOGGER = Logging.getLogger(SharedAsyncClient.class);
+  private static final String NO_PROXY = "direct";
+  private static final TimeValue CONNECTION_TIME_TO_LIVE = TimeValue.ofMinutes(5);
+  private static final TimeValue VALIDATE_AFTER_INACTIVITY = TimeValue.ofSeconds(2);
+  private static final TimeValue MAXIMUM_IDLE_TIME = TimeValue.ofMinutes(1);
+
+  private static final Map<String, SharedAsyncClient> clients = new HashMap<>();
+
+  private final String key;
+  private final PoolingAsyncClientConnectionManager manager;
+  private final CloseableHttpAsyncClient client;
+  private final AtomicInteger inFlightRequests = new AtomicInteger();
+  private int references;
+
+  private SharedAsyncClient(String key, PoolingAsyncClientConnectionManager manager, CloseableHttpAsyncClient client) {
+    this.key = key;
+    this.manager = manager;
+    this.client = client;
+  }
+
+  /**
+   * Acquire the asynchronous client shared for a proxy configuration and connect timeout. Every call must be paired
+   * with a call to {@link #release()} once the client isn't used any more.
+   *
+   * @param proxy    Proxy (null if no proxy is used)
+   * @param timeouts Timeouts providing the connect timeout of the client's connection manager
+   * @return Shared asynchronous client
+   */
+  static synchronized SharedAsyncClient acquire(HttpHost proxy, RequestTimeouts timeouts) {
+    String key = SharedConnectionManager.createKey(ObjectUtils.ifNotNull(proxy, HttpHost::toURI, NO_PROXY), timeouts);
+    SharedAsyncClient shared = clients.computeIfAbsent(key, k -> create(k, proxy, timeouts));
+    shared.references++;
+    return shared;
+  }
+
+  /**
+   * Return metrics of all asynchronous clients currently in use, grouped by proxy configuration.
+   *
+   * @return Connection pool metrics
+   * @throws MetricException If metrics could not be collected
+   */
+  static synchronized Metrics getMetrics() throws MetricException {
+    MetricsGroup metrics = new MetricsGroup();
+    for (SharedAsyncClient shared : clients.values()) {
+      PoolStats stats = shared.manager.getTotalStats();
+      metrics.addSubMetrics(shared.key, new MetricsData()
+          .addData("leasedConnections", stats.getLeased())
+          .addData("availableConnections", stats.getAvailable())
+          .addData("pendingConnections", stats.getPending())
+          .addData("maxConnections", stats.getMax())
+          .addData("inFlightRequests", shared.inFlightRequests.get())
+          .addData("references", shared.references));
+    }
+    return metrics;
+  }
+
+  /**
+   * Release the client. It will be shut down once it has been released by all users.
+   */
+  void release() {
+    synchronized (SharedAsyncClient.class) {
+      if (references <= 0 || --references > 0) return;
+      clients.remove(key);
+    }
+
+    LOGGER.debug("Shutting down asynchronous HTTP client for proxy configuration '%s'.", key);
+    client.close(CloseMode.GRACEFUL);
+  }
+
+  /**
+   * Execute a request in the background. The callback is invoked from one of the client's I/O threads once the
+   * request has completed.
+   *
+   * @param request  Request to execute
+   * @param callback Callback receiving the result
+   * @return Future which can be used to cancel the request
+   */
+  Future<SimpleHttpResponse> execute(SimpleHttpRequest request, FutureCallback<SimpleHttpResponse> callback) {
+    inFlightRequests.incrementAndGet();
+    try {
+      return client.execute(request, new FutureCallback<>() {
+        @Override
+        public void completed(SimpleHttpResponse response) {
+          inFlightRequests.decrementAndGet();
+          callback.completed(response);
+        }
+
+        @Override
+        public void failed(Exception ex) {
+          inFlightRequests.decrementAndGet();
+          callback.failed(ex);
+        }
+
+        @Override
+        public void cancelled() {
+          inFlightRequests.decrementAndGet();
+          callback.cancelled();
+        }
+      });
+    } catch (RuntimeException ex) {
+      inFlightRequests.decrementAndGet();
+      throw ex;
+    }
+  }
+
+  private static SharedAsyncClient create(String key, HttpHost proxy, RequestTimeouts timeouts) {
+    LOGGER.debug("Creating asynchronous HTTP client for proxy configuration '%s'.", key);
+
+    PoolingAsyncClientConnectionManager manager = PoolingAsyncClientConnectionManagerBuilder.create()
+        .useSystemProperties()
+        .setMaxConnPerRoute(SharedConnectionManager.MAX_CONNECTIONS_PER_ROUTE)
+        .setMaxConnTotal(SharedConnectionManager.MAX_CONNECTIONS_TOTAL)
+        // Use HTTP/2 if the endpoint announces support for it during the TLS handshake, HTTP/1.1 otherwise.
+        .setDefaultTlsConfig(TlsConfig.custom()
+            .setVersionPolicy(HttpVersionPolicy.NEGOTIATE)
+            .build())
+        .setDefaultConnectionConfig(timeouts.customConnectionConfig()
+            .setTimeToLive(CONNECTION_TIME_TO_LIVE)
+            .setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY)
+            .build())
+        .build();
+
+    CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+        .setConnectionManager(manager)
+        .setProxy(proxy)
+        .useSystemProperties()
+        .evictExpiredConnections()
+        .evictIdleConnections(MAXIMUM_IDLE_TIME)
+        .build();
+    client.start();
+
+    return new SharedAsyncClient(key, manager, client);
+  }
+}
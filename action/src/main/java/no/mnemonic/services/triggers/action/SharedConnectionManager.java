@@ -0,0 +1,159 @@
+package no.mnemonic.services.triggers.action;
+
+import no.mnemonic.commons.logging.Logger;
+import no.mnemonic.commons.logging.Logging;
+import no.mnemonic.commons.metrics.MetricException;
+import no.mnemonic.commons.metrics.Metrics;
+import no.mnemonic.commons.metrics.MetricsData;
+import no.mnemonic.commons.metrics.MetricsGroup;
+import no.mnemonic.commons.utilities.ObjectUtils;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pooling connection manager shared between all {@link HttpClientAction} instances using the same proxy configuration
+ * and connect timeout.
+ * <p>
+ * Sharing the pool allows webhooks to the same endpoints to reuse kept-alive connections (and the TLS sessions
+ * negotiated on them) instead of opening a new connection for every request. A connection manager is created when
+ * the first instance acquires it and shut down when the last instance releases it again. While a connection manager
+ * is in use, expired and idle connections are closed periodically.
+ */
+class SharedConnectionManager {
+
+  static final int MAX_CONNECTIONS_PER_ROUTE = 20;
+  static final int MAX_CONNECTIONS_TOTAL = 200;
+
+  private static final Logger LOGGER = Logging.getLogger(SharedConnectionManager.class);
+  private static final String NO_PROXY = "direct";
+  private static final TimeValue CONNECTION_TIME_TO_LIVE = TimeValue.ofMinutes(5);
+  private static final TimeValue VALIDATE_AFTER_INACTIVITY = TimeValue.ofSeconds(2);
+  private static final TimeValue MAXIMUM_IDLE_TIME = TimeValue.ofMinutes(1);
+  private static final long EVICTION_INTERVAL_SECONDS = 30;
+
+  private static final Map<String, SharedConnectionManager> managers = new HashMap<>();
+  private static ScheduledExecutorService evictor;
+
+  private final String key;
+  private final PoolingHttpClientConnectionManager manager;
+  private final ScheduledFuture<?> eviction;
+  private int references;
+
+  private SharedConnectionManager(String key, PoolingHttpClientConnectionManager manager, ScheduledFuture<?> eviction) {
+    this.key = key;
+    this.manager = manager;
+    this.eviction = eviction;
+  }
+
+  /**
+   * Acquire the connection manager shared for a proxy configuration and connect timeout. Every call must be paired
+   * with a call to {@link #release()} once the connection manager isn't used any more.
+   *
+   * @param proxy    Proxy configuration (null if no proxy is used)
+   * @param timeouts Timeouts providing the connect timeout of the connection manager
+   * @return Shared connection manager
+   */
+  static synchronized SharedConnectionManager acquire(String proxy, RequestTimeouts timeouts) {
+    String key = createKey(ObjectUtils.ifNull(proxy, NO_PROXY), timeouts);
+    SharedConnectionManager shared = managers.computeIfAbsent(key, k -> create(k, timeouts));
+    shared.references++;
+    return shared;
+  }
+
+  /**
+   * Return metrics of all connection managers currently in use, grouped by proxy configuration.
+   *
+   * @return Connection pool metrics
+   * @throws MetricException If metrics could not be collected
+   */
+  static synchronized Metrics getMetrics() throws MetricException {
+    MetricsGroup metrics = new MetricsGroup();
+    for (SharedConnectionManager shared : managers.values()) {
+      PoolStats stats = shared.manager.getTotalStats();
+      metrics.addSubMetrics(shared.key, new MetricsData()
+          .addData("leasedConnections", stats.getLeased())
+          .addData("availableConnections", stats.getAvailable())
+          .addData("pendingConnections", stats.getPending())
+          .addData("maxConnections", stats.getMax())
+          .addData("references", shared.references));
+    }
+    return metrics;
+  }
+
+  /**
+   * Release the connection manager. It will be shut down once it has been released by all users.
+   */
+  void release() {
+    synchronized (SharedConnectionManager.class) {
+      if (references <= 0 || --references > 0) return;
+      managers.remove(key);
+      eviction.cancel(false);
+      if (managers.isEmpty()) {
+        evictor.shutdown();
+        evictor = null;
+      }
+    }
+
+    LOGGER.debug("Shutting down connection manager for proxy configuration '%s'.", key);
+    manager.close(CloseMode.GRACEFUL);
+  }
+
+  PoolingHttpClientConnectionManager getManager() {
+    return manager;
+  }
+
+  /**
+   * Create the key of a shared connection manager or client. Only non-default connect timeouts are part of the key,
+   * such that the key equals the proxy configuration in the common case.
+   *
+   * @param proxy    Proxy configuration
+   * @param timeouts Timeouts providing the connect timeout
+   * @return Key
+   */
+  static String createKey(String proxy, RequestTimeouts timeouts) {
+    if (timeouts.getConnectTimeout() == RequestTimeouts.DEFAULTS.getConnectTimeout()) return proxy;
+    return String.format("%s(connectTimeout=%d)", proxy, timeouts.getConnectTimeout());
+  }
+
+  private static SharedConnectionManager create(String key, RequestTimeouts timeouts) {
+    LOGGER.debug("Creating connection manager for proxy configuration '%s'.", key);
+
+    PoolingHttpClientConnectionManager manager = PoolingHttpClientConnectionManagerBuilder.create()
+        // Use the same TLS configuration for all connections, this allows resuming cached TLS sessions.
+        .useSystemProperties()
+        .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+        .setMaxConnPerRoute(MAX_CONNECTIONS_PER_ROUTE)
+        .setMaxConnTotal(MAX_CONNECTIONS_TOTAL)
+        .setDefaultConnectionConfig(timeouts.customConnectionConfig()
+            .setTimeToLive(CONNECTION_TIME_TO_LIVE)
+            .setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY)
+            .build())
+        .build();
+
+    if (evictor == null) {
+      evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "http-connection-evictor");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+
+    ScheduledFuture<?> eviction = evictor.scheduleWithFixedDelay(() -> {
+      manager.closeExpired();
+      manager.closeIdle(MAXIMUM_IDLE_TIME);
+    }, EVICTION_INTERVAL_SECONDS, EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+    return new SharedConnectionManager(key, manager, eviction);
+  }
+}
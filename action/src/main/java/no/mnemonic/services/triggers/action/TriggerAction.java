@@ -32,6 +32,10 @@ import java.util.Map;
  * </li>
  * </ol>
  * <p>
+ * An initialized instance might be reused for many events, i.e. {@link TriggerAction#trigger(Map)} can be called many
+ * times before the instance is closed, e.g. when the TriggerActionDefinition changes or the worker shuts down. An instance
+ * is never used by multiple threads at the same time, but different calls might happen from different threads.
+ * <p>
  * Every action specifies its own initialization and trigger parameters (key/value pairs). Keys and values are provided
  * as strings and the interpretation of values is implementation-specific as well (single values, comma-separated list
  * of values, ...). An action should throw a {@link ParameterException} if required parameters are missing or parameters
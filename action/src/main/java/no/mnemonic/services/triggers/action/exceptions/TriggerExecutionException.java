@@ -2,18 +2,23 @@ package no.mnemonic.services.triggers.action.exceptions;
 
 /**
  * Exception thrown when an action could not be executed.
+ * <p>
+ * An action can mark a failure as retryable if it's likely transient (e.g. a temporarily unavailable endpoint), in
+ * which case the execution is retried according to the retry policy of the action's definition.
  */
 public class TriggerExecutionException extends Exception {
 
   private static final long serialVersionUID = -7505361981173157903L;
 
+  private final boolean retryable;
+
   /**
    * Create a TriggerExecutionException with a message.
    *
    * @param message Exception message
    */
   public TriggerExecutionException(String message) {
-    super(message);
+    this(message, null, false);
   }
 
   /**
@@ -23,6 +28,27 @@ public class TriggerExecutionException extends Exception {
    * @param cause   Exception cause
    */
   public TriggerExecutionException(String message, Throwable cause) {
+    this(message, cause, false);
+  }
+
+  /**
+   * Create a TriggerExecutionException with a message, a cause and whether the execution can be retried.
+   *
+   * @param message   Exception message
+   * @param cause     Exception cause
+   * @param retryable True if the execution failed due to a transient failure and can be retried
+   */
+  public TriggerExecutionException(String message, Throwable cause, boolean retryable) {
     super(message, cause);
+    this.retryable = retryable;
+  }
+
+  /**
+   * Returns whether the execution failed due to a transient failure and can be retried.
+   *
+   * @return True if the execution can be retried
+   */
+  public boolean isRetryable() {
+    return retryable;
   }
 }
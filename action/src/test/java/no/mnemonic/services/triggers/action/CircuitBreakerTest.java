@@ -0,0 +1,126 @@
+package no.mnemonic.services.triggers.action;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerTest {
+
+  private final AtomicLong clock = new AtomicLong();
+  private final CircuitBreaker breaker = new CircuitBreaker("http://example.org", 3, 1000, clock::get);
+
+  @AfterEach
+  public void cleanUp() {
+    CircuitBreaker.resetAll();
+  }
+
+  @Test
+  public void testClosedBreakerPermitsRequests() {
+    assertTrue(breaker.tryAcquire());
+    breaker.onFailure();
+    breaker.onFailure();
+    assertTrue(breaker.tryAcquire());
+    assertEquals(CircuitBreaker.State.Closed, breaker.getState());
+  }
+
+  @Test
+  public void testSuccessResetsConsecutiveFailures() {
+    breaker.onFailure();
+    breaker.onFailure();
+    breaker.onSuccess();
+    breaker.onFailure();
+    breaker.onFailure();
+    assertEquals(CircuitBreaker.State.Closed, breaker.getState());
+  }
+
+  @Test
+  public void testBreakerOpensAfterConsecutiveFailures() {
+    failRepeatedly(3);
+    assertEquals(CircuitBreaker.State.Open, breaker.getState());
+    assertFalse(breaker.tryAcquire());
+  }
+
+  @Test
+  public void testOpenBreakerPermitsSingleProbeAfterOpenPeriod() {
+    failRepeatedly(3);
+    clock.addAndGet(999);
+    assertFalse(breaker.tryAcquire());
+
+    clock.addAndGet(1);
+    assertTrue(breaker.tryAcquire());
+    assertEquals(CircuitBreaker.State.HalfOpen, breaker.getState());
+    // Only one probe at a time.
+    assertFalse(breaker.tryAcquire());
+  }
+
+  @Test
+  public void testSuccessfulProbeClosesBreaker() {
+    failRepeatedly(3);
+    clock.addAndGet(1000);
+    assertTrue(breaker.tryAcquire());
+    breaker.onSuccess();
+    assertEquals(CircuitBreaker.State.Closed, breaker.getState());
+    assertTrue(breaker.tryAcquire());
+  }
+
+  @Test
+  public void testFailedProbeReopensBreaker() {
+    failRepeatedly(3);
+    clock.addAndGet(1000);
+    assertTrue(breaker.tryAcquire());
+    breaker.onFailure();
+    assertEquals(CircuitBreaker.State.Open, breaker.getState());
+    assertFalse(breaker.tryAcquire());
+
+    clock.addAndGet(1000);
+    assertTrue(breaker.tryAcquire());
+  }
+
+  @Test
+  public void testForEndpointReturnsSharedBreaker() {
+    assertSame(CircuitBreaker.forEndpoint("http://example.org"), CircuitBreaker.forEndpoint("http://example.org"));
+    assertNotSame(CircuitBreaker.forEndpoint("http://example.org"), CircuitBreaker.forEndpoint("http://example.com"));
+  }
+
+  @Test
+  public void testEvictIdleRemovesClosedBreakersOnly() {
+    CircuitBreaker idle = CircuitBreaker.forEndpoint("http://idle.example.org");
+    CircuitBreaker failing = CircuitBreaker.forEndpoint("http://failing.example.org");
+    failing.onFailure();
+    CircuitBreaker open = CircuitBreaker.forEndpoint("http://open.example.org");
+    for (int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+      open.onFailure();
+    }
+
+    CircuitBreaker.evictIdle(System.currentTimeMillis() + CircuitBreaker.IDLE_EXPIRY_MILLIS + 1);
+    assertEquals(2, CircuitBreaker.size());
+    assertNotSame(idle, CircuitBreaker.forEndpoint("http://idle.example.org"));
+    assertSame(failing, CircuitBreaker.forEndpoint("http://failing.example.org"));
+    assertSame(open, CircuitBreaker.forEndpoint("http://open.example.org"));
+  }
+
+  @Test
+  public void testEvictIdleKeepsRecentlyUsedBreakers() {
+    CircuitBreaker breaker = CircuitBreaker.forEndpoint("http://example.org");
+    CircuitBreaker.evictIdle(System.currentTimeMillis());
+    assertSame(breaker, CircuitBreaker.forEndpoint("http://example.org"));
+  }
+
+  @Test
+  public void testRegistryIsBoundedBySize() {
+    for (int i = 0; i <= CircuitBreaker.MAXIMUM_BREAKERS + 10; i++) {
+      CircuitBreaker.forEndpoint("http://host" + i + ".example.org");
+    }
+    assertTrue(CircuitBreaker.size() <= CircuitBreaker.MAXIMUM_BREAKERS);
+  }
+
+  private void failRepeatedly(int times) {
+    for (int i = 0; i < times; i++) {
+      assertTrue(breaker.tryAcquire());
+      breaker.onFailure();
+    }
+  }
+}
@@ -1,19 +1,23 @@
 package no.mnemonic.services.triggers.action;
 
+import com.github.tomakehurst.wiremock.http.Fault;
 import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import no.mnemonic.commons.metrics.Metrics;
 import no.mnemonic.services.triggers.action.exceptions.ParameterException;
 import no.mnemonic.services.triggers.action.exceptions.TriggerExecutionException;
 import org.apache.hc.core5.http.ContentType;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class HttpClientActionTest {
 
@@ -26,6 +30,14 @@ public class HttpClientActionTest {
       .options(options().dynamicPort())
       .build();
 
+  @AfterEach
+  public void cleanUp() {
+    // Don't let failures of one test open circuit breakers for other tests.
+    CircuitBreaker.resetAll();
+  }
+
+  private static final Map<String, String> ASYNC = Map.of("async", "true");
+
   @Test
   public void testInitWithInvalidProxySetting() {
     Map<String, String> initParameters = new HashMap<>() {{
@@ -180,6 +192,405 @@ public class HttpClientActionTest {
     server.verify(getRequestedFor(urlEqualTo("/do")));
   }
 
+  @Test
+  public void testCloseWithoutCallingInitFirst() {
+    assertDoesNotThrow(() -> new HttpClientAction().close());
+  }
+
+  @Test
+  public void testActionsShareConnectionPool() throws Exception {
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/do", server.getPort()));
+    }};
+
+    server.stubFor(get("/do").willReturn(ok()));
+    try (TriggerAction action1 = new HttpClientAction(); TriggerAction action2 = new HttpClientAction()) {
+      action1.init(null);
+      action2.init(null);
+      action1.trigger(triggerParameters);
+      action2.trigger(triggerParameters);
+
+      Metrics pools = HttpClientAction.getConnectionPoolMetrics();
+      assertEquals(1, pools.getSubMetrics().size());
+      Metrics pool = pools.getSubMetrics("direct");
+      assertEquals(2, pool.getData("references").intValue());
+      assertEquals(0, pool.getData("leasedConnections").intValue());
+      // The connection of the first request was kept alive and reused by the second request.
+      assertEquals(1, pool.getData("availableConnections").intValue());
+    }
+
+    server.verify(2, getRequestedFor(urlEqualTo("/do")));
+    assertTrue(HttpClientAction.getConnectionPoolMetrics().getSubMetrics().isEmpty());
+  }
+
+  @Test
+  public void testActionsWithDifferentProxySettingsUseSeparateConnectionPools() throws Exception {
+    Map<String, String> initParameters = new HashMap<>() {{
+      put("proxy", String.format("http://localhost:%d", proxy.getPort()));
+    }};
+
+    try (TriggerAction action1 = new HttpClientAction(); TriggerAction action2 = new HttpClientAction()) {
+      action1.init(null);
+      action2.init(initParameters);
+
+      Metrics pools = HttpClientAction.getConnectionPoolMetrics();
+      assertEquals(2, pools.getSubMetrics().size());
+      assertEquals(1, pools.getSubMetrics("direct").getData("references").intValue());
+      assertEquals(1, pools.getSubMetrics(String.format("http://localhost:%d", proxy.getPort())).getData("references").intValue());
+    }
+
+    assertTrue(HttpClientAction.getConnectionPoolMetrics().getSubMetrics().isEmpty());
+  }
+
+  @Test
+  public void testActionsWithDifferentConnectTimeoutsUseSeparateConnectionPools() throws Exception {
+    Map<String, String> initParameters = new HashMap<>() {{
+      put("connectTimeoutMillis", "5000");
+    }};
+
+    try (TriggerAction action1 = new HttpClientAction(); TriggerAction action2 = new HttpClientAction()) {
+      action1.init(null);
+      action2.init(initParameters);
+
+      Metrics pools = HttpClientAction.getConnectionPoolMetrics();
+      assertEquals(2, pools.getSubMetrics().size());
+      assertEquals(1, pools.getSubMetrics("direct").getData("references").intValue());
+      assertEquals(1, pools.getSubMetrics("direct(connectTimeout=5000)").getData("references").intValue());
+    }
+
+    assertTrue(HttpClientAction.getConnectionPoolMetrics().getSubMetrics().isEmpty());
+  }
+
+  @Test
+  public void testInitWithInvalidAsyncSetting() {
+    Map<String, String> initParameters = new HashMap<>() {{
+      put("async", "maybe");
+    }};
+
+    ParameterException ex = assertThrows(ParameterException.class, () -> new HttpClientAction().init(initParameters));
+    assertEquals("async", ex.getParameter());
+  }
+
+  @Test
+  public void testInitWithInvalidMaxInFlightRequestsSetting() {
+    Map<String, String> initParameters = new HashMap<>() {{
+      put("async", "true");
+      put("maxInFlightRequests", "0");
+    }};
+
+    ParameterException ex = assertThrows(ParameterException.class, () -> new HttpClientAction().init(initParameters));
+    assertEquals("maxInFlightRequests", ex.getParameter());
+  }
+
+  @Test
+  public void testAsyncTriggerWithInvalidUrlSetting() {
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", "123:invalid-url");
+    }};
+
+    ParameterException ex = assertThrows(ParameterException.class, () -> triggerAction(ASYNC, triggerParameters));
+    assertEquals("url", ex.getParameter());
+  }
+
+  @Test
+  public void testAsyncActionWithJsonBody() throws Exception {
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/do", server.getPort()));
+      put("method", "POST");
+      put("body", "{ \"a\" : \"b\" }");
+      put("contentType", ContentType.APPLICATION_JSON.toString());
+      put("header@X-Custom-Header", "42");
+    }};
+
+    server.stubFor(post("/do").willReturn(ok()));
+    // Closing the action waits for the request to complete.
+    triggerAction(ASYNC, triggerParameters);
+    server.verify(postRequestedFor(urlEqualTo("/do"))
+        .withHeader("Content-Type", containing("application/json"))
+        .withHeader("X-Custom-Header", equalTo("42"))
+        .withRequestBody(equalToJson("{ \"a\" : \"b\" }"))
+    );
+  }
+
+  @Test
+  public void testAsyncActionWithFailedResponseDoesNotThrow() throws Exception {
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/do", server.getPort()));
+    }};
+
+    server.stubFor(get("/do").willReturn(unauthorized()));
+    assertDoesNotThrow(() -> triggerAction(ASYNC, triggerParameters));
+    server.verify(getRequestedFor(urlEqualTo("/do")));
+  }
+
+  @Test
+  public void testTriggerAsyncCompletesWhenRequestSucceeds() throws Exception {
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/do", server.getPort()));
+    }};
+
+    server.stubFor(get("/do").willReturn(ok()));
+    try (HttpClientAction action = new HttpClientAction()) {
+      action.init(ASYNC);
+      assertDoesNotThrow(() -> action.triggerAsync(triggerParameters).toCompletableFuture().get(5, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testTriggerAsyncReportsRetryableStatusCode() throws Exception {
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/do", server.getPort()));
+    }};
+
+    server.stubFor(get("/do").willReturn(serviceUnavailable()));
+    try (HttpClientAction action = new HttpClientAction()) {
+      action.init(ASYNC);
+      ExecutionException ex = assertThrows(ExecutionException.class, () -> action.triggerAsync(triggerParameters).toCompletableFuture().get(5, TimeUnit.SECONDS));
+      assertTrue(ex.getCause() instanceof TriggerExecutionException);
+      assertTrue(((TriggerExecutionException) ex.getCause()).isRetryable());
+    }
+  }
+
+  @Test
+  public void testTriggerAsyncReportsNonRetryableStatusCode() throws Exception {
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/do", server.getPort()));
+    }};
+
+    server.stubFor(get("/do").willReturn(unauthorized()));
+    try (HttpClientAction action = new HttpClientAction()) {
+      action.init(ASYNC);
+      ExecutionException ex = assertThrows(ExecutionException.class, () -> action.triggerAsync(triggerParameters).toCompletableFuture().get(5, TimeUnit.SECONDS));
+      assertFalse(((TriggerExecutionException) ex.getCause()).isRetryable());
+    }
+  }
+
+  @Test
+  public void testTriggerAsyncInSynchronousModeReturnsCompletedStage() throws Exception {
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/do", server.getPort()));
+    }};
+
+    server.stubFor(get("/do").willReturn(ok()));
+    try (HttpClientAction action = new HttpClientAction()) {
+      action.init(new HashMap<>());
+      assertTrue(action.triggerAsync(triggerParameters).toCompletableFuture().isDone());
+    }
+    server.verify(getRequestedFor(urlEqualTo("/do")));
+  }
+
+  @Test
+  public void testAsyncActionReturnsBeforeRequestCompletes() throws Exception {
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/slow", server.getPort()));
+    }};
+
+    server.stubFor(get("/slow").willReturn(ok().withFixedDelay(500)));
+    try (TriggerAction action = new HttpClientAction()) {
+      action.init(ASYNC);
+      long start = System.nanoTime();
+      action.trigger(triggerParameters);
+      assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+
+      Metrics pool = HttpClientAction.getConnectionPoolMetrics().getSubMetrics("async@direct");
+      assertEquals(1, pool.getData("references").intValue());
+    }
+
+    server.verify(getRequestedFor(urlEqualTo("/slow")));
+    assertTrue(HttpClientAction.getConnectionPoolMetrics().getSubMetrics().isEmpty());
+  }
+
+  @Test
+  public void testAsyncActionBoundsInFlightRequests() throws Exception {
+    Map<String, String> initParameters = new HashMap<>() {{
+      put("async", "true");
+      put("maxInFlightRequests", "1");
+    }};
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/slow", server.getPort()));
+    }};
+
+    server.stubFor(get("/slow").willReturn(ok().withFixedDelay(500)));
+    try (TriggerAction action = new HttpClientAction()) {
+      action.init(initParameters);
+      long start = System.nanoTime();
+      action.trigger(triggerParameters);
+      // The second request must wait until the first request has completed.
+      action.trigger(triggerParameters);
+      assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 500);
+    }
+
+    server.verify(2, getRequestedFor(urlEqualTo("/slow")));
+  }
+
+  @Test
+  public void testInitWithInvalidTimeoutSetting() {
+    Map<String, String> initParameters = new HashMap<>() {{
+      put("socketTimeoutMillis", "-1");
+    }};
+
+    ParameterException ex = assertThrows(ParameterException.class, () -> new HttpClientAction().init(initParameters));
+    assertEquals("socketTimeoutMillis", ex.getParameter());
+  }
+
+  @Test
+  public void testTriggerWithInvalidTimeoutSetting() {
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/do", server.getPort()));
+      put("deadlineMillis", "soon");
+    }};
+
+    ParameterException ex = assertThrows(ParameterException.class, () -> triggerAction(null, triggerParameters));
+    assertEquals("deadlineMillis", ex.getParameter());
+  }
+
+  @Test
+  public void testActionWithSocketTimeout() {
+    Map<String, String> initParameters = new HashMap<>() {{
+      put("socketTimeoutMillis", "200");
+    }};
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/slow", server.getPort()));
+    }};
+
+    server.stubFor(get("/slow").willReturn(ok().withFixedDelay(2000)));
+    assertTimeoutWithin(1500, () -> assertThrows(TriggerExecutionException.class, () -> triggerAction(initParameters, triggerParameters)));
+  }
+
+  @Test
+  public void testActionWithDeadlineOverriddenInTriggerParameters() {
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/slow", server.getPort()));
+      put("deadlineMillis", "200");
+    }};
+
+    server.stubFor(get("/slow").willReturn(ok().withFixedDelay(2000)));
+    assertTimeoutWithin(1500, () -> assertThrows(TriggerExecutionException.class, () -> triggerAction(null, triggerParameters)));
+  }
+
+  @Test
+  public void testAsyncActionWithDeadline() {
+    Map<String, String> initParameters = new HashMap<>() {{
+      put("async", "true");
+      put("deadlineMillis", "200");
+    }};
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/slow", server.getPort()));
+    }};
+
+    server.stubFor(get("/slow").willReturn(ok().withFixedDelay(2000)));
+    // Closing the action waits for in-flight requests, thus, the request must be cancelled by its deadline.
+    assertTimeoutWithin(1500, () -> assertDoesNotThrow(() -> triggerAction(initParameters, triggerParameters)));
+  }
+
+  @Test
+  public void testInitWithInvalidRetryableStatusCodesSetting() {
+    Map<String, String> initParameters = new HashMap<>() {{
+      put("retryableStatusCodes", "500,abc");
+    }};
+
+    ParameterException ex = assertThrows(ParameterException.class, () -> new HttpClientAction().init(initParameters));
+    assertEquals("retryableStatusCodes", ex.getParameter());
+  }
+
+  @Test
+  public void testActionWithRetryableStatusCode() {
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/do", server.getPort()));
+    }};
+
+    server.stubFor(get("/do").willReturn(serviceUnavailable()));
+    TriggerExecutionException ex = assertThrows(TriggerExecutionException.class, () -> triggerAction(null, triggerParameters));
+    assertTrue(ex.isRetryable());
+  }
+
+  @Test
+  public void testActionWithConfiguredRetryableStatusCodes() {
+    Map<String, String> initParameters = new HashMap<>() {{
+      put("retryableStatusCodes", "401");
+    }};
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/do", server.getPort()));
+    }};
+
+    server.stubFor(get("/do").willReturn(unauthorized()));
+    TriggerExecutionException ex = assertThrows(TriggerExecutionException.class, () -> triggerAction(initParameters, triggerParameters));
+    assertTrue(ex.isRetryable());
+  }
+
+  @Test
+  public void testActionWithNonRetryableStatusCode() {
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/do", server.getPort()));
+    }};
+
+    server.stubFor(get("/do").willReturn(unauthorized()));
+    TriggerExecutionException ex = assertThrows(TriggerExecutionException.class, () -> triggerAction(null, triggerParameters));
+    assertFalse(ex.isRetryable());
+  }
+
+  @Test
+  public void testActionWithConnectionFailureIsRetryable() {
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/do", server.getPort()));
+    }};
+
+    server.stubFor(get("/do").willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+    TriggerExecutionException ex = assertThrows(TriggerExecutionException.class, () -> triggerAction(null, triggerParameters));
+    assertTrue(ex.isRetryable());
+  }
+
+  @Test
+  public void testActionWithOpenCircuitBreakerFailsFast() throws Exception {
+    String endpoint = String.format("http://localhost:%d", server.getPort());
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", endpoint + "/unavailable");
+    }};
+
+    server.stubFor(get("/unavailable").willReturn(serviceUnavailable()));
+    try (TriggerAction action = new HttpClientAction()) {
+      action.init(null);
+      for (int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+        assertThrows(TriggerExecutionException.class, () -> action.trigger(triggerParameters));
+      }
+
+      TriggerExecutionException ex = assertThrows(TriggerExecutionException.class, () -> action.trigger(triggerParameters));
+      assertTrue(ex.isRetryable());
+      assertTrue(ex.getMessage().contains("Circuit breaker"));
+    }
+
+    server.verify(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD, getRequestedFor(urlEqualTo("/unavailable")));
+    Metrics breaker = HttpClientAction.getCircuitBreakerMetrics().getSubMetrics(endpoint);
+    assertEquals(1, breaker.getData("open").intValue());
+    assertEquals(1, breaker.getData("rejectedRequests").intValue());
+  }
+
+  @Test
+  public void testActionWithDisabledCircuitBreaker() throws Exception {
+    Map<String, String> initParameters = new HashMap<>() {{
+      put("circuitBreaker", "false");
+    }};
+    Map<String, String> triggerParameters = new HashMap<>() {{
+      put("url", String.format("http://localhost:%d/unavailable", server.getPort()));
+    }};
+
+    server.stubFor(get("/unavailable").willReturn(serviceUnavailable()));
+    try (TriggerAction action = new HttpClientAction()) {
+      action.init(initParameters);
+      for (int i = 0; i <= CircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+        assertThrows(TriggerExecutionException.class, () -> action.trigger(triggerParameters));
+      }
+    }
+
+    server.verify(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD + 1, getRequestedFor(urlEqualTo("/unavailable")));
+  }
+
+  private void assertTimeoutWithin(long millis, Runnable runnable) {
+    long start = System.nanoTime();
+    runnable.run();
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < millis);
+  }
+
   private void triggerAction(Map<String, String> initParameters, Map<String, String> triggerParameters) throws Exception {
     try (TriggerAction action = HttpClientAction.class.getDeclaredConstructor().newInstance()) {
       action.init(initParameters);
@@ -10,6 +10,10 @@ public enum AccessMode {
   }
 
   public boolean isLessRestricted(String mode) {
-    return this.order < valueOf(mode).order;
+    return isLessRestricted(valueOf(mode));
+  }
+
+  public boolean isLessRestricted(AccessMode mode) {
+    return this.order < mode.order;
   }
 }
@@ -0,0 +1,93 @@
+package no.mnemonic.services.triggers.api.model.v1;
+
+/**
+ * Policy defining how often and how fast failed executions of a TriggerAction are retried. Executions are only
+ * retried if the TriggerAction reports the failure as retryable.
+ * <p>
+ * The n-th retry is delayed by initialBackoffMillis * backoffMultiplier^(n-1), capped at maxBackoffMillis. A random
+ * jitter of up to half of the delay is subtracted such that retries of many failed executions are spread out.
+ */
+public class RetryPolicy {
+
+  private static final int DEFAULT_MAX_ATTEMPTS = 1;
+  private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1000;
+  private static final long DEFAULT_MAX_BACKOFF_MILLIS = 60_000;
+  private static final double DEFAULT_BACKOFF_MULTIPLIER = 2.0;
+
+  private final int maxAttempts;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final double backoffMultiplier;
+
+  private RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis, double backoffMultiplier) {
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+    this.backoffMultiplier = backoffMultiplier;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public long getInitialBackoffMillis() {
+    return initialBackoffMillis;
+  }
+
+  public long getMaxBackoffMillis() {
+    return maxBackoffMillis;
+  }
+
+  public double getBackoffMultiplier() {
+    return backoffMultiplier;
+  }
+
+  /**
+   * Calculate the delay before the next attempt without jitter.
+   *
+   * @param attempt Number of the attempt which has failed (starting at 1)
+   * @return Delay in milliseconds
+   */
+  public long calculateBackoffMillis(int attempt) {
+    double backoff = initialBackoffMillis * Math.pow(backoffMultiplier, Math.max(0, attempt - 1));
+    return (long) Math.min(backoff, maxBackoffMillis);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+    private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+    private double backoffMultiplier = DEFAULT_BACKOFF_MULTIPLIER;
+
+    private Builder() {
+    }
+
+    public RetryPolicy build() {
+      return new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, backoffMultiplier);
+    }
+
+    public Builder setMaxAttempts(int maxAttempts) {
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    public Builder setInitialBackoffMillis(long initialBackoffMillis) {
+      this.initialBackoffMillis = initialBackoffMillis;
+      return this;
+    }
+
+    public Builder setMaxBackoffMillis(long maxBackoffMillis) {
+      this.maxBackoffMillis = maxBackoffMillis;
+      return this;
+    }
+
+    public Builder setBackoffMultiplier(double backoffMultiplier) {
+      this.backoffMultiplier = backoffMultiplier;
+      return this;
+    }
+  }
+}
@@ -16,10 +16,11 @@ public class TriggerActionDefinition {
   private final FunctionInfo requiredPermission;
   private final Map<String, String> initParameters;
   private final Map<String, ParameterDefinition> triggerParameters;
+  private final RetryPolicy retryPolicy;
 
   private TriggerActionDefinition(UUID id, String name, String description, String triggerActionClass,
                                   FunctionInfo requiredPermission, Map<String, String> initParameters,
-                                  Map<String, ParameterDefinition> triggerParameters) {
+                                  Map<String, ParameterDefinition> triggerParameters, RetryPolicy retryPolicy) {
     this.id = id;
     this.name = name;
     this.description = description;
@@ -27,6 +28,7 @@ public class TriggerActionDefinition {
     this.requiredPermission = requiredPermission;
     this.initParameters = ObjectUtils.ifNotNull(initParameters, Collections::unmodifiableMap);
     this.triggerParameters = ObjectUtils.ifNotNull(triggerParameters, Collections::unmodifiableMap);
+    this.retryPolicy = retryPolicy;
   }
 
   public UUID getId() {
@@ -57,6 +59,10 @@ public class TriggerActionDefinition {
     return triggerParameters;
   }
 
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
   public Info toInfo() {
     return new Info(id, name);
   }
@@ -73,12 +79,14 @@ public class TriggerActionDefinition {
     private FunctionInfo requiredPermission;
     private Map<String, String> initParameters;
     private Map<String, ParameterDefinition> triggerParameters;
+    private RetryPolicy retryPolicy;
 
     private Builder() {
     }
 
     public TriggerActionDefinition build() {
-      return new TriggerActionDefinition(id, name, description, triggerActionClass, requiredPermission, initParameters, triggerParameters);
+      return new TriggerActionDefinition(id, name, description, triggerActionClass, requiredPermission, initParameters,
+          triggerParameters, retryPolicy);
     }
 
     public Builder setId(UUID id) {
@@ -125,6 +133,11 @@ public class TriggerActionDefinition {
       this.triggerParameters = MapUtils.addToMap(this.triggerParameters, parameterName, parameterDefinition);
       return this;
     }
+
+    public Builder setRetryPolicy(RetryPolicy retryPolicy) {
+      this.retryPolicy = retryPolicy;
+      return this;
+    }
   }
 
   public class Info {
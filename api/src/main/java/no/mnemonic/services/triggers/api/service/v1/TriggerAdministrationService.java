@@ -12,6 +12,20 @@ import no.mnemonic.services.triggers.api.request.v1.*;
  */
 public interface TriggerAdministrationService {
 
+  /**
+   * Return a consistent view of all TriggerActionDefinitions, TriggerEventDefinitions and TriggerRules. All requests
+   * against the returned instance are answered from the same version of the configuration, even if the configuration
+   * is changed in the meantime. Callers which need to issue multiple requests belonging together should fetch a
+   * snapshot once and send all requests to the snapshot.
+   * <p>
+   * Implementations which cannot provide such a view return themselves (the default).
+   *
+   * @return Consistent view of the service.
+   */
+  default TriggerAdministrationService getSnapshot() {
+    return this;
+  }
+
   /**
    * Fetch a single TriggerActionDefinition by name.
    *
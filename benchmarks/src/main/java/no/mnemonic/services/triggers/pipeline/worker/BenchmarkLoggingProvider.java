@@ -0,0 +1,130 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.logging.Logger;
+import no.mnemonic.commons.logging.LoggingContext;
+import no.mnemonic.commons.logging.LoggingProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * LoggingProvider which only prints warnings and errors. The default console logger also prints debug messages which
+ * would dominate the measurements. Registered in META-INF/no.mnemonic.commons.logging.Logging.properties.
+ */
+public class BenchmarkLoggingProvider implements LoggingProvider {
+
+  private static final ThreadLocal<Map<String, String>> CONTEXT = ThreadLocal.withInitial(HashMap::new);
+
+  @Override
+  public Logger getLogger(String name) {
+    return new BenchmarkLogger(name);
+  }
+
+  @Override
+  public LoggingContext getLoggingContext() {
+    return new LoggingContext() {
+      @Override
+      public void clear() {
+        CONTEXT.get().clear();
+      }
+
+      @Override
+      public Map<String, String> getAll() {
+        return new HashMap<>(CONTEXT.get());
+      }
+
+      @Override
+      public boolean containsKey(String key) {
+        return CONTEXT.get().containsKey(key);
+      }
+
+      @Override
+      public String get(String key) {
+        return CONTEXT.get().get(key);
+      }
+
+      @Override
+      public void put(String key, String value) {
+        CONTEXT.get().put(key, value);
+      }
+
+      @Override
+      public void remove(String key) {
+        CONTEXT.get().remove(key);
+      }
+    };
+  }
+
+  private static class BenchmarkLogger implements Logger {
+    private final String name;
+
+    private BenchmarkLogger(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void fatal(String formattedMessage, Object... args) {
+      print("FATAL", null, formattedMessage, args);
+    }
+
+    @Override
+    public void error(String formattedMessage, Object... args) {
+      print("ERROR", null, formattedMessage, args);
+    }
+
+    @Override
+    public void warning(String formattedMessage, Object... args) {
+      print("WARNING", null, formattedMessage, args);
+    }
+
+    @Override
+    public void info(String formattedMessage, Object... args) {
+      // Ignored.
+    }
+
+    @Override
+    public void debug(String formattedMessage, Object... args) {
+      // Ignored.
+    }
+
+    @Override
+    public void fatal(Throwable ex, String formattedMessage, Object... args) {
+      print("FATAL", ex, formattedMessage, args);
+    }
+
+    @Override
+    public void error(Throwable ex, String formattedMessage, Object... args) {
+      print("ERROR", ex, formattedMessage, args);
+    }
+
+    @Override
+    public void warning(Throwable ex, String formattedMessage, Object... args) {
+      print("WARNING", ex, formattedMessage, args);
+    }
+
+    @Override
+    public void info(Throwable ex, String formattedMessage, Object... args) {
+      // Ignored.
+    }
+
+    @Override
+    public void debug(Throwable ex, String formattedMessage, Object... args) {
+      // Ignored.
+    }
+
+    @Override
+    public boolean isDebug() {
+      return false;
+    }
+
+    @Override
+    public boolean isInfo() {
+      return false;
+    }
+
+    private void print(String level, Throwable ex, String formattedMessage, Object... args) {
+      System.err.printf("%s %s: %s%n", level, name, String.format(formattedMessage, args));
+      if (ex != null) ex.printStackTrace();
+    }
+  }
+}
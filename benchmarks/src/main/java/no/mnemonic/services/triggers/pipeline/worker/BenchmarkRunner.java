@@ -0,0 +1,25 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar. Accepts the same arguments as the JMH command line (e.g. a benchmark regex or
+ * '-p numberOfRules=1000'), but always enables the GC profiler in order to report bytes allocated per operation.
+ * <p>
+ * Usage: mvn -Pbenchmarks package &amp;&amp; java -jar benchmarks/target/benchmarks.jar [JMH options]
+ */
+public class BenchmarkRunner {
+
+  public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+    new Runner(new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .addProfiler(GCProfiler.class)
+        .build())
+        .run();
+  }
+}
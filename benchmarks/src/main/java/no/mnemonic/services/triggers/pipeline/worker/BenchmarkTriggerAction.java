@@ -0,0 +1,24 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.services.triggers.action.TriggerAction;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TriggerAction which only counts its invocations in order to measure the cost of the engine instead of the action.
+ */
+public class BenchmarkTriggerAction implements TriggerAction {
+
+  static final LongAdder INVOCATIONS = new LongAdder();
+
+  @Override
+  public void init(Map<String, String> initParameters) {
+    // Nothing to initialize.
+  }
+
+  @Override
+  public void trigger(Map<String, String> triggerParameters) {
+    INVOCATIONS.increment();
+  }
+}
@@ -0,0 +1,61 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.services.triggers.pipeline.api.AccessMode;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Immutable TriggerEvent used by the benchmarks.
+ */
+class BenchmarkTriggerEvent implements TriggerEvent {
+
+  private final UUID id = UUID.randomUUID();
+  private final long timestamp = System.currentTimeMillis();
+  private final Map<String, ?> contextParameters;
+
+  BenchmarkTriggerEvent(Map<String, ?> contextParameters) {
+    this.contextParameters = contextParameters;
+  }
+
+  @Override
+  public UUID getId() {
+    return id;
+  }
+
+  @Override
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  @Override
+  public String getService() {
+    return SyntheticConfiguration.SERVICE;
+  }
+
+  @Override
+  public String getEvent() {
+    return SyntheticConfiguration.EVENT;
+  }
+
+  @Override
+  public UUID getOrganization() {
+    return SyntheticConfiguration.MATCHING_ORGANIZATION;
+  }
+
+  @Override
+  public AccessMode getAccessMode() {
+    return AccessMode.RoleBased;
+  }
+
+  @Override
+  public String getScope() {
+    return "scope";
+  }
+
+  @Override
+  public Map<String, ?> getContextParameters() {
+    return contextParameters;
+  }
+}
@@ -0,0 +1,77 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.services.triggers.api.service.v1.TriggerAdministrationService;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link RuleEvaluationEngine#evaluate(TriggerEvent)} for one event evaluated against a
+ * synthetic set of rules. Run together with the GC profiler to also get the allocation rate per evaluated event.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuleEvaluationEngineBenchmark {
+
+  private static final Map<String, String> EXPRESSIONS = Map.of(
+      "simple", "value == 42",
+      "complex", "value > 10 && value < 100 && name =~ ['alpha', 'beta', 'gamma'] && size(tags) > 1 && !empty(name)"
+  );
+
+  @Param({"10", "1000", "10000", "100000"})
+  private int numberOfRules;
+
+  @Param({"simple", "complex"})
+  private String expression;
+
+  @Param({"4", "64"})
+  private int contextSize;
+
+  @Param({"0.0", "0.01", "1.0"})
+  private double matchRatio;
+
+  private RuleEvaluationEngine engine;
+  private TriggerEvent event;
+
+  @Setup
+  public void setUp() {
+    SyntheticConfiguration configuration = new SyntheticConfiguration(numberOfRules, EXPRESSIONS.get(expression), matchRatio);
+    // The engine only compiles rules up front for snapshots which are different from the service itself.
+    TriggerAdministrationService service = new TriggerAdministrationService() {
+      @Override
+      public TriggerAdministrationService getSnapshot() {
+        return configuration;
+      }
+    };
+    engine = new RuleEvaluationEngine(service);
+    event = new BenchmarkTriggerEvent(createContextParameters(contextSize));
+
+    // Compile all rules before measuring.
+    engine.evaluate(event);
+  }
+
+  @Benchmark
+  public void evaluate() {
+    engine.evaluate(event);
+  }
+
+  private static Map<String, Object> createContextParameters(int size) {
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put("value", 42);
+    parameters.put("name", "beta");
+    parameters.put("tags", List.of("tag1", "tag2", "tag3"));
+    parameters.put("timestamp", System.currentTimeMillis());
+    for (int i = parameters.size(); i < size; i++) {
+      parameters.put("parameter" + i, "value" + i);
+    }
+    return parameters;
+  }
+}
@@ -0,0 +1,89 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.services.triggers.api.model.v1.*;
+import no.mnemonic.services.triggers.api.request.v1.TriggerActionDefinitionGetByNameRequest;
+import no.mnemonic.services.triggers.api.request.v1.TriggerEventDefinitionGetByServiceEventRequest;
+import no.mnemonic.services.triggers.api.request.v1.TriggerRuleSearchRequest;
+import no.mnemonic.services.triggers.api.service.v1.TriggerAdministrationService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Immutable, in-memory configuration with a synthetic set of TriggerRules which all listen to the same event. It acts
+ * as a configuration snapshot, i.e. it returns the same objects on every request like the real service does.
+ */
+class SyntheticConfiguration implements TriggerAdministrationService {
+
+  static final String SERVICE = "BenchmarkService";
+  static final String EVENT = "BenchmarkEvent";
+  static final UUID MATCHING_ORGANIZATION = UUID.fromString("00000000-0000-0000-0000-000000000001");
+
+  private final TriggerEventDefinition eventDefinition;
+  private final TriggerActionDefinition actionDefinition;
+  private final List<TriggerRule> rules;
+
+  /**
+   * Create a configuration.
+   *
+   * @param numberOfRules Number of generated rules
+   * @param expression    Expression used by all rules
+   * @param matchRatio    Fraction of rules defined for {@link #MATCHING_ORGANIZATION} (between 0 and 1)
+   */
+  SyntheticConfiguration(int numberOfRules, String expression, double matchRatio) {
+    eventDefinition = TriggerEventDefinition.builder()
+        .setId(UUID.randomUUID())
+        .setService(SERVICE)
+        .setName(EVENT)
+        .build();
+    actionDefinition = TriggerActionDefinition.builder()
+        .setId(UUID.randomUUID())
+        .setName("BenchmarkAction")
+        .setTriggerActionClass(BenchmarkTriggerAction.class.getName())
+        .addTriggerParameter("defaultParameter", ParameterDefinition.builder().setDefaultValue("default").build())
+        .build();
+
+    // Use a fixed seed to generate the same configuration for every run.
+    Random random = new Random(42);
+    List<TriggerRule> generated = new ArrayList<>(numberOfRules);
+    for (int i = 0; i < numberOfRules; i++) {
+      UUID organization = random.nextDouble() < matchRatio ? MATCHING_ORGANIZATION : new UUID(random.nextLong(), random.nextLong());
+      generated.add(TriggerRule.builder()
+          .setId(new UUID(0, i))
+          .setService(SERVICE)
+          .addEvent(EVENT)
+          .addOrganization(OrganizationInfo.builder().setId(organization).build())
+          .addOrganization(OrganizationInfo.builder().setId(new UUID(random.nextLong(), random.nextLong())).build())
+          .addScope("scope")
+          .setAccessMode(AccessMode.RoleBased)
+          .setExpression(expression)
+          .setTriggerAction(actionDefinition.toInfo())
+          .addTriggerParameter("message", "Rule " + i + " matched value ${value}")
+          .build());
+    }
+    rules = Collections.unmodifiableList(generated);
+  }
+
+  @Override
+  public TriggerAdministrationService getSnapshot() {
+    return this;
+  }
+
+  @Override
+  public TriggerActionDefinition getTriggerActionDefinition(TriggerActionDefinitionGetByNameRequest request) {
+    return actionDefinition;
+  }
+
+  @Override
+  public TriggerEventDefinition getTriggerEventDefinition(TriggerEventDefinitionGetByServiceEventRequest request) {
+    return eventDefinition;
+  }
+
+  @Override
+  public Iterable<TriggerRule> searchTriggerRules(TriggerRuleSearchRequest request) {
+    return rules;
+  }
+}
@@ -0,0 +1,153 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.component.LifecycleAspect;
+import no.mnemonic.services.triggers.api.service.v1.TriggerAdministrationService;
+import no.mnemonic.services.triggers.pipeline.api.SubmissionException;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEventConsumer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Compares the hand-off overhead of the {@link TriggerEventConsumer} implementations. Every operation submits a burst
+ * of events and waits until all of them have been evaluated, thus, the results include the time from submission until
+ * an event has been processed. The rule set is kept small such that the hand-off dominates the evaluation. The
+ * write-ahead log is stored in a temporary directory, i.e. its results depend on the disk backing that directory.
+ * <p>
+ * Run with '-bm sample' to get the latency distribution instead of the throughput.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TriggerEventConsumerBenchmark {
+
+  private static final int BURST_SIZE = 256;
+
+  @Param({"inMemoryQueue", "ringBufferBusySpin", "ringBufferYielding", "ringBufferBlocking", "writeAheadLog"})
+  private String consumer;
+
+  @Param({"4"})
+  private int numberOfThreads;
+
+  private final AtomicLong evaluatedEvents = new AtomicLong();
+  private TriggerEventConsumer worker;
+  private TriggerEvent event;
+  private long submittedEvents;
+  private Path temporaryDirectory;
+
+  @Setup
+  public void setUp() {
+    SyntheticConfiguration configuration = new SyntheticConfiguration(10, "value == 42", 0.0);
+    TriggerAdministrationService service = new TriggerAdministrationService() {
+      @Override
+      public TriggerAdministrationService getSnapshot() {
+        return configuration;
+      }
+    };
+    RuleEvaluationEngine engine = new RuleEvaluationEngine(service) {
+      @Override
+      void evaluate(TriggerEvent event, Runnable onCompletion) {
+        super.evaluate(event, onCompletion);
+        evaluatedEvents.incrementAndGet();
+      }
+    };
+    worker = createWorker(service, engine);
+    event = new BenchmarkTriggerEvent(Map.of("value", 42));
+
+    // Compile all rules before measuring.
+    engine.evaluate(event);
+    ((LifecycleAspect) worker).startComponent();
+    submittedEvents = evaluatedEvents.get();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    ((LifecycleAspect) worker).stopComponent();
+    if (temporaryDirectory != null) deleteTemporaryDirectory();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BURST_SIZE)
+  public void submitBurst() throws SubmissionException {
+    for (int i = 0; i < BURST_SIZE; i++) {
+      worker.submit(event);
+    }
+    submittedEvents += BURST_SIZE;
+    awaitEvaluation();
+  }
+
+  @Benchmark
+  public void submitSingle() throws SubmissionException {
+    worker.submit(event);
+    submittedEvents++;
+    awaitEvaluation();
+  }
+
+  private void awaitEvaluation() {
+    while (evaluatedEvents.get() < submittedEvents) {
+      Thread.onSpinWait();
+    }
+  }
+
+  private TriggerEventConsumer createWorker(TriggerAdministrationService service, RuleEvaluationEngine engine) {
+    switch (consumer) {
+      case "inMemoryQueue":
+        return new InMemoryQueueWorker(service)
+            .setNumberOfWorkerThreads(numberOfThreads)
+            .setQueueCapacity(BURST_SIZE)
+            .setRuleEvaluationEngine(engine);
+      case "ringBufferBusySpin":
+        return createRingBufferWorker(service, engine, RingBufferWorker.WaitStrategy.BusySpin);
+      case "ringBufferYielding":
+        return createRingBufferWorker(service, engine, RingBufferWorker.WaitStrategy.Yielding);
+      case "ringBufferBlocking":
+        return createRingBufferWorker(service, engine, RingBufferWorker.WaitStrategy.Blocking);
+      case "writeAheadLog":
+        return new WriteAheadLogWorker(service)
+            .setDirectory(createTemporaryDirectory().toString())
+            .setNumberOfWorkerThreads(numberOfThreads)
+            .setRuleEvaluationEngine(engine);
+      default:
+        throw new IllegalArgumentException("Unknown consumer: " + consumer);
+    }
+  }
+
+  private Path createTemporaryDirectory() {
+    try {
+      temporaryDirectory = Files.createTempDirectory("write-ahead-log-benchmark");
+      return temporaryDirectory;
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private void deleteTemporaryDirectory() throws IOException {
+    // Delete the contents before the directories containing them.
+    try (Stream<Path> files = Files.walk(temporaryDirectory)) {
+      for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.deleteIfExists(file);
+      }
+    }
+    temporaryDirectory = null;
+  }
+
+  private RingBufferWorker createRingBufferWorker(TriggerAdministrationService service, RuleEvaluationEngine engine,
+                                                  RingBufferWorker.WaitStrategy waitStrategy) {
+    return new RingBufferWorker(service)
+        .setNumberOfConsumerThreads(numberOfThreads)
+        .setWaitStrategy(waitStrategy)
+        .setRuleEvaluationEngine(engine);
+  }
+}
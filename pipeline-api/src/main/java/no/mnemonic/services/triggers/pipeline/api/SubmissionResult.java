@@ -0,0 +1,52 @@
+package no.mnemonic.services.triggers.pipeline.api;
+
+/**
+ * Result of submitting a single {@link TriggerEvent} as part of a batch (see {@link TriggerEventConsumer#submitAll}).
+ */
+public class SubmissionResult {
+
+  private final TriggerEvent event;
+  private final SubmissionException error;
+
+  private SubmissionResult(TriggerEvent event, SubmissionException error) {
+    this.event = event;
+    this.error = error;
+  }
+
+  /**
+   * Create a result for an event which was accepted for processing.
+   *
+   * @param event Submitted event
+   * @return Result
+   */
+  public static SubmissionResult accepted(TriggerEvent event) {
+    return new SubmissionResult(event, null);
+  }
+
+  /**
+   * Create a result for an event which could not be accepted for processing.
+   *
+   * @param event Submitted event
+   * @param error Reason why the event was rejected
+   * @return Result
+   */
+  public static SubmissionResult rejected(TriggerEvent event, SubmissionException error) {
+    if (error == null) throw new IllegalArgumentException("'error' is required!");
+    return new SubmissionResult(event, error);
+  }
+
+  public TriggerEvent getEvent() {
+    return event;
+  }
+
+  /**
+   * @return Reason why the event was rejected, or null if the event was accepted
+   */
+  public SubmissionException getError() {
+    return error;
+  }
+
+  public boolean isAccepted() {
+    return error == null;
+  }
+}
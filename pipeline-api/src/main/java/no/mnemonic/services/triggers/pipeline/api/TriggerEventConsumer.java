@@ -1,5 +1,11 @@
 package no.mnemonic.services.triggers.pipeline.api;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
  * Interface used for submitting {@link TriggerEvent}s to an external consumer for processing.
  */
@@ -20,4 +26,53 @@ public interface TriggerEventConsumer {
    */
   void submit(TriggerEvent event) throws SubmissionException;
 
+  /**
+   * Submit a {@link TriggerEvent} for processing to an external consumer without blocking the calling thread while
+   * waiting for the consumer to accept the event.
+   * <p>
+   * The returned stage completes normally once the event has been accepted for processing, or exceptionally with a
+   * {@link SubmissionException} if the event could not be accepted. Apart from that the same semantics as for
+   * {@link #submit(TriggerEvent)} apply.
+   * <p>
+   * The default implementation delegates to {@link #submit(TriggerEvent)}, thus, it might block.
+   *
+   * @param event {@link TriggerEvent} submitted for processing
+   * @return Stage completing once the event has been accepted or rejected
+   */
+  default CompletionStage<Void> submitAsync(TriggerEvent event) {
+    try {
+      submit(event);
+      return CompletableFuture.completedFuture(null);
+    } catch (SubmissionException ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+  }
+
+  /**
+   * Submit multiple {@link TriggerEvent}s for processing to an external consumer at once.
+   * <p>
+   * Events are accepted or rejected individually, i.e. rejecting one event doesn't affect the other events. Instead of
+   * throwing a {@link SubmissionException} the outcome for each event is returned. Apart from that the same semantics
+   * as for {@link #submit(TriggerEvent)} apply.
+   * <p>
+   * The default implementation submits the events one by one using {@link #submit(TriggerEvent)}.
+   *
+   * @param events {@link TriggerEvent}s submitted for processing
+   * @return One result per submitted event, in the iteration order of the given events
+   */
+  default List<SubmissionResult> submitAll(Collection<? extends TriggerEvent> events) {
+    if (events == null) return new ArrayList<>();
+
+    List<SubmissionResult> results = new ArrayList<>(events.size());
+    for (TriggerEvent event : events) {
+      try {
+        submit(event);
+        results.add(SubmissionResult.accepted(event));
+      } catch (SubmissionException ex) {
+        results.add(SubmissionResult.rejected(event, ex));
+      }
+    }
+    return results;
+  }
+
 }
@@ -0,0 +1,189 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.logging.Logger;
+import no.mnemonic.commons.logging.Logging;
+import no.mnemonic.commons.metrics.MetricException;
+import no.mnemonic.commons.metrics.Metrics;
+import no.mnemonic.commons.metrics.MetricsData;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Computes the size of a worker pool from the measured queue wait time and task latency using additive increase and
+ * multiplicative decrease (AIMD).
+ * <p>
+ * Every call to {@link #adjust(int)} evaluates the tasks recorded since the previous call and takes one decision:
+ * <ul>
+ * <li>{@link Decision#Backoff}: The average task latency exceeds the baseline latency by more than the latency
+ * tolerance, i.e. the downstream systems (e.g. webhook endpoints) are saturated and more threads would only make it
+ * worse. The pool is shrunk multiplicatively.</li>
+ * <li>{@link Decision#Increase}: Tasks wait longer than the target queue wait time while latency is healthy. One
+ * thread is added.</li>
+ * <li>{@link Decision#Decrease}: Tasks don't wait and not all threads are busy. One thread is removed.</li>
+ * <li>{@link Decision#Hold}: Otherwise.</li>
+ * </ul>
+ * The baseline latency follows the lowest observed latency immediately and slowly adapts to higher latencies, such that
+ * a permanent change in latency doesn't cause a permanent backoff. The pool size always stays within the configured
+ * bounds.
+ */
+class AdaptivePoolSizeController {
+
+  private static final Logger LOGGER = Logging.getLogger(AdaptivePoolSizeController.class);
+
+  static final double BACKOFF_RATIO = 0.75;
+  static final double LATENCY_TOLERANCE = 2.0;
+  // Weight of the current latency when the baseline adapts to higher latencies.
+  private static final double BASELINE_DRIFT = 0.05;
+
+  private final int minimumPoolSize;
+  private final int maximumPoolSize;
+  private final long targetQueueWaitNanos;
+
+  private final LongAdder recordedTasks = new LongAdder();
+  private final LongAdder recordedQueueWaitNanos = new LongAdder();
+  private final LongAdder recordedLatencyNanos = new LongAdder();
+  private final LongAdder[] decisionCounters = new LongAdder[Decision.values().length];
+
+  private volatile int poolSize;
+  private volatile Decision lastDecision = Decision.Hold;
+  private volatile long lastQueueWaitNanos;
+  private volatile long lastLatencyNanos;
+  private volatile double baselineLatencyNanos;
+
+  /**
+   * Decision taken by {@link #adjust(int)}.
+   */
+  enum Decision {
+    Increase, Decrease, Backoff, Hold
+  }
+
+  /**
+   * Create a new controller.
+   *
+   * @param minimumPoolSize      Minimum pool size, must be &gt; 0
+   * @param maximumPoolSize      Maximum pool size, must be &gt;= minimum pool size
+   * @param initialPoolSize      Initial pool size, adjusted to the bounds
+   * @param targetQueueWaitNanos Queue wait time above which the pool grows, must be &gt; 0
+   */
+  AdaptivePoolSizeController(int minimumPoolSize, int maximumPoolSize, int initialPoolSize, long targetQueueWaitNanos) {
+    if (minimumPoolSize <= 0) throw new IllegalArgumentException("'minimumPoolSize' must be > 0!");
+    if (maximumPoolSize < minimumPoolSize) throw new IllegalArgumentException("'maximumPoolSize' must be >= 'minimumPoolSize'!");
+    if (targetQueueWaitNanos <= 0) throw new IllegalArgumentException("'targetQueueWaitNanos' must be > 0!");
+
+    this.minimumPoolSize = minimumPoolSize;
+    this.maximumPoolSize = maximumPoolSize;
+    this.targetQueueWaitNanos = targetQueueWaitNanos;
+    this.poolSize = clamp(initialPoolSize);
+    for (int i = 0; i < decisionCounters.length; i++) {
+      decisionCounters[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Record a finished task.
+   *
+   * @param queueWaitNanos Time the task waited in the queue
+   * @param latencyNanos   Time it took to execute the task
+   */
+  void recordTask(long queueWaitNanos, long latencyNanos) {
+    recordedTasks.increment();
+    recordedQueueWaitNanos.add(Math.max(0, queueWaitNanos));
+    recordedLatencyNanos.add(Math.max(0, latencyNanos));
+  }
+
+  /**
+   * Evaluate the tasks recorded since the last adjustment and compute the new pool size. Must not be called concurrently.
+   *
+   * @param activeTasks Number of currently executing tasks
+   * @return New pool size
+   */
+  int adjust(int activeTasks) {
+    long tasks = recordedTasks.sumThenReset();
+    long queueWaitNanos = recordedQueueWaitNanos.sumThenReset();
+    long latencyNanos = recordedLatencyNanos.sumThenReset();
+    lastQueueWaitNanos = tasks > 0 ? queueWaitNanos / tasks : 0;
+    lastLatencyNanos = tasks > 0 ? latencyNanos / tasks : 0;
+
+    int previous = poolSize;
+    Decision decision = decide(tasks, activeTasks, previous);
+    switch (decision) {
+      case Backoff:
+        poolSize = clamp((int) (previous * BACKOFF_RATIO));
+        break;
+      case Increase:
+        poolSize = clamp(previous + 1);
+        break;
+      case Decrease:
+        poolSize = clamp(previous - 1);
+        break;
+      default:
+        break;
+    }
+    if (tasks > 0) updateBaseline(lastLatencyNanos);
+
+    lastDecision = decision;
+    decisionCounters[decision.ordinal()].increment();
+    if (poolSize != previous && LOGGER.isInfo()) {
+      LOGGER.info("%s pool size from %d to %d [queue wait: %d ms, latency: %d ms, baseline latency: %d ms].", decision,
+          previous, poolSize, TimeUnit.NANOSECONDS.toMillis(lastQueueWaitNanos), TimeUnit.NANOSECONDS.toMillis(lastLatencyNanos),
+          TimeUnit.NANOSECONDS.toMillis((long) baselineLatencyNanos));
+    }
+    return poolSize;
+  }
+
+  int getPoolSize() {
+    return poolSize;
+  }
+
+  Decision getLastDecision() {
+    return lastDecision;
+  }
+
+  Metrics getMetrics() throws MetricException {
+    return new MetricsData()
+        .addData("poolSize", poolSize)
+        .addData("minimumPoolSize", minimumPoolSize)
+        .addData("maximumPoolSize", maximumPoolSize)
+        .addData("lastDecision", lastDecision.ordinal())
+        .addData("lastQueueWaitMillis", TimeUnit.NANOSECONDS.toMillis(lastQueueWaitNanos))
+        .addData("lastLatencyMillis", TimeUnit.NANOSECONDS.toMillis(lastLatencyNanos))
+        .addData("baselineLatencyMillis", TimeUnit.NANOSECONDS.toMillis((long) baselineLatencyNanos))
+        .addData("totalIncreaseDecisions", decisionCounters[Decision.Increase.ordinal()].sum())
+        .addData("totalDecreaseDecisions", decisionCounters[Decision.Decrease.ordinal()].sum())
+        .addData("totalBackoffDecisions", decisionCounters[Decision.Backoff.ordinal()].sum())
+        .addData("totalHoldDecisions", decisionCounters[Decision.Hold.ordinal()].sum());
+  }
+
+  private Decision decide(long tasks, int activeTasks, int currentPoolSize) {
+    if (tasks == 0) {
+      // Nothing finished, either the pool is idle or all tasks are stuck. Only shrink an idle pool.
+      return activeTasks < currentPoolSize ? shrink(currentPoolSize) : Decision.Hold;
+    }
+
+    if (baselineLatencyNanos > 0 && lastLatencyNanos > baselineLatencyNanos * LATENCY_TOLERANCE) {
+      return currentPoolSize > minimumPoolSize ? Decision.Backoff : Decision.Hold;
+    }
+    if (lastQueueWaitNanos > targetQueueWaitNanos) {
+      return currentPoolSize < maximumPoolSize ? Decision.Increase : Decision.Hold;
+    }
+    // Don't give up threads while all of them are busy, even if tasks didn't wait long.
+    return activeTasks < currentPoolSize ? shrink(currentPoolSize) : Decision.Hold;
+  }
+
+  private Decision shrink(int currentPoolSize) {
+    return currentPoolSize > minimumPoolSize ? Decision.Decrease : Decision.Hold;
+  }
+
+  private void updateBaseline(long latencyNanos) {
+    if (baselineLatencyNanos <= 0 || latencyNanos < baselineLatencyNanos) {
+      baselineLatencyNanos = latencyNanos;
+    } else {
+      baselineLatencyNanos = baselineLatencyNanos * (1 - BASELINE_DRIFT) + latencyNanos * BASELINE_DRIFT;
+    }
+  }
+
+  private int clamp(int size) {
+    return Math.max(minimumPoolSize, Math.min(maximumPoolSize, size));
+  }
+}
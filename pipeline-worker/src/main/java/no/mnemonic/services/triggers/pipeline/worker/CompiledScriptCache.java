@@ -0,0 +1,124 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Bounded cache from source text to compiled scripts (expressions or templates) with approximate LRU eviction.
+ * <p>
+ * Lookups are lock-free reads from a {@link ConcurrentHashMap} which only mark the entry as recently used, such that
+ * concurrent worker threads never contend on a hot entry. Once the capacity is exceeded entries are evicted using the
+ * CLOCK algorithm: entries are visited in insertion order, recently used entries get a second chance and the first
+ * entry which hasn't been used since the last visit is evicted. Compilation happens outside of any lock. Compiled
+ * scripts must be immutable and thread-safe because they are shared between threads.
+ *
+ * @param <V> Type of compiled scripts
+ */
+class CompiledScriptCache<V> {
+
+  private final int capacity;
+  private final Map<String, Entry<V>> entries = new ConcurrentHashMap<>();
+  // Keys of all cached entries in the order the clock hand visits them.
+  private final Queue<String> clock = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Create a new cache.
+   *
+   * @param capacity Maximum number of cached scripts
+   */
+  CompiledScriptCache(int capacity) {
+    if (capacity <= 0) throw new IllegalArgumentException("'capacity' must be > 0!");
+    this.capacity = capacity;
+  }
+
+  /**
+   * Return the compiled script for the given source text, compiling and caching it if it isn't cached yet.
+   * Exceptions thrown by the compiler are passed on to the caller and nothing is cached.
+   *
+   * @param source   Source text of the script
+   * @param compiler Function compiling the source text
+   * @return Compiled script
+   */
+  V get(String source, Function<String, V> compiler) {
+    // Leave it to the compiler to handle missing source text.
+    if (source == null) return compiler.apply(null);
+
+    Entry<V> cached = entries.get(source);
+    if (cached != null) {
+      // Avoid writing to shared memory if the entry has been marked already.
+      if (!cached.referenced) cached.referenced = true;
+      hits.increment();
+      return cached.compiled;
+    }
+
+    misses.increment();
+    // Two threads compiling the same source at the same time both return a valid result, the first one is cached.
+    V compiled = compiler.apply(source);
+    if (compiled != null && entries.putIfAbsent(source, new Entry<>(compiled)) == null) {
+      if (size.incrementAndGet() > capacity) evict();
+      // Add the new entry behind the clock hand after evicting, such that it's visited last.
+      clock.offer(source);
+    }
+    return compiled;
+  }
+
+  long getHits() {
+    return hits.sum();
+  }
+
+  long getMisses() {
+    return misses.sum();
+  }
+
+  long getEvictions() {
+    return evictions.sum();
+  }
+
+  int size() {
+    return size.get();
+  }
+
+  private void evict() {
+    // One thread evicting is enough, others don't wait. The capacity might be exceeded shortly in the meantime.
+    if (!evictionLock.tryLock()) return;
+    try {
+      while (size.get() > capacity) {
+        String key = clock.poll();
+        if (key == null) return;
+
+        Entry<V> entry = entries.get(key);
+        if (entry == null) continue;
+        if (entry.referenced) {
+          // Second chance, the entry is evicted on the next visit if it hasn't been used in the meantime.
+          entry.referenced = false;
+          clock.offer(key);
+        } else if (entries.remove(key, entry)) {
+          size.decrementAndGet();
+          evictions.increment();
+        }
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private static class Entry<V> {
+    private final V compiled;
+    private volatile boolean referenced;
+
+    private Entry(V compiled) {
+      this.compiled = compiled;
+    }
+  }
+}
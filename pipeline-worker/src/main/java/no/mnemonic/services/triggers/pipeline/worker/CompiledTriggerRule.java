@@ -0,0 +1,131 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.utilities.ObjectUtils;
+import no.mnemonic.commons.utilities.collections.MapUtils;
+import no.mnemonic.commons.utilities.collections.SetUtils;
+import no.mnemonic.services.triggers.api.model.v1.AccessMode;
+import no.mnemonic.services.triggers.api.model.v1.OrganizationInfo;
+import no.mnemonic.services.triggers.api.model.v1.TriggerRule;
+import org.apache.commons.jexl3.JexlException;
+import org.apache.commons.jexl3.JexlExpression;
+import org.apache.commons.jexl3.JxltEngine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * TriggerRule together with its compiled expression and compiled trigger parameter templates. Compiled objects are
+ * immutable and thread-safe, thus, a CompiledTriggerRule can be shared between all evaluations of the same rule.
+ * <p>
+ * Additionally, the rule's organizations, scopes and access mode are kept in a form which allows checking an event
+ * against them without allocating any objects.
+ */
+class CompiledTriggerRule {
+
+  private static final AccessMode[] ACCESS_MODE_MAPPING = createAccessModeMapping();
+
+  private final TriggerRule rule;
+  private final JexlExpression expression;
+  private final Map<String, JxltEngine.Template> triggerParameters;
+  private final UUIDSet organizations;
+  private final Set<String> scopes;
+  private final AccessMode accessMode;
+
+  private CompiledTriggerRule(TriggerRule rule, JexlExpression expression, Map<String, JxltEngine.Template> triggerParameters) {
+    this.rule = rule;
+    this.expression = expression;
+    this.triggerParameters = Collections.unmodifiableMap(triggerParameters);
+    this.organizations = new UUIDSet(SetUtils.set(rule.getOrganizations(), OrganizationInfo::getId));
+    // Many rules share the same scopes, intern them to avoid keeping duplicated strings around.
+    this.scopes = Collections.unmodifiableSet(SetUtils.set(rule.getScopes(), String::intern));
+    this.accessMode = rule.getAccessMode();
+  }
+
+  /**
+   * Compile the expression and all trigger parameter templates of a TriggerRule.
+   *
+   * @param rule               TriggerRule to compile
+   * @param expressionCompiler Function compiling an expression
+   * @param templateCompiler   Function compiling a template
+   * @return Compiled TriggerRule
+   * @throws JexlException If the expression or any of the templates cannot be compiled
+   */
+  static CompiledTriggerRule compile(TriggerRule rule,
+                                     Function<String, JexlExpression> expressionCompiler,
+                                     Function<String, JxltEngine.Template> templateCompiler) throws JexlException {
+    ObjectUtils.notNull(rule, "'rule' is required!");
+
+    JexlExpression expression = expressionCompiler.apply(rule.getExpression());
+    Map<String, JxltEngine.Template> triggerParameters = new HashMap<>();
+    for (Map.Entry<String, String> parameter : MapUtils.map(rule.getTriggerParameters()).entrySet()) {
+      triggerParameters.put(parameter.getKey(), templateCompiler.apply(parameter.getValue()));
+    }
+
+    return new CompiledTriggerRule(rule, expression, triggerParameters);
+  }
+
+  /**
+   * Check whether an organization is one of the rule's organizations.
+   *
+   * @param organization Organization of an event
+   * @return True if the rule is defined for the organization
+   */
+  boolean hasOrganization(UUID organization) {
+    return organizations.contains(organization);
+  }
+
+  /**
+   * Check whether the access mode of an event is covered by the rule's access mode.
+   *
+   * @param eventAccessMode Access mode of an event
+   * @return True if the rule's access mode is not less restricted than the event's access mode
+   */
+  boolean coversAccessMode(no.mnemonic.services.triggers.pipeline.api.AccessMode eventAccessMode) {
+    return !accessMode.isLessRestricted(toRuleAccessMode(eventAccessMode));
+  }
+
+  /**
+   * Check whether a scope is one of the rule's scopes.
+   *
+   * @param scope Scope of an event
+   * @return True if the rule is defined for the scope
+   */
+  boolean hasScope(String scope) {
+    return scopes.contains(scope);
+  }
+
+  /**
+   * Map the access mode of an event to the corresponding access mode of a rule without going through the mode's name.
+   *
+   * @param eventAccessMode Access mode of an event
+   * @return Corresponding access mode of a rule
+   */
+  static AccessMode toRuleAccessMode(no.mnemonic.services.triggers.pipeline.api.AccessMode eventAccessMode) {
+    return ACCESS_MODE_MAPPING[eventAccessMode.ordinal()];
+  }
+
+  TriggerRule getRule() {
+    return rule;
+  }
+
+  JexlExpression getExpression() {
+    return expression;
+  }
+
+  Map<String, JxltEngine.Template> getTriggerParameters() {
+    return triggerParameters;
+  }
+
+  private static AccessMode[] createAccessModeMapping() {
+    no.mnemonic.services.triggers.pipeline.api.AccessMode[] eventAccessModes = no.mnemonic.services.triggers.pipeline.api.AccessMode.values();
+    AccessMode[] mapping = new AccessMode[eventAccessModes.length];
+    for (no.mnemonic.services.triggers.pipeline.api.AccessMode mode : eventAccessModes) {
+      mapping[mode.ordinal()] = AccessMode.valueOf(mode.name());
+    }
+    return mapping;
+  }
+}
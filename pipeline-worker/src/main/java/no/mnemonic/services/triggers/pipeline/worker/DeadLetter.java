@@ -0,0 +1,161 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.utilities.ObjectUtils;
+import no.mnemonic.commons.utilities.collections.MapUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Failed TriggerAction invocation stored in a {@link DeadLetterStore}. Contains everything required to execute the
+ * action again without evaluating the original TriggerEvent.
+ */
+class DeadLetter {
+
+  private static final byte FORMAT_VERSION = 1;
+
+  private final long timestamp;
+  private final UUID ruleId;
+  private final UUID actionDefinitionId;
+  private final String actionDefinitionName;
+  private final UUID eventId;
+  private final Map<String, String> triggerParameters;
+  private final String error;
+
+  DeadLetter(long timestamp, UUID ruleId, UUID actionDefinitionId, String actionDefinitionName, UUID eventId,
+             Map<String, String> triggerParameters, String error) {
+    this.timestamp = timestamp;
+    this.ruleId = ruleId;
+    this.actionDefinitionId = actionDefinitionId;
+    this.actionDefinitionName = ObjectUtils.notNull(actionDefinitionName, "'actionDefinitionName' is required!");
+    this.eventId = eventId;
+    this.triggerParameters = Collections.unmodifiableMap(MapUtils.map(triggerParameters));
+    this.error = error;
+  }
+
+  /**
+   * @return Timestamp in milliseconds when the invocation failed
+   */
+  long getTimestamp() {
+    return timestamp;
+  }
+
+  UUID getRuleId() {
+    return ruleId;
+  }
+
+  UUID getActionDefinitionId() {
+    return actionDefinitionId;
+  }
+
+  /**
+   * @return Name of the TriggerActionDefinition, used to look up the current definition when replaying
+   */
+  String getActionDefinitionName() {
+    return actionDefinitionName;
+  }
+
+  UUID getEventId() {
+    return eventId;
+  }
+
+  /**
+   * @return Rendered trigger parameters the action was invoked with
+   */
+  Map<String, String> getTriggerParameters() {
+    return triggerParameters;
+  }
+
+  /**
+   * @return Description of the error which caused the invocation to fail
+   */
+  String getError() {
+    return error;
+  }
+
+  byte[] encode() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(FORMAT_VERSION);
+      out.writeLong(timestamp);
+      writeUUID(out, ruleId);
+      writeUUID(out, actionDefinitionId);
+      writeString(out, actionDefinitionName);
+      writeUUID(out, eventId);
+      out.writeInt(triggerParameters.size());
+      for (Map.Entry<String, String> parameter : triggerParameters.entrySet()) {
+        writeString(out, parameter.getKey());
+        writeString(out, parameter.getValue());
+      }
+      writeString(out, error);
+    } catch (IOException ex) {
+      // Writing to a byte array never fails.
+      throw new UncheckedIOException(ex);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decode a dead letter previously encoded with {@link #encode()}.
+   *
+   * @param data Encoded dead letter
+   * @return Decoded dead letter
+   * @throws IllegalArgumentException If the data is not a valid encoded dead letter
+   */
+  static DeadLetter decode(byte[] data) {
+    ObjectUtils.notNull(data, "'data' is required!");
+
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+      byte version = in.readByte();
+      if (version != FORMAT_VERSION) throw new IllegalArgumentException("Unsupported format version: " + version);
+
+      long timestamp = in.readLong();
+      UUID ruleId = readUUID(in);
+      UUID actionDefinitionId = readUUID(in);
+      String actionDefinitionName = readString(in);
+      UUID eventId = readUUID(in);
+      int size = in.readInt();
+      if (size < 0 || size > in.available()) throw new IllegalArgumentException("Invalid number of trigger parameters: " + size);
+      Map<String, String> triggerParameters = new LinkedHashMap<>();
+      for (int i = 0; i < size; i++) {
+        triggerParameters.put(readString(in), readString(in));
+      }
+      String error = readString(in);
+      return new DeadLetter(timestamp, ruleId, actionDefinitionId, actionDefinitionName, eventId, triggerParameters, error);
+    } catch (IOException | NullPointerException ex) {
+      throw new IllegalArgumentException("Could not decode dead letter!", ex);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value == null) return;
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    if (!in.readBoolean()) return null;
+    int length = in.readInt();
+    if (length < 0 || length > in.available()) throw new IllegalArgumentException("Invalid string length: " + length);
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeUUID(DataOutputStream out, UUID value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value == null) return;
+    out.writeLong(value.getMostSignificantBits());
+    out.writeLong(value.getLeastSignificantBits());
+  }
+
+  private static UUID readUUID(DataInputStream in) throws IOException {
+    return in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+  }
+}
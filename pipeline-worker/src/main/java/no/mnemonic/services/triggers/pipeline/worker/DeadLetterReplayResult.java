@@ -0,0 +1,45 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+/**
+ * Outcome of replaying dead-lettered TriggerAction invocations.
+ */
+public class DeadLetterReplayResult {
+
+  private final long replayedInvocations;
+  private final long successfulInvocations;
+  private final long failedInvocations;
+
+  DeadLetterReplayResult(long replayedInvocations, long successfulInvocations, long failedInvocations) {
+    this.replayedInvocations = replayedInvocations;
+    this.successfulInvocations = successfulInvocations;
+    this.failedInvocations = failedInvocations;
+  }
+
+  /**
+   * @return Number of dead-lettered invocations which were replayed
+   */
+  public long getReplayedInvocations() {
+    return replayedInvocations;
+  }
+
+  /**
+   * @return Number of replayed invocations which succeeded and have been removed from the dead-letter store
+   */
+  public long getSuccessfulInvocations() {
+    return successfulInvocations;
+  }
+
+  /**
+   * @return Number of replayed invocations which failed again. Invocations failing with a TriggerExecutionException
+   * have been added to the dead-letter store again, all others have been dropped.
+   */
+  public long getFailedInvocations() {
+    return failedInvocations;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("DeadLetterReplayResult[replayed: %d, successful: %d, failed: %d]",
+        replayedInvocations, successfulInvocations, failedInvocations);
+  }
+}
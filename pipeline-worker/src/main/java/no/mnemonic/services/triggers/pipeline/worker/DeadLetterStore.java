@@ -0,0 +1,197 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.logging.Logger;
+import no.mnemonic.commons.logging.Logging;
+import no.mnemonic.commons.utilities.ObjectUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Local append-only store of failed TriggerAction invocations ({@link DeadLetter}s) backed by a {@link WriteAheadLog}.
+ * <p>
+ * {@link #replay(int, int, Predicate)} hands all stored dead letters to a handler and removes them from the store
+ * afterwards. Invocations failing again are expected to be added again by the handler. If the replay is interrupted,
+ * only the dead letters already handed to the handler are removed. If the process crashes while replaying, all dead
+ * letters are kept and replayed again the next time.
+ */
+class DeadLetterStore implements AutoCloseable {
+
+  private static final Logger LOGGER = Logging.getLogger(DeadLetterStore.class);
+
+  private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+  private final WriteAheadLog log;
+  private final AtomicBoolean replaying = new AtomicBoolean();
+  private final LongAdder totalDeadLettersCounter = new LongAdder();
+
+  DeadLetterStore(WriteAheadLog log) {
+    this.log = log;
+  }
+
+  /**
+   * Open the dead-letter store located in the given directory, creating the directory if it doesn't exist yet.
+   *
+   * @param directory Directory of the store, must not be shared with anything else
+   * @return Opened store
+   * @throws IOException If the store could not be opened
+   */
+  static DeadLetterStore open(Path directory) throws IOException {
+    return new DeadLetterStore(WriteAheadLog.open(ObjectUtils.notNull(directory, "'directory' is required!"), SEGMENT_SIZE));
+  }
+
+  /**
+   * Add a dead letter. The dead letter is forced to disk asynchronously.
+   *
+   * @param deadLetter Dead letter to add
+   * @throws IOException If the dead letter could not be stored
+   */
+  void add(DeadLetter deadLetter) throws IOException {
+    ObjectUtils.notNull(deadLetter, "'deadLetter' is required!");
+    log.append(deadLetter.encode());
+    totalDeadLettersCounter.increment();
+  }
+
+  /**
+   * Replay all dead letters stored when the replay starts. Only one replay may run at a time.
+   *
+   * @param parallelism                  Maximum number of dead letters handled concurrently
+   * @param maximumInvocationsPerSecond Maximum number of dead letters handled per second, unlimited if &lt;= 0
+   * @param handler                      Handler returning true if the dead letter was replayed successfully
+   * @return Result of the replay
+   * @throws InterruptedException  If interrupted while replaying, dead letters not handled yet are kept in this case
+   * @throws IOException           If the replayed dead letters could not be removed from the store
+   * @throws IllegalStateException If another replay is running already
+   */
+  DeadLetterReplayResult replay(int parallelism, int maximumInvocationsPerSecond, Predicate<DeadLetter> handler)
+      throws InterruptedException, IOException {
+    if (parallelism <= 0) throw new IllegalArgumentException("'parallelism' must be > 0!");
+    ObjectUtils.notNull(handler, "'handler' is required!");
+    if (!replaying.compareAndSet(false, true)) throw new IllegalStateException("Dead letters are already being replayed!");
+
+    try {
+      // Dead letters added during the replay (e.g. by the handler) are kept for the next replay.
+      long end = log.getAppendedSequence();
+      WriteAheadLog.Cursor cursor = log.openCursor(log.getCheckpointSequence());
+      LongAdder successful = new LongAdder();
+      LongAdder failed = new LongAdder();
+      long replayed = 0;
+      // Sequence of the last dead letter handed to the handler (or dropped).
+      long handled = log.getCheckpointSequence();
+      InterruptedException interrupted = null;
+
+      AtomicInteger threadCounter = new AtomicInteger();
+      ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+          runnable -> new Thread(runnable, "dead-letter-replay-" + threadCounter.incrementAndGet()));
+      Semaphore permits = new Semaphore(parallelism);
+      long intervalNanos = maximumInvocationsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maximumInvocationsPerSecond : 0;
+      long nextInvocation = System.nanoTime();
+      try {
+        for (WriteAheadLog.Record record = cursor.next(); record != null && record.getSequence() <= end; record = cursor.next()) {
+          replayed++;
+          DeadLetter deadLetter;
+          try {
+            deadLetter = DeadLetter.decode(record.getPayload());
+          } catch (IllegalArgumentException ex) {
+            LOGGER.warning(ex, "Dropping corrupted dead letter with sequence = %d.", record.getSequence());
+            failed.increment();
+            handled = record.getSequence();
+            continue;
+          }
+
+          if (intervalNanos > 0) {
+            long now = System.nanoTime();
+            if (nextInvocation > now) TimeUnit.NANOSECONDS.sleep(nextInvocation - now);
+            // Don't allow bursts after a slow period.
+            nextInvocation = Math.max(nextInvocation, now) + intervalNanos;
+          }
+
+          permits.acquire();
+          executor.execute(() -> {
+            try {
+              if (handler.test(deadLetter)) {
+                successful.increment();
+              } else {
+                failed.increment();
+              }
+            } catch (RuntimeException ex) {
+              LOGGER.warning(ex, "Unexpected exception while replaying dead letter.");
+              failed.increment();
+            } finally {
+              permits.release();
+            }
+          });
+          handled = record.getSequence();
+        }
+      } catch (InterruptedException ex) {
+        interrupted = ex;
+      } finally {
+        executor.shutdown();
+        cursor.close();
+      }
+      // Wait until all handlers have finished before removing the dead letters, also if interrupted. Otherwise,
+      // handlers would still be running while the handled dead letters are replayed again.
+      if (awaitTermination(executor) && interrupted == null) {
+        interrupted = new InterruptedException("Interrupted while waiting for replay of dead letters to finish.");
+      }
+
+      if (interrupted != null) {
+        // Only remove the dead letters already handled, the remaining ones are replayed the next time.
+        log.checkpoint(handled);
+        LOGGER.info("Interrupted replaying dead letters, replayed %d dead letters.", replayed);
+        throw interrupted;
+      }
+
+      log.checkpoint(end);
+      DeadLetterReplayResult result = new DeadLetterReplayResult(replayed, successful.sum(), failed.sum());
+      LOGGER.info("Finished replaying dead letters: %s.", result);
+      return result;
+    } finally {
+      replaying.set(false);
+    }
+  }
+
+  /**
+   * Wait until the executor has terminated, regardless of interrupts.
+   *
+   * @return True if interrupted while waiting
+   */
+  private static boolean awaitTermination(ExecutorService executor) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        if (executor.awaitTermination(1, TimeUnit.MINUTES)) return interrupted;
+        LOGGER.info("Waiting for replay of dead letters to finish.");
+      } catch (InterruptedException ex) {
+        interrupted = true;
+      }
+    }
+  }
+
+  /**
+   * @return Number of stored dead letters which haven't been replayed yet
+   */
+  long getPendingDeadLetters() {
+    return log.getAppendedSequence() - log.getCheckpointSequence();
+  }
+
+  /**
+   * @return Number of dead letters added since the store was opened
+   */
+  long getTotalDeadLetters() {
+    return totalDeadLettersCounter.sum();
+  }
+
+  @Override
+  public void close() {
+    log.close();
+  }
+}
@@ -0,0 +1,262 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.services.triggers.pipeline.worker.RingBufferWorker.WaitStrategy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Bounded multi-producer, multi-consumer ring buffer following the design of the LMAX Disruptor.
+ * <p>
+ * Producers claim a slot by advancing the cursor sequence and publish an event by marking the slot as available for
+ * the current round. Consumers share a work sequence from which each consumer claims a batch of consecutive published
+ * events. Every consumer keeps its own sequence, a slot is only reused once all consumers have moved past it. Neither
+ * publishing nor consuming allocates any objects.
+ * <p>
+ * After {@link #halt()} no further events are accepted, consumers process all events published until then and
+ * afterwards {@link #consume(int, int, Consumer)} returns -1.
+ *
+ * @param <E> Type of events
+ */
+class EventRingBuffer<E> {
+
+  private static final long INITIAL_SEQUENCE = -1;
+  private static final long PRODUCER_BACKOFF_NANOS = 1000;
+
+  private final Object[] entries;
+  private final AtomicIntegerArray availableRounds;
+  private final int mask;
+  private final int indexShift;
+  // Highest sequence claimed by producers.
+  private final AtomicLong cursor = new AtomicLong(INITIAL_SEQUENCE);
+  // Highest sequence claimed by consumers.
+  private final AtomicLong workSequence = new AtomicLong(INITIAL_SEQUENCE);
+  // Per consumer: all sequences up to this one have been consumed or are being consumed by another consumer.
+  private final AtomicLong[] consumerSequences;
+  private final WaitStrategy waitStrategy;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition published = lock.newCondition();
+  private final AtomicInteger blockedConsumers = new AtomicInteger();
+  private volatile long cachedGatingSequence = INITIAL_SEQUENCE;
+  private volatile boolean halted;
+
+  /**
+   * Create a new ring buffer.
+   *
+   * @param bufferSize        Number of slots (must be a power of two)
+   * @param numberOfConsumers Number of consumers
+   * @param waitStrategy      Strategy used by consumers to wait for events
+   */
+  EventRingBuffer(int bufferSize, int numberOfConsumers, WaitStrategy waitStrategy) {
+    if (bufferSize <= 0 || Integer.bitCount(bufferSize) != 1) throw new IllegalArgumentException("'bufferSize' must be a power of two!");
+    if (numberOfConsumers <= 0) throw new IllegalArgumentException("'numberOfConsumers' must be > 0!");
+    if (waitStrategy == null) throw new IllegalArgumentException("'waitStrategy' is required!");
+
+    this.entries = new Object[bufferSize];
+    this.availableRounds = new AtomicIntegerArray(bufferSize);
+    for (int i = 0; i < bufferSize; i++) {
+      availableRounds.set(i, -1);
+    }
+    this.mask = bufferSize - 1;
+    this.indexShift = Integer.numberOfTrailingZeros(bufferSize);
+    this.consumerSequences = new AtomicLong[numberOfConsumers];
+    for (int i = 0; i < numberOfConsumers; i++) {
+      consumerSequences[i] = new AtomicLong(INITIAL_SEQUENCE);
+    }
+    this.waitStrategy = waitStrategy;
+  }
+
+  /**
+   * Publish an event, waiting up to the given timeout for a free slot.
+   *
+   * @param event        Event to publish
+   * @param timeoutNanos Maximum time to wait for a free slot
+   * @return True if the event was published, false if no slot became available in time
+   * @throws InterruptedException  If interrupted while waiting for a free slot
+   * @throws IllegalStateException If the ring buffer has been halted
+   */
+  boolean publish(E event, long timeoutNanos) throws InterruptedException {
+    if (event == null) throw new IllegalArgumentException("'event' is required!");
+
+    long deadline = System.nanoTime() + timeoutNanos;
+    long sequence;
+    while (true) {
+      if (halted) throw new IllegalStateException("Ring buffer has been halted!");
+
+      long current = cursor.get();
+      long next = current + 1;
+      long wrapPoint = next - entries.length;
+      if (wrapPoint > cachedGatingSequence) {
+        long gatingSequence = getMinimumConsumerSequence();
+        cachedGatingSequence = gatingSequence;
+        if (wrapPoint > gatingSequence) {
+          // Buffer is full, wait for the consumers to catch up.
+          if (deadline - System.nanoTime() <= 0) return false;
+          if (Thread.interrupted()) throw new InterruptedException();
+          LockSupport.parkNanos(PRODUCER_BACKOFF_NANOS);
+          continue;
+        }
+      }
+
+      if (cursor.compareAndSet(current, next)) {
+        sequence = next;
+        break;
+      }
+    }
+
+    // Consumers might already have returned if the buffer was halted concurrently. In this case the claimed slot is
+    // published empty and the event rejected, such that an accepted event is always consumed.
+    boolean accepted = !halted;
+    int index = (int) sequence & mask;
+    entries[index] = accepted ? event : null;
+    availableRounds.set(index, (int) (sequence >>> indexShift));
+    signalConsumers();
+
+    if (!accepted) throw new IllegalStateException("Ring buffer has been halted!");
+    return true;
+  }
+
+  /**
+   * Consume a batch of consecutive published events, waiting for events according to the wait strategy.
+   * <p>
+   * The handler must not throw any exceptions.
+   *
+   * @param consumer     Index of the consumer (0 to number of consumers - 1)
+   * @param maxBatchSize Maximum number of events consumed at once
+   * @param handler      Handler called for each event
+   * @return Number of consumed events, or -1 if the ring buffer has been halted and all events have been consumed
+   * @throws InterruptedException If interrupted while waiting for events
+   */
+  @SuppressWarnings("unchecked")
+  int consume(int consumer, int maxBatchSize, Consumer<E> handler) throws InterruptedException {
+    AtomicLong consumerSequence = consumerSequences[consumer];
+    while (true) {
+      long current = workSequence.get();
+      // Everything up to the current work sequence has been claimed, release the previously consumed slots.
+      consumerSequence.set(current);
+      long next = current + 1;
+
+      if (!isAvailable(next)) {
+        if (halted && cursor.get() == current) return -1;
+        waitFor(next);
+        continue;
+      }
+
+      long end = next;
+      long limit = next + Math.max(1, maxBatchSize) - 1;
+      while (end < limit && isAvailable(end + 1)) {
+        end++;
+      }
+      // Another consumer might have claimed the events in the meantime.
+      if (!workSequence.compareAndSet(current, end)) continue;
+
+      for (long sequence = next; sequence <= end; sequence++) {
+        int index = (int) sequence & mask;
+        E event = (E) entries[index];
+        entries[index] = null;
+        // Empty slots were claimed after the buffer was halted.
+        if (event != null) handler.accept(event);
+      }
+      return (int) (end - next + 1);
+    }
+  }
+
+  /**
+   * Stop accepting events. Consumers will consume all events published until now.
+   */
+  void halt() {
+    halted = true;
+    lock.lock();
+    try {
+      published.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  boolean isHalted() {
+    return halted;
+  }
+
+  /**
+   * @return Number of slots
+   */
+  int getBufferSize() {
+    return entries.length;
+  }
+
+  /**
+   * @return Number of events claimed by producers so far
+   */
+  long getPublishedEvents() {
+    return cursor.get() + 1;
+  }
+
+  /**
+   * @return Number of free slots
+   */
+  long getRemainingCapacity() {
+    return entries.length - (cursor.get() - getMinimumConsumerSequence());
+  }
+
+  private boolean isAvailable(long sequence) {
+    return availableRounds.get((int) sequence & mask) == (int) (sequence >>> indexShift);
+  }
+
+  private long getMinimumConsumerSequence() {
+    long minimum = Long.MAX_VALUE;
+    for (AtomicLong sequence : consumerSequences) {
+      minimum = Math.min(minimum, sequence.get());
+    }
+    return minimum;
+  }
+
+  private void waitFor(long sequence) throws InterruptedException {
+    int spins = 0;
+    while (!isAvailable(sequence) && !halted) {
+      if (Thread.interrupted()) throw new InterruptedException();
+
+      if (waitStrategy == WaitStrategy.BusySpin || (waitStrategy == WaitStrategy.Yielding && spins < 100)) {
+        spins++;
+        Thread.onSpinWait();
+      } else if (waitStrategy == WaitStrategy.Yielding) {
+        Thread.yield();
+      } else {
+        block(sequence);
+      }
+    }
+  }
+
+  private void block(long sequence) throws InterruptedException {
+    lock.lock();
+    try {
+      // Register before checking again, such that a producer publishing concurrently sees the blocked consumer.
+      blockedConsumers.incrementAndGet();
+      try {
+        while (!isAvailable(sequence) && !halted) {
+          published.await();
+        }
+      } finally {
+        blockedConsumers.decrementAndGet();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void signalConsumers() {
+    // Only take the lock if a consumer is actually blocked.
+    if (waitStrategy != WaitStrategy.Blocking || blockedConsumers.get() == 0) return;
+    lock.lock();
+    try {
+      published.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+}
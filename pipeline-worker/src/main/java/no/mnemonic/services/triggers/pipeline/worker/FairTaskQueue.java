@@ -0,0 +1,382 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.metrics.MetricException;
+import no.mnemonic.commons.metrics.Metrics;
+import no.mnemonic.commons.metrics.MetricsData;
+import no.mnemonic.commons.metrics.MetricsGroup;
+import no.mnemonic.commons.utilities.ObjectUtils;
+import no.mnemonic.commons.utilities.collections.MapUtils;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Unbounded {@link BlockingQueue} of tasks which keeps one FIFO queue per key (e.g. per organization) and serves the
+ * keys using deficit round-robin, such that a single key with many queued tasks cannot delay the tasks of other keys.
+ * <p>
+ * Every task costs one unit, thus, a key receives a number of consecutive turns per round equal to its weight (default
+ * weight is 1). Tasks for which the key function returns null are queued under {@link #DEFAULT_KEY}.
+ * <p>
+ * The queue is intended to be used as the work queue of a {@link java.util.concurrent.ThreadPoolExecutor}. Iterating
+ * the queue returns a snapshot of all queued tasks in the order they were added.
+ * <p>
+ * Statistics are kept for a bounded number of keys only. Statistics of keys without queued tasks are dropped once the
+ * key hasn't been used for a while, or earlier if too many keys are tracked (least recently used first).
+ */
+class FairTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+  static final String DEFAULT_KEY = "default";
+
+  private static final int DEFAULT_WEIGHT = 1;
+  private static final int DEFAULT_MAXIMUM_TRACKED_KEYS = 1000;
+  private static final long DEFAULT_STATISTICS_EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  private final Function<Runnable, String> keyFunction;
+  private final Map<String, Integer> weights;
+  private final int maximumTrackedKeys;
+  private final long statisticsExpiryNanos;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  // Keys with queued tasks. The key at the head is currently served.
+  private final Deque<KeyQueue> activeQueues = new ArrayDeque<>();
+  private final Map<String, KeyQueue> queues = new HashMap<>();
+  // Access-ordered, the least recently used key comes first.
+  private final Map<String, KeyStatistics> statistics = new LinkedHashMap<>(16, 0.75f, true);
+  private long sequence;
+  private int size;
+
+  /**
+   * Create a new queue.
+   *
+   * @param keyFunction Function returning the key of a task
+   * @param weights     Weights per key, keys without weight have a weight of 1 (might be null)
+   */
+  FairTaskQueue(Function<Runnable, String> keyFunction, Map<String, Integer> weights) {
+    this(keyFunction, weights, DEFAULT_MAXIMUM_TRACKED_KEYS, DEFAULT_STATISTICS_EXPIRY_MILLIS);
+  }
+
+  /**
+   * Create a new queue.
+   *
+   * @param keyFunction              Function returning the key of a task
+   * @param weights                  Weights per key, keys without weight have a weight of 1 (might be null)
+   * @param maximumTrackedKeys       Maximum number of keys without queued tasks for which statistics are kept
+   * @param statisticsExpiryMillis   Time after which statistics of an unused key without queued tasks are dropped
+   */
+  FairTaskQueue(Function<Runnable, String> keyFunction, Map<String, Integer> weights, int maximumTrackedKeys,
+                long statisticsExpiryMillis) {
+    if (maximumTrackedKeys <= 0) throw new IllegalArgumentException("'maximumTrackedKeys' must be > 0!");
+    if (statisticsExpiryMillis <= 0) throw new IllegalArgumentException("'statisticsExpiryMillis' must be > 0!");
+    this.maximumTrackedKeys = maximumTrackedKeys;
+    this.statisticsExpiryNanos = TimeUnit.MILLISECONDS.toNanos(statisticsExpiryMillis);
+    this.keyFunction = ObjectUtils.notNull(keyFunction, "'keyFunction' is required!");
+    this.weights = MapUtils.map(weights);
+    for (Map.Entry<String, Integer> weight : this.weights.entrySet()) {
+      if (weight.getValue() == null || weight.getValue() <= 0) {
+        throw new IllegalArgumentException(String.format("Weight of key '%s' must be > 0!", weight.getKey()));
+      }
+    }
+  }
+
+  @Override
+  public boolean offer(Runnable task) {
+    ObjectUtils.notNull(task, "'task' is required!");
+    String key = ObjectUtils.ifNull(keyFunction.apply(task), DEFAULT_KEY);
+
+    lock.lock();
+    try {
+      long now = System.nanoTime();
+      KeyQueue queue = queues.computeIfAbsent(key, KeyQueue::new);
+      statistics.computeIfAbsent(key, KeyStatistics::new).lastUsed = now;
+      if (statistics.size() - queues.size() > maximumTrackedKeys) evictStatistics(now, true);
+      if (queue.entries.isEmpty()) activeQueues.addLast(queue);
+      queue.entries.addLast(new Entry(task, sequence++, now));
+      size++;
+      notEmpty.signal();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean offer(Runnable task, long timeout, TimeUnit unit) {
+    // Unbounded, never waits.
+    return offer(task);
+  }
+
+  @Override
+  public void put(Runnable task) {
+    offer(task);
+  }
+
+  @Override
+  public Runnable poll() {
+    lock.lock();
+    try {
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (size == 0) {
+        if (nanos <= 0) return null;
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Runnable take() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (size == 0) {
+        notEmpty.await();
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Runnable peek() {
+    lock.lock();
+    try {
+      KeyQueue queue = activeQueues.peekFirst();
+      return queue != null ? queue.entries.peekFirst().task : null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean remove(Object task) {
+    if (!(task instanceof Runnable)) return false;
+    String key = ObjectUtils.ifNull(keyFunction.apply((Runnable) task), DEFAULT_KEY);
+
+    lock.lock();
+    try {
+      KeyQueue queue = queues.get(key);
+      if (queue == null || !queue.entries.removeIf(entry -> entry.task == task)) return false;
+      size--;
+      if (queue.entries.isEmpty()) deactivate(queue);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.lock();
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return Integer.MAX_VALUE;
+  }
+
+  @Override
+  public int drainTo(Collection<? super Runnable> collection) {
+    return drainTo(collection, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super Runnable> collection, int maxElements) {
+    ObjectUtils.notNull(collection, "'collection' is required!");
+    if (collection == this) throw new IllegalArgumentException("Cannot drain queue to itself!");
+
+    lock.lock();
+    try {
+      int drained = 0;
+      while (drained < maxElements && size > 0) {
+        collection.add(dequeue());
+        drained++;
+      }
+      return drained;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Iterator<Runnable> iterator() {
+    List<Entry> snapshot = new ArrayList<>();
+    lock.lock();
+    try {
+      for (KeyQueue queue : queues.values()) {
+        snapshot.addAll(queue.entries);
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    snapshot.sort(Comparator.comparingLong(entry -> entry.sequence));
+    Iterator<Entry> entries = snapshot.iterator();
+    return new Iterator<Runnable>() {
+      private Runnable current;
+
+      @Override
+      public boolean hasNext() {
+        return entries.hasNext();
+      }
+
+      @Override
+      public Runnable next() {
+        current = entries.next().task;
+        return current;
+      }
+
+      @Override
+      public void remove() {
+        if (current == null) throw new IllegalStateException();
+        FairTaskQueue.this.remove(current);
+        current = null;
+      }
+    };
+  }
+
+  /**
+   * Return per-key metrics: the number of queued tasks, the age of the oldest queued task and statistics about how long
+   * dequeued tasks have been waiting.
+   *
+   * @return Metrics per key
+   * @throws MetricException If metrics could not be created
+   */
+  Metrics getMetrics() throws MetricException {
+    long now = System.nanoTime();
+    MetricsGroup metrics = new MetricsGroup();
+
+    lock.lock();
+    try {
+      evictStatistics(now, false);
+      for (KeyStatistics stats : statistics.values()) {
+        KeyQueue queue = queues.get(stats.key);
+        Entry oldest = queue != null ? queue.entries.peekFirst() : null;
+        metrics.addSubMetrics(stats.key, new MetricsData()
+            .addData("queueDepth", queue != null ? queue.entries.size() : 0)
+            .addData("weight", weightOf(stats.key))
+            .addData("totalDequeuedTasks", stats.dequeuedTasks)
+            .addData("totalWaitTimeMillis", TimeUnit.NANOSECONDS.toMillis(stats.totalWaitNanos))
+            .addData("maxWaitTimeMillis", TimeUnit.NANOSECONDS.toMillis(stats.maxWaitNanos))
+            .addData("oldestQueuedTaskAgeMillis", oldest != null ? TimeUnit.NANOSECONDS.toMillis(now - oldest.enqueued) : 0));
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    return metrics;
+  }
+
+  private Runnable dequeue() {
+    KeyQueue queue = activeQueues.peekFirst();
+    if (queue == null) return null;
+
+    // Start a new turn for the key at the head, it may dequeue as many tasks as its weight.
+    if (queue.deficit <= 0) queue.deficit = weightOf(queue.key);
+    Entry entry = queue.entries.pollFirst();
+    queue.deficit--;
+    size--;
+
+    if (queue.entries.isEmpty()) {
+      deactivate(queue);
+    } else if (queue.deficit <= 0) {
+      // Turn is over, move on to the next key.
+      activeQueues.pollFirst();
+      activeQueues.addLast(queue);
+    }
+
+    long now = System.nanoTime();
+    long waitNanos = now - entry.enqueued;
+    // Statistics of keys with queued tasks are never evicted.
+    KeyStatistics stats = statistics.get(queue.key);
+    stats.lastUsed = now;
+    stats.dequeuedTasks++;
+    stats.totalWaitNanos += waitNanos;
+    stats.maxWaitNanos = Math.max(stats.maxWaitNanos, waitNanos);
+    return entry.task;
+  }
+
+  /**
+   * Drop statistics of keys without queued tasks which haven't been used within the expiry time. If requested, also
+   * drop statistics of the least recently used keys until no more than the maximum number of keys are tracked.
+   */
+  private void evictStatistics(long now, boolean enforceMaximum) {
+    Iterator<KeyStatistics> iterator = statistics.values().iterator();
+    while (iterator.hasNext()) {
+      KeyStatistics stats = iterator.next();
+      if (queues.containsKey(stats.key)) continue;
+      boolean expired = now - stats.lastUsed > statisticsExpiryNanos;
+      if (expired || (enforceMaximum && statistics.size() - queues.size() > maximumTrackedKeys)) {
+        iterator.remove();
+      } else if (!enforceMaximum) {
+        // Keys are ordered by last use, all remaining keys have been used more recently.
+        return;
+      }
+    }
+  }
+
+  private void deactivate(KeyQueue queue) {
+    // Keep no state for keys without queued tasks, a key returning later starts a fresh turn.
+    activeQueues.remove(queue);
+    queues.remove(queue.key);
+    queue.deficit = 0;
+  }
+
+  private int weightOf(String key) {
+    return weights.getOrDefault(key, DEFAULT_WEIGHT);
+  }
+
+  private static class Entry {
+    private final Runnable task;
+    private final long sequence;
+    private final long enqueued;
+
+    private Entry(Runnable task, long sequence, long enqueued) {
+      this.task = task;
+      this.sequence = sequence;
+      this.enqueued = enqueued;
+    }
+  }
+
+  private static class KeyQueue {
+    private final String key;
+    private final Deque<Entry> entries = new ArrayDeque<>();
+    private int deficit;
+
+    private KeyQueue(String key) {
+      this.key = key;
+    }
+  }
+
+  private static class KeyStatistics {
+    private final String key;
+    private long dequeuedTasks;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+    private long lastUsed;
+
+    private KeyStatistics(String key) {
+      this.key = key;
+    }
+  }
+}
@@ -8,21 +8,55 @@ import no.mnemonic.commons.logging.Logger;
 import no.mnemonic.commons.logging.Logging;
 import no.mnemonic.commons.metrics.*;
 import no.mnemonic.commons.utilities.StringUtils;
+import no.mnemonic.commons.utilities.collections.CollectionUtils;
+import no.mnemonic.commons.utilities.collections.MapUtils;
 import no.mnemonic.commons.utilities.lambda.LambdaUtils;
+import no.mnemonic.services.triggers.action.HttpClientAction;
 import no.mnemonic.services.triggers.api.service.v1.TriggerAdministrationService;
 import no.mnemonic.services.triggers.pipeline.api.SubmissionException;
+import no.mnemonic.services.triggers.pipeline.api.SubmissionResult;
 import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
 import no.mnemonic.services.triggers.pipeline.api.TriggerEventConsumer;
 
 import jakarta.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import static no.mnemonic.services.triggers.pipeline.api.SubmissionException.ErrorCode.*;
 
 /**
  * Worker implementation of a {@link TriggerEventConsumer} using a fixed number of worker threads and an in-memory
  * queue for dispatching submitted {@link TriggerEvent}s to those worker threads.
+ * <p>
+ * The queue is bounded by the configured queue capacity, independent of the number of worker threads. What happens
+ * when an event is submitted while all worker threads are busy and the queue is full is determined by the configured
+ * {@link OverflowPolicy}. By default queued events are dispatched in submission order, alternatively they can be
+ * dispatched fairly per organization or service (see {@link SchedulingMode}).
+ * <p>
+ * Optionally, events can be evaluated on virtual threads (requires a JDK supporting them, otherwise the worker falls
+ * back to platform threads). In this mode each task is executed on a new virtual thread and concurrency is limited by
+ * the maximum number of concurrent tasks instead of the number of platform worker threads, which allows many
+ * TriggerActions to wait on I/O at the same time without occupying an OS thread each.
+ * <p>
+ * With adaptive pool sizing enabled the number of worker threads (or concurrent tasks on virtual threads) and the
+ * admission limit are adjusted periodically within the configured bounds, based on the measured queue wait time and
+ * task latency (see {@link AdaptivePoolSizeController}). The configured number of threads is used as initial size.
+ * <p>
+ * When stopped the worker doesn't accept any new events, but keeps processing queued events until the drain timeout
+ * expires. Events still queued afterwards are written to the configured spill directory and restored when the worker
+ * is started again, otherwise they are lost. Retries of failed actions which haven't been executed by then are stored
+ * in the dead-letter store if configured, otherwise they are lost as well.
  */
 public class InMemoryQueueWorker implements LifecycleAspect, MetricAspect, TriggerEventConsumer, ValidationAspect {
 
@@ -30,20 +64,97 @@ public class InMemoryQueueWorker implements LifecycleAspect, MetricAspect, Trigg
 
   private static final int DEFAULT_NUMBER_OF_WORKER_THREADS = 4;
   private static final long DEFAULT_SUBMISSION_WAIT_TIME_SECONDS = 30;
-  private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+  private static final long DEFAULT_ACTION_EXECUTION_DEADLINE_SECONDS = 120;
+  private static final int DEFAULT_QUEUE_CAPACITY = 0;
+  private static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.Block;
+  private static final int DEFAULT_MAXIMUM_CONCURRENT_TASKS = 1000;
+  private static final long DEFAULT_DRAIN_TIMEOUT_SECONDS = 30;
+  private static final int DEFAULT_MINIMUM_WORKER_THREADS = 1;
+  private static final int DEFAULT_MAXIMUM_WORKER_THREADS = 64;
+  private static final long DEFAULT_TARGET_QUEUE_WAIT_MILLIS = 100;
+  private static final long DEFAULT_ADAPTATION_INTERVAL_MILLIS = 1000;
 
   private final AtomicLong totalFailedTasksCounter = new AtomicLong();
+  private final AtomicLong totalRejectedEventsCounter = new AtomicLong();
+  private final AtomicLong totalDroppedEventsCounter = new AtomicLong();
+  private final AtomicLong totalDrainedEventsCounter = new AtomicLong();
+  private final AtomicLong totalSpilledEventsCounter = new AtomicLong();
+  private final AtomicLong totalRestoredEventsCounter = new AtomicLong();
+  private final AtomicLong totalLostEventsCounter = new AtomicLong();
+  private final AtomicInteger queueHighWaterMark = new AtomicInteger();
+  private final Queue<PendingSubmission> pendingSubmissions = new ConcurrentLinkedQueue<>();
   private final PerformanceMonitor evaluationMonitor = new PerformanceMonitor(TimeUnit.MINUTES, 60, 1);
 
   @Dependency
   private final TriggerAdministrationService service;
 
   private RuleEvaluationEngine ruleEvaluationEngine;
-  private ThreadPoolExecutor threadPool;
-  private Semaphore submissionLimiter;
+  private WorkerPool threadPool;
+  private ResizableSemaphore submissionLimiter;
+  private AdaptivePoolSizeController poolSizeController;
+  private ScheduledExecutorService adaptationExecutor;
+  private ScheduledThreadPoolExecutor submissionTimer;
+  private DeadLetterStore deadLetterStore;
+  private volatile boolean draining;
 
   private int numberOfWorkerThreads = DEFAULT_NUMBER_OF_WORKER_THREADS;
   private long submissionWaitTimeSeconds = DEFAULT_SUBMISSION_WAIT_TIME_SECONDS;
+  private long actionExecutionDeadlineSeconds = DEFAULT_ACTION_EXECUTION_DEADLINE_SECONDS;
+  private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+  private OverflowPolicy overflowPolicy = DEFAULT_OVERFLOW_POLICY;
+  private boolean useVirtualThreads;
+  private SchedulingMode schedulingMode = SchedulingMode.Fifo;
+  private FairnessKey fairnessKey = FairnessKey.Organization;
+  private Map<String, Integer> fairSchedulingWeights = new HashMap<>();
+  private int maximumConcurrentTasks = DEFAULT_MAXIMUM_CONCURRENT_TASKS;
+  private String deadLetterDirectory;
+  private long drainTimeoutSeconds = DEFAULT_DRAIN_TIMEOUT_SECONDS;
+  private String spillDirectory;
+  private boolean adaptivePoolSizing;
+  private int minimumWorkerThreads = DEFAULT_MINIMUM_WORKER_THREADS;
+  private int maximumWorkerThreads = DEFAULT_MAXIMUM_WORKER_THREADS;
+  private long targetQueueWaitMillis = DEFAULT_TARGET_QUEUE_WAIT_MILLIS;
+  private long adaptationIntervalMillis = DEFAULT_ADAPTATION_INTERVAL_MILLIS;
+
+  /**
+   * Policy applied when an event is submitted while all worker threads are busy and the queue is full.
+   */
+  public enum OverflowPolicy {
+    /**
+     * Wait up to the configured submission wait time for space in the queue, then reject the event.
+     */
+    Block,
+    /**
+     * Reject the event immediately.
+     */
+    Reject,
+    /**
+     * Drop the oldest queued event which hasn't been processed yet in order to make space for the submitted event.
+     */
+    DropOldest
+  }
+
+  /**
+   * Order in which queued events are dispatched to the worker threads.
+   */
+  public enum SchedulingMode {
+    /**
+     * Dispatch events in the order they were submitted.
+     */
+    Fifo,
+    /**
+     * Queue events per {@link FairnessKey} and serve the queues in (weighted) round-robin order, such that a single
+     * organization or service submitting many events cannot delay the events of everyone else.
+     */
+    Fair
+  }
+
+  /**
+   * Property of an event used to group events in {@link SchedulingMode#Fair} mode.
+   */
+  public enum FairnessKey {
+    Organization, Service
+  }
 
   @Inject
   public InMemoryQueueWorker(TriggerAdministrationService service) {
@@ -57,74 +168,263 @@ public class InMemoryQueueWorker implements LifecycleAspect, MetricAspect, Trigg
 
     if (threadPool != null) {
       metrics.addData("currentlyActiveTasks", threadPool.getActiveCount());
+      metrics.addData("maximumActiveTasks", threadPool.getMaximumPoolSize());
       metrics.addData("totalScheduledTasks", threadPool.getTaskCount());
       metrics.addData("totalCompletedTasks", threadPool.getCompletedTaskCount());
       metrics.addData("totalFailedTasks", totalFailedTasksCounter.get());
+      metrics.addData("queueCapacity", queueCapacity);
+      metrics.addData("queueDepth", threadPool.getQueue().size());
+      metrics.addData("queueHighWaterMark", queueHighWaterMark.get());
+      metrics.addData("totalRejectedEvents", totalRejectedEventsCounter.get());
+      metrics.addData("totalDroppedEvents", totalDroppedEventsCounter.get());
+      metrics.addData("pendingSubmissions", pendingSubmissions.size());
+      if (deadLetterStore != null) {
+        metrics.addData("pendingDeadLetters", deadLetterStore.getPendingDeadLetters());
+        metrics.addData("totalDeadLetters", deadLetterStore.getTotalDeadLetters());
+      }
       metrics.addData("totalRuleEvaluationEngineInvocations", evaluationMonitor.getTotalInvocations());
       metrics.addData("totalRuleEvaluationEngineTimeSpent", evaluationMonitor.getTotalTimeSpent());
     }
+    // Drain metrics are updated while stopping, thus, report them also if the component is stopped.
+    metrics.addData("totalDrainedEvents", totalDrainedEventsCounter.get());
+    metrics.addData("totalSpilledEvents", totalSpilledEventsCounter.get());
+    metrics.addData("totalRestoredEvents", totalRestoredEventsCounter.get());
+    metrics.addData("totalLostEvents", totalLostEventsCounter.get());
 
-    return new MetricsGroup()
+    MetricsGroup group = new MetricsGroup()
         .addSubMetrics("ruleEvaluationEngine", ruleEvaluationEngine.getMetrics())
-        .addSubMetrics("inMemoryQueueWorker", metrics);
+        .addSubMetrics("inMemoryQueueWorker", metrics)
+        .addSubMetrics("httpConnectionPools", HttpClientAction.getConnectionPoolMetrics())
+        .addSubMetrics("httpCircuitBreakers", HttpClientAction.getCircuitBreakerMetrics());
+    if (threadPool != null && threadPool.getQueue() instanceof FairTaskQueue) {
+      group.addSubMetrics("fairQueues", ((FairTaskQueue) threadPool.getQueue()).getMetrics());
+    }
+    if (poolSizeController != null) {
+      group.addSubMetrics("adaptivePoolSizing", poolSizeController.getMetrics());
+    }
+    return group;
   }
 
   @Override
   public void validate(ValidationContext validationContext) {
     if (numberOfWorkerThreads <= 0) validationContext.addError(this, "'numberOfWorkerThreads' must be > 0!");
     if (submissionWaitTimeSeconds <= 0) validationContext.addError(this, "'submissionWaitTimeSeconds' must be > 0!");
+    if (actionExecutionDeadlineSeconds <= 0) validationContext.addError(this, "'actionExecutionDeadlineSeconds' must be > 0!");
+    if (maximumConcurrentTasks <= 0) validationContext.addError(this, "'maximumConcurrentTasks' must be > 0!");
+    if (queueCapacity < 0) validationContext.addError(this, "'queueCapacity' must be >= 0!");
+    if (drainTimeoutSeconds < 0) validationContext.addError(this, "'drainTimeoutSeconds' must be >= 0!");
+    if (overflowPolicy == null) validationContext.addError(this, "'overflowPolicy' is required!");
+    if (schedulingMode == null) validationContext.addError(this, "'schedulingMode' is required!");
+    if (fairnessKey == null) validationContext.addError(this, "'fairnessKey' is required!");
+    if (fairSchedulingWeights.values().stream().anyMatch(weight -> weight == null || weight <= 0)) {
+      validationContext.addError(this, "All 'fairSchedulingWeights' must be > 0!");
+    }
+    if (adaptivePoolSizing) {
+      if (minimumWorkerThreads <= 0) validationContext.addError(this, "'minimumWorkerThreads' must be > 0!");
+      if (maximumWorkerThreads < minimumWorkerThreads) validationContext.addError(this, "'maximumWorkerThreads' must be >= 'minimumWorkerThreads'!");
+      if (targetQueueWaitMillis <= 0) validationContext.addError(this, "'targetQueueWaitMillis' must be > 0!");
+      if (adaptationIntervalMillis <= 0) validationContext.addError(this, "'adaptationIntervalMillis' must be > 0!");
+    }
   }
 
   @Override
   public void startComponent() {
-    threadPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(numberOfWorkerThreads);
-    submissionLimiter = new Semaphore(threadPool.getMaximumPoolSize(), true); // One permit per available thread.
+    if (!StringUtils.isBlank(deadLetterDirectory)) {
+      try {
+        deadLetterStore = DeadLetterStore.open(Paths.get(deadLetterDirectory));
+      } catch (IOException ex) {
+        throw new IllegalStateException("Could not open dead-letter store in " + deadLetterDirectory + "!", ex);
+      }
+      ruleEvaluationEngine.setDeadLetterStore(deadLetterStore);
+    }
+    ruleEvaluationEngine.setActionExecutionDeadlineMillis(TimeUnit.SECONDS.toMillis(actionExecutionDeadlineSeconds));
+    threadPool = createThreadPool();
+    poolSizeController = null;
+    if (adaptivePoolSizing) {
+      poolSizeController = new AdaptivePoolSizeController(minimumWorkerThreads, maximumWorkerThreads,
+          threadPool.getMaximumPoolSize(), TimeUnit.MILLISECONDS.toNanos(targetQueueWaitMillis));
+      threadPool.setMaximumPoolSize(poolSizeController.getPoolSize());
+    }
+    // One permit per available thread plus one per queue slot. The executor's own queue is unbounded because retries
+    // of failed actions are queued there as well, but they don't count against the capacity.
+    submissionLimiter = new ResizableSemaphore(threadPool.getMaximumPoolSize() + queueCapacity);
+    queueHighWaterMark.set(0);
+    submissionTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "submission-timeout");
+      thread.setDaemon(true);
+      return thread;
+    });
+    submissionTimer.setRemoveOnCancelPolicy(true);
+    // Retries of failed actions are executed by the worker threads as well, but don't count against submissions.
+    ruleEvaluationEngine.setRetryExecutor(threadPool);
+    draining = false;
+    if (!StringUtils.isBlank(spillDirectory)) {
+      restoreSpilledEvents();
+    }
+    if (poolSizeController != null) {
+      adaptationExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "adaptive-pool-sizing"));
+      adaptationExecutor.scheduleWithFixedDelay(() -> LambdaUtils.tryTo(this::adaptPoolSize,
+          ex -> LOGGER.warning(ex, "Failure while adapting pool size.")), adaptationIntervalMillis, adaptationIntervalMillis, TimeUnit.MILLISECONDS);
+    }
   }
 
   @Override
   public void stopComponent() {
+    // Stop accepting new events before draining the queue.
+    draining = true;
+    // Don't resize the pool while draining.
     LambdaUtils.tryTo(() -> {
-      if (threadPool == null) return;
-      threadPool.shutdown();
-      threadPool.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      if (adaptationExecutor == null) return;
+      adaptationExecutor.shutdownNow();
+      adaptationExecutor.awaitTermination(drainTimeoutSeconds, TimeUnit.SECONDS);
+      adaptationExecutor = null;
+    }, ex -> LOGGER.warning(ex, "Failure while shutting down adaptive pool sizing."));
+    // Events still waiting to be accepted won't be accepted anymore.
+    for (PendingSubmission pending : pendingSubmissions) {
+      rejectPendingSubmission(pending, () -> new SubmissionException(String.format("TriggerEvent with id = %s could " +
+          "not be accepted for processing. Component is shutting down.", pending.event.getId()), ComponentUnavailable));
+    }
+    if (submissionTimer != null) {
+      submissionTimer.shutdownNow();
+      submissionTimer = null;
+    }
+    if (threadPool != null) {
+      LambdaUtils.tryTo(this::drainThreadPool, ex -> LOGGER.warning(ex, "Failure while shutting down thread pool."));
       threadPool = null;
-    }, ex -> LOGGER.warning(ex, "Failure while shutting down thread pool."));
+    }
+    // Release resources held by TriggerActions kept for reuse after all tasks have finished.
+    LambdaUtils.tryTo(ruleEvaluationEngine::close, ex -> LOGGER.warning(ex, "Failure while closing rule evaluation engine."));
+    LambdaUtils.tryTo(() -> {
+      if (deadLetterStore == null) return;
+      ruleEvaluationEngine.setDeadLetterStore(null);
+      deadLetterStore.close();
+      deadLetterStore = null;
+    }, ex -> LOGGER.warning(ex, "Failure while closing dead-letter store."));
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * If the event cannot be accepted immediately and the overflow policy is {@link OverflowPolicy#Block} the calling
+   * thread waits for up to the configured submission wait time. Waiting events are accepted in the order they were
+   * submitted, together with events submitted using {@link #submitAsync(TriggerEvent)} and {@link #submitAll(Collection)}.
+   */
   @Override
   public void submit(TriggerEvent event) throws SubmissionException {
-    if (threadPool == null) throw new IllegalStateException("Thread pool is not initialized! Component not started?");
-    if (submissionLimiter == null) throw new IllegalStateException("Submission limiter is not initialized! Component not started?");
-    validateTriggerEvent(event);
+    checkStarted();
+    TriggerEventValidator.validate(event);
+    checkAccepting(event);
 
+    // Wait until a processing thread or a queue slot becomes available before accepting the event.
+    PendingSubmission submission = admit(event);
     try {
-      // Wait until a processing thread becomes available before accepting the event.
-      if (!submissionLimiter.tryAcquire(submissionWaitTimeSeconds, TimeUnit.SECONDS)) {
-        LOGGER.info("No processing threads available [active tasks: %d, maximum pool size: %d].",
-            threadPool.getActiveCount(), threadPool.getMaximumPoolSize());
-        throw new SubmissionException(String.format("TriggerEvent with id = %s could not be accepted for processing. " +
-            "No processing threads available.", event.getId()), NoResourcesAvailable);
-      }
-
-      // Schedule event for evaluation.
-      threadPool.execute(createRuleEvaluationTask(event));
-      if (LOGGER.isDebug()) {
-        LOGGER.debug("Scheduled rule evaluation task for event with id = %s.", event.getId());
-      }
-    } catch (RejectedExecutionException ex) {
-      LOGGER.info("No processing threads available [active tasks: %d, maximum pool size: %d].",
-          threadPool.getActiveCount(), threadPool.getMaximumPoolSize());
-      throw new SubmissionException(String.format("TriggerEvent with id = %s could not be accepted for processing. " +
-          "No processing threads available.", event.getId()), ex, NoResourcesAvailable);
+      awaitAdmission(submission);
     } catch (InterruptedException ex) {
       LOGGER.info(ex, "Received interrupt, shutdown component.");
+      rejectPendingSubmission(submission, () -> new SubmissionException(String.format("TriggerEvent with id = %s could " +
+          "not be accepted for processing. Component is shutting down.", event.getId()), ex, ComponentUnavailable));
       stopComponent();
       Thread.currentThread().interrupt();
-      throw new SubmissionException(String.format("TriggerEvent with id = %s could not be accepted for processing. " +
-          "Component is shutting down.", event.getId()), ex, ComponentUnavailable);
+      // The submission might have been accepted or rejected concurrently, report its actual outcome.
+      awaitAdmissionUninterruptibly(submission);
     }
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * If the event cannot be accepted immediately and the overflow policy is {@link OverflowPolicy#Block} the event
+   * waits for up to the configured submission wait time in a queue of pending submissions without blocking the calling
+   * thread. Pending submissions are accepted in the order they were submitted once processing threads or queue slots
+   * become available.
+   */
+  @Override
+  public CompletionStage<Void> submitAsync(TriggerEvent event) {
+    checkStarted();
+
+    try {
+      TriggerEventValidator.validate(event);
+      checkAccepting(event);
+      return admit(event).future.minimalCompletionStage();
+    } catch (SubmissionException ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * All valid events are admitted in a single step as long as enough processing threads and queue slots are available
+   * and no other events are waiting to be accepted. Remaining events are handled according to the configured overflow
+   * policy, where {@link OverflowPolicy#Block} waits at most the configured submission wait time for the whole batch.
+   * Waiting events are accepted in submission order behind events which were already waiting.
+   */
+  @Override
+  public List<SubmissionResult> submitAll(Collection<? extends TriggerEvent> events) {
+    checkStarted();
+    if (CollectionUtils.isEmpty(events)) return new ArrayList<>();
+
+    List<TriggerEvent> submitted = new ArrayList<>(events);
+    SubmissionResult[] results = new SubmissionResult[submitted.size()];
+
+    // Validate all events first in order to know how many permits are required.
+    List<Integer> valid = new ArrayList<>(submitted.size());
+    for (int i = 0; i < submitted.size(); i++) {
+      try {
+        TriggerEventValidator.validate(submitted.get(i));
+        checkAccepting(submitted.get(i));
+        valid.add(i);
+      } catch (SubmissionException ex) {
+        results[i] = SubmissionResult.rejected(submitted.get(i), ex);
+      }
+    }
+
+    // Don't overtake events which are already waiting to be accepted, the whole batch has to wait in this case.
+    int admitted = pendingSubmissions.isEmpty() ? acquireSubmissionPermits(valid.size()) : 0;
+    PendingSubmission[] submissions = new PendingSubmission[valid.size()];
+    for (int n = 0; n < valid.size(); n++) {
+      TriggerEvent event = submitted.get(valid.get(n));
+      try {
+        if (n < admitted) {
+          schedule(event);
+          results[valid.get(n)] = SubmissionResult.accepted(event);
+        } else {
+          // All remaining events are queued as pending submissions at once, thus, they expire at the same time.
+          submissions[n] = admit(event);
+        }
+      } catch (RejectedExecutionException ex) {
+        results[valid.get(n)] = SubmissionResult.rejected(event, noResourcesAvailable(event, ex));
+      }
+    }
+
+    for (int n = 0; n < valid.size(); n++) {
+      if (submissions[n] == null) continue;
+      TriggerEvent event = submitted.get(valid.get(n));
+      try {
+        // Don't wait at all once interrupted.
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+        awaitAdmission(submissions[n]);
+        results[valid.get(n)] = SubmissionResult.accepted(event);
+      } catch (SubmissionException ex) {
+        results[valid.get(n)] = SubmissionResult.rejected(event, ex);
+      } catch (InterruptedException ex) {
+        // Keep the interrupt and reject all remaining events without waiting any longer. The submission might have
+        // been accepted or rejected concurrently, report its actual outcome.
+        Thread.currentThread().interrupt();
+        rejectPendingSubmission(submissions[n], () -> new SubmissionException(String.format("TriggerEvent with id = %s " +
+            "could not be accepted for processing. Received interrupt.", event.getId()), ex, ComponentUnavailable));
+        try {
+          awaitAdmissionUninterruptibly(submissions[n]);
+          results[valid.get(n)] = SubmissionResult.accepted(event);
+        } catch (SubmissionException rejected) {
+          results[valid.get(n)] = SubmissionResult.rejected(event, rejected);
+        }
+      }
+    }
+
+    return Arrays.asList(results);
+  }
+
   /**
    * Configure the number of used worker threads. Default is 4.
    *
@@ -148,6 +448,213 @@ public class InMemoryQueueWorker implements LifecycleAspect, MetricAspect, Trigg
     return this;
   }
 
+  /**
+   * Configure the maximum time a single TriggerAction execution may take before it is cancelled by interrupting the
+   * worker thread. Default is 120 seconds.
+   *
+   * @param actionExecutionDeadlineSeconds Action execution deadline
+   * @return this
+   */
+  public InMemoryQueueWorker setActionExecutionDeadlineSeconds(long actionExecutionDeadlineSeconds) {
+    this.actionExecutionDeadlineSeconds = actionExecutionDeadlineSeconds;
+    return this;
+  }
+
+  /**
+   * Configure whether events are evaluated on virtual threads instead of a fixed number of platform worker threads.
+   * If the running JDK doesn't support virtual threads the worker falls back to platform worker threads. Default is false.
+   *
+   * @param useVirtualThreads True to use virtual threads
+   * @return this
+   */
+  public InMemoryQueueWorker setUseVirtualThreads(boolean useVirtualThreads) {
+    this.useVirtualThreads = useVirtualThreads;
+    return this;
+  }
+
+  /**
+   * Configure the maximum number of events evaluated concurrently on virtual threads. Only used if virtual threads
+   * are enabled and supported, otherwise concurrency is limited by the number of worker threads. Default is 1000.
+   *
+   * @param maximumConcurrentTasks Maximum number of concurrent tasks
+   * @return this
+   */
+  public InMemoryQueueWorker setMaximumConcurrentTasks(int maximumConcurrentTasks) {
+    this.maximumConcurrentTasks = maximumConcurrentTasks;
+    return this;
+  }
+
+  /**
+   * Configure the maximum number of events waiting for a worker thread, independent of the number of worker threads.
+   * Default is 0, i.e. events are only accepted if a worker thread is available.
+   *
+   * @param queueCapacity Queue capacity
+   * @return this
+   */
+  public InMemoryQueueWorker setQueueCapacity(int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+    return this;
+  }
+
+  /**
+   * Configure what happens when an event is submitted while all worker threads are busy and the queue is full.
+   * Default is {@link OverflowPolicy#Block}.
+   *
+   * @param overflowPolicy Overflow policy
+   * @return this
+   */
+  public InMemoryQueueWorker setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+    return this;
+  }
+
+  /**
+   * Configure the order in which queued events are dispatched to the worker threads. Default is {@link SchedulingMode#Fifo}.
+   *
+   * @param schedulingMode Scheduling mode
+   * @return this
+   */
+  public InMemoryQueueWorker setSchedulingMode(SchedulingMode schedulingMode) {
+    this.schedulingMode = schedulingMode;
+    return this;
+  }
+
+  /**
+   * Configure by which property events are grouped in {@link SchedulingMode#Fair} mode.
+   * Default is {@link FairnessKey#Organization}.
+   *
+   * @param fairnessKey Fairness key
+   * @return this
+   */
+  public InMemoryQueueWorker setFairnessKey(FairnessKey fairnessKey) {
+    this.fairnessKey = fairnessKey;
+    return this;
+  }
+
+  /**
+   * Configure weights per key (organization id or service name, depending on the {@link FairnessKey}) used in
+   * {@link SchedulingMode#Fair} mode. A key with weight n is served n events per round, keys without a configured
+   * weight are served one event per round.
+   *
+   * @param fairSchedulingWeights Weights per key
+   * @return this
+   */
+  public InMemoryQueueWorker setFairSchedulingWeights(Map<String, Integer> fairSchedulingWeights) {
+    this.fairSchedulingWeights = MapUtils.map(fairSchedulingWeights);
+    return this;
+  }
+
+  /**
+   * Configure a directory in which TriggerAction invocations are stored which finally failed with a
+   * TriggerExecutionException (e.g. because the action's endpoint is unavailable). Stored invocations can be executed
+   * again using {@link #replayDeadLetters(int, int)}. By default failed invocations are only logged.
+   *
+   * @param deadLetterDirectory Directory of the dead-letter store, must not be shared with other workers
+   * @return this
+   */
+  public InMemoryQueueWorker setDeadLetterDirectory(String deadLetterDirectory) {
+    this.deadLetterDirectory = deadLetterDirectory;
+    return this;
+  }
+
+  /**
+   * Configure how long stopping the worker waits for queued and in-flight events to be processed. Events still queued
+   * afterwards are spilled to the spill directory, if configured. Default is 30 seconds.
+   *
+   * @param drainTimeoutSeconds Drain timeout
+   * @return this
+   */
+  public InMemoryQueueWorker setDrainTimeoutSeconds(long drainTimeoutSeconds) {
+    this.drainTimeoutSeconds = drainTimeoutSeconds;
+    return this;
+  }
+
+  /**
+   * Configure a directory in which events are stored which are still queued after the drain timeout expired while
+   * stopping the worker. Those events are processed when the worker is started again. By default such events are lost.
+   *
+   * @param spillDirectory Directory of the spill files, must not be shared with other workers
+   * @return this
+   */
+  public InMemoryQueueWorker setSpillDirectory(String spillDirectory) {
+    this.spillDirectory = spillDirectory;
+    return this;
+  }
+
+  /**
+   * Configure whether the pool size and the admission limit are adjusted automatically based on the measured queue wait
+   * time and task latency. Default is false.
+   *
+   * @param adaptivePoolSizing True to enable adaptive pool sizing
+   * @return this
+   */
+  public InMemoryQueueWorker setAdaptivePoolSizing(boolean adaptivePoolSizing) {
+    this.adaptivePoolSizing = adaptivePoolSizing;
+    return this;
+  }
+
+  /**
+   * Configure the minimum pool size used with adaptive pool sizing. Default is 1.
+   *
+   * @param minimumWorkerThreads Minimum number of worker threads
+   * @return this
+   */
+  public InMemoryQueueWorker setMinimumWorkerThreads(int minimumWorkerThreads) {
+    this.minimumWorkerThreads = minimumWorkerThreads;
+    return this;
+  }
+
+  /**
+   * Configure the maximum pool size used with adaptive pool sizing. Default is 64.
+   *
+   * @param maximumWorkerThreads Maximum number of worker threads
+   * @return this
+   */
+  public InMemoryQueueWorker setMaximumWorkerThreads(int maximumWorkerThreads) {
+    this.maximumWorkerThreads = maximumWorkerThreads;
+    return this;
+  }
+
+  /**
+   * Configure the average queue wait time above which adaptive pool sizing adds worker threads. Default is 100 ms.
+   *
+   * @param targetQueueWaitMillis Target queue wait time
+   * @return this
+   */
+  public InMemoryQueueWorker setTargetQueueWaitMillis(long targetQueueWaitMillis) {
+    this.targetQueueWaitMillis = targetQueueWaitMillis;
+    return this;
+  }
+
+  /**
+   * Configure how often adaptive pool sizing adjusts the pool size. Default is 1000 ms.
+   *
+   * @param adaptationIntervalMillis Adaptation interval
+   * @return this
+   */
+  public InMemoryQueueWorker setAdaptationIntervalMillis(long adaptationIntervalMillis) {
+    this.adaptationIntervalMillis = adaptationIntervalMillis;
+    return this;
+  }
+
+  /**
+   * Execute all TriggerAction invocations stored in the dead-letter store again, e.g. once a failing endpoint has
+   * recovered. Invocations are executed with their original trigger parameters, without evaluating the TriggerEvents
+   * again. Invocations which fail again are kept in the dead-letter store.
+   *
+   * @param parallelism                 Maximum number of concurrently executed invocations
+   * @param maximumInvocationsPerSecond Maximum number of invocations per second, unlimited if &lt;= 0
+   * @return Result of the replay
+   * @throws InterruptedException  If interrupted while replaying, dead letters not replayed yet are kept in this case
+   * @throws IOException           If replayed invocations could not be removed from the dead-letter store
+   * @throws IllegalStateException If no dead-letter directory is configured, the component is not started or another
+   *                               replay is running already
+   */
+  public DeadLetterReplayResult replayDeadLetters(int parallelism, int maximumInvocationsPerSecond) throws InterruptedException, IOException {
+    if (deadLetterStore == null) throw new IllegalStateException("Dead-letter store is not initialized! Component not started or no directory configured?");
+    return ruleEvaluationEngine.replayDeadLetters(parallelism, maximumInvocationsPerSecond);
+  }
+
   /**
    * Configure the used rule evaluation engine. Should only be used for testing.
    *
@@ -159,36 +666,333 @@ public class InMemoryQueueWorker implements LifecycleAspect, MetricAspect, Trigg
     return this;
   }
 
-  private void validateTriggerEvent(TriggerEvent event) throws SubmissionException {
-    if (event == null) throw new SubmissionException("TriggerEvent is null!", InvalidTriggerEvent);
-    // All fields below must be set for a valid TriggerEvent.
-    if (event.getId() == null) throw new SubmissionException("TriggerEvent is missing id!", InvalidTriggerEvent);
-    if (event.getTimestamp() <= 0) throw new SubmissionException("TriggerEvent is missing timestamp!", InvalidTriggerEvent);
-    if (StringUtils.isBlank(event.getService())) throw new SubmissionException("TriggerEvent is missing service!", InvalidTriggerEvent);
-    if (StringUtils.isBlank(event.getEvent())) throw new SubmissionException("TriggerEvent is missing event!", InvalidTriggerEvent);
-    if (event.getOrganization() == null) throw new SubmissionException("TriggerEvent is missing organization!", InvalidTriggerEvent);
-    if (event.getAccessMode() == null) throw new SubmissionException("TriggerEvent is missing access mode!", InvalidTriggerEvent);
+  /**
+   * @return Number of scheduled timeouts of pending submissions. Should only be used for testing.
+   */
+  int getScheduledSubmissionTimeouts() {
+    return submissionTimer != null ? submissionTimer.getQueue().size() : 0;
+  }
+
+  private WorkerPool createThreadPool() {
+    if (useVirtualThreads) {
+      if (VirtualThreads.isSupported()) {
+        // One new virtual thread per task, virtual threads are never pooled.
+        return WorkerPool.withVirtualThreads(maximumConcurrentTasks, createWorkQueue(),
+            VirtualThreads.createThreadFactory("trigger-worker-"));
+      }
+      LOGGER.warning("Virtual threads are not supported by the running JDK, fall back to %d platform worker threads.",
+          numberOfWorkerThreads);
+    }
+
+    return WorkerPool.withPlatformThreads(numberOfWorkerThreads, createWorkQueue());
+  }
+
+  private void adaptPoolSize() {
+    if (draining || threadPool == null) return;
+
+    int previous = threadPool.getMaximumPoolSize();
+    int size = poolSizeController.adjust(threadPool.getActiveCount());
+    if (size == previous) return;
+
+    threadPool.setMaximumPoolSize(size);
+    // The admission limit follows the pool size, the queue capacity stays the same. Reducing permits might leave fewer
+    // than zero permits available until enough running tasks have finished.
+    if (size > previous) {
+      submissionLimiter.release(size - previous);
+      admitPendingSubmissions();
+    } else {
+      submissionLimiter.reducePermits(previous - size);
+    }
+  }
+
+  private BlockingQueue<Runnable> createWorkQueue() {
+    if (schedulingMode == SchedulingMode.Fair) {
+      return new FairTaskQueue(this::getFairnessKey, fairSchedulingWeights);
+    }
+    return new LinkedBlockingQueue<>();
+  }
+
+  private String getFairnessKey(Runnable task) {
+    // Other tasks (retries of failed actions) share the default key.
+    if (!(task instanceof RuleEvaluationTask)) return null;
+
+    TriggerEvent event = ((RuleEvaluationTask) task).event;
+    if (fairnessKey == FairnessKey.Service) return event.getService();
+    return String.valueOf(event.getOrganization());
+  }
+
+  private void drainThreadPool() {
+    threadPool.shutdown();
+    boolean terminated = false;
+    try {
+      // Queued events keep being processed until the drain timeout expires.
+      terminated = threadPool.awaitTermination(drainTimeoutSeconds, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      LOGGER.warning(ex, "Interrupted while draining queued events.");
+      Thread.currentThread().interrupt();
+    }
+
+    if (!terminated) {
+      List<TriggerEvent> queuedEvents = new ArrayList<>();
+      for (Runnable task : threadPool.getQueue()) {
+        if (task instanceof RuleEvaluationTask && threadPool.remove(task)) {
+          queuedEvents.add(((RuleEvaluationTask) task).event);
+        } else if (task instanceof RuleEvaluationEngine.ActionRetry) {
+          // Queued retries of failed actions are abandoned below, they must not be executed afterwards.
+          threadPool.remove(task);
+        }
+      }
+      spillEvents(queuedEvents);
+    }
+
+    // Retries which haven't been executed (queued or still waiting for their backoff) are stored in the dead-letter
+    // store if configured, otherwise they're lost.
+    int lostRetries = ruleEvaluationEngine.abandonPendingRetries();
+    if (lostRetries > 0) {
+      LOGGER.warning("Dropping %d pending retries of failed actions.", lostRetries);
+      totalLostEventsCounter.addAndGet(lostRetries);
+    }
+  }
+
+  private void spillEvents(List<TriggerEvent> events) {
+    if (events.isEmpty()) return;
+    if (StringUtils.isBlank(spillDirectory)) {
+      LOGGER.warning("Drain timeout expired, dropping %d queued events.", events.size());
+      totalLostEventsCounter.addAndGet(events.size());
+      return;
+    }
+
+    try {
+      int spilled = SpilledEventsFile.write(Paths.get(spillDirectory), events);
+      LOGGER.info("Drain timeout expired, spilled %d queued events to %s.", spilled, spillDirectory);
+      totalSpilledEventsCounter.addAndGet(spilled);
+      totalLostEventsCounter.addAndGet(events.size() - spilled);
+    } catch (IOException ex) {
+      LOGGER.error(ex, "Could not spill %d queued events to %s, events are lost.", events.size(), spillDirectory);
+      totalLostEventsCounter.addAndGet(events.size());
+    }
+  }
+
+  private void restoreSpilledEvents() {
+    List<SpilledEventsFile> files;
+    try {
+      files = SpilledEventsFile.readAll(Paths.get(spillDirectory));
+    } catch (IOException ex) {
+      LOGGER.error(ex, "Could not restore spilled events from %s.", spillDirectory);
+      return;
+    }
+
+    for (SpilledEventsFile file : files) {
+      for (TriggerEvent event : file.getEvents()) {
+        // Restored events take a submission permit if available, but they are never rejected, even if the queue
+        // capacity was reduced in the meantime.
+        threadPool.execute(new RuleEvaluationTask(event, submissionLimiter.tryAcquire()));
+      }
+      LOGGER.info("Restored %d spilled events from %s.", file.getEvents().size(), file.getFile());
+      totalRestoredEventsCounter.addAndGet(file.getEvents().size());
+      totalLostEventsCounter.addAndGet(file.getCorruptedEvents());
+      LambdaUtils.tryTo(file::delete, ex -> LOGGER.warning(ex, "Could not delete spill file %s.", file.getFile()));
+    }
+  }
+
+  private void checkStarted() {
+    if (threadPool == null) throw new IllegalStateException("Thread pool is not initialized! Component not started?");
+    if (submissionLimiter == null) throw new IllegalStateException("Submission limiter is not initialized! Component not started?");
+  }
+
+  private void checkAccepting(TriggerEvent event) throws SubmissionException {
+    if (!draining) return;
+    throw new SubmissionException(String.format("TriggerEvent with id = %s could not be accepted for processing. " +
+        "Component is shutting down.", event.getId()), ComponentUnavailable);
+  }
+
+  private boolean acquireSubmissionPermit() {
+    // The permit of a dropped event is handed over to the submitted event. Waiting for a permit is done by adding the
+    // event to the pending submissions instead, such that waiting events are accepted in submission order.
+    return submissionLimiter.tryAcquire() || (overflowPolicy == OverflowPolicy.DropOldest && dropOldestQueuedEvent());
+  }
+
+  private int acquireSubmissionPermits(int requested) {
+    if (requested == 0 || submissionLimiter.tryAcquire(requested)) return requested;
+    // Not enough permits available, take as many as possible and give back the surplus.
+    int acquired = submissionLimiter.drainPermits();
+    if (acquired > requested) {
+      submissionLimiter.release(acquired - requested);
+      return requested;
+    }
+    return acquired;
+  }
+
+  private void schedule(TriggerEvent event) {
+    try {
+      threadPool.execute(new RuleEvaluationTask(event, true));
+    } catch (RejectedExecutionException ex) {
+      // The event has been admitted, but it won't be processed, thus, give back its permit.
+      submissionLimiter.release();
+      throw ex;
+    }
+    queueHighWaterMark.accumulateAndGet(threadPool.getQueue().size(), Math::max);
+    if (LOGGER.isDebug()) {
+      LOGGER.debug("Scheduled rule evaluation task for event with id = %s.", event.getId());
+    }
+  }
+
+  private SubmissionException noResourcesAvailable(TriggerEvent event, Exception cause) {
+    LOGGER.info("No processing threads available [active tasks: %d, maximum pool size: %d, queue depth: %d].",
+        threadPool.getActiveCount(), threadPool.getMaximumPoolSize(), threadPool.getQueue().size());
+    totalRejectedEventsCounter.incrementAndGet();
+    return new SubmissionException(String.format("TriggerEvent with id = %s could not be accepted for processing. " +
+        "No processing threads available.", event.getId()), cause, NoResourcesAvailable);
+  }
+
+  /**
+   * Accept an event right away if possible without overtaking pending submissions. Otherwise, add it to the pending
+   * submissions if the overflow policy allows waiting, or reject it.
+   *
+   * @return Submission which completes once the event has been accepted or rejected
+   */
+  private PendingSubmission admit(TriggerEvent event) {
+    PendingSubmission submission = new PendingSubmission(event);
+    try {
+      // Don't overtake events which are already waiting to be accepted.
+      if (pendingSubmissions.isEmpty() && acquireSubmissionPermit()) {
+        schedule(event);
+        submission.future.complete(null);
+      } else if (overflowPolicy != OverflowPolicy.Block) {
+        submission.future.completeExceptionally(noResourcesAvailable(event, null));
+      } else {
+        enqueue(submission);
+      }
+    } catch (RejectedExecutionException ex) {
+      submission.future.completeExceptionally(noResourcesAvailable(event, ex));
+    }
+    return submission;
+  }
+
+  private void enqueue(PendingSubmission pending) {
+    pendingSubmissions.add(pending);
+    try {
+      ScheduledFuture<?> timeout = submissionTimer.schedule(() -> rejectPendingSubmission(pending,
+          () -> noResourcesAvailable(pending.event, null)), submissionWaitTimeSeconds, TimeUnit.SECONDS);
+      // Remove the timeout as soon as the submission has been accepted or rejected, such that timeouts don't pile up.
+      pending.future.whenComplete((ignored, ex) -> timeout.cancel(false));
+    } catch (RejectedExecutionException ex) {
+      // The component is stopping concurrently.
+      rejectPendingSubmission(pending, () -> noResourcesAvailable(pending.event, ex));
+    }
+    // A permit might have become available before the submission was added to the pending queue.
+    admitPendingSubmissions();
+  }
+
+  private static void awaitAdmission(PendingSubmission submission) throws SubmissionException, InterruptedException {
+    try {
+      submission.future.get();
+    } catch (ExecutionException ex) {
+      // Submissions are only ever rejected with a SubmissionException.
+      throw (SubmissionException) ex.getCause();
+    }
+  }
+
+  private static void awaitAdmissionUninterruptibly(PendingSubmission submission) throws SubmissionException {
+    try {
+      submission.future.join();
+    } catch (CompletionException ex) {
+      throw (SubmissionException) ex.getCause();
+    }
+  }
+
+  private void admitPendingSubmissions() {
+    for (PendingSubmission pending = pendingSubmissions.peek(); pending != null; pending = pendingSubmissions.peek()) {
+      if (!submissionLimiter.tryAcquire()) return;
+      // Whoever removes a pending submission from the queue completes it, it might have expired in the meantime.
+      if (!pendingSubmissions.remove(pending)) {
+        submissionLimiter.release();
+        continue;
+      }
+
+      try {
+        schedule(pending.event);
+        pending.future.complete(null);
+      } catch (RejectedExecutionException ex) {
+        pending.future.completeExceptionally(noResourcesAvailable(pending.event, ex));
+      }
+    }
+  }
+
+  private void rejectPendingSubmission(PendingSubmission pending, Supplier<SubmissionException> error) {
+    if (pendingSubmissions.remove(pending)) {
+      pending.future.completeExceptionally(error.get());
+    }
+  }
+
+  private boolean dropOldestQueuedEvent() {
+    // The queue might also contain retries of failed actions, those are never dropped. The same applies to restored
+    // events without a permit which could be handed over.
+    for (Runnable task : threadPool.getQueue()) {
+      if (task instanceof RuleEvaluationTask && ((RuleEvaluationTask) task).holdsPermit && threadPool.remove(task)) {
+        LOGGER.warning("Queue is full, dropped event with id = %s.", ((RuleEvaluationTask) task).event.getId());
+        totalDroppedEventsCounter.incrementAndGet();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static class ResizableSemaphore extends Semaphore {
+    private static final long serialVersionUID = 445473701169663818L;
+
+    private ResizableSemaphore(int permits) {
+      super(permits, true);
+    }
+
+    @Override
+    protected void reducePermits(int reduction) {
+      super.reducePermits(reduction);
+    }
+  }
+
+  private static class PendingSubmission {
+    private final TriggerEvent event;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    private PendingSubmission(TriggerEvent event) {
+      this.event = event;
+    }
   }
 
-  private Runnable createRuleEvaluationTask(TriggerEvent event) {
-    return () -> {
+  private class RuleEvaluationTask implements Runnable {
+    private final TriggerEvent event;
+    private final boolean holdsPermit;
+    private final long scheduled = System.nanoTime();
+
+    private RuleEvaluationTask(TriggerEvent event, boolean holdsPermit) {
+      this.event = event;
+      this.holdsPermit = holdsPermit;
+    }
+
+    @Override
+    public void run() {
       if (LOGGER.isDebug()) {
         LOGGER.debug("Started rule evaluation task for event with id = %s.", event.getId());
       }
 
+      long started = System.nanoTime();
       try (TimerContext ignored = TimerContext.timerMillis(evaluationMonitor::invoked)) {
         ruleEvaluationEngine.evaluate(event);
       } catch (Exception ex) {
         LOGGER.error(ex, "Unexpected exception while executing rule evaluation task for event with id = %s.", event.getId());
         totalFailedTasksCounter.incrementAndGet();
       } finally {
+        if (poolSizeController != null) poolSizeController.recordTask(started - scheduled, System.nanoTime() - started);
+        if (draining) totalDrainedEventsCounter.incrementAndGet();
         // Always signal that thread becomes available for scheduling again.
-        submissionLimiter.release();
+        if (holdsPermit) submissionLimiter.release();
+        admitPendingSubmissions();
       }
 
       if (LOGGER.isDebug()) {
         LOGGER.debug("Finished rule evaluation task for event with id = %s.", event.getId());
       }
-    };
+    }
   }
 }
@@ -0,0 +1,363 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.component.Dependency;
+import no.mnemonic.commons.component.LifecycleAspect;
+import no.mnemonic.commons.component.ValidationAspect;
+import no.mnemonic.commons.component.ValidationContext;
+import no.mnemonic.commons.logging.Logger;
+import no.mnemonic.commons.logging.Logging;
+import no.mnemonic.commons.metrics.*;
+import no.mnemonic.commons.utilities.StringUtils;
+import no.mnemonic.commons.utilities.lambda.LambdaUtils;
+import no.mnemonic.services.triggers.action.HttpClientAction;
+import no.mnemonic.services.triggers.api.service.v1.TriggerAdministrationService;
+import no.mnemonic.services.triggers.pipeline.api.SubmissionException;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEventConsumer;
+
+import jakarta.inject.Inject;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static no.mnemonic.services.triggers.pipeline.api.SubmissionException.ErrorCode.*;
+
+/**
+ * Worker implementation of a {@link TriggerEventConsumer} which preserves the submission order of events sharing the
+ * same key (see {@link PartitionKey}).
+ * <p>
+ * Submitted {@link TriggerEvent}s are assigned to one of a fixed number of partitions by hashing their key. Each
+ * partition has its own bounded in-memory queue and is processed by exactly one worker thread, thus, events with the
+ * same key are evaluated one after another in the order they were submitted, while events with different keys are
+ * evaluated in parallel. A partition only moves on to the next event once the current event has been processed
+ * completely, i.e. after all triggered TriggerActions including asynchronous executions and retries of failed
+ * executions have finished. Thus, a slow or retried TriggerAction delays all following events of the partition.
+ */
+public class PartitionedQueueWorker implements LifecycleAspect, MetricAspect, TriggerEventConsumer, ValidationAspect {
+
+  private static final Logger LOGGER = Logging.getLogger(PartitionedQueueWorker.class);
+
+  private static final int DEFAULT_NUMBER_OF_PARTITIONS = 4;
+  private static final int DEFAULT_PARTITION_CAPACITY = 1000;
+  private static final long DEFAULT_SUBMISSION_WAIT_TIME_SECONDS = 30;
+  private static final long DEFAULT_ACTION_EXECUTION_DEADLINE_SECONDS = 120;
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+  private final AtomicLong totalFailedTasksCounter = new AtomicLong();
+  private final AtomicLong totalRejectedEventsCounter = new AtomicLong();
+  private final PerformanceMonitor evaluationMonitor = new PerformanceMonitor(TimeUnit.MINUTES, 60, 1);
+
+  @Dependency
+  private final TriggerAdministrationService service;
+
+  private RuleEvaluationEngine ruleEvaluationEngine;
+  private Partition[] partitions;
+  private ThreadPoolExecutor retryThreadPool;
+
+  private int numberOfPartitions = DEFAULT_NUMBER_OF_PARTITIONS;
+  private int partitionCapacity = DEFAULT_PARTITION_CAPACITY;
+  private long submissionWaitTimeSeconds = DEFAULT_SUBMISSION_WAIT_TIME_SECONDS;
+  private long actionExecutionDeadlineSeconds = DEFAULT_ACTION_EXECUTION_DEADLINE_SECONDS;
+  private PartitionKey partitionKey = PartitionKey.Organization;
+  private String partitionContextParameter;
+
+  /**
+   * Property of an event which determines its partition. Events with the same key are processed in submission order.
+   */
+  public enum PartitionKey {
+    Organization,
+    Service,
+    /**
+     * Value of the context parameter configured with {@link #setPartitionContextParameter(String)}. Events without
+     * this context parameter are spread over all partitions and are not ordered.
+     */
+    ContextParameter
+  }
+
+  @Inject
+  public PartitionedQueueWorker(TriggerAdministrationService service) {
+    this.service = service;
+    this.ruleEvaluationEngine = new RuleEvaluationEngine(this.service);
+  }
+
+  @Override
+  public Metrics getMetrics() throws MetricException {
+    MetricsData metrics = new MetricsData();
+    MetricsGroup partitionMetrics = new MetricsGroup();
+
+    Partition[] current = partitions;
+    if (current != null) {
+      long active = 0, scheduled = 0, completed = 0;
+      for (Partition partition : current) {
+        active += partition.executor.getActiveCount();
+        scheduled += partition.executor.getTaskCount();
+        completed += partition.executor.getCompletedTaskCount();
+        partitionMetrics.addSubMetrics(String.valueOf(partition.index), new MetricsData()
+            .addData("queueDepth", partition.executor.getQueue().size())
+            .addData("queueHighWaterMark", partition.queueHighWaterMark.get())
+            .addData("totalCompletedTasks", partition.executor.getCompletedTaskCount()));
+      }
+
+      metrics.addData("currentlyActiveTasks", active);
+      metrics.addData("totalScheduledTasks", scheduled);
+      metrics.addData("totalCompletedTasks", completed);
+      metrics.addData("totalFailedTasks", totalFailedTasksCounter.get());
+      metrics.addData("totalRejectedEvents", totalRejectedEventsCounter.get());
+      metrics.addData("totalRuleEvaluationEngineInvocations", evaluationMonitor.getTotalInvocations());
+      metrics.addData("totalRuleEvaluationEngineTimeSpent", evaluationMonitor.getTotalTimeSpent());
+    }
+
+    return new MetricsGroup()
+        .addSubMetrics("ruleEvaluationEngine", ruleEvaluationEngine.getMetrics())
+        .addSubMetrics("partitionedQueueWorker", metrics)
+        .addSubMetrics("partitions", partitionMetrics)
+        .addSubMetrics("httpConnectionPools", HttpClientAction.getConnectionPoolMetrics())
+        .addSubMetrics("httpCircuitBreakers", HttpClientAction.getCircuitBreakerMetrics());
+  }
+
+  @Override
+  public void validate(ValidationContext validationContext) {
+    if (numberOfPartitions <= 0) validationContext.addError(this, "'numberOfPartitions' must be > 0!");
+    if (partitionCapacity <= 0) validationContext.addError(this, "'partitionCapacity' must be > 0!");
+    if (submissionWaitTimeSeconds <= 0) validationContext.addError(this, "'submissionWaitTimeSeconds' must be > 0!");
+    if (actionExecutionDeadlineSeconds <= 0) validationContext.addError(this, "'actionExecutionDeadlineSeconds' must be > 0!");
+    if (partitionKey == null) validationContext.addError(this, "'partitionKey' is required!");
+    if (partitionKey == PartitionKey.ContextParameter && StringUtils.isBlank(partitionContextParameter)) {
+      validationContext.addError(this, "'partitionContextParameter' is required when partitioning by context parameter!");
+    }
+  }
+
+  @Override
+  public void startComponent() {
+    ruleEvaluationEngine.setActionExecutionDeadlineMillis(TimeUnit.SECONDS.toMillis(actionExecutionDeadlineSeconds));
+    Partition[] created = new Partition[numberOfPartitions];
+    for (int i = 0; i < numberOfPartitions; i++) {
+      created[i] = new Partition(i);
+    }
+    partitions = created;
+    // Retries are executed outside the partitions' worker threads, which wait for them to finish.
+    retryThreadPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(numberOfPartitions);
+    ruleEvaluationEngine.setRetryExecutor(retryThreadPool);
+  }
+
+  @Override
+  public void stopComponent() {
+    LambdaUtils.tryTo(() -> {
+      Partition[] current = partitions;
+      if (current == null) return;
+      for (Partition partition : current) {
+        partition.executor.shutdown();
+      }
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS);
+      for (Partition partition : current) {
+        partition.executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      }
+      partitions = null;
+    }, ex -> LOGGER.warning(ex, "Failure while shutting down partitions."));
+    LambdaUtils.tryTo(() -> {
+      if (retryThreadPool == null) return;
+      retryThreadPool.shutdown();
+      retryThreadPool.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      retryThreadPool = null;
+    }, ex -> LOGGER.warning(ex, "Failure while shutting down retry thread pool."));
+    // Release resources held by TriggerActions kept for reuse after all tasks have finished.
+    LambdaUtils.tryTo(ruleEvaluationEngine::close, ex -> LOGGER.warning(ex, "Failure while closing rule evaluation engine."));
+  }
+
+  @Override
+  public void submit(TriggerEvent event) throws SubmissionException {
+    Partition[] current = partitions;
+    if (current == null) throw new IllegalStateException("Partitions are not initialized! Component not started?");
+    TriggerEventValidator.validate(event);
+
+    Partition partition = current[selectPartition(event, current.length)];
+    try {
+      // Wait until the partition has space for another event before accepting the event.
+      if (!partition.submissionLimiter.tryAcquire(submissionWaitTimeSeconds, TimeUnit.SECONDS)) {
+        throw noResourcesAvailable(event, partition, null);
+      }
+
+      // Schedule event for evaluation.
+      partition.executor.execute(new RuleEvaluationTask(event, partition));
+      partition.queueHighWaterMark.accumulateAndGet(partition.executor.getQueue().size(), Math::max);
+      if (LOGGER.isDebug()) {
+        LOGGER.debug("Scheduled rule evaluation task for event with id = %s in partition %d.", event.getId(), partition.index);
+      }
+    } catch (RejectedExecutionException ex) {
+      throw noResourcesAvailable(event, partition, ex);
+    } catch (InterruptedException ex) {
+      LOGGER.info(ex, "Received interrupt, shutdown component.");
+      stopComponent();
+      Thread.currentThread().interrupt();
+      throw new SubmissionException(String.format("TriggerEvent with id = %s could not be accepted for processing. " +
+          "Component is shutting down.", event.getId()), ex, ComponentUnavailable);
+    }
+  }
+
+  /**
+   * Configure the number of partitions, i.e. the number of events processed in parallel. Default is 4.
+   *
+   * @param numberOfPartitions Number of partitions
+   * @return this
+   */
+  public PartitionedQueueWorker setNumberOfPartitions(int numberOfPartitions) {
+    this.numberOfPartitions = numberOfPartitions;
+    return this;
+  }
+
+  /**
+   * Configure the maximum number of events accepted per partition, including the event currently processed.
+   * Default is 1000.
+   *
+   * @param partitionCapacity Partition capacity
+   * @return this
+   */
+  public PartitionedQueueWorker setPartitionCapacity(int partitionCapacity) {
+    this.partitionCapacity = partitionCapacity;
+    return this;
+  }
+
+  /**
+   * Configure the maximum time period to wait for space in a partition when submitting events. Default is 30 seconds.
+   *
+   * @param submissionWaitTimeSeconds Maximum submission wait time
+   * @return this
+   */
+  public PartitionedQueueWorker setSubmissionWaitTimeSeconds(long submissionWaitTimeSeconds) {
+    this.submissionWaitTimeSeconds = submissionWaitTimeSeconds;
+    return this;
+  }
+
+  /**
+   * Configure the maximum time a single TriggerAction execution may take before it is cancelled by interrupting the
+   * worker thread. Default is 120 seconds.
+   *
+   * @param actionExecutionDeadlineSeconds Action execution deadline
+   * @return this
+   */
+  public PartitionedQueueWorker setActionExecutionDeadlineSeconds(long actionExecutionDeadlineSeconds) {
+    this.actionExecutionDeadlineSeconds = actionExecutionDeadlineSeconds;
+    return this;
+  }
+
+  /**
+   * Configure which property of an event determines its partition. Default is {@link PartitionKey#Organization}.
+   *
+   * @param partitionKey Partition key
+   * @return this
+   */
+  public PartitionedQueueWorker setPartitionKey(PartitionKey partitionKey) {
+    this.partitionKey = partitionKey;
+    return this;
+  }
+
+  /**
+   * Configure the name of the context parameter used as key with {@link PartitionKey#ContextParameter}.
+   *
+   * @param partitionContextParameter Name of context parameter
+   * @return this
+   */
+  public PartitionedQueueWorker setPartitionContextParameter(String partitionContextParameter) {
+    this.partitionContextParameter = partitionContextParameter;
+    return this;
+  }
+
+  /**
+   * Configure the used rule evaluation engine. Should only be used for testing.
+   *
+   * @param ruleEvaluationEngine Rule evaluation engine.
+   * @return this
+   */
+  PartitionedQueueWorker setRuleEvaluationEngine(RuleEvaluationEngine ruleEvaluationEngine) {
+    this.ruleEvaluationEngine = ruleEvaluationEngine;
+    return this;
+  }
+
+  private int selectPartition(TriggerEvent event, int numberOfPartitions) {
+    Object key = getPartitionKey(event);
+    // Spread the hash code such that partitions are also selected by the higher bits.
+    int hash = key.hashCode();
+    return Math.floorMod(hash ^ (hash >>> 16), numberOfPartitions);
+  }
+
+  private Object getPartitionKey(TriggerEvent event) {
+    switch (partitionKey) {
+      case Service:
+        return event.getService();
+      case ContextParameter:
+        // Look up the single parameter instead of copying all context parameters on every submission.
+        Map<String, ?> parameters = event.getContextParameters();
+        Object value = parameters != null ? parameters.get(partitionContextParameter) : null;
+        // Events without the context parameter don't need to be ordered, spread them over all partitions.
+        return value != null ? value : event.getId();
+      default:
+        return event.getOrganization();
+    }
+  }
+
+  private SubmissionException noResourcesAvailable(TriggerEvent event, Partition partition, Exception cause) {
+    LOGGER.info("No space available in partition %d [queue depth: %d, partition capacity: %d].",
+        partition.index, partition.executor.getQueue().size(), partitionCapacity);
+    totalRejectedEventsCounter.incrementAndGet();
+    return new SubmissionException(String.format("TriggerEvent with id = %s could not be accepted for processing. " +
+        "No space available in partition %d.", event.getId(), partition.index), cause, NoResourcesAvailable);
+  }
+
+  private class Partition {
+    private final int index;
+    // A single worker thread per partition guarantees that events of a partition are evaluated in order.
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    private final Semaphore submissionLimiter = new Semaphore(partitionCapacity, true);
+    private final AtomicInteger queueHighWaterMark = new AtomicInteger();
+
+    private Partition(int index) {
+      this.index = index;
+    }
+  }
+
+  private class RuleEvaluationTask implements Runnable {
+    private final TriggerEvent event;
+    private final Partition partition;
+
+    private RuleEvaluationTask(TriggerEvent event, Partition partition) {
+      this.event = event;
+      this.partition = partition;
+    }
+
+    @Override
+    public void run() {
+      if (LOGGER.isDebug()) {
+        LOGGER.debug("Started rule evaluation task for event with id = %s in partition %d.", event.getId(), partition.index);
+      }
+
+      CountDownLatch completed = new CountDownLatch(1);
+      long start = System.currentTimeMillis();
+      try {
+        // The engine invokes the callback in any case, also if the evaluation fails.
+        ruleEvaluationEngine.evaluate(event, completed::countDown);
+      } catch (Exception ex) {
+        LOGGER.error(ex, "Unexpected exception while executing rule evaluation task for event with id = %s.", event.getId());
+        totalFailedTasksCounter.incrementAndGet();
+      } finally {
+        evaluationMonitor.invoked(System.currentTimeMillis() - start);
+      }
+
+      try {
+        // Keep the partition busy until asynchronous executions and retries have finished, otherwise the TriggerActions
+        // of the next event with the same key could overtake those of this event.
+        completed.await();
+      } catch (InterruptedException ex) {
+        LOGGER.warning("Interrupted while waiting for TriggerActions of event with id = %s to finish.", event.getId());
+        Thread.currentThread().interrupt();
+      } finally {
+        // Always signal that the partition has space for another event.
+        partition.submissionLimiter.release();
+      }
+
+      if (LOGGER.isDebug()) {
+        LOGGER.debug("Finished rule evaluation task for event with id = %s in partition %d.", event.getId(), partition.index);
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WorkerPool} executing tasks on the pooled platform threads of a {@link ThreadPoolExecutor}.
+ */
+class PlatformWorkerPool implements WorkerPool {
+
+  private final ThreadPoolExecutor executor;
+
+  PlatformWorkerPool(ThreadPoolExecutor executor) {
+    this.executor = executor;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    executor.execute(task);
+  }
+
+  @Override
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  @Override
+  public int getMaximumPoolSize() {
+    return executor.getMaximumPoolSize();
+  }
+
+  @Override
+  public void setMaximumPoolSize(int size) {
+    // The core pool size must never exceed the maximum pool size.
+    if (size > executor.getMaximumPoolSize()) {
+      executor.setMaximumPoolSize(size);
+      executor.setCorePoolSize(size);
+    } else {
+      executor.setCorePoolSize(size);
+      executor.setMaximumPoolSize(size);
+    }
+  }
+
+  @Override
+  public long getTaskCount() {
+    return executor.getTaskCount();
+  }
+
+  @Override
+  public long getCompletedTaskCount() {
+    return executor.getCompletedTaskCount();
+  }
+
+  @Override
+  public BlockingQueue<Runnable> getQueue() {
+    return executor.getQueue();
+  }
+
+  @Override
+  public boolean remove(Runnable task) {
+    return executor.remove(task);
+  }
+
+  @Override
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return executor.awaitTermination(timeout, unit);
+  }
+}
@@ -0,0 +1,302 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.component.Dependency;
+import no.mnemonic.commons.component.LifecycleAspect;
+import no.mnemonic.commons.component.ValidationAspect;
+import no.mnemonic.commons.component.ValidationContext;
+import no.mnemonic.commons.logging.Logger;
+import no.mnemonic.commons.logging.Logging;
+import no.mnemonic.commons.metrics.*;
+import no.mnemonic.commons.utilities.lambda.LambdaUtils;
+import no.mnemonic.services.triggers.action.HttpClientAction;
+import no.mnemonic.services.triggers.api.service.v1.TriggerAdministrationService;
+import no.mnemonic.services.triggers.pipeline.api.SubmissionException;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEventConsumer;
+
+import jakarta.inject.Inject;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static no.mnemonic.services.triggers.pipeline.api.SubmissionException.ErrorCode.*;
+
+/**
+ * Worker implementation of a {@link TriggerEventConsumer} using a preallocated ring buffer for dispatching submitted
+ * {@link TriggerEvent}s to a fixed number of consumer threads.
+ * <p>
+ * In contrast to {@link InMemoryQueueWorker} submitting an event neither takes a lock nor allocates a task object.
+ * Consumer threads process published events in batches and wait for new events according to the configured
+ * {@link WaitStrategy}, which allows trading CPU usage for latency.
+ */
+public class RingBufferWorker implements LifecycleAspect, MetricAspect, TriggerEventConsumer, ValidationAspect {
+
+  private static final Logger LOGGER = Logging.getLogger(RingBufferWorker.class);
+
+  private static final int DEFAULT_BUFFER_SIZE = 1024;
+  private static final int DEFAULT_NUMBER_OF_CONSUMER_THREADS = 4;
+  private static final int DEFAULT_MAXIMUM_BATCH_SIZE = 64;
+  private static final long DEFAULT_SUBMISSION_WAIT_TIME_SECONDS = 30;
+  private static final long DEFAULT_ACTION_EXECUTION_DEADLINE_SECONDS = 120;
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+  private final LongAdder totalProcessedEventsCounter = new LongAdder();
+  private final LongAdder totalFailedTasksCounter = new LongAdder();
+  private final LongAdder totalRejectedEventsCounter = new LongAdder();
+  private final LongAdder totalBatchesCounter = new LongAdder();
+  private final PerformanceMonitor evaluationMonitor = new PerformanceMonitor(TimeUnit.MINUTES, 60, 1);
+  private final Consumer<TriggerEvent> eventHandler = this::evaluate;
+
+  @Dependency
+  private final TriggerAdministrationService service;
+
+  private RuleEvaluationEngine ruleEvaluationEngine;
+  private EventRingBuffer<TriggerEvent> ringBuffer;
+  private Thread[] consumerThreads;
+  private ThreadPoolExecutor retryThreadPool;
+
+  private int bufferSize = DEFAULT_BUFFER_SIZE;
+  private int numberOfConsumerThreads = DEFAULT_NUMBER_OF_CONSUMER_THREADS;
+  private int maximumBatchSize = DEFAULT_MAXIMUM_BATCH_SIZE;
+  private WaitStrategy waitStrategy = WaitStrategy.Blocking;
+  private long submissionWaitTimeSeconds = DEFAULT_SUBMISSION_WAIT_TIME_SECONDS;
+  private long actionExecutionDeadlineSeconds = DEFAULT_ACTION_EXECUTION_DEADLINE_SECONDS;
+
+  /**
+   * Strategy used by consumer threads to wait for new events.
+   */
+  public enum WaitStrategy {
+    /**
+     * Spin without giving up the CPU. Lowest latency, but every consumer thread occupies a core even while idle.
+     */
+    BusySpin,
+    /**
+     * Spin for a short while, then yield to other threads. Low latency, but high CPU usage while idle.
+     */
+    Yielding,
+    /**
+     * Block until a new event is published. Highest latency, but no CPU usage while idle.
+     */
+    Blocking
+  }
+
+  @Inject
+  public RingBufferWorker(TriggerAdministrationService service) {
+    this.service = service;
+    this.ruleEvaluationEngine = new RuleEvaluationEngine(this.service);
+  }
+
+  @Override
+  public Metrics getMetrics() throws MetricException {
+    MetricsData metrics = new MetricsData();
+
+    EventRingBuffer<TriggerEvent> current = ringBuffer;
+    if (current != null) {
+      metrics.addData("bufferSize", current.getBufferSize());
+      metrics.addData("remainingCapacity", current.getRemainingCapacity());
+      metrics.addData("totalPublishedEvents", current.getPublishedEvents());
+      metrics.addData("totalProcessedEvents", totalProcessedEventsCounter.sum());
+      metrics.addData("totalFailedTasks", totalFailedTasksCounter.sum());
+      metrics.addData("totalRejectedEvents", totalRejectedEventsCounter.sum());
+      metrics.addData("totalBatches", totalBatchesCounter.sum());
+      metrics.addData("totalRuleEvaluationEngineInvocations", evaluationMonitor.getTotalInvocations());
+      metrics.addData("totalRuleEvaluationEngineTimeSpent", evaluationMonitor.getTotalTimeSpent());
+    }
+
+    return new MetricsGroup()
+        .addSubMetrics("ruleEvaluationEngine", ruleEvaluationEngine.getMetrics())
+        .addSubMetrics("ringBufferWorker", metrics)
+        .addSubMetrics("httpConnectionPools", HttpClientAction.getConnectionPoolMetrics())
+        .addSubMetrics("httpCircuitBreakers", HttpClientAction.getCircuitBreakerMetrics());
+  }
+
+  @Override
+  public void validate(ValidationContext validationContext) {
+    if (bufferSize <= 0 || Integer.bitCount(bufferSize) != 1) validationContext.addError(this, "'bufferSize' must be a power of two!");
+    if (numberOfConsumerThreads <= 0) validationContext.addError(this, "'numberOfConsumerThreads' must be > 0!");
+    if (maximumBatchSize <= 0) validationContext.addError(this, "'maximumBatchSize' must be > 0!");
+    if (waitStrategy == null) validationContext.addError(this, "'waitStrategy' is required!");
+    if (submissionWaitTimeSeconds <= 0) validationContext.addError(this, "'submissionWaitTimeSeconds' must be > 0!");
+    if (actionExecutionDeadlineSeconds <= 0) validationContext.addError(this, "'actionExecutionDeadlineSeconds' must be > 0!");
+  }
+
+  @Override
+  public void startComponent() {
+    ruleEvaluationEngine.setActionExecutionDeadlineMillis(TimeUnit.SECONDS.toMillis(actionExecutionDeadlineSeconds));
+    // Retries of failed actions are delayed, keep them away from the consumer threads.
+    retryThreadPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(numberOfConsumerThreads);
+    ruleEvaluationEngine.setRetryExecutor(retryThreadPool);
+
+    EventRingBuffer<TriggerEvent> buffer = new EventRingBuffer<>(bufferSize, numberOfConsumerThreads, waitStrategy);
+    Thread[] threads = new Thread[numberOfConsumerThreads];
+    for (int i = 0; i < numberOfConsumerThreads; i++) {
+      int consumer = i;
+      threads[i] = new Thread(() -> consumeEvents(buffer, consumer), "ring-buffer-consumer-" + i);
+      threads[i].start();
+    }
+    consumerThreads = threads;
+    ringBuffer = buffer;
+  }
+
+  @Override
+  public void stopComponent() {
+    LambdaUtils.tryTo(() -> {
+      if (ringBuffer == null) return;
+      // Consumer threads stop once all accepted events have been processed.
+      ringBuffer.halt();
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS);
+      for (Thread thread : consumerThreads) {
+        TimeUnit.NANOSECONDS.timedJoin(thread, Math.max(1, deadline - System.nanoTime()));
+        if (thread.isAlive()) {
+          LOGGER.warning("Consumer thread %s did not finish in time, interrupting it.", thread.getName());
+          thread.interrupt();
+        }
+      }
+      ringBuffer = null;
+      consumerThreads = null;
+    }, ex -> LOGGER.warning(ex, "Failure while shutting down consumer threads."));
+    LambdaUtils.tryTo(() -> {
+      if (retryThreadPool == null) return;
+      retryThreadPool.shutdown();
+      retryThreadPool.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      retryThreadPool = null;
+    }, ex -> LOGGER.warning(ex, "Failure while shutting down retry thread pool."));
+    // Release resources held by TriggerActions kept for reuse after all tasks have finished.
+    LambdaUtils.tryTo(ruleEvaluationEngine::close, ex -> LOGGER.warning(ex, "Failure while closing rule evaluation engine."));
+  }
+
+  @Override
+  public void submit(TriggerEvent event) throws SubmissionException {
+    EventRingBuffer<TriggerEvent> buffer = ringBuffer;
+    if (buffer == null) throw new IllegalStateException("Ring buffer is not initialized! Component not started?");
+    TriggerEventValidator.validate(event);
+
+    try {
+      // Wait until a slot becomes available before accepting the event.
+      if (!buffer.publish(event, TimeUnit.SECONDS.toNanos(submissionWaitTimeSeconds))) {
+        LOGGER.info("No space available in ring buffer [buffer size: %d].", buffer.getBufferSize());
+        totalRejectedEventsCounter.increment();
+        throw new SubmissionException(String.format("TriggerEvent with id = %s could not be accepted for processing. " +
+            "No space available in ring buffer.", event.getId()), NoResourcesAvailable);
+      }
+    } catch (IllegalStateException ex) {
+      throw new SubmissionException(String.format("TriggerEvent with id = %s could not be accepted for processing. " +
+          "Component is shutting down.", event.getId()), ex, ComponentUnavailable);
+    } catch (InterruptedException ex) {
+      LOGGER.info(ex, "Received interrupt, shutdown component.");
+      stopComponent();
+      Thread.currentThread().interrupt();
+      throw new SubmissionException(String.format("TriggerEvent with id = %s could not be accepted for processing. " +
+          "Component is shutting down.", event.getId()), ex, ComponentUnavailable);
+    }
+  }
+
+  /**
+   * Configure the number of slots of the ring buffer, i.e. the maximum number of events waiting for processing.
+   * Must be a power of two. Default is 1024.
+   *
+   * @param bufferSize Buffer size
+   * @return this
+   */
+  public RingBufferWorker setBufferSize(int bufferSize) {
+    this.bufferSize = bufferSize;
+    return this;
+  }
+
+  /**
+   * Configure the number of consumer threads. Default is 4.
+   *
+   * @param numberOfConsumerThreads Number of consumer threads
+   * @return this
+   */
+  public RingBufferWorker setNumberOfConsumerThreads(int numberOfConsumerThreads) {
+    this.numberOfConsumerThreads = numberOfConsumerThreads;
+    return this;
+  }
+
+  /**
+   * Configure the maximum number of events a consumer thread takes from the ring buffer at once. Default is 64.
+   *
+   * @param maximumBatchSize Maximum batch size
+   * @return this
+   */
+  public RingBufferWorker setMaximumBatchSize(int maximumBatchSize) {
+    this.maximumBatchSize = maximumBatchSize;
+    return this;
+  }
+
+  /**
+   * Configure how consumer threads wait for new events. Default is {@link WaitStrategy#Blocking}.
+   *
+   * @param waitStrategy Wait strategy
+   * @return this
+   */
+  public RingBufferWorker setWaitStrategy(WaitStrategy waitStrategy) {
+    this.waitStrategy = waitStrategy;
+    return this;
+  }
+
+  /**
+   * Configure the maximum time period to wait for space in the ring buffer when submitting events. Default is 30 seconds.
+   *
+   * @param submissionWaitTimeSeconds Maximum submission wait time
+   * @return this
+   */
+  public RingBufferWorker setSubmissionWaitTimeSeconds(long submissionWaitTimeSeconds) {
+    this.submissionWaitTimeSeconds = submissionWaitTimeSeconds;
+    return this;
+  }
+
+  /**
+   * Configure the maximum time a single TriggerAction execution may take before it is cancelled by interrupting the
+   * consumer thread. Default is 120 seconds.
+   *
+   * @param actionExecutionDeadlineSeconds Action execution deadline
+   * @return this
+   */
+  public RingBufferWorker setActionExecutionDeadlineSeconds(long actionExecutionDeadlineSeconds) {
+    this.actionExecutionDeadlineSeconds = actionExecutionDeadlineSeconds;
+    return this;
+  }
+
+  /**
+   * Configure the used rule evaluation engine. Should only be used for testing.
+   *
+   * @param ruleEvaluationEngine Rule evaluation engine.
+   * @return this
+   */
+  RingBufferWorker setRuleEvaluationEngine(RuleEvaluationEngine ruleEvaluationEngine) {
+    this.ruleEvaluationEngine = ruleEvaluationEngine;
+    return this;
+  }
+
+  private void consumeEvents(EventRingBuffer<TriggerEvent> buffer, int consumer) {
+    while (true) {
+      try {
+        if (buffer.consume(consumer, maximumBatchSize, eventHandler) < 0) return;
+        totalBatchesCounter.increment();
+      } catch (InterruptedException ex) {
+        if (buffer.isHalted()) {
+          LOGGER.info("Consumer thread %s interrupted, stop processing events.", Thread.currentThread().getName());
+          return;
+        }
+        // Stray interrupt, e.g. left over from a cancelled action execution. Keep consuming events.
+      }
+    }
+  }
+
+  private void evaluate(TriggerEvent event) {
+    long start = System.currentTimeMillis();
+    try {
+      ruleEvaluationEngine.evaluate(event);
+    } catch (Exception ex) {
+      LOGGER.error(ex, "Unexpected exception while evaluating event with id = %s.", event.getId());
+      totalFailedTasksCounter.increment();
+    } finally {
+      evaluationMonitor.invoked(System.currentTimeMillis() - start);
+      totalProcessedEventsCounter.increment();
+    }
+  }
+}
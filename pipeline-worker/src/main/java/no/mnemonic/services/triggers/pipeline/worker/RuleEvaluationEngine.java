@@ -9,7 +9,7 @@ import no.mnemonic.commons.metrics.MetricsData;
 import no.mnemonic.commons.utilities.ObjectUtils;
 import no.mnemonic.commons.utilities.StringUtils;
 import no.mnemonic.commons.utilities.collections.MapUtils;
-import no.mnemonic.commons.utilities.collections.SetUtils;
+import no.mnemonic.services.triggers.action.AsyncTriggerAction;
 import no.mnemonic.services.triggers.action.TriggerAction;
 import no.mnemonic.services.triggers.action.exceptions.ParameterException;
 import no.mnemonic.services.triggers.action.exceptions.TriggerExecutionException;
@@ -23,16 +23,37 @@ import no.mnemonic.services.triggers.api.request.v1.TriggerRuleSearchRequest;
 import no.mnemonic.services.triggers.api.service.v1.TriggerAdministrationService;
 import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
 import no.mnemonic.services.triggers.pipeline.worker.jexl.Formatters;
+import no.mnemonic.services.triggers.pipeline.worker.jexl.ReadOnlyContext;
 import no.mnemonic.services.triggers.pipeline.worker.jexl.ReadOnlyUberspect;
 import org.apache.commons.jexl3.*;
 import org.apache.commons.jexl3.internal.Engine;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static no.mnemonic.commons.utilities.collections.MapUtils.Pair.T;
 
@@ -45,16 +66,48 @@ class RuleEvaluationEngine implements MetricAspect {
   private static final Map<String, Object> NAMESPACES = MapUtils.map(
       T("formatters", new Formatters()) // Expose format methods through the "formatters" namespace.
   );
+  // Rules with the same expressions or templates share compiled scripts, regardless of where the rules come from.
+  private static final int COMPILED_SCRIPT_CACHE_CAPACITY = 4096;
+  // Keep enough initialized actions around such that all worker threads can trigger the same action concurrently.
+  private static final int MAXIMUM_IDLE_TRIGGER_ACTIONS_PER_DEFINITION = 64;
+  // Give up on retrying failed actions if that many retries are waiting already, e.g. during a longer outage.
+  private static final int MAXIMUM_PENDING_ACTION_RETRIES = 10_000;
 
   private final AtomicLong matchingTriggerRulesCounter = new AtomicLong();
   private final AtomicLong successfulActionInvocationsCounter = new AtomicLong();
   private final AtomicLong failedActionInvocationsCounter = new AtomicLong();
   private final AtomicLong administrationServiceErrorCounter = new AtomicLong();
   private final AtomicLong expressionEvaluationErrorCounter = new AtomicLong();
+  private final AtomicLong invalidTriggerRulesCounter = new AtomicLong();
+  private final AtomicLong timedOutActionInvocationsCounter = new AtomicLong();
+  private final AtomicLong lateActionInvocationsCounter = new AtomicLong();
+  private final AtomicLong retriedActionInvocationsCounter = new AtomicLong();
+  private final AtomicLong pendingActionRetriesCounter = new AtomicLong();
+  private final AtomicLong deadLetteredActionInvocationsCounter = new AtomicLong();
+  private final AtomicLong replayedActionInvocationsCounter = new AtomicLong();
 
   private final TriggerAdministrationService service;
   private final JexlEngine expressionEngine;
   private final JxltEngine templateEngine;
+  private final CompiledScriptCache<JexlExpression> expressionCache = new CompiledScriptCache<>(COMPILED_SCRIPT_CACHE_CAPACITY);
+  private final CompiledScriptCache<JxltEngine.Template> templateCache = new CompiledScriptCache<>(COMPILED_SCRIPT_CACHE_CAPACITY);
+  private final TriggerActionRegistry triggerActionRegistry = new TriggerActionRegistry(MAXIMUM_IDLE_TRIGGER_ACTIONS_PER_DEFINITION);
+
+  // Rules compiled up front for the two most recently seen configuration snapshots. Keeping the previous snapshot
+  // avoids recompiling it for events which are still evaluated against it while the configuration changes.
+  // The lock only guards replacing the compilations, rules are compiled outside of it.
+  private final Lock compilationLock = new ReentrantLock();
+  private volatile SnapshotCompilation currentCompilation;
+  private volatile SnapshotCompilation previousCompilation;
+  // Timer interrupting actions which exceed the execution deadline and scheduling retries, created on first use.
+  // Read without locking on every action execution, the lock is only taken for creating or shutting down the timer.
+  private final Lock timerLock = new ReentrantLock();
+  private volatile ScheduledThreadPoolExecutor timer;
+  private volatile long actionExecutionDeadlineMillis;
+  private volatile Executor retryExecutor;
+  private volatile DeadLetterStore deadLetterStore;
+  // Retries which have been scheduled but haven't started executing yet, either waiting for their delay or queued.
+  private final Set<ActionRetry> pendingRetries = ConcurrentHashMap.newKeySet();
 
   RuleEvaluationEngine(TriggerAdministrationService service) {
     this.service = ObjectUtils.notNull(service, "'service' is required!");
@@ -78,7 +131,115 @@ class RuleEvaluationEngine implements MetricAspect {
         .addData("successfulActionInvocations", successfulActionInvocationsCounter.get())
         .addData("failedActionInvocations", failedActionInvocationsCounter.get())
         .addData("administrationServiceError", administrationServiceErrorCounter.get())
-        .addData("expressionEvaluationError", expressionEvaluationErrorCounter.get());
+        .addData("expressionEvaluationError", expressionEvaluationErrorCounter.get())
+        .addData("invalidTriggerRules", invalidTriggerRulesCounter.get())
+        .addData("timedOutActionInvocations", timedOutActionInvocationsCounter.get())
+        .addData("lateActionInvocations", lateActionInvocationsCounter.get())
+        .addData("retriedActionInvocations", retriedActionInvocationsCounter.get())
+        .addData("pendingActionRetries", pendingActionRetriesCounter.get())
+        .addData("deadLetteredActionInvocations", deadLetteredActionInvocationsCounter.get())
+        .addData("replayedActionInvocations", replayedActionInvocationsCounter.get())
+        .addData("expressionCacheHits", expressionCache.getHits())
+        .addData("expressionCacheMisses", expressionCache.getMisses())
+        .addData("expressionCacheEvictions", expressionCache.getEvictions())
+        .addData("templateCacheHits", templateCache.getHits())
+        .addData("templateCacheMisses", templateCache.getMisses())
+        .addData("templateCacheEvictions", templateCache.getEvictions())
+        .addData("createdTriggerActions", triggerActionRegistry.getCreatedInstances())
+        .addData("closedTriggerActions", triggerActionRegistry.getClosedInstances())
+        .addData("idleTriggerActions", triggerActionRegistry.getIdleInstances());
+  }
+
+  /**
+   * Close all TriggerAction instances kept for reuse. Retries which haven't been executed yet are abandoned, i.e. they
+   * count as failed and are stored in the dead-letter store if one is configured. The engine can still be used
+   * afterwards.
+   */
+  void close() {
+    triggerActionRegistry.close();
+    timerLock.lock();
+    try {
+      if (timer != null) {
+        timer.shutdownNow();
+        timer = null;
+      }
+    } finally {
+      timerLock.unlock();
+    }
+    abandonPendingRetries();
+  }
+
+  /**
+   * Abandon all retries which haven't been executed yet, i.e. they count as failed and are stored in the dead-letter
+   * store if one is configured.
+   *
+   * @return Number of abandoned retries which could not be stored in the dead-letter store, i.e. which are lost
+   */
+  int abandonPendingRetries() {
+    int lost = 0;
+    for (ActionRetry retry : pendingRetries) {
+      // A retry which has been started or abandoned concurrently isn't lost.
+      if (retry.removePending() && !retry.giveUp()) lost++;
+    }
+    return lost;
+  }
+
+  /**
+   * Configure the maximum time a single TriggerAction execution may take. The executing thread is interrupted when
+   * the deadline is exceeded. If the execution fails afterwards it is counted as timed out, if it completes anyway it
+   * is counted as successful but late, because the action might have been performed already. Actions should
+   * additionally apply their own timeouts because not all blocking operations react to interrupts. A value &lt;= 0
+   * disables the deadline.
+   *
+   * @param actionExecutionDeadlineMillis Execution deadline in milliseconds
+   * @return this
+   */
+  RuleEvaluationEngine setActionExecutionDeadlineMillis(long actionExecutionDeadlineMillis) {
+    this.actionExecutionDeadlineMillis = actionExecutionDeadlineMillis;
+    return this;
+  }
+
+  /**
+   * Configure the executor used for retrying failed TriggerAction executions according to the retry policy of their
+   * TriggerActionDefinition. Retries are delayed without blocking any thread and handed over to the executor once
+   * they are due. Failed executions are not retried if no executor is configured.
+   *
+   * @param retryExecutor Executor for retries
+   * @return this
+   */
+  RuleEvaluationEngine setRetryExecutor(Executor retryExecutor) {
+    this.retryExecutor = retryExecutor;
+    return this;
+  }
+
+  /**
+   * Configure the store receiving TriggerAction invocations which finally failed with a TriggerExecutionException,
+   * i.e. after all retries have been exhausted. Failed invocations are only logged if no store is configured.
+   *
+   * @param deadLetterStore Dead-letter store
+   * @return this
+   */
+  RuleEvaluationEngine setDeadLetterStore(DeadLetterStore deadLetterStore) {
+    this.deadLetterStore = deadLetterStore;
+    return this;
+  }
+
+  /**
+   * Execute all TriggerAction invocations stored in the configured dead-letter store again, using the rendered trigger
+   * parameters of the failed invocation and the current TriggerActionDefinition. Replayed invocations are executed
+   * once without retries, if they fail again with a TriggerExecutionException they're added to the store again.
+   *
+   * @param parallelism                 Maximum number of concurrently executed invocations
+   * @param maximumInvocationsPerSecond Maximum number of invocations per second, unlimited if &lt;= 0
+   * @return Result of the replay
+   * @throws InterruptedException  If interrupted while replaying, dead letters not replayed yet are kept in this case
+   * @throws IOException           If replayed invocations could not be removed from the store
+   * @throws IllegalStateException If no dead-letter store is configured or a replay is running already
+   */
+  DeadLetterReplayResult replayDeadLetters(int parallelism, int maximumInvocationsPerSecond) throws InterruptedException, IOException {
+    DeadLetterStore store = deadLetterStore;
+    if (store == null) throw new IllegalStateException("No dead-letter store configured!");
+    return store.replay(parallelism, maximumInvocationsPerSecond, this::replayDeadLetter);
   }
 
   /**
@@ -89,18 +250,56 @@ class RuleEvaluationEngine implements MetricAspect {
    * @param event TriggerEvent to evaluate
    */
   void evaluate(TriggerEvent event) {
+    evaluate(event, null);
+  }
+
+  /**
+   * Evaluate a TriggerEvent like {@link #evaluate(TriggerEvent)} and get notified once the event has been processed
+   * completely, i.e. after the evaluation and all triggered TriggerActions have finished. This includes retries
+   * as well as executions of asynchronous actions completing in the background. The callback is invoked exactly once,
+   * also if the evaluation fails, and might be invoked by any thread, possibly before this method returns.
+   *
+   * @param event        TriggerEvent to evaluate
+   * @param onCompletion Callback invoked once the event has been processed completely (optional)
+   */
+  void evaluate(TriggerEvent event, Runnable onCompletion) {
+    PendingEvaluation pending = onCompletion != null ? new PendingEvaluation(onCompletion) : null;
+    try {
+      evaluateRules(event, pending);
+    } finally {
+      if (pending != null) pending.end();
+    }
+  }
+
+  private void evaluateRules(TriggerEvent event, PendingEvaluation pending) {
     if (event == null) return;
     debug("Start evaluating TriggerEvent with id = %s.", event.getId());
 
+    // Evaluate the whole event against one consistent view of the configuration, even if it changes in the meantime.
+    TriggerAdministrationService snapshot = ObjectUtils.ifNull(service.getSnapshot(), service);
+
     // For now only verify that the corresponding TriggerEventDefinition exists.
     // This should later also verify that the required context parameters are set.
-    if (fetchTriggerEventDefinition(event) == null) return;
+    if (fetchTriggerEventDefinition(snapshot, event) == null) return;
+
+    SnapshotRules compiledRules = fetchCompiledTriggerRules(snapshot);
+    // The context parameters are not copied but exposed read-only to the expressions and templates of all rules.
+    ReadOnlyContext context = ReadOnlyContext.of(event.getContextParameters());
+    for (TriggerRule rule : fetchTriggerRules(snapshot, event)) {
+      if (LOGGER.isDebug()) {
+        debug("Start evaluating rule [TriggerRule: %s, TriggerEvent: %s].", rule.getId(), event.getId());
+      }
 
-    for (TriggerRule rule : fetchTriggerRules(event)) {
-      debug("Start evaluating rule [TriggerRule: %s, TriggerEvent: %s].", rule.getId(), event.getId());
+      // Rules of a snapshot have been compiled when the snapshot was loaded, invalid rules have been reported then.
+      if (compiledRules != null && compiledRules.isInvalid(rule)) {
+        logFailedStep(rule, event, "compilation");
+        continue;
+      }
+      // Use the precompiled rule for the pre-filter steps if available, those checks don't allocate any objects.
+      CompiledTriggerRule compiled = compiledRules != null ? compiledRules.get(rule) : null;
 
       // The event's organization must be part of the rule's organizations.
-      if (!SetUtils.set(rule.getOrganizations(), OrganizationInfo::getId).contains(event.getOrganization())) {
+      if (compiled != null ? !compiled.hasOrganization(event.getOrganization()) : !hasOrganization(rule, event.getOrganization())) {
         logFailedStep(rule, event, "organization");
         continue;
       }
@@ -110,21 +309,29 @@ class RuleEvaluationEngine implements MetricAspect {
       // 1. Rule access mode of 'Public' requires event access mode 'Public'.
       // 2. Rule access mode of 'RoleBased' requires event access mode 'Public' or 'RoleBased'.
       // 3. Rule access mode of 'Private' requires event access mode 'Public', 'RoleBased' or 'Private'.
-      if (rule.getAccessMode().isLessRestricted(event.getAccessMode().name())) {
+      if (compiled != null ? !compiled.coversAccessMode(event.getAccessMode())
+          : rule.getAccessMode().isLessRestricted(CompiledTriggerRule.toRuleAccessMode(event.getAccessMode()))) {
         logFailedStep(rule, event, "access mode");
         continue;
       }
       logSuccessfulStep(rule, event, "access mode");
 
       // Event scope is optional, but if set it must be part of the rule's scopes.
-      if (!StringUtils.isBlank(event.getScope()) && !SetUtils.set(rule.getScopes()).contains(event.getScope())) {
+      if (!StringUtils.isBlank(event.getScope())
+          && (compiled != null ? !compiled.hasScope(event.getScope()) : !hasScope(rule, event.getScope()))) {
         logFailedStep(rule, event, "scope");
         continue;
       }
       logSuccessfulStep(rule, event, "scope");
 
+      if (compiled == null) compiled = compileTriggerRule(rule);
+      if (compiled == null) {
+        logFailedStep(rule, event, "compilation");
+        continue;
+      }
+
       // The rule's expression must evaluate to 'true'.
-      if (!evaluateRuleExpression(rule, event)) {
+      if (!evaluateRuleExpression(compiled, event, context)) {
         logFailedStep(rule, event, "expression");
         continue;
       }
@@ -133,14 +340,111 @@ class RuleEvaluationEngine implements MetricAspect {
 
       // If all conditions are fulfilled trigger the rule's action.
       debug("Start triggering action [TriggerRule: %s, TriggerEvent: %s].", rule.getId(), event.getId());
-      triggerAction(rule, event);
+      triggerAction(snapshot, compiled, event, context, pending);
+    }
+  }
+
+  private static boolean hasOrganization(TriggerRule rule, UUID organization) {
+    if (rule.getOrganizations() == null) return false;
+    for (OrganizationInfo info : rule.getOrganizations()) {
+      if (Objects.equals(info.getId(), organization)) return true;
     }
+    return false;
   }
 
-  private boolean evaluateRuleExpression(TriggerRule rule, TriggerEvent event) {
+  private static boolean hasScope(TriggerRule rule, String scope) {
+    return rule.getScopes() != null && rule.getScopes().contains(scope);
+  }
+
+  private SnapshotRules fetchCompiledTriggerRules(TriggerAdministrationService snapshot) {
+    // Services without snapshot support return themselves. Their rules might change at any time, thus, they're compiled per event.
+    if (snapshot == service) return null;
+
+    SnapshotCompilation compilation = findCompilation(snapshot);
+    if (compilation == null) {
+      boolean compile = false;
+      compilationLock.lock();
+      try {
+        // Another thread might have started compiling the rules in the meantime.
+        compilation = findCompilation(snapshot);
+        if (compilation == null) {
+          compilation = new SnapshotCompilation(snapshot);
+          previousCompilation = currentCompilation;
+          currentCompilation = compilation;
+          compile = true;
+        }
+      } finally {
+        compilationLock.unlock();
+      }
+
+      if (compile) {
+        // The configuration has changed, release TriggerActions of definitions which aren't used anymore.
+        triggerActionRegistry.prune();
+        SnapshotRules rules = null;
+        try {
+          rules = compileTriggerRules(snapshot);
+        } finally {
+          // Threads waiting for a failed compilation fall back to compiling rules per event.
+          compilation.rules.complete(rules);
+        }
+      }
+    }
+
+    // Only threads evaluating events against the same snapshot wait for its compilation.
+    return compilation.rules.join();
+  }
+
+  private SnapshotCompilation findCompilation(TriggerAdministrationService snapshot) {
+    SnapshotCompilation compilation = currentCompilation;
+    if (compilation != null && compilation.snapshot == snapshot) return compilation;
+    compilation = previousCompilation;
+    if (compilation != null && compilation.snapshot == snapshot) return compilation;
+    return null;
+  }
+
+  private SnapshotRules compileTriggerRules(TriggerAdministrationService snapshot) {
+    SnapshotRules result = new SnapshotRules();
     try {
-      Object result = expressionEngine.createExpression(rule.getExpression())
-          .evaluate(populateExpressionContext(event.getContextParameters()));
+      for (TriggerRule rule : snapshot.searchTriggerRules(new TriggerRuleSearchRequest())) {
+        try {
+          result.addCompiled(CompiledTriggerRule.compile(rule, this::compileExpression, this::compileTemplate));
+        } catch (JexlException ex) {
+          LOGGER.warning(ex, "Rejecting TriggerRule with id = %s because its expression or trigger parameters are invalid.", rule.getId());
+          invalidTriggerRulesCounter.incrementAndGet();
+          result.addInvalid(rule);
+        }
+      }
+    } catch (InvalidArgumentException ex) {
+      // Rules will be compiled per event instead.
+      LOGGER.warning(ex, "Could not fetch TriggerRules for compilation.");
+      administrationServiceErrorCounter.incrementAndGet();
+    }
+    return result;
+  }
+
+  private CompiledTriggerRule compileTriggerRule(TriggerRule rule) {
+    try {
+      return CompiledTriggerRule.compile(rule, this::compileExpression, this::compileTemplate);
+    } catch (JexlException ex) {
+      LOGGER.info(ex, "Could not compile expression or trigger parameters for TriggerRule with id = %s.", rule.getId());
+      expressionEvaluationErrorCounter.incrementAndGet();
+      return null;
+    }
+  }
+
+  private JexlExpression compileExpression(String expression) {
+    return expressionCache.get(expression, expressionEngine::createExpression);
+  }
+
+  private JxltEngine.Template compileTemplate(String template) {
+    return templateCache.get(template, templateEngine::createTemplate);
+  }
+
+  private boolean evaluateRuleExpression(CompiledTriggerRule compiled, TriggerEvent event, ReadOnlyContext context) {
+    TriggerRule rule = compiled.getRule();
+    try {
+      // Variables assigned by the expression are only visible to this evaluation.
+      Object result = compiled.getExpression().evaluate(context.overlay());
       if (result instanceof Boolean bool) {
         return bool;
       } else {
@@ -154,54 +458,214 @@ class RuleEvaluationEngine implements MetricAspect {
     }
   }
 
-  private void triggerAction(TriggerRule rule, TriggerEvent event) {
-    TriggerActionDefinition definition = fetchTriggerActionDefinition(rule.getTriggerAction().getName());
+  private void triggerAction(TriggerAdministrationService snapshot, CompiledTriggerRule compiled, TriggerEvent event,
+                             ReadOnlyContext context, PendingEvaluation pending) {
+    TriggerRule rule = compiled.getRule();
+    TriggerActionDefinition definition = fetchTriggerActionDefinition(snapshot, rule.getTriggerAction().getName());
     if (definition == null) return;
 
-    try (TriggerAction action = loadTriggerAction(definition.getTriggerActionClass())) {
-      if (action == null) return;
+    // Trigger parameters are evaluated only once, retries are executed with the same parameters.
+    Map<String, String> triggerParameters = evaluateTriggerParameters(definition, compiled, event, context);
+    executeAction(new ActionInvocation(definition, rule.getId(), event.getId(), triggerParameters, false, pending), 1);
+  }
 
-      debug("Initialize action [TriggerActionDefinition: %s, Initialization parameters: %s].",
-          definition.getId(), definition.getInitParameters());
-      action.init(definition.getInitParameters());
+  private boolean replayDeadLetter(DeadLetter deadLetter) {
+    // Use the current definition, e.g. the action's endpoint might have been changed since the invocation failed.
+    TriggerAdministrationService snapshot = ObjectUtils.ifNull(service.getSnapshot(), service);
+    TriggerActionDefinition definition = fetchTriggerActionDefinition(snapshot, deadLetter.getActionDefinitionName());
+    if (definition == null) {
+      LOGGER.warning("Dropping dead letter because TriggerActionDefinition '%s' doesn't exist anymore [TriggerRule: %s, TriggerEvent: %s].",
+          deadLetter.getActionDefinitionName(), deadLetter.getRuleId(), deadLetter.getEventId());
+      return false;
+    }
+
+    replayedActionInvocationsCounter.incrementAndGet();
+    // Wait for asynchronous actions, such that the replay only continues after the outcome is known.
+    return executeAction(new ActionInvocation(definition, deadLetter.getRuleId(), deadLetter.getEventId(),
+        deadLetter.getTriggerParameters(), true, null), 1).join();
+  }
 
-      Map<String, String> triggerParameters = evaluateTriggerParameters(definition, rule, event);
-      debug("Execute action [TriggerActionDefinition: %s, Trigger parameters: %s].",
-          definition.getId(), triggerParameters);
-      action.trigger(triggerParameters);
+  private CompletableFuture<Boolean> executeAction(ActionInvocation invocation, int attempt) {
+    TriggerActionDefinition definition = invocation.definition;
+    TriggerActionRegistry.Lease lease = null;
+    ActionDeadline deadline = null;
+    boolean completed = false;
+    try {
+      // Reuse an already initialized instance of the action if possible.
+      lease = triggerActionRegistry.borrow(definition);
+      TriggerAction action = lease.getAction();
+
+      debug("Execute action [TriggerActionDefinition: %s, Trigger parameters: %s, Attempt: %d].",
+          definition.getId(), invocation.triggerParameters, attempt);
+      deadline = startDeadline();
+      CompletionStage<Void> execution = null;
+      try {
+        // Asynchronous actions only hand the execution over, the outcome is handled once the returned stage completes.
+        if (action instanceof AsyncTriggerAction) {
+          execution = ((AsyncTriggerAction) action).triggerAsync(invocation.triggerParameters);
+        } else {
+          action.trigger(invocation.triggerParameters);
+        }
+        completed = true;
+      } finally {
+        if (deadline != null) deadline.finish();
+      }
 
-      debug("Successfully executed action [TriggerActionDefinition: %s, TriggerRule: %s, TriggerEvent: %s].",
-          definition.getId(), rule.getId(), event.getId());
-      successfulActionInvocationsCounter.incrementAndGet();
+      if (deadline != null && deadline.isExpired()) {
+        // The action didn't react to the interrupt but completed anyway. Never retry it, it has been performed already.
+        LOGGER.warning("Action completed after exceeding deadline of %d ms [TriggerActionDefinition: %s, TriggerRule: %s, TriggerEvent: %s].",
+            deadline.getMillis(), definition.getId(), invocation.ruleId, invocation.eventId);
+        lateActionInvocationsCounter.incrementAndGet();
+      }
+
+      if (execution == null) return CompletableFuture.completedFuture(handleSuccess(invocation));
+      return execution.handle((ignored, error) -> error == null ? handleSuccess(invocation) :
+          handleFailure(invocation, attempt, toExecutionException(error))).toCompletableFuture();
     } catch (ParameterException ex) {
       LOGGER.info(ex, "Could not initialize/execute action due to missing or invalid parameter " +
               "[TriggerActionDefinition: %s, TriggerRule: %s, TriggerEvent: %s, Parameter: %s].",
-          definition.getId(), rule.getId(), event.getId(), ex.getParameter());
+          definition.getId(), invocation.ruleId, invocation.eventId, ex.getParameter());
       failedActionInvocationsCounter.incrementAndGet();
-    } catch (TriggerInitializationException | TriggerExecutionException ex) {
-      LOGGER.info(ex, "Failed to initialize/execute action [TriggerActionDefinition: %s, TriggerRule: %s, TriggerEvent: %s].",
-          definition.getId(), rule.getId(), event.getId());
+      invocation.finish();
+    } catch (TriggerExecutionException ex) {
+      return CompletableFuture.completedFuture(handleFailure(invocation, attempt, ex));
+    } catch (TriggerInitializationException ex) {
+      LOGGER.info(ex, "Failed to initialize action [TriggerActionDefinition: %s, TriggerRule: %s, TriggerEvent: %s].",
+          definition.getId(), invocation.ruleId, invocation.eventId);
       failedActionInvocationsCounter.incrementAndGet();
+      invocation.finish();
+    } catch (RuntimeException ex) {
+      // Don't leave the evaluation pending forever because of an unexpected failure.
+      invocation.finish();
+      throw ex;
+    } finally {
+      if (deadline != null && deadline.isExpired()) {
+        if (!completed) timedOutActionInvocationsCounter.incrementAndGet();
+        // The instance might be in an inconsistent state after being interrupted, don't reuse it.
+        triggerActionRegistry.discard(lease);
+      } else {
+        triggerActionRegistry.release(lease);
+      }
+    }
+    return CompletableFuture.completedFuture(false);
+  }
+
+  private boolean handleSuccess(ActionInvocation invocation) {
+    debug("Successfully executed action [TriggerActionDefinition: %s, TriggerRule: %s, TriggerEvent: %s].",
+        invocation.definition.getId(), invocation.ruleId, invocation.eventId);
+    successfulActionInvocationsCounter.incrementAndGet();
+    invocation.finish();
+    return true;
+  }
+
+  private boolean handleFailure(ActionInvocation invocation, int attempt, TriggerExecutionException ex) {
+    if (ex.isRetryable() && scheduleRetry(invocation, attempt, ex)) {
+      LOGGER.info(ex, "Failed to execute action, retrying later [TriggerActionDefinition: %s, TriggerRule: %s, TriggerEvent: %s, Attempt: %d].",
+          invocation.definition.getId(), invocation.ruleId, invocation.eventId, attempt);
+      return false;
+    }
+    LOGGER.info(ex, "Failed to execute action [TriggerActionDefinition: %s, TriggerRule: %s, TriggerEvent: %s, Attempt: %d].",
+        invocation.definition.getId(), invocation.ruleId, invocation.eventId, attempt);
+    failedActionInvocationsCounter.incrementAndGet();
+    storeDeadLetter(invocation, ex);
+    invocation.finish();
+    return false;
+  }
+
+  private static TriggerExecutionException toExecutionException(Throwable error) {
+    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    if (cause instanceof TriggerExecutionException) return (TriggerExecutionException) cause;
+    // Asynchronous actions should only fail with TriggerExecutionExceptions, don't retry anything unexpected.
+    return new TriggerExecutionException("Could not execute action.", cause, false);
+  }
+
+  private boolean storeDeadLetter(ActionInvocation invocation, TriggerExecutionException error) {
+    DeadLetterStore store = deadLetterStore;
+    if (store == null) return false;
+
+    try {
+      store.add(new DeadLetter(System.currentTimeMillis(), invocation.ruleId, invocation.definition.getId(),
+          invocation.definition.getName(), invocation.eventId, invocation.triggerParameters, String.valueOf(error)));
+      deadLetteredActionInvocationsCounter.incrementAndGet();
+      return true;
+    } catch (IOException | RuntimeException ex) {
+      LOGGER.error(ex, "Could not store failed action invocation in dead-letter store [TriggerActionDefinition: %s, TriggerRule: %s, TriggerEvent: %s].",
+          invocation.definition.getId(), invocation.ruleId, invocation.eventId);
+      return false;
     }
   }
 
-  private TriggerAction loadTriggerAction(String triggerAction) {
+  private boolean scheduleRetry(ActionInvocation invocation, int attempt, TriggerExecutionException error) {
+    RetryPolicy policy = invocation.definition.getRetryPolicy();
+    Executor executor = retryExecutor;
+    // Replayed invocations are executed only once, failures go back into the dead-letter store.
+    if (invocation.replay || policy == null || attempt >= policy.getMaxAttempts() || executor == null) return false;
+
+    if (pendingActionRetriesCounter.incrementAndGet() > MAXIMUM_PENDING_ACTION_RETRIES) {
+      pendingActionRetriesCounter.decrementAndGet();
+      LOGGER.warning("Too many pending retries, giving up on action [TriggerActionDefinition: %s, TriggerRule: %s, TriggerEvent: %s].",
+          invocation.definition.getId(), invocation.ruleId, invocation.eventId);
+      return false;
+    }
+
+    // Subtract a random jitter of up to half of the backoff, such that retries of many failed executions are spread out.
+    long backoff = policy.calculateBackoffMillis(attempt);
+    long delay = backoff - ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    ActionRetry retry = new ActionRetry(invocation, attempt + 1, error);
+    pendingRetries.add(retry);
+
     try {
-      Class<?> triggerActionClass = getClass().getClassLoader().loadClass(triggerAction);
-      if (!TriggerAction.class.isAssignableFrom(triggerActionClass)) {
-        LOGGER.warning("Could not instantiate TriggerAction. Class '%s' does not implement TriggerAction interface.", triggerAction);
-        failedActionInvocationsCounter.incrementAndGet();
-        return null;
-      }
-      return (TriggerAction) triggerActionClass.getDeclaredConstructor().newInstance();
-    } catch (Exception ex) {
-      LOGGER.warning(ex, "Could not instantiate TriggerAction from class '%s'.", triggerAction);
-      failedActionInvocationsCounter.incrementAndGet();
+      // The timer thread only hands the retry over to the executor when it's due, it never executes actions itself.
+      getTimer().schedule(() -> retry.dispatch(executor), delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException ex) {
+      // The engine is being closed concurrently, let the caller give up on the invocation.
+      if (pendingRetries.remove(retry)) pendingActionRetriesCounter.decrementAndGet();
+      return false;
+    }
+
+    retriedActionInvocationsCounter.incrementAndGet();
+    return true;
+  }
+
+  private ActionDeadline startDeadline() {
+    long millis = actionExecutionDeadlineMillis;
+    if (millis <= 0) return null;
+
+    ActionDeadline deadline = new ActionDeadline(Thread.currentThread(), millis);
+    try {
+      deadline.schedule(getTimer());
+      return deadline;
+    } catch (RejectedExecutionException ex) {
+      // The engine is being closed concurrently, execute the action without deadline.
       return null;
     }
   }
 
-  private Map<String, String> evaluateTriggerParameters(TriggerActionDefinition action, TriggerRule rule, TriggerEvent event) {
+  private ScheduledExecutorService getTimer() {
+    ScheduledThreadPoolExecutor current = timer;
+    if (current != null) return current;
+
+    timerLock.lock();
+    try {
+      if (timer == null) {
+        current = new ScheduledThreadPoolExecutor(1, runnable -> {
+          Thread thread = new Thread(runnable, "rule-evaluation-engine-timer");
+          thread.setDaemon(true);
+          return thread;
+        });
+        // Most actions complete before their deadline, don't keep cancelled tasks around until they would expire.
+        current.setRemoveOnCancelPolicy(true);
+        timer = current;
+      }
+      return timer;
+    } finally {
+      timerLock.unlock();
+    }
+  }
+
+  private Map<String, String> evaluateTriggerParameters(TriggerActionDefinition action, CompiledTriggerRule compiled,
+                                                        TriggerEvent event, ReadOnlyContext context) {
+    TriggerRule rule = compiled.getRule();
     Map<String, String> evaluated = MapUtils.map();
 
     // Add all trigger parameters defined in the action with their default values.
@@ -210,16 +674,15 @@ class RuleEvaluationEngine implements MetricAspect {
     }
 
     // Evaluate and add all trigger parameters defined in the rule (potentially overwriting the default value).
-    for (Map.Entry<String, String> parameter : MapUtils.map(rule.getTriggerParameters()).entrySet()) {
+    for (Map.Entry<String, JxltEngine.Template> parameter : compiled.getTriggerParameters().entrySet()) {
       try {
         // StringWriter is wrapped inside a PrintWriter in order to support $jexl.print() statements.
         Writer result = new StringWriter();
-        templateEngine.createTemplate(parameter.getValue())
-            .evaluate(populateExpressionContext(event.getContextParameters()), new PrintWriter(result));
+        parameter.getValue().evaluate(context.overlay(), new PrintWriter(result));
         evaluated.put(parameter.getKey(), result.toString());
       } catch (JexlException ex) {
         LOGGER.info(ex, "Could not evaluate expression for trigger parameter '%s' [TriggerRule: %s, TriggerEvent: %s].",
-            parameter, rule.getId(), event.getId());
+            parameter.getKey(), rule.getId(), event.getId());
         expressionEvaluationErrorCounter.incrementAndGet();
       }
     }
@@ -227,10 +690,10 @@ class RuleEvaluationEngine implements MetricAspect {
     return evaluated;
   }
 
-  private TriggerEventDefinition fetchTriggerEventDefinition(TriggerEvent event) {
+  private TriggerEventDefinition fetchTriggerEventDefinition(TriggerAdministrationService snapshot, TriggerEvent event) {
     try {
       debug("Fetching TriggerEventDefinition for service '%s' and event '%s'.", event.getService(), event.getEvent());
-      return service.getTriggerEventDefinition(new TriggerEventDefinitionGetByServiceEventRequest()
+      return snapshot.getTriggerEventDefinition(new TriggerEventDefinitionGetByServiceEventRequest()
           .setService(event.getService())
           .setEvent(event.getEvent())
       );
@@ -241,10 +704,10 @@ class RuleEvaluationEngine implements MetricAspect {
     }
   }
 
-  private Iterable<TriggerRule> fetchTriggerRules(TriggerEvent event) {
+  private Iterable<TriggerRule> fetchTriggerRules(TriggerAdministrationService snapshot, TriggerEvent event) {
     try {
       debug("Fetching TriggerRules for service '%s' and event '%s'.", event.getService(), event.getEvent());
-      return service.searchTriggerRules(new TriggerRuleSearchRequest()
+      return snapshot.searchTriggerRules(new TriggerRuleSearchRequest()
           .addService(event.getService())
           .addEvent(event.getEvent())
       );
@@ -255,10 +718,10 @@ class RuleEvaluationEngine implements MetricAspect {
     }
   }
 
-  private TriggerActionDefinition fetchTriggerActionDefinition(String name) {
+  private TriggerActionDefinition fetchTriggerActionDefinition(TriggerAdministrationService snapshot, String name) {
     try {
       debug("Fetching TriggerActionDefinition for name '%s'.", name);
-      return service.getTriggerActionDefinition(new TriggerActionDefinitionGetByNameRequest().setName(name));
+      return snapshot.getTriggerActionDefinition(new TriggerActionDefinitionGetByNameRequest().setName(name));
     } catch (InvalidArgumentException | ObjectNotFoundException ex) {
       LOGGER.warning(ex, "Could not fetch TriggerActionDefinition for name '%s'.", name);
       administrationServiceErrorCounter.incrementAndGet();
@@ -266,21 +729,15 @@ class RuleEvaluationEngine implements MetricAspect {
     }
   }
 
-  private JexlContext populateExpressionContext(Map<String, ?> contextParameters) {
-    if (MapUtils.isEmpty(contextParameters)) return new MapContext();
-
-    // Need to manually populate the context in order to satisfy the Java compiler.
-    JexlContext context = new MapContext();
-    contextParameters.forEach(context::set);
-    return context;
-  }
-
   private void logSuccessfulStep(TriggerRule rule, TriggerEvent event, String step) {
+    // Check before calling debug() in order to not allocate the arguments array for every step.
+    if (!LOGGER.isDebug()) return;
     debug("Successfully passed %s step of the rule evaluation [TriggerRule: %s, TriggerEvent: %s].",
         step, rule.getId(), event.getId());
   }
 
   private void logFailedStep(TriggerRule rule, TriggerEvent event, String step) {
+    if (!LOGGER.isDebug()) return;
     debug("Failed %s step of the rule evaluation [TriggerRule: %s, TriggerEvent: %s].",
         step, rule.getId(), event.getId());
   }
@@ -290,4 +747,216 @@ class RuleEvaluationEngine implements MetricAspect {
       LOGGER.debug(formattedMessage, args);
     }
   }
+
+  /**
+   * Execution of a TriggerAction for a matching TriggerRule, which can be executed multiple times if it's retried.
+   */
+  private static class ActionInvocation {
+    private final TriggerActionDefinition definition;
+    private final UUID ruleId;
+    private final UUID eventId;
+    private final Map<String, String> triggerParameters;
+    private final boolean replay;
+    private final PendingEvaluation pending;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    private ActionInvocation(TriggerActionDefinition definition, UUID ruleId, UUID eventId,
+                             Map<String, String> triggerParameters, boolean replay, PendingEvaluation pending) {
+      this.definition = definition;
+      this.ruleId = ruleId;
+      this.eventId = eventId;
+      this.triggerParameters = triggerParameters;
+      this.replay = replay;
+      this.pending = pending;
+      if (pending != null) pending.begin();
+    }
+
+    /**
+     * Must be called once the outcome of the invocation is final, i.e. it succeeded or won't be retried anymore.
+     */
+    private void finish() {
+      if (pending != null && finished.compareAndSet(false, true)) pending.end();
+    }
+  }
+
+  /**
+   * Outstanding work of one evaluated TriggerEvent. The evaluation itself and every ActionInvocation count as one
+   * unit of work, the completion callback is invoked after all of them have ended.
+   */
+  private static class PendingEvaluation {
+    private final AtomicInteger outstanding = new AtomicInteger(1);
+    private final Runnable onCompletion;
+
+    private PendingEvaluation(Runnable onCompletion) {
+      this.onCompletion = onCompletion;
+    }
+
+    private void begin() {
+      outstanding.incrementAndGet();
+    }
+
+    private void end() {
+      if (outstanding.decrementAndGet() == 0) onCompletion.run();
+    }
+  }
+
+  /**
+   * Retry of a failed {@link ActionInvocation}. A retry is pending from being scheduled until it either starts
+   * executing or is abandoned, whatever happens first. An abandoned retry is never executed.
+   */
+  class ActionRetry implements Runnable {
+    private final ActionInvocation invocation;
+    private final int attempt;
+    private final TriggerExecutionException error;
+
+    private ActionRetry(ActionInvocation invocation, int attempt, TriggerExecutionException error) {
+      this.invocation = invocation;
+      this.attempt = attempt;
+      this.error = error;
+    }
+
+    @Override
+    public void run() {
+      if (!removePending()) return;
+      executeAction(invocation, attempt);
+    }
+
+    /**
+     * Give up on this retry if it hasn't started executing yet. The invocation counts as failed and is stored in the
+     * dead-letter store if one is configured.
+     */
+    private void abandon() {
+      if (removePending()) giveUp();
+    }
+
+    /**
+     * @return True if this retry was pending, i.e. it has neither been started nor abandoned before
+     */
+    private boolean removePending() {
+      if (!pendingRetries.remove(this)) return false;
+      pendingActionRetriesCounter.decrementAndGet();
+      return true;
+    }
+
+    /**
+     * @return True if the invocation was stored in the dead-letter store
+     */
+    private boolean giveUp() {
+      failedActionInvocationsCounter.incrementAndGet();
+      LOGGER.warning("Abandoning retry of action [TriggerActionDefinition: %s, TriggerRule: %s, TriggerEvent: %s, Attempt: %d].",
+          invocation.definition.getId(), invocation.ruleId, invocation.eventId, attempt);
+      boolean stored = storeDeadLetter(invocation, error);
+      invocation.finish();
+      return stored;
+    }
+
+    private void dispatch(Executor executor) {
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException ex) {
+        LOGGER.warning(ex, "Could not execute retry of action [TriggerActionDefinition: %s, TriggerRule: %s, TriggerEvent: %s].",
+            invocation.definition.getId(), invocation.ruleId, invocation.eventId);
+        abandon();
+      }
+    }
+  }
+
+  /**
+   * Deadline of a single action execution which interrupts the executing thread once it has expired.
+   */
+  private static class ActionDeadline implements Runnable {
+    private final Thread thread;
+    private final long millis;
+    // Not using synchronized in order to not pin the carrier thread of a virtual thread.
+    private final ReentrantLock lock = new ReentrantLock();
+    private ScheduledFuture<?> future;
+    private boolean finished;
+    private boolean expired;
+
+    private ActionDeadline(Thread thread, long millis) {
+      this.thread = thread;
+      this.millis = millis;
+    }
+
+    private void schedule(ScheduledExecutorService timer) {
+      future = timer.schedule(this, millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+      lock.lock();
+      try {
+        if (finished) return;
+        expired = true;
+        thread.interrupt();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Must be called by the executing thread when the execution has finished. Clears the interrupt caused by the
+     * deadline, such that it doesn't leak into subsequent work of the thread.
+     */
+    private void finish() {
+      lock.lock();
+      try {
+        finished = true;
+        future.cancel(false);
+        if (expired) Thread.interrupted();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private boolean isExpired() {
+      lock.lock();
+      try {
+        return expired;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private long getMillis() {
+      return millis;
+    }
+  }
+
+  /**
+   * Compilation of the TriggerRules of one configuration snapshot, which completes once all rules have been compiled.
+   */
+  private static class SnapshotCompilation {
+    private final TriggerAdministrationService snapshot;
+    private final CompletableFuture<SnapshotRules> rules = new CompletableFuture<>();
+
+    private SnapshotCompilation(TriggerAdministrationService snapshot) {
+      this.snapshot = snapshot;
+    }
+  }
+
+  /**
+   * Compiled TriggerRules of one configuration snapshot. Rules are identified by identity because a snapshot hands out
+   * the same TriggerRule objects on every request.
+   */
+  private static class SnapshotRules {
+    private final Map<TriggerRule, CompiledTriggerRule> compiled = new IdentityHashMap<>();
+    private final Set<TriggerRule> invalid = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private void addCompiled(CompiledTriggerRule rule) {
+      compiled.put(rule.getRule(), rule);
+    }
+
+    private void addInvalid(TriggerRule rule) {
+      invalid.add(rule);
+    }
+
+    private CompiledTriggerRule get(TriggerRule rule) {
+      return compiled.get(rule);
+    }
+
+    private boolean isInvalid(TriggerRule rule) {
+      return invalid.contains(rule);
+    }
+  }
 }
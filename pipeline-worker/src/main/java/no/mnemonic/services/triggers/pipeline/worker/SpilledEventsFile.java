@@ -0,0 +1,169 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.logging.Logger;
+import no.mnemonic.commons.logging.Logging;
+import no.mnemonic.commons.utilities.ObjectUtils;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Stores {@link TriggerEvent}s which couldn't be processed before a worker was stopped, such that they can be restored
+ * when the worker is started again.
+ * <p>
+ * Every spill creates a new file which is written to a temporary file first and atomically moved into place afterwards,
+ * thus, a crash while spilling never leaves a partially written spill file behind. A spill file is only deleted after
+ * all events in it have been restored.
+ */
+class SpilledEventsFile {
+
+  private static final Logger LOGGER = Logging.getLogger(SpilledEventsFile.class);
+
+  static final String SPILL_FILE_PREFIX = "spilled-events-";
+  static final String SPILL_FILE_SUFFIX = ".bin";
+  private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+  private static final int FORMAT_VERSION = 1;
+
+  private final Path file;
+  private final List<TriggerEvent> events;
+  private final int corruptedEvents;
+
+  private SpilledEventsFile(Path file, List<TriggerEvent> events, int corruptedEvents) {
+    this.file = file;
+    this.events = events;
+    this.corruptedEvents = corruptedEvents;
+  }
+
+  /**
+   * Write events into a new spill file in the given directory, creating the directory if it doesn't exist yet.
+   * Events which cannot be encoded are skipped.
+   *
+   * @param directory Directory of the spill files
+   * @param events    Events to spill
+   * @return Number of spilled events
+   * @throws IOException If the spill file could not be written
+   */
+  static int write(Path directory, Collection<TriggerEvent> events) throws IOException {
+    ObjectUtils.notNull(directory, "'directory' is required!");
+    ObjectUtils.notNull(events, "'events' is required!");
+
+    List<byte[]> encoded = new ArrayList<>(events.size());
+    for (TriggerEvent event : events) {
+      try {
+        encoded.add(TriggerEventCodec.encode(event));
+      } catch (IllegalArgumentException ex) {
+        LOGGER.warning(ex, "Could not spill event with id = %s.", event.getId());
+      }
+    }
+    if (encoded.isEmpty()) return 0;
+
+    Files.createDirectories(directory);
+    // Include a nano timestamp such that spilling twice within the same millisecond doesn't overwrite a file.
+    String name = String.format("%s%020d-%016x%s", SPILL_FILE_PREFIX, System.currentTimeMillis(), System.nanoTime(), SPILL_FILE_SUFFIX);
+    Path temporary = directory.resolve(name + TEMPORARY_FILE_SUFFIX);
+    try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(encoded.size());
+      for (byte[] event : encoded) {
+        out.writeInt(event.length);
+        out.write(event);
+      }
+      out.flush();
+      file.getFD().sync();
+    }
+    Files.move(temporary, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+    return encoded.size();
+  }
+
+  /**
+   * Read all spill files in the given directory, oldest first. Temporary files left behind by a crash while spilling
+   * are ignored. Spill files which cannot be read at all are skipped and kept for inspection.
+   *
+   * @param directory Directory of the spill files
+   * @return Read spill files, empty if the directory doesn't exist
+   * @throws IOException If the directory could not be listed
+   */
+  static List<SpilledEventsFile> readAll(Path directory) throws IOException {
+    ObjectUtils.notNull(directory, "'directory' is required!");
+    if (!Files.isDirectory(directory)) return new ArrayList<>();
+
+    List<Path> files;
+    try (Stream<Path> stream = Files.list(directory)) {
+      files = stream.filter(SpilledEventsFile::isSpillFile).sorted().collect(Collectors.toList());
+    }
+
+    List<SpilledEventsFile> result = new ArrayList<>(files.size());
+    for (Path file : files) {
+      try {
+        result.add(read(file));
+      } catch (IOException ex) {
+        LOGGER.error(ex, "Could not read spill file %s, keeping it.", file);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Delete this spill file after its events have been restored.
+   *
+   * @throws IOException If the file could not be deleted
+   */
+  void delete() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  Path getFile() {
+    return file;
+  }
+
+  /**
+   * @return Events stored in this spill file
+   */
+  List<TriggerEvent> getEvents() {
+    return events;
+  }
+
+  /**
+   * @return Number of events in this spill file which could not be decoded
+   */
+  int getCorruptedEvents() {
+    return corruptedEvents;
+  }
+
+  private static boolean isSpillFile(Path file) {
+    String name = file.getFileName().toString();
+    return name.startsWith(SPILL_FILE_PREFIX) && name.endsWith(SPILL_FILE_SUFFIX) && Files.isRegularFile(file);
+  }
+
+  private static SpilledEventsFile read(Path file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      int version = in.readInt();
+      if (version != FORMAT_VERSION) throw new IOException("Unsupported format version: " + version);
+
+      int size = in.readInt();
+      if (size < 0) throw new IOException("Invalid number of events: " + size);
+      List<TriggerEvent> events = new ArrayList<>();
+      int corrupted = 0;
+      for (int i = 0; i < size; i++) {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Invalid event length: " + length);
+        byte[] data = in.readNBytes(length);
+        if (data.length != length) throw new EOFException("Spill file is truncated!");
+        try {
+          events.add(TriggerEventCodec.decode(data));
+        } catch (IllegalArgumentException ex) {
+          LOGGER.warning(ex, "Skipping corrupted event in spill file %s.", file);
+          corrupted++;
+        }
+      }
+      return new SpilledEventsFile(file, events, corrupted);
+    }
+  }
+}
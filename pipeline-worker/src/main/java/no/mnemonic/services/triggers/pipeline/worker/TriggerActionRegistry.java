@@ -0,0 +1,325 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.logging.Logger;
+import no.mnemonic.commons.logging.Logging;
+import no.mnemonic.commons.utilities.ObjectUtils;
+import no.mnemonic.commons.utilities.collections.MapUtils;
+import no.mnemonic.services.triggers.action.TriggerAction;
+import no.mnemonic.services.triggers.action.exceptions.ParameterException;
+import no.mnemonic.services.triggers.action.exceptions.TriggerInitializationException;
+import no.mnemonic.services.triggers.api.model.v1.TriggerActionDefinition;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of initialized {@link TriggerAction} instances which are reused across events.
+ * <p>
+ * Instances are pooled per TriggerActionDefinition and keyed by the definition's id, action class and initialization
+ * parameters. An instance is only used by one thread at a time: {@link #borrow(TriggerActionDefinition)} hands out an
+ * idle instance (or creates and initializes a new one) and {@link #release(Lease)} returns it to the pool. When a
+ * definition changes, a new pool is created for the new version, while events still evaluated against the previous
+ * configuration snapshot keep using the pool of the previous version. Pools which haven't been used since the previous
+ * configuration snapshot are removed by {@link #prune()}: their idle instances are closed and instances still in use
+ * are closed once they are released. The same happens to all instances when the registry is closed, but the registry
+ * can still be used afterwards.
+ * <p>
+ * Borrowing an instance doesn't lock. The key of a definition is cached per definition instance, which are the same
+ * instances for all events evaluated against one configuration snapshot. Closing an instance might block (e.g. until
+ * its pending requests have completed), thus, instances are closed by a background thread instead of the thread
+ * borrowing or releasing them.
+ */
+class TriggerActionRegistry implements AutoCloseable {
+
+  private static final Logger LOGGER = Logging.getLogger(TriggerActionRegistry.class);
+  private static final long CLOSE_THREAD_KEEP_ALIVE_SECONDS = 60;
+  // Bounds the key cache if definitions are never pruned, e.g. because a service without snapshots creates new
+  // definition instances all the time.
+  private static final int MAXIMUM_CACHED_KEYS = 1000;
+
+  private final int maximumIdleInstancesPerDefinition;
+  private final Map<Key, Pool> pools = new ConcurrentHashMap<>();
+  // Definitions don't override equals(), thus, keys are cached per definition instance.
+  private final Map<TriggerActionDefinition, Key> keys = new ConcurrentHashMap<>();
+  private final AtomicLong createdInstancesCounter = new AtomicLong();
+  private final AtomicLong closedInstancesCounter = new AtomicLong();
+  private final AtomicLong generation = new AtomicLong();
+  private final ThreadPoolExecutor closeExecutor;
+
+  /**
+   * Create a new registry.
+   *
+   * @param maximumIdleInstancesPerDefinition Maximum number of idle instances kept per TriggerActionDefinition
+   */
+  TriggerActionRegistry(int maximumIdleInstancesPerDefinition) {
+    if (maximumIdleInstancesPerDefinition <= 0) {
+      throw new IllegalArgumentException("'maximumIdleInstancesPerDefinition' must be > 0!");
+    }
+    this.maximumIdleInstancesPerDefinition = maximumIdleInstancesPerDefinition;
+    // A single thread closing instances in order, which is only kept alive while there's something to close.
+    this.closeExecutor = new ThreadPoolExecutor(1, 1, CLOSE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, "trigger-action-close");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.closeExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Borrow an initialized TriggerAction instance for a TriggerActionDefinition. The instance must be returned using
+   * {@link #release(Lease)} after it has been triggered.
+   *
+   * @param definition TriggerActionDefinition
+   * @return Lease of an initialized instance
+   * @throws ParameterException             If the instance could not be initialized due to invalid parameters
+   * @throws TriggerInitializationException If the instance could not be created or initialized
+   */
+  Lease borrow(TriggerActionDefinition definition) throws ParameterException, TriggerInitializationException {
+    ObjectUtils.notNull(definition, "'definition' is required!");
+
+    Key key = keys.get(definition);
+    if (key == null) key = cacheKey(definition);
+    Pool pool = pools.get(key);
+    if (pool == null) pool = pools.computeIfAbsent(key, Pool::new);
+    // Avoid writing to shared memory if the pool has been marked already.
+    long current = generation.get();
+    if (pool.usedGeneration != current) pool.usedGeneration = current;
+
+    TriggerAction action = pool.idle.pollFirst();
+    if (action != null) {
+      pool.idleCount.decrementAndGet();
+      return new Lease(pool, action);
+    }
+
+    return new Lease(pool, createInstance(definition));
+  }
+
+  /**
+   * Return a borrowed instance to the registry. It will be closed if the registry is full, its pool has been pruned in
+   * the meantime or the registry has been closed since borrowing the instance.
+   *
+   * @param lease Lease returned by {@link #borrow(TriggerActionDefinition)}
+   */
+  void release(Lease lease) {
+    if (lease == null) return;
+
+    Pool pool = lease.pool;
+    if (!pool.retired) {
+      if (pool.idleCount.incrementAndGet() <= maximumIdleInstancesPerDefinition) {
+        pool.idle.offerFirst(lease.action);
+        // Retiring the pool concurrently might have missed this instance, make sure that it's closed in this case.
+        if (pool.retired && pool.idle.remove(lease.action)) {
+          closeInstance(lease.action);
+        }
+        return;
+      }
+      // Pool is full.
+      pool.idleCount.decrementAndGet();
+    }
+
+    closeInstance(lease.action);
+  }
+
+  /**
+   * Close a borrowed instance instead of returning it to the registry, e.g. because it might be in an inconsistent
+   * state after its execution has been cancelled.
+   *
+   * @param lease Lease returned by {@link #borrow(TriggerActionDefinition)}
+   */
+  void discard(Lease lease) {
+    if (lease == null) return;
+    closeInstance(lease.action);
+  }
+
+  /**
+   * Remove the pools of all definitions which haven't been used since the previous call, i.e. which haven't been used
+   * with the previous configuration snapshot. Must be called whenever the configuration snapshot changes.
+   */
+  void prune() {
+    long previous = generation.getAndIncrement();
+    // Definitions of previous snapshots aren't needed anymore, definitions still in use are cached again on demand.
+    keys.clear();
+    for (Pool pool : pools.values()) {
+      if (pool.usedGeneration < previous && pools.remove(pool.key, pool)) {
+        pool.retire();
+      }
+    }
+  }
+
+  /**
+   * Close all idle instances and wait until they're closed. Instances currently in use will be closed when they are
+   * released.
+   */
+  @Override
+  public void close() {
+    keys.clear();
+    for (Key key : pools.keySet()) {
+      Pool pool = pools.remove(key);
+      if (pool != null) pool.retire();
+    }
+    awaitClosing();
+  }
+
+  /**
+   * Wait until all instances retired so far have been closed.
+   */
+  void awaitClosing() {
+    // Instances are closed in order, thus, all of them have been closed once this marker has been executed.
+    Future<?> marker = closeExecutor.submit(() -> {
+    });
+    try {
+      marker.get();
+    } catch (InterruptedException ex) {
+      LOGGER.warning("Interrupted while waiting for TriggerActions to be closed.");
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException ex) {
+      // Cannot happen, the marker doesn't throw.
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  long getCreatedInstances() {
+    return createdInstancesCounter.get();
+  }
+
+  long getClosedInstances() {
+    return closedInstancesCounter.get();
+  }
+
+  long getIdleInstances() {
+    return pools.values().stream().mapToLong(pool -> pool.idle.size()).sum();
+  }
+
+  private Key cacheKey(TriggerActionDefinition definition) {
+    if (keys.size() >= MAXIMUM_CACHED_KEYS) keys.clear();
+    Key key = new Key(definition);
+    keys.put(definition, key);
+    return key;
+  }
+
+  private TriggerAction createInstance(TriggerActionDefinition definition) throws ParameterException, TriggerInitializationException {
+    TriggerAction action = loadTriggerAction(definition.getTriggerActionClass());
+    try {
+      if (LOGGER.isDebug()) {
+        LOGGER.debug("Initialize action [TriggerActionDefinition: %s, Initialization parameters: %s].",
+            definition.getId(), definition.getInitParameters());
+      }
+      action.init(definition.getInitParameters());
+      createdInstancesCounter.incrementAndGet();
+      return action;
+    } catch (ParameterException | TriggerInitializationException | RuntimeException ex) {
+      // Never pool instances which could not be initialized.
+      closeQuietly(action);
+      throw ex;
+    }
+  }
+
+  private TriggerAction loadTriggerAction(String triggerAction) throws TriggerInitializationException {
+    Class<?> triggerActionClass;
+    try {
+      triggerActionClass = getClass().getClassLoader().loadClass(triggerAction);
+    } catch (Exception ex) {
+      throw new TriggerInitializationException(String.format("Could not instantiate TriggerAction from class '%s'.", triggerAction), ex);
+    }
+
+    if (!TriggerAction.class.isAssignableFrom(triggerActionClass)) {
+      throw new TriggerInitializationException(String.format("Could not instantiate TriggerAction. " +
+          "Class '%s' does not implement TriggerAction interface.", triggerAction));
+    }
+
+    try {
+      return (TriggerAction) triggerActionClass.getDeclaredConstructor().newInstance();
+    } catch (Exception ex) {
+      throw new TriggerInitializationException(String.format("Could not instantiate TriggerAction from class '%s'.", triggerAction), ex);
+    }
+  }
+
+  private void closeInstance(TriggerAction action) {
+    closedInstancesCounter.incrementAndGet();
+    closeExecutor.execute(() -> closeQuietly(action));
+  }
+
+  private void closeQuietly(TriggerAction action) {
+    try {
+      action.close();
+    } catch (Exception ex) {
+      LOGGER.warning(ex, "Could not close TriggerAction of class '%s'.", action.getClass().getName());
+    }
+  }
+
+  /**
+   * Initialized TriggerAction instance borrowed from the registry.
+   */
+  static class Lease {
+    private final Pool pool;
+    private final TriggerAction action;
+
+    private Lease(Pool pool, TriggerAction action) {
+      this.pool = pool;
+      this.action = action;
+    }
+
+    TriggerAction getAction() {
+      return action;
+    }
+  }
+
+  private class Pool {
+    private final Key key;
+    private final ConcurrentLinkedDeque<TriggerAction> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private volatile boolean retired;
+    private volatile long usedGeneration;
+
+    private Pool(Key key) {
+      this.key = key;
+    }
+
+    private void retire() {
+      retired = true;
+      for (TriggerAction action = idle.pollFirst(); action != null; action = idle.pollFirst()) {
+        closeInstance(action);
+      }
+    }
+  }
+
+  private static class Key {
+    private final UUID id;
+    private final String triggerActionClass;
+    private final Map<String, String> initParameters;
+    private final int hashCode;
+
+    private Key(TriggerActionDefinition definition) {
+      this.id = definition.getId();
+      this.triggerActionClass = definition.getTriggerActionClass();
+      this.initParameters = MapUtils.map(definition.getInitParameters());
+      this.hashCode = Objects.hash(id, triggerActionClass, initParameters);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Key that = (Key) o;
+      return Objects.equals(id, that.id) &&
+          Objects.equals(triggerActionClass, that.triggerActionClass) &&
+          Objects.equals(initParameters, that.initParameters);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
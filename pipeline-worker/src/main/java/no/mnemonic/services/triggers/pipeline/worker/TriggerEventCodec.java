@@ -0,0 +1,319 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.utilities.ObjectUtils;
+import no.mnemonic.services.triggers.pipeline.api.AccessMode;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compact binary encoding of {@link TriggerEvent}s used when events are persisted outside of the JVM.
+ * <p>
+ * Context parameters may contain null values, strings, numbers (including {@link BigInteger} and {@link BigDecimal}),
+ * booleans, characters, UUIDs and enums (encoded by name) as well as lists, sets and maps of those. Other types cannot
+ * be encoded. Decoded events are immutable and retain the iteration order of collections and maps.
+ */
+class TriggerEventCodec {
+
+  private static final byte FORMAT_VERSION = 1;
+
+  private static final byte TYPE_NULL = 0;
+  private static final byte TYPE_STRING = 1;
+  private static final byte TYPE_BOOLEAN = 2;
+  private static final byte TYPE_BYTE = 3;
+  private static final byte TYPE_SHORT = 4;
+  private static final byte TYPE_INTEGER = 5;
+  private static final byte TYPE_LONG = 6;
+  private static final byte TYPE_FLOAT = 7;
+  private static final byte TYPE_DOUBLE = 8;
+  private static final byte TYPE_CHARACTER = 9;
+  private static final byte TYPE_UUID = 10;
+  private static final byte TYPE_BIG_INTEGER = 11;
+  private static final byte TYPE_BIG_DECIMAL = 12;
+  private static final byte TYPE_LIST = 13;
+  private static final byte TYPE_SET = 14;
+  private static final byte TYPE_MAP = 15;
+
+  private TriggerEventCodec() {
+  }
+
+  /**
+   * Encode an event.
+   *
+   * @param event Event to encode
+   * @return Encoded event
+   * @throws IllegalArgumentException If the event contains context parameters which cannot be encoded
+   */
+  static byte[] encode(TriggerEvent event) {
+    ObjectUtils.notNull(event, "'event' is required!");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(FORMAT_VERSION);
+      writeUUID(out, event.getId());
+      out.writeLong(event.getTimestamp());
+      writeNullableString(out, event.getService());
+      writeNullableString(out, event.getEvent());
+      writeUUID(out, event.getOrganization());
+      writeNullableString(out, event.getAccessMode() != null ? event.getAccessMode().name() : null);
+      writeNullableString(out, event.getScope());
+      writeValue(out, event.getContextParameters());
+    } catch (IOException ex) {
+      // Writing to a byte array never fails.
+      throw new UncheckedIOException(ex);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decode an event previously encoded with {@link #encode(TriggerEvent)}.
+   *
+   * @param data Encoded event
+   * @return Decoded event
+   * @throws IllegalArgumentException If the data is not a valid encoded event
+   */
+  static TriggerEvent decode(byte[] data) {
+    ObjectUtils.notNull(data, "'data' is required!");
+
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+      byte version = in.readByte();
+      if (version != FORMAT_VERSION) throw new IllegalArgumentException("Unsupported format version: " + version);
+
+      DecodedTriggerEvent event = new DecodedTriggerEvent();
+      event.id = readUUID(in);
+      event.timestamp = in.readLong();
+      event.service = readNullableString(in);
+      event.event = readNullableString(in);
+      event.organization = readUUID(in);
+      String accessMode = readNullableString(in);
+      event.accessMode = accessMode != null ? AccessMode.valueOf(accessMode) : null;
+      event.scope = readNullableString(in);
+      event.contextParameters = castMap(readValue(in));
+      if (in.available() > 0) throw new IllegalArgumentException("Unexpected data after encoded event!");
+      return event;
+    } catch (IOException | ClassCastException ex) {
+      throw new IllegalArgumentException("Could not decode event!", ex);
+    }
+  }
+
+  private static void writeValue(DataOutputStream out, Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(TYPE_NULL);
+    } else if (value instanceof String) {
+      out.writeByte(TYPE_STRING);
+      writeString(out, (String) value);
+    } else if (value instanceof Boolean) {
+      out.writeByte(TYPE_BOOLEAN);
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof Byte) {
+      out.writeByte(TYPE_BYTE);
+      out.writeByte((Byte) value);
+    } else if (value instanceof Short) {
+      out.writeByte(TYPE_SHORT);
+      out.writeShort((Short) value);
+    } else if (value instanceof Integer) {
+      out.writeByte(TYPE_INTEGER);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte(TYPE_LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Float) {
+      out.writeByte(TYPE_FLOAT);
+      out.writeFloat((Float) value);
+    } else if (value instanceof Double) {
+      out.writeByte(TYPE_DOUBLE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof Character) {
+      out.writeByte(TYPE_CHARACTER);
+      out.writeChar((Character) value);
+    } else if (value instanceof UUID) {
+      out.writeByte(TYPE_UUID);
+      writeUUID(out, (UUID) value);
+    } else if (value instanceof Enum) {
+      out.writeByte(TYPE_STRING);
+      writeString(out, ((Enum<?>) value).name());
+    } else if (value instanceof BigInteger) {
+      out.writeByte(TYPE_BIG_INTEGER);
+      writeString(out, value.toString());
+    } else if (value instanceof BigDecimal) {
+      out.writeByte(TYPE_BIG_DECIMAL);
+      writeString(out, value.toString());
+    } else if (value instanceof Collection) {
+      Collection<?> collection = (Collection<?>) value;
+      out.writeByte(value instanceof Set ? TYPE_SET : TYPE_LIST);
+      out.writeInt(collection.size());
+      for (Object element : collection) {
+        writeValue(out, element);
+      }
+    } else if (value instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) value;
+      out.writeByte(TYPE_MAP);
+      out.writeInt(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        writeValue(out, entry.getKey());
+        writeValue(out, entry.getValue());
+      }
+    } else {
+      throw new IllegalArgumentException("Cannot encode value of type " + value.getClass().getName() + "!");
+    }
+  }
+
+  private static Object readValue(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case TYPE_NULL:
+        return null;
+      case TYPE_STRING:
+        return readString(in);
+      case TYPE_BOOLEAN:
+        return in.readBoolean();
+      case TYPE_BYTE:
+        return in.readByte();
+      case TYPE_SHORT:
+        return in.readShort();
+      case TYPE_INTEGER:
+        return in.readInt();
+      case TYPE_LONG:
+        return in.readLong();
+      case TYPE_FLOAT:
+        return in.readFloat();
+      case TYPE_DOUBLE:
+        return in.readDouble();
+      case TYPE_CHARACTER:
+        return in.readChar();
+      case TYPE_UUID:
+        return readUUID(in);
+      case TYPE_BIG_INTEGER:
+        return new BigInteger(readString(in));
+      case TYPE_BIG_DECIMAL:
+        return new BigDecimal(readString(in));
+      case TYPE_LIST: {
+        int size = readSize(in);
+        List<Object> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+          list.add(readValue(in));
+        }
+        return Collections.unmodifiableList(list);
+      }
+      case TYPE_SET: {
+        int size = readSize(in);
+        Set<Object> set = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+          set.add(readValue(in));
+        }
+        return Collections.unmodifiableSet(set);
+      }
+      case TYPE_MAP: {
+        int size = readSize(in);
+        Map<Object, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+          map.put(readValue(in), readValue(in));
+        }
+        return Collections.unmodifiableMap(map);
+      }
+      default:
+        throw new IllegalArgumentException("Unknown value type: " + type);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    // Unlike writeUTF() strings aren't limited to 64KB.
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[readSize(in)];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) writeString(out, value);
+  }
+
+  private static String readNullableString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? readString(in) : null;
+  }
+
+  private static void writeUUID(DataOutputStream out, UUID value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value == null) return;
+    out.writeLong(value.getMostSignificantBits());
+    out.writeLong(value.getLeastSignificantBits());
+  }
+
+  private static UUID readUUID(DataInputStream in) throws IOException {
+    return in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+  }
+
+  private static int readSize(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    // Guard against allocating huge arrays for corrupted data.
+    if (size < 0 || size > in.available()) throw new IllegalArgumentException("Invalid size: " + size);
+    return size;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, ?> castMap(Object value) {
+    if (value != null && !(value instanceof Map)) throw new IllegalArgumentException("Context parameters must be a map!");
+    return (Map<String, ?>) value;
+  }
+
+  private static class DecodedTriggerEvent implements TriggerEvent {
+    private UUID id;
+    private long timestamp;
+    private String service;
+    private String event;
+    private UUID organization;
+    private AccessMode accessMode;
+    private String scope;
+    private Map<String, ?> contextParameters;
+
+    @Override
+    public UUID getId() {
+      return id;
+    }
+
+    @Override
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    @Override
+    public String getService() {
+      return service;
+    }
+
+    @Override
+    public String getEvent() {
+      return event;
+    }
+
+    @Override
+    public UUID getOrganization() {
+      return organization;
+    }
+
+    @Override
+    public AccessMode getAccessMode() {
+      return accessMode;
+    }
+
+    @Override
+    public String getScope() {
+      return scope;
+    }
+
+    @Override
+    public Map<String, ?> getContextParameters() {
+      return contextParameters;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.utilities.StringUtils;
+import no.mnemonic.services.triggers.pipeline.api.SubmissionException;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
+
+import static no.mnemonic.services.triggers.pipeline.api.SubmissionException.ErrorCode.InvalidTriggerEvent;
+
+/**
+ * Validation of submitted {@link TriggerEvent}s shared by all worker implementations.
+ */
+class TriggerEventValidator {
+
+  private TriggerEventValidator() {
+  }
+
+  /**
+   * Verify that all fields required for evaluating a TriggerEvent are set.
+   *
+   * @param event Submitted TriggerEvent
+   * @throws SubmissionException With error code InvalidTriggerEvent if the event is invalid
+   */
+  static void validate(TriggerEvent event) throws SubmissionException {
+    if (event == null) throw new SubmissionException("TriggerEvent is null!", InvalidTriggerEvent);
+    // All fields below must be set for a valid TriggerEvent.
+    if (event.getId() == null) throw new SubmissionException("TriggerEvent is missing id!", InvalidTriggerEvent);
+    if (event.getTimestamp() <= 0) throw new SubmissionException("TriggerEvent is missing timestamp!", InvalidTriggerEvent);
+    if (StringUtils.isBlank(event.getService())) throw new SubmissionException("TriggerEvent is missing service!", InvalidTriggerEvent);
+    if (StringUtils.isBlank(event.getEvent())) throw new SubmissionException("TriggerEvent is missing event!", InvalidTriggerEvent);
+    if (event.getOrganization() == null) throw new SubmissionException("TriggerEvent is missing organization!", InvalidTriggerEvent);
+    if (event.getAccessMode() == null) throw new SubmissionException("TriggerEvent is missing access mode!", InvalidTriggerEvent);
+  }
+}
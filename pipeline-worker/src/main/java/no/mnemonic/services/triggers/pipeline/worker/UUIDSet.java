@@ -0,0 +1,76 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Immutable set of UUIDs stored as primitive most/least significant bits in an open-addressing hash table.
+ * Checking whether a UUID is contained in the set does not allocate any objects.
+ */
+class UUIDSet {
+
+  private final long[] mostSignificantBits;
+  private final long[] leastSignificantBits;
+  private final boolean[] occupied;
+  private final int mask;
+  private final int size;
+
+  UUIDSet(Collection<UUID> ids) {
+    int count = ids != null ? ids.size() : 0;
+    // Keep the load factor at or below 0.5 to keep probe sequences short.
+    int capacity = Integer.highestOneBit(Math.max(1, count) * 2 - 1) << 1;
+    mostSignificantBits = new long[capacity];
+    leastSignificantBits = new long[capacity];
+    occupied = new boolean[capacity];
+    mask = capacity - 1;
+
+    int added = 0;
+    if (ids != null) {
+      for (UUID id : ids) {
+        if (id != null && add(id)) added++;
+      }
+    }
+    size = added;
+  }
+
+  /**
+   * Check whether a UUID is contained in the set.
+   *
+   * @param id UUID to check
+   * @return True if the UUID is contained in the set, false otherwise (also if the UUID is null)
+   */
+  boolean contains(UUID id) {
+    if (id == null) return false;
+
+    long msb = id.getMostSignificantBits();
+    long lsb = id.getLeastSignificantBits();
+    for (int slot = slot(msb, lsb); occupied[slot]; slot = (slot + 1) & mask) {
+      if (mostSignificantBits[slot] == msb && leastSignificantBits[slot] == lsb) return true;
+    }
+    return false;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private boolean add(UUID id) {
+    long msb = id.getMostSignificantBits();
+    long lsb = id.getLeastSignificantBits();
+    int slot = slot(msb, lsb);
+    while (occupied[slot]) {
+      if (mostSignificantBits[slot] == msb && leastSignificantBits[slot] == lsb) return false;
+      slot = (slot + 1) & mask;
+    }
+    mostSignificantBits[slot] = msb;
+    leastSignificantBits[slot] = lsb;
+    occupied[slot] = true;
+    return true;
+  }
+
+  private int slot(long msb, long lsb) {
+    long hash = msb ^ lsb;
+    int h = (int) (hash ^ (hash >>> 32));
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
@@ -0,0 +1,158 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.utilities.ObjectUtils;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link WorkerPool} starting a new virtual thread per task instead of pooling threads.
+ * <p>
+ * Virtual threads are cheap to create, thus, they're never reused. Only the number of tasks executed concurrently is
+ * limited: a task is started when it's submitted (or when another task has completed) as long as fewer than the
+ * maximum number of tasks are running, otherwise it waits in the queue.
+ */
+class VirtualThreadWorkerPool implements WorkerPool {
+
+  private final BlockingQueue<Runnable> queue;
+  private final ThreadFactory threadFactory;
+  private final AtomicInteger activeTasks = new AtomicInteger();
+  private final LongAdder scheduledTasks = new LongAdder();
+  private final LongAdder completedTasks = new LongAdder();
+  private final ReentrantLock terminationLock = new ReentrantLock();
+  private final Condition terminated = terminationLock.newCondition();
+  private volatile int maximumPoolSize;
+  private volatile boolean shutdown;
+
+  VirtualThreadWorkerPool(int maximumPoolSize, BlockingQueue<Runnable> queue, ThreadFactory threadFactory) {
+    if (maximumPoolSize <= 0) throw new IllegalArgumentException("'maximumPoolSize' must be > 0!");
+    this.maximumPoolSize = maximumPoolSize;
+    this.queue = ObjectUtils.notNull(queue, "'queue' is required!");
+    this.threadFactory = ObjectUtils.notNull(threadFactory, "'threadFactory' is required!");
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    ObjectUtils.notNull(task, "'task' is required!");
+    if (shutdown) throw new RejectedExecutionException("Pool has been shut down!");
+    if (!queue.offer(task)) throw new RejectedExecutionException("Queue is full!");
+    scheduledTasks.increment();
+    startQueuedTasks();
+  }
+
+  @Override
+  public int getActiveCount() {
+    return activeTasks.get();
+  }
+
+  @Override
+  public int getMaximumPoolSize() {
+    return maximumPoolSize;
+  }
+
+  @Override
+  public void setMaximumPoolSize(int size) {
+    if (size <= 0) throw new IllegalArgumentException("'size' must be > 0!");
+    maximumPoolSize = size;
+    startQueuedTasks();
+  }
+
+  @Override
+  public long getTaskCount() {
+    return scheduledTasks.sum();
+  }
+
+  @Override
+  public long getCompletedTaskCount() {
+    return completedTasks.sum();
+  }
+
+  @Override
+  public BlockingQueue<Runnable> getQueue() {
+    return queue;
+  }
+
+  @Override
+  public boolean remove(Runnable task) {
+    return queue.remove(task);
+  }
+
+  @Override
+  public void shutdown() {
+    shutdown = true;
+    signalIfTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    terminationLock.lock();
+    try {
+      while (!isTerminated()) {
+        if (nanos <= 0) return false;
+        nanos = terminated.awaitNanos(nanos);
+      }
+      return true;
+    } finally {
+      terminationLock.unlock();
+    }
+  }
+
+  private void startQueuedTasks() {
+    while (!queue.isEmpty()) {
+      int active = activeTasks.get();
+      if (active >= maximumPoolSize) return;
+      if (!activeTasks.compareAndSet(active, active + 1)) continue;
+
+      Runnable task = queue.poll();
+      if (task == null) {
+        // Another thread took the task. Check the queue again, a task might have been queued in the meantime while
+        // this thread was holding the slot.
+        activeTasks.decrementAndGet();
+        continue;
+      }
+      start(task);
+    }
+  }
+
+  private void start(Runnable task) {
+    try {
+      threadFactory.newThread(() -> run(task)).start();
+    } catch (RuntimeException | OutOfMemoryError ex) {
+      // Put the task back, it's started when the next task completes.
+      activeTasks.decrementAndGet();
+      queue.offer(task);
+      throw ex;
+    }
+  }
+
+  private void run(Runnable task) {
+    try {
+      task.run();
+    } finally {
+      completedTasks.increment();
+      activeTasks.decrementAndGet();
+      startQueuedTasks();
+      if (shutdown) signalIfTerminated();
+    }
+  }
+
+  private boolean isTerminated() {
+    return shutdown && activeTasks.get() == 0 && queue.isEmpty();
+  }
+
+  private void signalIfTerminated() {
+    terminationLock.lock();
+    try {
+      if (isTerminated()) terminated.signalAll();
+    } finally {
+      terminationLock.unlock();
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.logging.Logger;
+import no.mnemonic.commons.logging.Logging;
+import no.mnemonic.commons.utilities.ObjectUtils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads without requiring a JDK which supports them at compile time.
+ * <p>
+ * The project targets JDK 17, thus, the virtual thread API (available from JDK 21) is looked up reflectively once.
+ * If the running JDK doesn't support virtual threads {@link #isSupported()} returns false and callers are expected to
+ * fall back to platform threads.
+ */
+class VirtualThreads {
+
+  private static final Logger LOGGER = Logging.getLogger(VirtualThreads.class);
+
+  private static final Method OF_VIRTUAL = lookupMethod(Thread.class, "ofVirtual");
+  private static final Method IS_VIRTUAL = lookupMethod(Thread.class, "isVirtual");
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * Check whether the running JDK supports virtual threads.
+   *
+   * @return True if virtual threads are supported
+   */
+  static boolean isSupported() {
+    return OF_VIRTUAL != null && IS_VIRTUAL != null;
+  }
+
+  /**
+   * Check whether a thread is a virtual thread.
+   *
+   * @param thread Thread to check
+   * @return True if the thread is a virtual thread, always false if virtual threads aren't supported
+   */
+  static boolean isVirtual(Thread thread) {
+    if (thread == null || !isSupported()) return false;
+    try {
+      return (Boolean) IS_VIRTUAL.invoke(thread);
+    } catch (ReflectiveOperationException ex) {
+      return false;
+    }
+  }
+
+  /**
+   * Create a factory which starts a new virtual thread per call, named with the given prefix and an increasing counter.
+   *
+   * @param namePrefix Prefix of the names of created threads
+   * @return Factory creating virtual threads
+   * @throws UnsupportedOperationException If the running JDK doesn't support virtual threads
+   */
+  static ThreadFactory createThreadFactory(String namePrefix) {
+    ObjectUtils.notNull(namePrefix, "'namePrefix' is required!");
+    if (!isSupported()) throw new UnsupportedOperationException("Virtual threads are not supported by the running JDK!");
+
+    try {
+      // Equivalent to Thread.ofVirtual().name(namePrefix, 0).factory(). Look up the methods on the public builder
+      // interface because the builder implementation isn't accessible.
+      Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+      Object builder = OF_VIRTUAL.invoke(null);
+      builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+      return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      throw new UnsupportedOperationException("Could not create virtual thread factory!", ex);
+    }
+  }
+
+  private static Method lookupMethod(Class<?> type, String name) {
+    try {
+      return type.getMethod(name);
+    } catch (NoSuchMethodException ex) {
+      LOGGER.debug("Method %s.%s() not available, virtual threads are not supported.", type.getName(), name);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor running the tasks of a worker, which are queued in a single work queue until they can be executed.
+ * <p>
+ * Tasks are either executed by a fixed number of pooled platform threads ({@link #withPlatformThreads(int, BlockingQueue)})
+ * or each on its own virtual thread ({@link #withVirtualThreads(int, BlockingQueue, ThreadFactory)}). In both cases the
+ * maximum pool size limits the number of tasks executed concurrently. After {@link #shutdown()} no new tasks are
+ * accepted, but queued tasks are still executed.
+ */
+interface WorkerPool extends Executor {
+
+  /**
+   * Create a pool executing tasks on a fixed number of platform threads.
+   *
+   * @param size  Number of threads
+   * @param queue Queue holding tasks until a thread is available
+   * @return Pool backed by a {@link ThreadPoolExecutor}
+   */
+  static WorkerPool withPlatformThreads(int size, BlockingQueue<Runnable> queue) {
+    return new PlatformWorkerPool(new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, queue));
+  }
+
+  /**
+   * Create a pool starting a new virtual thread per task. Virtual threads are never reused.
+   *
+   * @param maximumConcurrentTasks Maximum number of tasks executed concurrently
+   * @param queue                  Queue holding tasks while the maximum number of tasks are executed
+   * @param threadFactory          Factory creating virtual threads
+   * @return Pool starting one virtual thread per task
+   */
+  static WorkerPool withVirtualThreads(int maximumConcurrentTasks, BlockingQueue<Runnable> queue, ThreadFactory threadFactory) {
+    return new VirtualThreadWorkerPool(maximumConcurrentTasks, queue, threadFactory);
+  }
+
+  /**
+   * @return Number of tasks currently executed
+   */
+  int getActiveCount();
+
+  /**
+   * @return Maximum number of tasks executed concurrently
+   */
+  int getMaximumPoolSize();
+
+  /**
+   * Change the maximum number of tasks executed concurrently. Running tasks are not affected by a reduction.
+   *
+   * @param size New maximum number of tasks executed concurrently
+   */
+  void setMaximumPoolSize(int size);
+
+  /**
+   * @return Total number of tasks scheduled for execution
+   */
+  long getTaskCount();
+
+  /**
+   * @return Total number of tasks which have completed execution
+   */
+  long getCompletedTaskCount();
+
+  /**
+   * @return Queue holding tasks waiting for execution
+   */
+  BlockingQueue<Runnable> getQueue();
+
+  /**
+   * Remove a task from the queue if it hasn't been started yet.
+   *
+   * @param task Task to remove
+   * @return True if the task was removed
+   */
+  boolean remove(Runnable task);
+
+  /**
+   * Stop accepting new tasks, queued tasks are still executed.
+   */
+  void shutdown();
+
+  /**
+   * Wait until all tasks have completed after {@link #shutdown()}.
+   *
+   * @param timeout Maximum time to wait
+   * @param unit    Unit of the timeout
+   * @return True if all tasks have completed, false if the timeout expired
+   * @throws InterruptedException If interrupted while waiting
+   */
+  boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
+}
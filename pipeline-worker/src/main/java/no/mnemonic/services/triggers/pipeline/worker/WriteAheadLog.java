@@ -0,0 +1,630 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.logging.Logger;
+import no.mnemonic.commons.logging.Logging;
+import no.mnemonic.commons.utilities.ObjectUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of records stored in memory-mapped segment files inside one directory.
+ * <p>
+ * Every record is assigned a sequence number, starting at 1 and increasing by one per record. A record consists of
+ * a header (payload length, CRC32C checksum of the payload and sequence number) followed by the payload. Segments are
+ * named after the sequence number of their first record and a new segment is started once a record doesn't fit into
+ * the current one.
+ * <p>
+ * Appending a record only copies it into the mapped segment. Durability is provided by a background flusher thread
+ * which forces all records appended since the last flush to disk at once (group commit). Callers wait for their record
+ * to become durable using {@link #awaitDurable(long, long)}. A failure to force records to disk is final: after a
+ * failed fsync it's unknown which records have reached the disk, thus, the flusher thread stops and appending or
+ * waiting for records fails from then on. The log must be closed and opened again to recover.
+ * <p>
+ * Consumers read records using a {@link Cursor} and persist their progress with {@link #checkpoint(long)}. Segments
+ * which only contain records up to the checkpoint are deleted. When the log is opened again torn or corrupted records
+ * at the end of the log are discarded, and reading from the checkpoint returns all records which haven't been
+ * checkpointed.
+ * <p>
+ * Mapped segments are unmapped explicitly instead of waiting for the garbage collector, such that the memory and disk
+ * space of deleted segments are released right away. Deleted segments are unmapped by the flusher thread once no
+ * cursor references them anymore, all other segments when the log is closed. Cursors must be closed once they aren't
+ * used anymore, otherwise they keep deleted segments mapped. Cursors must not be used after the log has been closed.
+ */
+class WriteAheadLog implements AutoCloseable {
+
+  static final String SEGMENT_FILE_SUFFIX = ".log";
+
+  private static final Logger LOGGER = Logging.getLogger(WriteAheadLog.class);
+
+  private static final String CHECKPOINT_FILE = "checkpoint";
+  private static final String CHECKPOINT_TEMPORARY_FILE = "checkpoint.tmp";
+  // Payload length (4 bytes), checksum (4 bytes) and sequence number (8 bytes).
+  private static final int RECORD_HEADER_SIZE = 16;
+  private static final int MINIMUM_SEGMENT_SIZE = 1024;
+  // Records which nobody waits for are forced to disk after this delay at the latest.
+  private static final long MAXIMUM_FLUSH_DELAY_MILLIS = 10;
+  private static final byte[] ZEROS = new byte[64 * 1024];
+  private static final MethodHandle INVOKE_CLEANER = lookupInvokeCleaner();
+
+  private final Path directory;
+  private final int segmentSize;
+  // All segments by sequence number of their first record.
+  private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+  private final ReentrantLock appendLock = new ReentrantLock();
+  private final ReentrantLock flushLock = new ReentrantLock();
+  private final Condition flushRequested = flushLock.newCondition();
+  private final Condition flushCompleted = flushLock.newCondition();
+  private final Object checkpointLock = new Object();
+  private final LongAdder totalFlushesCounter = new LongAdder();
+  private final Thread flusherThread;
+  // Deleted segments which haven't been unmapped yet.
+  private final Queue<Segment> retiredSegments = new ConcurrentLinkedQueue<>();
+  private final List<Cursor> cursors = new CopyOnWriteArrayList<>();
+
+  // Only modified while holding the append lock.
+  private volatile Segment activeSegment;
+  private volatile long appendedSequence;
+  private volatile long durableSequence;
+  private volatile long checkpointSequence;
+  private volatile IOException flushFailure;
+  private volatile boolean closed;
+
+  private WriteAheadLog(Path directory, int segmentSize) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.flusherThread = new Thread(this::flushRecords, "write-ahead-log-flusher");
+    this.flusherThread.setDaemon(true);
+  }
+
+  /**
+   * Open the log stored in the given directory, creating the directory if it doesn't exist yet.
+   *
+   * @param directory   Directory containing the segment files
+   * @param segmentSize Size of new segment files in bytes
+   * @return Opened log
+   * @throws IOException If the log could not be opened
+   */
+  static WriteAheadLog open(Path directory, int segmentSize) throws IOException {
+    ObjectUtils.notNull(directory, "'directory' is required!");
+    if (segmentSize < MINIMUM_SEGMENT_SIZE) throw new IllegalArgumentException("'segmentSize' must be >= " + MINIMUM_SEGMENT_SIZE + "!");
+
+    WriteAheadLog log = new WriteAheadLog(directory, segmentSize);
+    log.recover();
+    log.flusherThread.start();
+    return log;
+  }
+
+  /**
+   * Append a record. The record is visible to cursors immediately, but not necessarily durable yet.
+   *
+   * @param payload Payload of the record
+   * @return Sequence number assigned to the record
+   * @throws IOException              If a new segment could not be created or forcing records to disk has failed
+   * @throws IllegalArgumentException If the payload is empty or the record is larger than a segment
+   * @throws IllegalStateException    If the log has been closed
+   */
+  long append(byte[] payload) throws IOException {
+    ObjectUtils.notNull(payload, "'payload' is required!");
+    // A length of zero marks the end of a segment.
+    if (payload.length == 0) throw new IllegalArgumentException("'payload' must not be empty!");
+    int recordSize = RECORD_HEADER_SIZE + payload.length;
+    if (recordSize > segmentSize) throw new IllegalArgumentException("Record exceeds the segment size!");
+
+    CRC32C checksum = new CRC32C();
+    checksum.update(payload);
+
+    appendLock.lock();
+    try {
+      if (closed) throw new IllegalStateException("Write-ahead log has been closed!");
+      if (flushFailure != null) throw new IOException("Write-ahead log failed to force records to disk!", flushFailure);
+
+      Segment segment = activeSegment;
+      if (segment.writePosition + recordSize > segment.capacity) segment = roll();
+
+      long sequence = appendedSequence + 1;
+      int position = segment.writePosition;
+      segment.buffer.putInt(position + 4, (int) checksum.getValue());
+      segment.buffer.putLong(position + 8, sequence);
+      segment.buffer.put(position + RECORD_HEADER_SIZE, payload);
+      // The length is written last, a record without length marks the end of the segment.
+      segment.buffer.putInt(position, payload.length);
+      segment.writePosition = position + recordSize;
+      segment.lastSequence = sequence;
+      appendedSequence = sequence;
+      return sequence;
+    } finally {
+      appendLock.unlock();
+    }
+  }
+
+  /**
+   * Wait until a record has been forced to disk.
+   *
+   * @param sequence     Sequence number of the record
+   * @param timeoutNanos Maximum time to wait
+   * @return True if the record is durable, false if the timeout elapsed
+   * @throws IOException          If forcing records to disk failed
+   * @throws InterruptedException If interrupted while waiting
+   */
+  boolean awaitDurable(long sequence, long timeoutNanos) throws IOException, InterruptedException {
+    if (durableSequence >= sequence) return true;
+
+    long nanos = timeoutNanos;
+    flushLock.lockInterruptibly();
+    try {
+      flushRequested.signal();
+      while (durableSequence < sequence) {
+        if (flushFailure != null) throw flushFailure;
+        if (closed) throw new IllegalStateException("Write-ahead log has been closed!");
+        if (nanos <= 0) return false;
+        nanos = flushCompleted.awaitNanos(nanos);
+      }
+      return true;
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /**
+   * Open a cursor returning all records after the given sequence number. The cursor must be closed after use.
+   *
+   * @param afterSequence Sequence number of the last record which should not be returned
+   * @return New cursor
+   */
+  Cursor openCursor(long afterSequence) {
+    Cursor cursor = new Cursor(afterSequence);
+    cursors.add(cursor);
+    return cursor;
+  }
+
+  /**
+   * Persist that all records up to the given sequence number have been processed and delete segments which don't
+   * contain any other records. Checkpoints lower than the current one are ignored.
+   *
+   * @param sequence Sequence number of the last processed record
+   * @throws IOException If the checkpoint could not be persisted
+   */
+  void checkpoint(long sequence) throws IOException {
+    synchronized (checkpointLock) {
+      if (sequence <= checkpointSequence) return;
+      if (sequence > appendedSequence) throw new IllegalArgumentException("Cannot checkpoint records which haven't been appended!");
+
+      Path temporary = directory.resolve(CHECKPOINT_TEMPORARY_FILE);
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+        channel.force(true);
+      }
+      Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      checkpointSequence = sequence;
+
+      for (Segment segment : segments.values()) {
+        // Never delete the segment currently appended to.
+        if (segment.lastSequence > sequence || segment == activeSegment) break;
+        segments.remove(segment.firstSequence);
+        Files.deleteIfExists(segment.file);
+        retiredSegments.add(segment);
+      }
+    }
+  }
+
+  /**
+   * Force all records to disk and stop the flusher thread. Appending records afterwards fails.
+   */
+  @Override
+  public void close() {
+    appendLock.lock();
+    try {
+      closed = true;
+    } finally {
+      appendLock.unlock();
+    }
+
+    flushLock.lock();
+    try {
+      flushRequested.signalAll();
+    } finally {
+      flushLock.unlock();
+    }
+    try {
+      flusherThread.join(TimeUnit.SECONDS.toMillis(30));
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+
+    // Only unmap the segments if the flusher thread doesn't access them anymore.
+    if (flusherThread.isAlive()) return;
+    synchronized (checkpointLock) {
+      retiredSegments.addAll(segments.values());
+      segments.clear();
+      Segment segment;
+      while ((segment = retiredSegments.poll()) != null) {
+        unmap(segment.buffer);
+      }
+    }
+  }
+
+  long getAppendedSequence() {
+    return appendedSequence;
+  }
+
+  long getDurableSequence() {
+    return durableSequence;
+  }
+
+  long getCheckpointSequence() {
+    return checkpointSequence;
+  }
+
+  int getNumberOfSegments() {
+    return segments.size();
+  }
+
+  int getNumberOfRetiredSegments() {
+    return retiredSegments.size();
+  }
+
+  long getTotalFlushes() {
+    return totalFlushesCounter.sum();
+  }
+
+  private void flushRecords() {
+    while (true) {
+      try {
+        flushLock.lock();
+        try {
+          if (durableSequence >= appendedSequence && !closed) {
+            flushRequested.await(MAXIMUM_FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+          }
+        } finally {
+          flushLock.unlock();
+        }
+
+        boolean stop = closed;
+        flush();
+        if (stop) return;
+        if (flushFailure != null) {
+          // Retrying is pointless, the segments are unmapped when the log is closed.
+          LOGGER.error("Stop flushing records of write-ahead log after a failure to force records to disk.");
+          return;
+        }
+        unmapRetiredSegments();
+      } catch (InterruptedException ex) {
+        LOGGER.warning("Flusher thread interrupted, stop flushing records.");
+        return;
+      }
+    }
+  }
+
+  private void flush() {
+    // All records up to this sequence have been completely written, all records appended afterwards go into the next flush.
+    long target = appendedSequence;
+    long durable = durableSequence;
+    try {
+      if (target > durable) {
+        Map.Entry<Long, Segment> first = segments.floorEntry(durable + 1);
+        for (Segment segment : segments.tailMap(first != null ? first.getKey() : durable + 1, true).values()) {
+          if (segment.firstSequence > target) break;
+          // Only force the range written since the last flush instead of the whole mapping. Records up to the
+          // volatile write position have been written completely, forcing records beyond the target is harmless.
+          int end = segment.writePosition;
+          if (end > segment.forcedPosition) {
+            segment.buffer.force(segment.forcedPosition, end - segment.forcedPosition);
+            segment.forcedPosition = end;
+          }
+        }
+        totalFlushesCounter.increment();
+      }
+    } catch (UncheckedIOException ex) {
+      LOGGER.error(ex, "Could not force records to disk.");
+      flushFailure = ex.getCause();
+    }
+
+    flushLock.lock();
+    try {
+      if (flushFailure == null) durableSequence = Math.max(durableSequence, target);
+      flushCompleted.signalAll();
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private void unmapRetiredSegments() {
+    if (retiredSegments.isEmpty()) return;
+
+    // A cursor never moves back to a deleted segment, but it might still reference the segment it has read last.
+    long referencedSequence = Long.MAX_VALUE;
+    for (Cursor cursor : cursors) {
+      referencedSequence = Math.min(referencedSequence, cursor.segmentFirstSequence);
+    }
+    for (Iterator<Segment> iterator = retiredSegments.iterator(); iterator.hasNext(); ) {
+      Segment segment = iterator.next();
+      if (segment.firstSequence >= referencedSequence) continue;
+      iterator.remove();
+      unmap(segment.buffer);
+    }
+  }
+
+  private static void unmap(MappedByteBuffer buffer) {
+    // Best effort, the mapping is released by the garbage collector if the buffer cannot be unmapped explicitly.
+    if (INVOKE_CLEANER == null) return;
+    try {
+      INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+    } catch (Throwable ex) {
+      LOGGER.warning(ex, "Could not unmap segment of write-ahead log.");
+    }
+  }
+
+  private static MethodHandle lookupInvokeCleaner() {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      return MethodHandles.lookup()
+          .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+          .bindTo(field.get(null));
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      LOGGER.info(ex, "Cannot unmap segments of write-ahead log explicitly.");
+      return null;
+    }
+  }
+
+  private Segment roll() throws IOException {
+    Segment segment = createSegment(appendedSequence + 1);
+    segments.put(segment.firstSequence, segment);
+    activeSegment = segment;
+    return segment;
+  }
+
+  private Segment createSegment(long firstSequence) throws IOException {
+    Path file = directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_FILE_SUFFIX));
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // The mapping stays valid after the channel has been closed. The file is extended with zeros.
+      return new Segment(file, firstSequence, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+    }
+  }
+
+  private Segment mapSegment(Path file, long firstSequence) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // Keep the size of existing segments even if the configured segment size has changed.
+      long size = Math.max(channel.size(), segmentSize);
+      if (size > Integer.MAX_VALUE) throw new IOException("Segment file " + file + " is too large!");
+      return new Segment(file, firstSequence, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+  }
+
+  private void recover() throws IOException {
+    Files.createDirectories(directory);
+    Files.deleteIfExists(directory.resolve(CHECKPOINT_TEMPORARY_FILE));
+    Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+    if (Files.exists(checkpointFile)) {
+      byte[] content = Files.readAllBytes(checkpointFile);
+      if (content.length != Long.BYTES) throw new IOException("Checkpoint file " + checkpointFile + " is corrupted!");
+      checkpointSequence = ByteBuffer.wrap(content).getLong();
+    }
+
+    long lastSequence = 0;
+    boolean truncated = false;
+    for (Path file : listSegmentFiles()) {
+      long firstSequence = parseFirstSequence(file);
+      // Segments following a truncated segment or a gap cannot be trusted.
+      if (truncated || (lastSequence > 0 && firstSequence != lastSequence + 1)) {
+        LOGGER.warning("Discarding segment %s of write-ahead log.", file);
+        Files.delete(file);
+        truncated = true;
+        continue;
+      }
+
+      Segment segment = mapSegment(file, firstSequence);
+      truncated = !scan(segment);
+      segments.put(firstSequence, segment);
+      lastSequence = segment.lastSequence;
+    }
+
+    if (lastSequence < checkpointSequence) {
+      // All remaining records have been processed already (or the log was lost), start over after the checkpoint.
+      for (Segment segment : segments.values()) {
+        Files.deleteIfExists(segment.file);
+        unmap(segment.buffer);
+      }
+      segments.clear();
+      lastSequence = checkpointSequence;
+    }
+    if (segments.isEmpty()) {
+      Segment segment = createSegment(lastSequence + 1);
+      segments.put(segment.firstSequence, segment);
+    }
+
+    activeSegment = segments.lastEntry().getValue();
+    appendedSequence = lastSequence;
+    durableSequence = lastSequence;
+    LOGGER.info("Opened write-ahead log in %s [segments: %d, last sequence: %d, checkpoint: %d].",
+        directory, segments.size(), appendedSequence, checkpointSequence);
+  }
+
+  /**
+   * Find all valid records of a segment. Invalid records and everything following them are discarded.
+   *
+   * @return False if invalid records were found
+   */
+  private boolean scan(Segment segment) {
+    CRC32C checksum = new CRC32C();
+    MappedByteBuffer buffer = segment.buffer;
+    int position = 0;
+    long expectedSequence = segment.firstSequence;
+    while (position + RECORD_HEADER_SIZE <= segment.capacity) {
+      int length = buffer.getInt(position);
+      if (length == 0) break;
+
+      boolean valid = length > 0 && position + RECORD_HEADER_SIZE + length <= segment.capacity
+          && buffer.getLong(position + 8) == expectedSequence;
+      if (valid) {
+        checksum.reset();
+        checksum.update(buffer.slice(position + RECORD_HEADER_SIZE, length));
+        valid = (int) checksum.getValue() == buffer.getInt(position + 4);
+      }
+      if (!valid) {
+        LOGGER.warning("Discarding torn or corrupted records of write-ahead log in segment %s starting at position %d.",
+            segment.file, position);
+        // Clear the remainder such that records appended later aren't followed by stale data.
+        for (int offset = position; offset < segment.capacity; offset += ZEROS.length) {
+          buffer.put(offset, ZEROS, 0, Math.min(ZEROS.length, segment.capacity - offset));
+        }
+        buffer.force();
+        segment.writePosition = position;
+        return false;
+      }
+
+      position += RECORD_HEADER_SIZE + length;
+      segment.lastSequence = expectedSequence++;
+    }
+    segment.writePosition = position;
+    return true;
+  }
+
+  private List<Path> listSegmentFiles() throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (Stream<Path> stream = Files.list(directory)) {
+      stream.filter(file -> file.getFileName().toString().endsWith(SEGMENT_FILE_SUFFIX)).forEach(files::add);
+    }
+    files.sort((a, b) -> Long.compare(parseFirstSequence(a), parseFirstSequence(b)));
+    return files;
+  }
+
+  private static long parseFirstSequence(Path file) {
+    String name = file.getFileName().toString();
+    try {
+      return Long.parseLong(name.substring(0, name.length() - SEGMENT_FILE_SUFFIX.length()));
+    } catch (NumberFormatException ex) {
+      throw new IllegalStateException("Unexpected segment file name: " + name, ex);
+    }
+  }
+
+  /**
+   * Record read from the log.
+   */
+  static class Record {
+    private final long sequence;
+    private final byte[] payload;
+
+    private Record(long sequence, byte[] payload) {
+      this.sequence = sequence;
+      this.payload = payload;
+    }
+
+    long getSequence() {
+      return sequence;
+    }
+
+    byte[] getPayload() {
+      return payload;
+    }
+  }
+
+  /**
+   * Reads records in order of their sequence numbers. A cursor must only be used by one thread.
+   */
+  class Cursor implements AutoCloseable {
+    private Segment segment;
+    private int position;
+    private long nextSequence;
+    // First sequence number of the referenced segment, read by the flusher thread before unmapping deleted segments.
+    private volatile long segmentFirstSequence = Long.MAX_VALUE;
+
+    private Cursor(long afterSequence) {
+      nextSequence = afterSequence + 1;
+    }
+
+    /**
+     * Return the next record.
+     *
+     * @return Next record, or null if no further records have been appended yet
+     * @throws IllegalStateException If the log has been closed
+     */
+    Record next() {
+      if (closed) throw new IllegalStateException("Write-ahead log has been closed!");
+      // Volatile read guarantees that the record has been completely written.
+      if (nextSequence > appendedSequence) return null;
+
+      while (true) {
+        if (segment == null || position + RECORD_HEADER_SIZE > segment.capacity || segment.buffer.getInt(position) == 0) {
+          moveToSegmentOf(nextSequence);
+          continue;
+        }
+
+        int length = segment.buffer.getInt(position);
+        long sequence = segment.buffer.getLong(position + 8);
+        int start = position + RECORD_HEADER_SIZE;
+        position = start + length;
+        // Skip records before the requested one when positioning the cursor.
+        if (sequence < nextSequence) continue;
+
+        byte[] payload = new byte[length];
+        segment.buffer.get(start, payload);
+        nextSequence = sequence + 1;
+        return new Record(sequence, payload);
+      }
+    }
+
+    private void moveToSegmentOf(long sequence) {
+      Map.Entry<Long, Segment> entry = segments.floorEntry(sequence);
+      if (entry == null) throw new IllegalStateException("Record with sequence " + sequence + " has already been deleted!");
+      if (entry.getValue() == segment) throw new IllegalStateException("Record with sequence " + sequence + " not found!");
+      segment = entry.getValue();
+      segmentFirstSequence = segment.firstSequence;
+      position = 0;
+    }
+
+    /**
+     * Release the cursor, such that it doesn't prevent deleted segments from being unmapped anymore.
+     */
+    @Override
+    public void close() {
+      cursors.remove(this);
+    }
+  }
+
+  private static class Segment {
+    private final Path file;
+    private final long firstSequence;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    // Only modified while holding the append lock (or during recovery).
+    private volatile int writePosition;
+    private volatile long lastSequence;
+    // End of the range forced to disk, only accessed by the flusher thread.
+    private int forcedPosition;
+
+    private Segment(Path file, long firstSequence, MappedByteBuffer buffer) {
+      this.file = file;
+      this.firstSequence = firstSequence;
+      this.buffer = buffer;
+      this.capacity = buffer.capacity();
+      this.lastSequence = firstSequence - 1;
+    }
+  }
+}
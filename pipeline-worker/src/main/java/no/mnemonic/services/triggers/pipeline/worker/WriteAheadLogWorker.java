@@ -0,0 +1,425 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.component.Dependency;
+import no.mnemonic.commons.component.LifecycleAspect;
+import no.mnemonic.commons.component.ValidationAspect;
+import no.mnemonic.commons.component.ValidationContext;
+import no.mnemonic.commons.logging.Logger;
+import no.mnemonic.commons.logging.Logging;
+import no.mnemonic.commons.metrics.*;
+import no.mnemonic.commons.utilities.StringUtils;
+import no.mnemonic.commons.utilities.lambda.LambdaUtils;
+import no.mnemonic.services.triggers.action.HttpClientAction;
+import no.mnemonic.services.triggers.api.service.v1.TriggerAdministrationService;
+import no.mnemonic.services.triggers.pipeline.api.SubmissionException;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEventConsumer;
+
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static no.mnemonic.services.triggers.pipeline.api.SubmissionException.ErrorCode.*;
+
+/**
+ * Worker implementation of a {@link TriggerEventConsumer} which persists submitted {@link TriggerEvent}s in a
+ * {@link WriteAheadLog} on local disk before accepting them.
+ * <p>
+ * {@link #submit(TriggerEvent)} only returns after the event has been forced to disk, concurrent submissions share one
+ * disk flush (group commit). A dispatcher thread reads events from the log and hands them to a pool of worker threads.
+ * The worker periodically checkpoints the sequence number up to which all events have been processed. An event counts
+ * as processed once all TriggerActions it triggered have finished, including retries and asynchronous executions.
+ * After a restart or crash all events after the last checkpoint are processed again, i.e. events are processed at
+ * least once.
+ * <p>
+ * Context parameters of submitted events must be encodable by {@link TriggerEventCodec}, otherwise the event is rejected
+ * as invalid.
+ */
+public class WriteAheadLogWorker implements LifecycleAspect, MetricAspect, TriggerEventConsumer, ValidationAspect {
+
+  private static final Logger LOGGER = Logging.getLogger(WriteAheadLogWorker.class);
+
+  private static final int DEFAULT_SEGMENT_SIZE_BYTES = 64 * 1024 * 1024;
+  private static final int DEFAULT_NUMBER_OF_WORKER_THREADS = 4;
+  private static final int DEFAULT_MAXIMUM_UNPROCESSED_EVENTS = 100_000;
+  private static final long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 1000;
+  private static final long DEFAULT_SUBMISSION_WAIT_TIME_SECONDS = 30;
+  private static final long DEFAULT_ACTION_EXECUTION_DEADLINE_SECONDS = 120;
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+  private static final long DISPATCHER_IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final LongAdder totalProcessedEventsCounter = new LongAdder();
+  private final LongAdder totalFailedTasksCounter = new LongAdder();
+  private final LongAdder totalRejectedEventsCounter = new LongAdder();
+  private final PerformanceMonitor appendMonitor = new PerformanceMonitor(TimeUnit.MINUTES, 60, 1);
+  private final PerformanceMonitor evaluationMonitor = new PerformanceMonitor(TimeUnit.MINUTES, 60, 1);
+  // Sequence numbers of events handed to the worker threads which haven't been processed yet.
+  private final ConcurrentSkipListSet<Long> inFlightSequences = new ConcurrentSkipListSet<>();
+
+  @Dependency
+  private final TriggerAdministrationService service;
+
+  private RuleEvaluationEngine ruleEvaluationEngine;
+  private volatile WriteAheadLog writeAheadLog;
+  private volatile Thread dispatcherThread;
+  private volatile boolean dispatching;
+  private volatile long lastDispatchedSequence;
+  private long replayedEvents;
+  private Semaphore unprocessedEventPermits;
+  private Semaphore workerThreadPermits;
+  private ThreadPoolExecutor threadPool;
+  private ThreadPoolExecutor retryThreadPool;
+  private ScheduledExecutorService checkpointExecutor;
+
+  private String directory;
+  private int segmentSizeBytes = DEFAULT_SEGMENT_SIZE_BYTES;
+  private int numberOfWorkerThreads = DEFAULT_NUMBER_OF_WORKER_THREADS;
+  private int maximumUnprocessedEvents = DEFAULT_MAXIMUM_UNPROCESSED_EVENTS;
+  private long checkpointIntervalMillis = DEFAULT_CHECKPOINT_INTERVAL_MILLIS;
+  private long submissionWaitTimeSeconds = DEFAULT_SUBMISSION_WAIT_TIME_SECONDS;
+  private long actionExecutionDeadlineSeconds = DEFAULT_ACTION_EXECUTION_DEADLINE_SECONDS;
+
+  @Inject
+  public WriteAheadLogWorker(TriggerAdministrationService service) {
+    this.service = service;
+    this.ruleEvaluationEngine = new RuleEvaluationEngine(this.service);
+  }
+
+  @Override
+  public Metrics getMetrics() throws MetricException {
+    MetricsData metrics = new MetricsData();
+
+    WriteAheadLog log = writeAheadLog;
+    if (log != null) {
+      metrics.addData("lastAppendedSequence", log.getAppendedSequence());
+      metrics.addData("lastDurableSequence", log.getDurableSequence());
+      metrics.addData("checkpointSequence", log.getCheckpointSequence());
+      metrics.addData("unprocessedEvents", log.getAppendedSequence() - getProcessedSequence());
+      metrics.addData("numberOfSegments", log.getNumberOfSegments());
+      metrics.addData("totalFlushes", log.getTotalFlushes());
+      metrics.addData("totalReplayedEvents", replayedEvents);
+      metrics.addData("totalProcessedEvents", totalProcessedEventsCounter.sum());
+      metrics.addData("totalFailedTasks", totalFailedTasksCounter.sum());
+      metrics.addData("totalRejectedEvents", totalRejectedEventsCounter.sum());
+      metrics.addData("totalAppendInvocations", appendMonitor.getTotalInvocations());
+      metrics.addData("totalAppendTimeSpent", appendMonitor.getTotalTimeSpent());
+      metrics.addData("totalRuleEvaluationEngineInvocations", evaluationMonitor.getTotalInvocations());
+      metrics.addData("totalRuleEvaluationEngineTimeSpent", evaluationMonitor.getTotalTimeSpent());
+    }
+
+    return new MetricsGroup()
+        .addSubMetrics("ruleEvaluationEngine", ruleEvaluationEngine.getMetrics())
+        .addSubMetrics("writeAheadLogWorker", metrics)
+        .addSubMetrics("httpConnectionPools", HttpClientAction.getConnectionPoolMetrics())
+        .addSubMetrics("httpCircuitBreakers", HttpClientAction.getCircuitBreakerMetrics());
+  }
+
+  @Override
+  public void validate(ValidationContext validationContext) {
+    if (StringUtils.isBlank(directory)) validationContext.addError(this, "'directory' is required!");
+    if (segmentSizeBytes < 1024) validationContext.addError(this, "'segmentSizeBytes' must be >= 1024!");
+    if (numberOfWorkerThreads <= 0) validationContext.addError(this, "'numberOfWorkerThreads' must be > 0!");
+    if (maximumUnprocessedEvents <= 0) validationContext.addError(this, "'maximumUnprocessedEvents' must be > 0!");
+    if (checkpointIntervalMillis <= 0) validationContext.addError(this, "'checkpointIntervalMillis' must be > 0!");
+    if (submissionWaitTimeSeconds <= 0) validationContext.addError(this, "'submissionWaitTimeSeconds' must be > 0!");
+    if (actionExecutionDeadlineSeconds <= 0) validationContext.addError(this, "'actionExecutionDeadlineSeconds' must be > 0!");
+  }
+
+  @Override
+  public void startComponent() {
+    WriteAheadLog log;
+    try {
+      log = WriteAheadLog.open(Paths.get(directory), segmentSizeBytes);
+    } catch (IOException ex) {
+      throw new IllegalStateException("Could not open write-ahead log in " + directory + "!", ex);
+    }
+
+    ruleEvaluationEngine.setActionExecutionDeadlineMillis(TimeUnit.SECONDS.toMillis(actionExecutionDeadlineSeconds));
+    retryThreadPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(numberOfWorkerThreads);
+    ruleEvaluationEngine.setRetryExecutor(retryThreadPool);
+    threadPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(numberOfWorkerThreads);
+
+    // Events which weren't processed before the last shutdown count against the maximum number of unprocessed events.
+    replayedEvents = log.getAppendedSequence() - log.getCheckpointSequence();
+    if (replayedEvents > 0) LOGGER.info("Replaying %d unprocessed events from write-ahead log.", replayedEvents);
+    unprocessedEventPermits = new Semaphore((int) Math.max(Integer.MIN_VALUE + 1L, maximumUnprocessedEvents - replayedEvents));
+    workerThreadPermits = new Semaphore(numberOfWorkerThreads);
+    lastDispatchedSequence = log.getCheckpointSequence();
+    inFlightSequences.clear();
+
+    dispatching = true;
+    Thread dispatcher = new Thread(() -> dispatchEvents(log), "write-ahead-log-dispatcher");
+    dispatcher.start();
+    dispatcherThread = dispatcher;
+
+    checkpointExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "write-ahead-log-checkpoint"));
+    checkpointExecutor.scheduleWithFixedDelay(this::checkpoint, checkpointIntervalMillis, checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+    writeAheadLog = log;
+  }
+
+  @Override
+  public void stopComponent() {
+    // Stop dispatching first, events not yet dispatched stay in the log and are processed after the next start.
+    LambdaUtils.tryTo(() -> {
+      if (dispatcherThread == null) return;
+      dispatching = false;
+      LockSupport.unpark(dispatcherThread);
+      dispatcherThread.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+      dispatcherThread = null;
+    }, ex -> LOGGER.warning(ex, "Failure while shutting down dispatcher thread."));
+    LambdaUtils.tryTo(() -> {
+      if (threadPool == null) return;
+      threadPool.shutdown();
+      threadPool.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      threadPool = null;
+    }, ex -> LOGGER.warning(ex, "Failure while shutting down worker thread pool."));
+    LambdaUtils.tryTo(() -> {
+      if (checkpointExecutor == null) return;
+      checkpointExecutor.shutdown();
+      checkpointExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      checkpointExecutor = null;
+    }, ex -> LOGGER.warning(ex, "Failure while shutting down checkpoint executor."));
+    LambdaUtils.tryTo(() -> {
+      if (writeAheadLog == null) return;
+      checkpoint();
+      writeAheadLog.close();
+      writeAheadLog = null;
+    }, ex -> LOGGER.warning(ex, "Failure while closing write-ahead log."));
+    LambdaUtils.tryTo(() -> {
+      if (retryThreadPool == null) return;
+      retryThreadPool.shutdown();
+      retryThreadPool.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      retryThreadPool = null;
+    }, ex -> LOGGER.warning(ex, "Failure while shutting down retry thread pool."));
+    // Release resources held by TriggerActions kept for reuse after all tasks have finished.
+    LambdaUtils.tryTo(ruleEvaluationEngine::close, ex -> LOGGER.warning(ex, "Failure while closing rule evaluation engine."));
+  }
+
+  @Override
+  public void submit(TriggerEvent event) throws SubmissionException {
+    WriteAheadLog log = writeAheadLog;
+    if (log == null) throw new IllegalStateException("Write-ahead log is not initialized! Component not started?");
+    TriggerEventValidator.validate(event);
+
+    byte[] payload;
+    try {
+      payload = TriggerEventCodec.encode(event);
+    } catch (IllegalArgumentException ex) {
+      throw new SubmissionException(String.format("TriggerEvent with id = %s cannot be persisted: %s", event.getId(),
+          ex.getMessage()), ex, InvalidTriggerEvent);
+    }
+
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.SECONDS.toNanos(submissionWaitTimeSeconds);
+    try {
+      if (!unprocessedEventPermits.tryAcquire(submissionWaitTimeSeconds, TimeUnit.SECONDS)) {
+        LOGGER.info("Too many unprocessed events in write-ahead log [maximum: %d].", maximumUnprocessedEvents);
+        totalRejectedEventsCounter.increment();
+        throw new SubmissionException(String.format("TriggerEvent with id = %s could not be accepted for processing. " +
+            "Too many unprocessed events.", event.getId()), NoResourcesAvailable);
+      }
+
+      long sequence;
+      try {
+        sequence = log.append(payload);
+      } catch (IOException | RuntimeException ex) {
+        unprocessedEventPermits.release();
+        throw ex;
+      }
+      LockSupport.unpark(dispatcherThread);
+
+      // The event will be processed even if it doesn't become durable in time, the producer can't be sure though.
+      if (!log.awaitDurable(sequence, deadline - System.nanoTime())) {
+        throw new SubmissionException(String.format("TriggerEvent with id = %s could not be persisted in time.",
+            event.getId()), NoResourcesAvailable);
+      }
+      appendMonitor.invoked(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    } catch (IllegalArgumentException ex) {
+      throw new SubmissionException(String.format("TriggerEvent with id = %s cannot be persisted: %s", event.getId(),
+          ex.getMessage()), ex, InvalidTriggerEvent);
+    } catch (IOException ex) {
+      LOGGER.error(ex, "Could not write to write-ahead log.");
+      throw new SubmissionException(String.format("TriggerEvent with id = %s could not be persisted.", event.getId()),
+          ex, NoResourcesAvailable);
+    } catch (IllegalStateException ex) {
+      throw new SubmissionException(String.format("TriggerEvent with id = %s could not be accepted for processing. " +
+          "Component is shutting down.", event.getId()), ex, ComponentUnavailable);
+    } catch (InterruptedException ex) {
+      LOGGER.info(ex, "Received interrupt, shutdown component.");
+      stopComponent();
+      Thread.currentThread().interrupt();
+      throw new SubmissionException(String.format("TriggerEvent with id = %s could not be accepted for processing. " +
+          "Component is shutting down.", event.getId()), ex, ComponentUnavailable);
+    }
+  }
+
+  /**
+   * Configure the directory storing the write-ahead log. Required. The directory must not be shared with other workers.
+   *
+   * @param directory Directory of the write-ahead log
+   * @return this
+   */
+  public WriteAheadLogWorker setDirectory(String directory) {
+    this.directory = directory;
+    return this;
+  }
+
+  /**
+   * Configure the size of a single segment file of the write-ahead log. Default is 64 MiB.
+   *
+   * @param segmentSizeBytes Segment size in bytes
+   * @return this
+   */
+  public WriteAheadLogWorker setSegmentSizeBytes(int segmentSizeBytes) {
+    this.segmentSizeBytes = segmentSizeBytes;
+    return this;
+  }
+
+  /**
+   * Configure the number of worker threads evaluating events. Default is 4.
+   *
+   * @param numberOfWorkerThreads Number of worker threads
+   * @return this
+   */
+  public WriteAheadLogWorker setNumberOfWorkerThreads(int numberOfWorkerThreads) {
+    this.numberOfWorkerThreads = numberOfWorkerThreads;
+    return this;
+  }
+
+  /**
+   * Configure the maximum number of persisted events which haven't been processed yet. Submissions wait while the
+   * limit is reached. Default is 100000.
+   *
+   * @param maximumUnprocessedEvents Maximum number of unprocessed events
+   * @return this
+   */
+  public WriteAheadLogWorker setMaximumUnprocessedEvents(int maximumUnprocessedEvents) {
+    this.maximumUnprocessedEvents = maximumUnprocessedEvents;
+    return this;
+  }
+
+  /**
+   * Configure how often the processing progress is persisted. Events processed after the last checkpoint are
+   * processed again after a crash. Default is 1000 milliseconds.
+   *
+   * @param checkpointIntervalMillis Checkpoint interval
+   * @return this
+   */
+  public WriteAheadLogWorker setCheckpointIntervalMillis(long checkpointIntervalMillis) {
+    this.checkpointIntervalMillis = checkpointIntervalMillis;
+    return this;
+  }
+
+  /**
+   * Configure the maximum time period to wait for an event to be persisted when submitting it. Default is 30 seconds.
+   *
+   * @param submissionWaitTimeSeconds Maximum submission wait time
+   * @return this
+   */
+  public WriteAheadLogWorker setSubmissionWaitTimeSeconds(long submissionWaitTimeSeconds) {
+    this.submissionWaitTimeSeconds = submissionWaitTimeSeconds;
+    return this;
+  }
+
+  /**
+   * Configure the maximum time a single TriggerAction execution may take before it is cancelled by interrupting the
+   * worker thread. Default is 120 seconds.
+   *
+   * @param actionExecutionDeadlineSeconds Action execution deadline
+   * @return this
+   */
+  public WriteAheadLogWorker setActionExecutionDeadlineSeconds(long actionExecutionDeadlineSeconds) {
+    this.actionExecutionDeadlineSeconds = actionExecutionDeadlineSeconds;
+    return this;
+  }
+
+  /**
+   * Configure the used rule evaluation engine. Should only be used for testing.
+   *
+   * @param ruleEvaluationEngine Rule evaluation engine.
+   * @return this
+   */
+  WriteAheadLogWorker setRuleEvaluationEngine(RuleEvaluationEngine ruleEvaluationEngine) {
+    this.ruleEvaluationEngine = ruleEvaluationEngine;
+    return this;
+  }
+
+  private void dispatchEvents(WriteAheadLog log) {
+    WriteAheadLog.Cursor cursor = log.openCursor(log.getCheckpointSequence());
+    try {
+      while (dispatching) {
+        WriteAheadLog.Record record = cursor.next();
+        if (record == null) {
+          // Woken up by submissions, the timeout only guards against missed wake-ups.
+          LockSupport.parkNanos(DISPATCHER_IDLE_WAIT_NANOS);
+          continue;
+        }
+
+        while (!workerThreadPermits.tryAcquire(DISPATCHER_IDLE_WAIT_NANOS, TimeUnit.NANOSECONDS)) {
+          if (!dispatching) return;
+        }
+        // Register the event as in flight before advancing the last dispatched sequence, see getProcessedSequence().
+        inFlightSequences.add(record.getSequence());
+        lastDispatchedSequence = record.getSequence();
+        threadPool.execute(() -> process(record));
+      }
+    } catch (InterruptedException ex) {
+      LOGGER.warning("Dispatcher thread interrupted, stop dispatching events.");
+    } catch (RuntimeException ex) {
+      LOGGER.error(ex, "Unexpected exception while reading from write-ahead log, stop dispatching events.");
+    } finally {
+      cursor.close();
+    }
+  }
+
+  private void process(WriteAheadLog.Record record) {
+    long start = System.currentTimeMillis();
+    boolean evaluating = false;
+    try {
+      TriggerEvent event = TriggerEventCodec.decode(record.getPayload());
+      evaluating = true;
+      // The event stays in flight until all triggered actions including their retries have finished, such that it's
+      // processed again after a crash instead of being lost with its pending retries.
+      ruleEvaluationEngine.evaluate(event, () -> completeProcessing(record));
+    } catch (Exception ex) {
+      LOGGER.error(ex, "Unexpected exception while evaluating event with sequence = %d.", record.getSequence());
+      totalFailedTasksCounter.increment();
+    } finally {
+      evaluationMonitor.invoked(System.currentTimeMillis() - start);
+      workerThreadPermits.release();
+      // Once the evaluation has started the engine invokes the callback in any case.
+      if (!evaluating) completeProcessing(record);
+    }
+  }
+
+  private void completeProcessing(WriteAheadLog.Record record) {
+    totalProcessedEventsCounter.increment();
+    inFlightSequences.remove(record.getSequence());
+    unprocessedEventPermits.release();
+  }
+
+  private long getProcessedSequence() {
+    // Read the last dispatched sequence first, all events up to it have been registered as in flight at this point.
+    long dispatched = lastDispatchedSequence;
+    try {
+      return Math.min(dispatched, inFlightSequences.first() - 1);
+    } catch (NoSuchElementException ex) {
+      // Nothing in flight, all dispatched events have been processed.
+      return dispatched;
+    }
+  }
+
+  private void checkpoint() {
+    WriteAheadLog log = writeAheadLog;
+    if (log == null) return;
+    try {
+      log.checkpoint(getProcessedSequence());
+    } catch (IOException | RuntimeException ex) {
+      LOGGER.warning(ex, "Could not checkpoint write-ahead log.");
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package no.mnemonic.services.triggers.pipeline.worker.jexl;
+
+import org.apache.commons.jexl3.JexlContext;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link JexlContext} implementation which provides a read-only view on a map of variables without copying them.
+ * Because the context cannot be modified it can safely be shared between multiple evaluations, e.g. between the
+ * expression and all templates evaluated for the same event.
+ * <p>
+ * Evaluations should use their own {@link #overlay()}, which allows assigning variables inside an expression without
+ * affecting other evaluations (like a fresh {@link org.apache.commons.jexl3.MapContext} would). Assigning a variable
+ * directly on this context fails with a {@link org.apache.commons.jexl3.JexlException}. Together with
+ * {@link ReadOnlyUberspect} this ensures that an evaluation can neither modify the shared variables nor any object
+ * exposed through them.
+ */
+public class ReadOnlyContext implements JexlContext {
+
+  private static final ReadOnlyContext EMPTY = new ReadOnlyContext(Collections.emptyMap());
+
+  private final Map<String, ?> variables;
+
+  private ReadOnlyContext(Map<String, ?> variables) {
+    this.variables = variables;
+  }
+
+  /**
+   * Create a read-only context wrapping the given variables. The map is not copied, thus, it must not be modified
+   * while the context is in use.
+   *
+   * @param variables Variables exposed through the context (might be null)
+   * @return Read-only context
+   */
+  public static ReadOnlyContext of(Map<String, ?> variables) {
+    if (variables == null || variables.isEmpty()) return EMPTY;
+    return new ReadOnlyContext(variables);
+  }
+
+  /**
+   * Create a writable context for a single evaluation. Assigned variables are kept in the returned context only and
+   * shadow the variables of this context. The returned context is cheap to create and doesn't allocate anything until
+   * a variable is assigned.
+   *
+   * @return Writable context on top of this context
+   */
+  public JexlContext overlay() {
+    return new Overlay(this);
+  }
+
+  @Override
+  public Object get(String name) {
+    return variables.get(name);
+  }
+
+  @Override
+  public void set(String name, Object value) {
+    // JEXL reports this as a JexlException ("context is readonly").
+    throw new UnsupportedOperationException("Context is read-only!");
+  }
+
+  @Override
+  public boolean has(String name) {
+    return variables.containsKey(name);
+  }
+
+  private static class Overlay implements JexlContext {
+    private final ReadOnlyContext parent;
+    private Map<String, Object> assigned;
+
+    private Overlay(ReadOnlyContext parent) {
+      this.parent = parent;
+    }
+
+    @Override
+    public Object get(String name) {
+      if (assigned != null && assigned.containsKey(name)) return assigned.get(name);
+      return parent.get(name);
+    }
+
+    @Override
+    public void set(String name, Object value) {
+      if (assigned == null) assigned = new HashMap<>();
+      assigned.put(name, value);
+    }
+
+    @Override
+    public boolean has(String name) {
+      return (assigned != null && assigned.containsKey(name)) || parent.has(name);
+    }
+  }
+}
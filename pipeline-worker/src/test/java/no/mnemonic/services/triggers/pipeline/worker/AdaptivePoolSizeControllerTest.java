@@ -0,0 +1,128 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.metrics.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static no.mnemonic.services.triggers.pipeline.worker.AdaptivePoolSizeController.Decision.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptivePoolSizeControllerTest {
+
+  private static final long TARGET_QUEUE_WAIT = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(50);
+
+  @Test
+  public void testCreateWithInvalidBoundsFails() {
+    assertThrows(IllegalArgumentException.class, () -> new AdaptivePoolSizeController(0, 10, 5, TARGET_QUEUE_WAIT));
+    assertThrows(IllegalArgumentException.class, () -> new AdaptivePoolSizeController(5, 4, 5, TARGET_QUEUE_WAIT));
+    assertThrows(IllegalArgumentException.class, () -> new AdaptivePoolSizeController(1, 10, 5, 0));
+  }
+
+  @Test
+  public void testInitialPoolSizeIsKeptWithinBounds() {
+    assertEquals(2, new AdaptivePoolSizeController(2, 10, 1, TARGET_QUEUE_WAIT).getPoolSize());
+    assertEquals(10, new AdaptivePoolSizeController(2, 10, 20, TARGET_QUEUE_WAIT).getPoolSize());
+    assertEquals(5, new AdaptivePoolSizeController(2, 10, 5, TARGET_QUEUE_WAIT).getPoolSize());
+  }
+
+  @Test
+  public void testIncreaseWhenTasksWaitInQueue() {
+    AdaptivePoolSizeController controller = new AdaptivePoolSizeController(1, 10, 4, TARGET_QUEUE_WAIT);
+    controller.recordTask(2 * TARGET_QUEUE_WAIT, LATENCY);
+
+    assertEquals(5, controller.adjust(4));
+    assertEquals(Increase, controller.getLastDecision());
+  }
+
+  @Test
+  public void testIncreaseStopsAtMaximum() {
+    AdaptivePoolSizeController controller = new AdaptivePoolSizeController(1, 5, 5, TARGET_QUEUE_WAIT);
+    controller.recordTask(2 * TARGET_QUEUE_WAIT, LATENCY);
+
+    assertEquals(5, controller.adjust(5));
+    assertEquals(Hold, controller.getLastDecision());
+  }
+
+  @Test
+  public void testBackoffWhenLatencyDegrades() {
+    AdaptivePoolSizeController controller = new AdaptivePoolSizeController(1, 20, 8, TARGET_QUEUE_WAIT);
+    controller.recordTask(0, LATENCY);
+    controller.adjust(8);
+
+    // Tasks are waiting, but adding threads would only overload the downstream systems even more.
+    controller.recordTask(2 * TARGET_QUEUE_WAIT, 3 * LATENCY);
+    assertEquals(6, controller.adjust(8));
+    assertEquals(Backoff, controller.getLastDecision());
+  }
+
+  @Test
+  public void testBackoffStopsAtMinimum() {
+    AdaptivePoolSizeController controller = new AdaptivePoolSizeController(2, 20, 2, TARGET_QUEUE_WAIT);
+    controller.recordTask(0, LATENCY);
+    controller.adjust(2);
+
+    controller.recordTask(0, 3 * LATENCY);
+    assertEquals(2, controller.adjust(2));
+    assertEquals(Hold, controller.getLastDecision());
+  }
+
+  @Test
+  public void testDecreaseWhenThreadsAreIdle() {
+    AdaptivePoolSizeController controller = new AdaptivePoolSizeController(1, 10, 4, TARGET_QUEUE_WAIT);
+    controller.recordTask(0, LATENCY);
+
+    assertEquals(3, controller.adjust(1));
+    assertEquals(Decrease, controller.getLastDecision());
+    // Without any tasks an idle pool shrinks further.
+    assertEquals(2, controller.adjust(0));
+    assertEquals(Decrease, controller.getLastDecision());
+  }
+
+  @Test
+  public void testHoldWhileAllThreadsAreBusy() {
+    AdaptivePoolSizeController controller = new AdaptivePoolSizeController(1, 10, 4, TARGET_QUEUE_WAIT);
+    controller.recordTask(TARGET_QUEUE_WAIT / 2, LATENCY);
+    assertEquals(4, controller.adjust(4));
+    assertEquals(Hold, controller.getLastDecision());
+
+    // No task finished, but all threads are busy, e.g. waiting on slow endpoints.
+    assertEquals(4, controller.adjust(4));
+    assertEquals(Hold, controller.getLastDecision());
+  }
+
+  @Test
+  public void testBaselineAdaptsToPermanentlyHigherLatency() {
+    AdaptivePoolSizeController controller = new AdaptivePoolSizeController(1, 10, 4, TARGET_QUEUE_WAIT);
+    controller.recordTask(0, LATENCY);
+    controller.adjust(4);
+
+    int backoffs = 0;
+    for (int i = 0; i < 100; i++) {
+      controller.recordTask(0, 3 * LATENCY);
+      controller.adjust(controller.getPoolSize());
+      if (controller.getLastDecision() == Backoff) backoffs++;
+    }
+    assertTrue(backoffs < 100);
+    assertEquals(Hold, controller.getLastDecision());
+  }
+
+  @Test
+  public void testMetricsContainDecisions() throws Exception {
+    AdaptivePoolSizeController controller = new AdaptivePoolSizeController(1, 10, 4, TARGET_QUEUE_WAIT);
+    controller.recordTask(2 * TARGET_QUEUE_WAIT, LATENCY);
+    controller.adjust(4);
+    controller.adjust(0);
+
+    Metrics metrics = controller.getMetrics();
+    assertEquals(4, metrics.getData("poolSize").intValue());
+    assertEquals(1, metrics.getData("minimumPoolSize").intValue());
+    assertEquals(10, metrics.getData("maximumPoolSize").intValue());
+    assertEquals(Decrease.ordinal(), metrics.getData("lastDecision").intValue());
+    assertEquals(1L, metrics.getData("totalIncreaseDecisions").longValue());
+    assertEquals(1L, metrics.getData("totalDecreaseDecisions").longValue());
+    assertEquals(0L, metrics.getData("totalBackoffDecisions").longValue());
+    assertEquals(0L, metrics.getData("totalHoldDecisions").longValue());
+  }
+}
@@ -0,0 +1,122 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompiledScriptCacheTest {
+
+  private final AtomicInteger compilations = new AtomicInteger();
+  private final Function<String, String> compiler = source -> {
+    compilations.incrementAndGet();
+    return "compiled:" + source;
+  };
+
+  @Test
+  public void testCreateCacheWithInvalidCapacity() {
+    assertThrows(IllegalArgumentException.class, () -> new CompiledScriptCache<>(0));
+  }
+
+  @Test
+  public void testGetCompilesOnlyOnce() {
+    CompiledScriptCache<String> cache = new CompiledScriptCache<>(16);
+    assertEquals("compiled:a", cache.get("a", compiler));
+    assertEquals("compiled:a", cache.get("a", compiler));
+
+    assertEquals(1, compilations.get());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(0, cache.getEvictions());
+  }
+
+  @Test
+  public void testGetEvictsLeastRecentlyUsed() {
+    CompiledScriptCache<String> cache = new CompiledScriptCache<>(2);
+    cache.get("a", compiler);
+    cache.get("b", compiler);
+    cache.get("a", compiler);
+    cache.get("c", compiler);
+
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictions());
+    // "b" has been evicted, "a" has been kept.
+    cache.get("a", compiler);
+    assertEquals(3, compilations.get());
+    cache.get("b", compiler);
+    assertEquals(4, compilations.get());
+  }
+
+  @Test
+  public void testGetEvictsEntriesNotUsedSinceLastVisit() {
+    CompiledScriptCache<String> cache = new CompiledScriptCache<>(2);
+    cache.get("a", compiler);
+    cache.get("b", compiler);
+    cache.get("a", compiler);
+    cache.get("b", compiler);
+    // Both entries have been used, "a" is visited first and evicted after losing its second chance.
+    cache.get("c", compiler);
+    // "b" has lost its second chance already, while the new entry "c" is visited last.
+    cache.get("d", compiler);
+
+    assertEquals(2, cache.size());
+    assertEquals(2, cache.getEvictions());
+    cache.get("c", compiler);
+    cache.get("d", compiler);
+    assertEquals(4, compilations.get());
+  }
+
+  @Test
+  public void testGetDoesNotCacheFailures() {
+    CompiledScriptCache<String> cache = new CompiledScriptCache<>(16);
+    Function<String, String> failing = source -> {
+      compilations.incrementAndGet();
+      throw new IllegalStateException();
+    };
+
+    assertThrows(IllegalStateException.class, () -> cache.get("a", failing));
+    assertThrows(IllegalStateException.class, () -> cache.get("a", failing));
+    assertEquals(2, compilations.get());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testGetWithoutSourceSkipsCache() {
+    CompiledScriptCache<String> cache = new CompiledScriptCache<>(16);
+    assertEquals("compiled:null", cache.get(null, compiler));
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getMisses());
+  }
+
+  @Test
+  public void testGetConcurrently() throws Exception {
+    CompiledScriptCache<String> cache = new CompiledScriptCache<>(64);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 1000; i++) {
+            assertEquals("compiled:" + (i % 32), cache.get(String.valueOf(i % 32), compiler));
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(4000, cache.getHits() + cache.getMisses());
+    assertEquals(32, cache.size());
+    assertEquals(0, cache.getEvictions());
+  }
+}
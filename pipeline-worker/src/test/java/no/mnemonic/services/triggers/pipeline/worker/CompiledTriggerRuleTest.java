@@ -0,0 +1,110 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.utilities.collections.SetUtils;
+import no.mnemonic.services.triggers.api.model.v1.AccessMode;
+import no.mnemonic.services.triggers.api.model.v1.OrganizationInfo;
+import no.mnemonic.services.triggers.api.model.v1.TriggerRule;
+import org.apache.commons.jexl3.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompiledTriggerRuleTest {
+
+  private final JexlEngine expressionEngine = new JexlBuilder().strict(true).create();
+  private final JxltEngine templateEngine = expressionEngine.createJxltEngine();
+
+  @Test
+  public void testCompileWithoutRule() {
+    assertThrows(RuntimeException.class, () -> compile(null));
+  }
+
+  @Test
+  public void testCompileExpressionAndTriggerParameters() {
+    CompiledTriggerRule compiled = compile(createRule("i == 1")
+        .addTriggerParameter("parameter1", "Hello ${name}!")
+        .addTriggerParameter("parameter2", "static")
+        .build());
+
+    assertEquals(true, compiled.getExpression().evaluate(new MapContext(Map.of("i", 1))));
+    assertEquals(SetUtils.set("parameter1", "parameter2"), compiled.getTriggerParameters().keySet());
+
+    StringWriter result = new StringWriter();
+    compiled.getTriggerParameters().get("parameter1").evaluate(new MapContext(Map.of("name", "World")), result);
+    assertEquals("Hello World!", result.toString());
+  }
+
+  @Test
+  public void testCompileInvalidExpression() {
+    assertThrows(JexlException.class, () -> compile(createRule("1 ==").build()));
+  }
+
+  @Test
+  public void testCompileInvalidTriggerParameter() {
+    assertThrows(JexlException.class, () -> compile(createRule("1 == 1")
+        .addTriggerParameter("parameter", "${1 ==}")
+        .build()));
+  }
+
+  @Test
+  public void testHasOrganization() {
+    UUID organization = UUID.randomUUID();
+    CompiledTriggerRule compiled = compile(createRule("true")
+        .addOrganization(OrganizationInfo.builder().setId(organization).build())
+        .build());
+
+    assertTrue(compiled.hasOrganization(organization));
+    assertFalse(compiled.hasOrganization(UUID.randomUUID()));
+    assertFalse(compiled.hasOrganization(null));
+  }
+
+  @Test
+  public void testHasScope() {
+    CompiledTriggerRule compiled = compile(createRule("true")
+        .addScope("scope1")
+        .addScope("scope2")
+        .build());
+
+    assertTrue(compiled.hasScope("scope1"));
+    assertTrue(compiled.hasScope(new String("scope2")));
+    assertFalse(compiled.hasScope("scope3"));
+  }
+
+  @Test
+  public void testCoversAccessMode() {
+    CompiledTriggerRule publicRule = compile(createRule("true").setAccessMode(AccessMode.Public).build());
+    assertTrue(publicRule.coversAccessMode(no.mnemonic.services.triggers.pipeline.api.AccessMode.Public));
+    assertFalse(publicRule.coversAccessMode(no.mnemonic.services.triggers.pipeline.api.AccessMode.RoleBased));
+    assertFalse(publicRule.coversAccessMode(no.mnemonic.services.triggers.pipeline.api.AccessMode.Private));
+
+    CompiledTriggerRule roleBasedRule = compile(createRule("true").setAccessMode(AccessMode.RoleBased).build());
+    assertTrue(roleBasedRule.coversAccessMode(no.mnemonic.services.triggers.pipeline.api.AccessMode.Public));
+    assertTrue(roleBasedRule.coversAccessMode(no.mnemonic.services.triggers.pipeline.api.AccessMode.RoleBased));
+    assertFalse(roleBasedRule.coversAccessMode(no.mnemonic.services.triggers.pipeline.api.AccessMode.Private));
+
+    CompiledTriggerRule privateRule = compile(createRule("true").setAccessMode(AccessMode.Private).build());
+    assertTrue(privateRule.coversAccessMode(no.mnemonic.services.triggers.pipeline.api.AccessMode.Private));
+  }
+
+  @Test
+  public void testToRuleAccessModeCoversAllEventAccessModes() {
+    for (no.mnemonic.services.triggers.pipeline.api.AccessMode mode : no.mnemonic.services.triggers.pipeline.api.AccessMode.values()) {
+      assertEquals(mode.name(), CompiledTriggerRule.toRuleAccessMode(mode).name());
+    }
+  }
+
+  private CompiledTriggerRule compile(TriggerRule rule) {
+    return CompiledTriggerRule.compile(rule, expressionEngine::createExpression, templateEngine::createTemplate);
+  }
+
+  private TriggerRule.Builder createRule(String expression) {
+    return TriggerRule.builder()
+        .setId(UUID.randomUUID())
+        .setAccessMode(AccessMode.Public)
+        .setExpression(expression);
+  }
+}
@@ -0,0 +1,227 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.utilities.lambda.LambdaUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeadLetterStoreTest {
+
+  @TempDir
+  Path directory;
+
+  private DeadLetterStore store;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    store = DeadLetterStore.open(directory);
+  }
+
+  @AfterEach
+  public void cleanUp() {
+    store.close();
+  }
+
+  @Test
+  public void testEncodeAndDecodeDeadLetter() {
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put("url", "https://example.org");
+    parameters.put("empty", null);
+    DeadLetter original = createDeadLetter(parameters);
+    DeadLetter decoded = DeadLetter.decode(original.encode());
+
+    assertEquals(original.getTimestamp(), decoded.getTimestamp());
+    assertEquals(original.getRuleId(), decoded.getRuleId());
+    assertEquals(original.getActionDefinitionId(), decoded.getActionDefinitionId());
+    assertEquals(original.getActionDefinitionName(), decoded.getActionDefinitionName());
+    assertEquals(original.getEventId(), decoded.getEventId());
+    assertEquals(parameters, decoded.getTriggerParameters());
+    assertEquals(original.getError(), decoded.getError());
+  }
+
+  @Test
+  public void testDecodeCorruptedDeadLetterFails() {
+    byte[] data = createDeadLetter(Map.of("key", "value")).encode();
+    assertThrows(IllegalArgumentException.class, () -> DeadLetter.decode(Arrays.copyOf(data, data.length - 2)));
+  }
+
+  @Test
+  public void testReplayDeadLetters() throws Exception {
+    store.add(createDeadLetter(Map.of("key", "value1")));
+    store.add(createDeadLetter(Map.of("key", "value2")));
+    assertEquals(2, store.getPendingDeadLetters());
+    assertEquals(2, store.getTotalDeadLetters());
+
+    List<String> replayed = Collections.synchronizedList(new ArrayList<>());
+    DeadLetterReplayResult result = store.replay(1, 0, deadLetter -> replayed.add(deadLetter.getTriggerParameters().get("key")));
+
+    assertEquals(2, result.getReplayedInvocations());
+    assertEquals(2, result.getSuccessfulInvocations());
+    assertEquals(0, result.getFailedInvocations());
+    assertEquals(List.of("value1", "value2"), replayed);
+    assertEquals(0, store.getPendingDeadLetters());
+    assertEquals(0, store.replay(1, 0, deadLetter -> true).getReplayedInvocations());
+  }
+
+  @Test
+  public void testReplayKeepsDeadLettersAddedByHandler() throws Exception {
+    store.add(createDeadLetter(Map.of()));
+
+    DeadLetterReplayResult result = store.replay(1, 0, deadLetter -> {
+      try {
+        // Failed again, add it back.
+        store.add(deadLetter);
+      } catch (Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+      return false;
+    });
+
+    assertEquals(1, result.getFailedInvocations());
+    assertEquals(1, store.getPendingDeadLetters());
+  }
+
+  @Test
+  public void testReplayCountsExceptionsAsFailures() throws Exception {
+    store.add(createDeadLetter(Map.of()));
+    DeadLetterReplayResult result = store.replay(1, 0, deadLetter -> {
+      throw new IllegalStateException();
+    });
+    assertEquals(1, result.getFailedInvocations());
+    assertEquals(0, store.getPendingDeadLetters());
+  }
+
+  @Test
+  public void testReplayWithParallelism() throws Exception {
+    for (int i = 0; i < 4; i++) {
+      store.add(createDeadLetter(Map.of()));
+    }
+
+    // All four handlers must run concurrently in order to pass the barrier.
+    CyclicBarrier barrier = new CyclicBarrier(4);
+    DeadLetterReplayResult result = store.replay(4, 0, deadLetter -> {
+      try {
+        barrier.await(10, TimeUnit.SECONDS);
+        return true;
+      } catch (Exception ex) {
+        return false;
+      }
+    });
+    assertEquals(4, result.getSuccessfulInvocations());
+  }
+
+  @Test
+  public void testReplayWithRateLimit() throws Exception {
+    for (int i = 0; i < 6; i++) {
+      store.add(createDeadLetter(Map.of()));
+    }
+
+    long start = System.nanoTime();
+    store.replay(4, 20, deadLetter -> true);
+    // Six invocations at 20 per second take at least 250 milliseconds.
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 240);
+  }
+
+  @Test
+  public void testConcurrentReplayFails() throws Exception {
+    store.add(createDeadLetter(Map.of()));
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<DeadLetterReplayResult> first = executor.submit(() -> store.replay(1, 0, deadLetter -> {
+        started.countDown();
+        try {
+          return release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+          return false;
+        }
+      }));
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+      assertThrows(IllegalStateException.class, () -> store.replay(1, 0, deadLetter -> true));
+      release.countDown();
+      assertEquals(1, first.get(10, TimeUnit.SECONDS).getSuccessfulInvocations());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testInterruptedReplayWaitsForRunningHandlers() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      store.add(createDeadLetter(Map.of()));
+    }
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger finished = new AtomicInteger();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    Future<DeadLetterReplayResult> replay = executor.submit(() -> store.replay(1, 0, deadLetter -> {
+      started.countDown();
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        return false;
+      }
+      finished.incrementAndGet();
+      return true;
+    }));
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    // Interrupts the replay while waiting for a permit for the second dead letter.
+    executor.shutdownNow();
+    assertFalse(replay.isDone());
+
+    release.countDown();
+    ExecutionException ex = assertThrows(ExecutionException.class, () -> replay.get(10, TimeUnit.SECONDS));
+    assertInstanceOf(InterruptedException.class, ex.getCause());
+    assertEquals(1, finished.get());
+    // Only the handled dead letter is removed.
+    assertEquals(2, store.getPendingDeadLetters());
+  }
+
+  @Test
+  public void testReplayWithInvalidParallelismFails() {
+    assertThrows(IllegalArgumentException.class, () -> store.replay(0, 0, deadLetter -> true));
+  }
+
+  @Test
+  public void testReplayReleasesDeletedSegments() throws Exception {
+    store.close();
+    WriteAheadLog log = WriteAheadLog.open(directory.resolve("small-segments"), 1024);
+    store = new DeadLetterStore(log);
+
+    // Every replay deletes the segments filled before, also those referenced by the previous replay.
+    for (int replay = 0; replay < 3; replay++) {
+      for (int i = 0; i < 20; i++) {
+        store.add(createDeadLetter(Map.of("key", "value" + i)));
+      }
+      assertEquals(20, store.replay(1, 0, deadLetter -> true).getReplayedInvocations());
+    }
+
+    assertTrue(LambdaUtils.waitFor(() -> log.getNumberOfRetiredSegments() == 0, 5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testDeadLettersSurviveReopen() throws Exception {
+    store.add(createDeadLetter(Map.of("key", "value")));
+    store.close();
+
+    store = DeadLetterStore.open(directory);
+    assertEquals(1, store.getPendingDeadLetters());
+    AtomicInteger replayed = new AtomicInteger();
+    store.replay(1, 0, deadLetter -> replayed.incrementAndGet() > 0);
+    assertEquals(1, replayed.get());
+  }
+
+  private static DeadLetter createDeadLetter(Map<String, String> triggerParameters) {
+    return new DeadLetter(System.currentTimeMillis(), UUID.randomUUID(), UUID.randomUUID(), "TestAction",
+        UUID.randomUUID(), triggerParameters, "TriggerExecutionException: Unavailable");
+  }
+}
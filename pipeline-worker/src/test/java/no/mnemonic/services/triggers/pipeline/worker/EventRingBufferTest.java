@@ -0,0 +1,145 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.services.triggers.pipeline.worker.RingBufferWorker.WaitStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventRingBufferTest {
+
+  @Test
+  public void testCreateWithInvalidBufferSizeThrowsException() {
+    assertThrows(IllegalArgumentException.class, () -> new EventRingBuffer<>(0, 1, WaitStrategy.Blocking));
+    assertThrows(IllegalArgumentException.class, () -> new EventRingBuffer<>(3, 1, WaitStrategy.Blocking));
+    assertThrows(IllegalArgumentException.class, () -> new EventRingBuffer<>(4, 0, WaitStrategy.Blocking));
+    assertThrows(IllegalArgumentException.class, () -> new EventRingBuffer<>(4, 1, null));
+  }
+
+  @Test
+  public void testConsumeInBatches() throws Exception {
+    EventRingBuffer<Integer> buffer = new EventRingBuffer<>(8, 1, WaitStrategy.Blocking);
+    for (int i = 0; i < 5; i++) {
+      assertTrue(buffer.publish(i, 0));
+    }
+
+    List<Integer> consumed = new ArrayList<>();
+    assertEquals(3, buffer.consume(0, 3, consumed::add));
+    assertEquals(2, buffer.consume(0, 3, consumed::add));
+    assertEquals(List.of(0, 1, 2, 3, 4), consumed);
+    assertEquals(5, buffer.getPublishedEvents());
+  }
+
+  @Test
+  public void testPublishToFullBufferTimesOut() throws Exception {
+    EventRingBuffer<Integer> buffer = new EventRingBuffer<>(2, 1, WaitStrategy.Blocking);
+    assertTrue(buffer.publish(1, 0));
+    assertTrue(buffer.publish(2, 0));
+    assertEquals(0, buffer.getRemainingCapacity());
+    assertFalse(buffer.publish(3, TimeUnit.MILLISECONDS.toNanos(10)));
+
+    buffer.consume(0, 1, event -> {});
+    // The consumer releases its slot when it claims the next batch.
+    buffer.consume(0, 1, event -> {});
+    assertTrue(buffer.publish(3, 0));
+  }
+
+  @Test
+  public void testPublishAfterHaltThrowsException() {
+    EventRingBuffer<Integer> buffer = new EventRingBuffer<>(2, 1, WaitStrategy.Blocking);
+    buffer.halt();
+    assertThrows(IllegalStateException.class, () -> buffer.publish(1, 0));
+  }
+
+  @Test
+  public void testConsumeAfterHaltDrainsBuffer() throws Exception {
+    EventRingBuffer<Integer> buffer = new EventRingBuffer<>(4, 1, WaitStrategy.Blocking);
+    buffer.publish(1, 0);
+    buffer.publish(2, 0);
+    buffer.halt();
+
+    List<Integer> consumed = new ArrayList<>();
+    assertEquals(2, buffer.consume(0, 10, consumed::add));
+    assertEquals(-1, buffer.consume(0, 10, consumed::add));
+    assertEquals(List.of(1, 2), consumed);
+  }
+
+  @Test
+  public void testBlockedConsumerIsWokenUp() throws Exception {
+    EventRingBuffer<Integer> buffer = new EventRingBuffer<>(4, 1, WaitStrategy.Blocking);
+    List<Integer> consumed = new CopyOnWriteArrayList<>();
+    Future<Integer> consumer = ForkJoinPool.commonPool().submit(() -> buffer.consume(0, 10, consumed::add));
+
+    Thread.sleep(50);
+    assertFalse(consumer.isDone());
+    buffer.publish(42, 0);
+    assertEquals(1, consumer.get(10, TimeUnit.SECONDS));
+    assertEquals(List.of(42), consumed);
+  }
+
+  @Test
+  public void testHaltWakesUpBlockedConsumer() throws Exception {
+    EventRingBuffer<Integer> buffer = new EventRingBuffer<>(4, 1, WaitStrategy.Blocking);
+    Future<Integer> consumer = ForkJoinPool.commonPool().submit(() -> buffer.consume(0, 10, event -> {}));
+
+    Thread.sleep(50);
+    buffer.halt();
+    assertEquals(-1, consumer.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testConcurrentProducersAndConsumersWithAllWaitStrategies() throws Exception {
+    for (WaitStrategy strategy : WaitStrategy.values()) {
+      assertAllEventsConsumedOnce(strategy);
+    }
+  }
+
+  private void assertAllEventsConsumedOnce(WaitStrategy strategy) throws Exception {
+    int producers = 4, consumers = 3, eventsPerProducer = 10_000;
+    EventRingBuffer<Integer> buffer = new EventRingBuffer<>(64, consumers, strategy);
+    AtomicIntegerArray consumed = new AtomicIntegerArray(producers * eventsPerProducer);
+    ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+
+    try {
+      List<Future<?>> consumerFutures = new ArrayList<>();
+      for (int c = 0; c < consumers; c++) {
+        int consumer = c;
+        consumerFutures.add(executor.submit(() -> {
+          while (buffer.consume(consumer, 16, consumed::incrementAndGet) >= 0) {
+            // Keep consuming until halted.
+          }
+          return null;
+        }));
+      }
+
+      List<Future<?>> producerFutures = new ArrayList<>();
+      for (int p = 0; p < producers; p++) {
+        int offset = p * eventsPerProducer;
+        producerFutures.add(executor.submit(() -> {
+          for (int i = 0; i < eventsPerProducer; i++) {
+            assertTrue(buffer.publish(offset + i, TimeUnit.SECONDS.toNanos(10)));
+          }
+          return null;
+        }));
+      }
+
+      for (Future<?> future : producerFutures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+      buffer.halt();
+      for (Future<?> future : consumerFutures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+
+      for (int i = 0; i < consumed.length(); i++) {
+        assertEquals(1, consumed.get(i), String.format("Event %d consumed wrong number of times with %s.", i, strategy));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
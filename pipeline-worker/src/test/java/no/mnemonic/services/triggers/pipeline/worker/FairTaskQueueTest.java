@@ -0,0 +1,212 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.metrics.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FairTaskQueueTest {
+
+  private final FairTaskQueue queue = new FairTaskQueue(task -> ((KeyedTask) task).key, null);
+
+  @Test
+  public void testCreateWithInvalidWeightThrowsException() {
+    assertThrows(IllegalArgumentException.class, () -> new FairTaskQueue(task -> null, Map.of("a", 0)));
+  }
+
+  @Test
+  public void testPollServesKeysRoundRobin() {
+    offer("a1", "a2", "a3", "b1", "c1");
+
+    assertEquals(List.of("a1", "b1", "c1", "a2", "a3"), pollAll());
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void testPollServesKeysAccordingToWeights() {
+    FairTaskQueue weighted = new FairTaskQueue(task -> ((KeyedTask) task).key, Map.of("a", 2));
+    for (String name : List.of("a1", "a2", "a3", "a4", "b1", "b2")) {
+      weighted.offer(new KeyedTask(name));
+    }
+
+    List<String> order = new ArrayList<>();
+    for (Runnable task = weighted.poll(); task != null; task = weighted.poll()) {
+      order.add(((KeyedTask) task).name);
+    }
+    assertEquals(List.of("a1", "a2", "b1", "a3", "a4", "b2"), order);
+  }
+
+  @Test
+  public void testKeyReturningLaterStartsAtEndOfRound() {
+    offer("a1", "b1", "b2");
+    assertEquals("a1", name(queue.poll()));
+    offer("a2");
+
+    assertEquals(List.of("b1", "a2", "b2"), pollAll());
+  }
+
+  @Test
+  public void testTasksWithoutKeyUseDefaultKey() throws Exception {
+    FairTaskQueue defaultKeyQueue = new FairTaskQueue(task -> null, null);
+    defaultKeyQueue.offer(new KeyedTask("a1"));
+    defaultKeyQueue.offer(new KeyedTask("b1"));
+
+    Metrics metrics = defaultKeyQueue.getMetrics();
+    assertEquals(1, metrics.getSubMetrics().size());
+    assertEquals(2, metrics.getSubMetrics(FairTaskQueue.DEFAULT_KEY).getData("queueDepth").intValue());
+    assertEquals("a1", name(defaultKeyQueue.poll()));
+  }
+
+  @Test
+  public void testRemoveTask() {
+    KeyedTask task = new KeyedTask("a1");
+    queue.offer(task);
+    offer("a2", "b1");
+
+    assertTrue(queue.remove(task));
+    assertFalse(queue.remove(task));
+    assertEquals(2, queue.size());
+    assertEquals(List.of("a2", "b1"), pollAll());
+  }
+
+  @Test
+  public void testIteratorReturnsTasksInInsertionOrder() {
+    offer("a1", "a2", "b1", "a3");
+
+    List<String> names = new ArrayList<>();
+    queue.forEach(task -> names.add(name(task)));
+    assertEquals(List.of("a1", "a2", "b1", "a3"), names);
+  }
+
+  @Test
+  public void testIteratorRemove() {
+    offer("a1", "b1");
+
+    Iterator<Runnable> iterator = queue.iterator();
+    iterator.next();
+    iterator.remove();
+    assertEquals(List.of("b1"), pollAll());
+  }
+
+  @Test
+  public void testDrainTo() {
+    offer("a1", "a2", "b1");
+
+    List<Runnable> drained = new ArrayList<>();
+    assertEquals(2, queue.drainTo(drained, 2));
+    assertEquals(1, queue.drainTo(drained));
+    assertEquals(3, drained.size());
+    assertEquals("b1", name(drained.get(1)));
+  }
+
+  @Test
+  public void testPollWithTimeoutOnEmptyQueue() throws Exception {
+    assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testTakeWaitsForTask() throws Exception {
+    CompletableFuture<Runnable> taken = CompletableFuture.supplyAsync(() -> {
+      try {
+        return queue.take();
+      } catch (InterruptedException ex) {
+        throw new IllegalStateException(ex);
+      }
+    });
+
+    offer("a1");
+    assertEquals("a1", name(taken.get(10, TimeUnit.SECONDS)));
+  }
+
+  @Test
+  public void testMetricsPerKey() throws Exception {
+    offer("a1", "a2", "b1");
+    queue.poll();
+
+    Metrics metrics = queue.getMetrics();
+    assertEquals(1, metrics.getSubMetrics("a").getData("queueDepth").intValue());
+    assertEquals(1, metrics.getSubMetrics("a").getData("totalDequeuedTasks").intValue());
+    assertEquals(1, metrics.getSubMetrics("a").getData("weight").intValue());
+    assertEquals(1, metrics.getSubMetrics("b").getData("queueDepth").intValue());
+    assertEquals(0, metrics.getSubMetrics("b").getData("totalDequeuedTasks").intValue());
+    assertTrue(metrics.getSubMetrics("b").getData("oldestQueuedTaskAgeMillis").longValue() >= 0);
+  }
+
+  @Test
+  public void testCreateWithInvalidStatisticsLimitsThrowsException() {
+    assertThrows(IllegalArgumentException.class, () -> new FairTaskQueue(task -> null, null, 0, 1000));
+    assertThrows(IllegalArgumentException.class, () -> new FairTaskQueue(task -> null, null, 1, 0));
+  }
+
+  @Test
+  public void testMetricsKeepMaximumNumberOfIdleKeys() throws Exception {
+    FairTaskQueue bounded = new FairTaskQueue(task -> ((KeyedTask) task).key, null, 2, 60_000);
+    for (String name : List.of("a1", "b1", "c1")) {
+      bounded.offer(new KeyedTask(name));
+      bounded.poll();
+    }
+    bounded.offer(new KeyedTask("d1"));
+
+    // The least recently used idle key has been dropped, keys with queued tasks don't count against the maximum.
+    Metrics metrics = bounded.getMetrics();
+    assertNull(metrics.getSubMetrics("a"));
+    assertNotNull(metrics.getSubMetrics("b"));
+    assertNotNull(metrics.getSubMetrics("c"));
+    assertEquals(1, metrics.getSubMetrics("d").getData("queueDepth").intValue());
+  }
+
+  @Test
+  public void testMetricsDropExpiredIdleKeys() throws Exception {
+    FairTaskQueue expiring = new FairTaskQueue(task -> ((KeyedTask) task).key, null, 10, 1);
+    expiring.offer(new KeyedTask("a1"));
+    expiring.poll();
+    expiring.offer(new KeyedTask("b1"));
+    Thread.sleep(10);
+
+    // Keys with queued tasks never expire.
+    Metrics metrics = expiring.getMetrics();
+    assertNull(metrics.getSubMetrics("a"));
+    assertEquals(1, metrics.getSubMetrics("b").getData("queueDepth").intValue());
+  }
+
+  private void offer(String... names) {
+    for (String name : names) {
+      queue.offer(new KeyedTask(name));
+    }
+  }
+
+  private List<String> pollAll() {
+    List<String> names = new ArrayList<>();
+    for (Runnable task = queue.poll(); task != null; task = queue.poll()) {
+      names.add(name(task));
+    }
+    return names;
+  }
+
+  private String name(Runnable task) {
+    return ((KeyedTask) task).name;
+  }
+
+  private static class KeyedTask implements Runnable {
+    private final String name;
+    private final String key;
+
+    private KeyedTask(String name) {
+      // The key is the first character of the name, e.g. "a1" belongs to key "a".
+      this.name = name;
+      this.key = name.substring(0, 1);
+    }
+
+    @Override
+    public void run() {
+      // Never executed.
+    }
+  }
+}
@@ -1,24 +1,40 @@
 package no.mnemonic.services.triggers.pipeline.worker;
 
 import no.mnemonic.commons.component.ValidationContext;
+import no.mnemonic.commons.metrics.MetricException;
+import no.mnemonic.commons.metrics.Metrics;
 import no.mnemonic.commons.metrics.MetricsData;
 import no.mnemonic.commons.utilities.lambda.LambdaUtils;
 import no.mnemonic.services.triggers.api.service.v1.TriggerAdministrationService;
 import no.mnemonic.services.triggers.pipeline.api.SubmissionException;
+import no.mnemonic.services.triggers.pipeline.api.SubmissionResult;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
-import static no.mnemonic.services.triggers.pipeline.api.SubmissionException.ErrorCode.NoResourcesAvailable;
+import static no.mnemonic.services.triggers.pipeline.api.SubmissionException.ErrorCode.*;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.notNull;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -29,6 +45,11 @@ public class InMemoryQueueWorkerTest {
   @Mock
   private RuleEvaluationEngine engine;
 
+  @TempDir
+  Path deadLetterDirectory;
+  @TempDir
+  Path spillDirectory;
+
   private AtomicBoolean finishedSignal;
   private InMemoryQueueWorker worker;
 
@@ -49,6 +70,229 @@ public class InMemoryQueueWorkerTest {
     }
   }
 
+  @Test
+  public void testStopComponentClosesRuleEvaluationEngine() {
+    worker.stopComponent();
+    verify(engine).close();
+  }
+
+  @Test
+  public void testReplayDeadLettersWithoutDirectoryFails() {
+    assertThrows(IllegalStateException.class, () -> worker.replayDeadLetters(1, 0));
+  }
+
+  @Test
+  public void testDeadLetterStoreLifecycle() throws Exception {
+    worker.stopComponent();
+    worker.setDeadLetterDirectory(deadLetterDirectory.toString())
+        .startComponent();
+    verify(engine).setDeadLetterStore(notNull());
+    assertEquals(0L, getWorkerMetric("pendingDeadLetters"));
+
+    worker.replayDeadLetters(2, 10);
+    verify(engine).replayDeadLetters(2, 10);
+
+    worker.stopComponent();
+    verify(engine).setDeadLetterStore(isNull());
+    assertThrows(IllegalStateException.class, () -> worker.replayDeadLetters(1, 0));
+  }
+
+  @Test
+  public void testValidateWithNegativeDrainTimeoutFails() {
+    ValidationContext context = new ValidationContext();
+    worker.setDrainTimeoutSeconds(-1)
+        .validate(context);
+    assertFalse(context.isValid());
+  }
+
+  @Test
+  public void testStopComponentRejectsNewSubmissions() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(i -> {
+      started.countDown();
+      return release.await(10, TimeUnit.SECONDS);
+    }).when(engine).evaluate(any());
+
+    try {
+      worker.setNumberOfWorkerThreads(1)
+          .setQueueCapacity(1)
+          .startComponent();
+      worker.submit(new TestTriggerEvent());
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+
+      // Stopping waits for the running task, thus, stop the worker in the background.
+      CompletableFuture<Void> stopped = CompletableFuture.runAsync(worker::stopComponent);
+      assertTrue(LambdaUtils.waitFor(() -> {
+        try {
+          worker.submit(new TestTriggerEvent());
+          return false;
+        } catch (SubmissionException ex) {
+          return ex.getErrorCode() == ComponentUnavailable;
+        }
+      }, 10, TimeUnit.SECONDS));
+      release.countDown();
+      stopped.get(10, TimeUnit.SECONDS);
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testStopComponentDrainsQueuedEvents() throws Exception {
+    AtomicInteger taskCounter = new AtomicInteger();
+    doAnswer(i -> {
+      Thread.sleep(50);
+      return taskCounter.incrementAndGet();
+    }).when(engine).evaluate(any());
+
+    worker.setNumberOfWorkerThreads(1)
+        .setQueueCapacity(5)
+        .setSpillDirectory(spillDirectory.toString())
+        .startComponent();
+    for (int i = 0; i < 5; i++) {
+      worker.submit(new TestTriggerEvent());
+    }
+    worker.stopComponent();
+
+    assertEquals(5, taskCounter.get());
+    assertTrue(getWorkerMetric("totalDrainedEvents") > 0);
+    assertEquals(0L, getWorkerMetric("totalSpilledEvents"));
+    assertEquals(0L, getWorkerMetric("totalLostEvents"));
+    assertTrue(SpilledEventsFile.readAll(spillDirectory).isEmpty());
+  }
+
+  @Test
+  public void testStopComponentSpillsQueuedEventsAndRestoresThemOnStart() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<UUID> evaluatedEvents = new CopyOnWriteArrayList<>();
+    doAnswer(i -> {
+      // Restored events are decoded from the spill file, thus, they aren't TestTriggerEvents.
+      evaluatedEvents.add(i.<TriggerEvent>getArgument(0).getId());
+      started.countDown();
+      return release.await(10, TimeUnit.SECONDS);
+    }).when(engine).evaluate(any());
+
+    TestTriggerEvent running = new TestTriggerEvent();
+    TestTriggerEvent first = new TestTriggerEvent();
+    TestTriggerEvent second = new TestTriggerEvent();
+    try {
+      worker.setNumberOfWorkerThreads(1)
+          .setQueueCapacity(5)
+          .setDrainTimeoutSeconds(0)
+          .setSpillDirectory(spillDirectory.toString())
+          .startComponent();
+      worker.submit(running);
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+      worker.submit(first);
+      worker.submit(second);
+      worker.stopComponent();
+
+      assertEquals(2L, getWorkerMetric("totalSpilledEvents"));
+      assertEquals(0L, getWorkerMetric("totalLostEvents"));
+      assertEquals(1, SpilledEventsFile.readAll(spillDirectory).size());
+    } finally {
+      release.countDown();
+    }
+
+    worker.startComponent();
+    assertTrue(LambdaUtils.waitFor(() -> evaluatedEvents.size() == 3, 10, TimeUnit.SECONDS));
+    assertEquals(List.of(running.getId(), first.getId(), second.getId()), evaluatedEvents);
+    assertEquals(2L, getWorkerMetric("totalRestoredEvents"));
+    assertTrue(SpilledEventsFile.readAll(spillDirectory).isEmpty());
+  }
+
+  @Test
+  public void testStopComponentWithoutSpillDirectoryCountsLostEvents() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(i -> {
+      started.countDown();
+      return release.await(10, TimeUnit.SECONDS);
+    }).when(engine).evaluate(any());
+
+    try {
+      worker.setNumberOfWorkerThreads(1)
+          .setQueueCapacity(5)
+          .setDrainTimeoutSeconds(0)
+          .startComponent();
+      worker.submit(new TestTriggerEvent());
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+      worker.submit(new TestTriggerEvent());
+      worker.submit(new TestTriggerEvent());
+      worker.stopComponent();
+
+      assertEquals(0L, getWorkerMetric("totalSpilledEvents"));
+      assertEquals(2L, getWorkerMetric("totalLostEvents"));
+    } finally {
+      release.countDown();
+    }
+    verify(engine, times(1)).evaluate(any());
+  }
+
+  @Test
+  public void testStopComponentCountsLostRetries() throws Exception {
+    when(engine.abandonPendingRetries()).thenReturn(2);
+    worker.stopComponent();
+
+    assertEquals(2L, getWorkerMetric("totalLostEvents"));
+  }
+
+  @Test
+  public void testValidateAdaptivePoolSizingWithInvalidBoundsFails() {
+    ValidationContext context = new ValidationContext();
+    worker.setAdaptivePoolSizing(true)
+        .setMinimumWorkerThreads(4)
+        .setMaximumWorkerThreads(2)
+        .validate(context);
+    assertFalse(context.isValid());
+  }
+
+  @Test
+  public void testAdaptivePoolSizingGrowsPoolWhileEventsWait() throws Exception {
+    doAnswer(i -> {
+      Thread.sleep(20);
+      return null;
+    }).when(engine).evaluate(any());
+
+    worker.setNumberOfWorkerThreads(1)
+        .setQueueCapacity(100)
+        .setAdaptivePoolSizing(true)
+        .setMaximumWorkerThreads(4)
+        .setTargetQueueWaitMillis(1)
+        .setAdaptationIntervalMillis(50)
+        .startComponent();
+    for (int i = 0; i < 100; i++) {
+      worker.submit(new TestTriggerEvent());
+    }
+
+    assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("maximumActiveTasks") > 1, 10, TimeUnit.SECONDS));
+    assertTrue(worker.getMetrics().getSubMetrics("adaptivePoolSizing").getData("totalIncreaseDecisions").longValue() > 0);
+  }
+
+  @Test
+  public void testAdaptivePoolSizingShrinksIdlePoolAndAdmissionLimit() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(i -> release.await(10, TimeUnit.SECONDS)).when(engine).evaluate(any());
+
+    try {
+      worker.setNumberOfWorkerThreads(4)
+          .setOverflowPolicy(InMemoryQueueWorker.OverflowPolicy.Reject)
+          .setAdaptivePoolSizing(true)
+          .setAdaptationIntervalMillis(10)
+          .startComponent();
+      assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("maximumActiveTasks") == 1, 10, TimeUnit.SECONDS));
+
+      // Only one event is admitted after the pool has been shrunk to one thread.
+      worker.submit(new TestTriggerEvent());
+      SubmissionException ex = assertThrows(SubmissionException.class, () -> worker.submit(new TestTriggerEvent()));
+      assertEquals(NoResourcesAvailable, ex.getErrorCode());
+    } finally {
+      release.countDown();
+    }
+  }
+
   @Test
   public void testValidateWithZeroWorkerThreadsFails() {
     ValidationContext context = new ValidationContext();
@@ -65,6 +309,53 @@ public class InMemoryQueueWorkerTest {
     assertFalse(context.isValid());
   }
 
+  @Test
+  public void testValidateWithNegativeQueueCapacityFails() {
+    ValidationContext context = new ValidationContext();
+    worker.setQueueCapacity(-1)
+        .validate(context);
+    assertFalse(context.isValid());
+  }
+
+  @Test
+  public void testValidateWithoutOverflowPolicyFails() {
+    ValidationContext context = new ValidationContext();
+    worker.setOverflowPolicy(null)
+        .validate(context);
+    assertFalse(context.isValid());
+  }
+
+  @Test
+  public void testValidateWithZeroMaximumConcurrentTasksFails() {
+    ValidationContext context = new ValidationContext();
+    worker.setMaximumConcurrentTasks(0)
+        .validate(context);
+    assertFalse(context.isValid());
+  }
+
+  @Test
+  public void testStartComponentConfiguresRetryExecutor() {
+    verify(engine).setRetryExecutor(notNull());
+  }
+
+  @Test
+  public void testValidateWithZeroActionExecutionDeadlineFails() {
+    ValidationContext context = new ValidationContext();
+    worker.setActionExecutionDeadlineSeconds(0)
+        .validate(context);
+    assertFalse(context.isValid());
+  }
+
+  @Test
+  public void testStartComponentConfiguresActionExecutionDeadline() {
+    verify(engine).setActionExecutionDeadlineMillis(120_000);
+
+    worker.stopComponent();
+    worker.setActionExecutionDeadlineSeconds(5)
+        .startComponent();
+    verify(engine).setActionExecutionDeadlineMillis(5000);
+  }
+
   @Test
   public void testSubmitWithoutThreadPoolThrowsException() {
     assertThrows(IllegalStateException.class, () -> new InMemoryQueueWorker(service).submit(new TestTriggerEvent()));
@@ -115,7 +406,7 @@ public class InMemoryQueueWorkerTest {
     TestTriggerEvent event = new TestTriggerEvent();
     worker.submit(event);
 
-    if (LambdaUtils.waitFor(finishedSignal::get, 10, TimeUnit.SECONDS)) {
+    if (LambdaUtils.waitFor(() -> finishedSignal.get() && getWorkerMetric("totalCompletedTasks") == 1, 10, TimeUnit.SECONDS)) {
       assertEquals(1L, worker.getMetrics().getSubMetrics("inMemoryQueueWorker").getData("totalCompletedTasks"));
       assertEquals(0L, worker.getMetrics().getSubMetrics("inMemoryQueueWorker").getData("totalFailedTasks"));
       verify(engine).evaluate(event);
@@ -134,7 +425,7 @@ public class InMemoryQueueWorkerTest {
     TestTriggerEvent event = new TestTriggerEvent();
     worker.submit(event);
 
-    if (LambdaUtils.waitFor(finishedSignal::get, 10, TimeUnit.SECONDS)) {
+    if (LambdaUtils.waitFor(() -> finishedSignal.get() && getWorkerMetric("totalCompletedTasks") == 1, 10, TimeUnit.SECONDS)) {
       assertEquals(1L, worker.getMetrics().getSubMetrics("inMemoryQueueWorker").getData("totalCompletedTasks"));
       assertEquals(1L, worker.getMetrics().getSubMetrics("inMemoryQueueWorker").getData("totalFailedTasks"));
       verify(engine).evaluate(event);
@@ -185,7 +476,7 @@ public class InMemoryQueueWorkerTest {
     worker.submit(new TestTriggerEvent());
     worker.submit(new TestTriggerEvent());
 
-    if (LambdaUtils.waitFor(finishedSignal::get, 10, TimeUnit.SECONDS)) {
+    if (LambdaUtils.waitFor(() -> finishedSignal.get() && getWorkerMetric("totalCompletedTasks") == 3, 10, TimeUnit.SECONDS)) {
       assertEquals(3L, worker.getMetrics().getSubMetrics("inMemoryQueueWorker").getData("totalCompletedTasks"));
       assertEquals(0L, worker.getMetrics().getSubMetrics("inMemoryQueueWorker").getData("totalFailedTasks"));
       verify(engine, times(3)).evaluate(any());
@@ -193,4 +484,339 @@ public class InMemoryQueueWorkerTest {
       fail("Rule evaluation task did not finish!");
     }
   }
+
+  @Test
+  public void testSubmitQueuesEventsBeyondNumberOfWorkerThreads() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(i -> release.await(10, TimeUnit.SECONDS)).when(engine).evaluate(any());
+
+    worker.setNumberOfWorkerThreads(1)
+        .setQueueCapacity(2)
+        .setOverflowPolicy(InMemoryQueueWorker.OverflowPolicy.Reject)
+        .startComponent();
+    worker.submit(new TestTriggerEvent());
+    worker.submit(new TestTriggerEvent());
+    worker.submit(new TestTriggerEvent());
+
+    SubmissionException ex = assertThrows(SubmissionException.class, () -> worker.submit(new TestTriggerEvent()));
+    assertEquals(NoResourcesAvailable, ex.getErrorCode());
+
+    assertEquals(2L, getWorkerMetric("queueCapacity"));
+    assertEquals(2L, getWorkerMetric("queueDepth"));
+    assertEquals(2L, getWorkerMetric("queueHighWaterMark"));
+    assertEquals(1L, getWorkerMetric("totalRejectedEvents"));
+
+    release.countDown();
+    assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("totalCompletedTasks") == 3, 10, TimeUnit.SECONDS));
+    assertEquals(0L, getWorkerMetric("queueDepth"));
+    assertEquals(2L, getWorkerMetric("queueHighWaterMark"));
+  }
+
+  @Test
+  public void testSubmitWithDropOldestPolicyDropsQueuedEvent() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(i -> release.await(10, TimeUnit.SECONDS)).when(engine).evaluate(any());
+
+    worker.setNumberOfWorkerThreads(1)
+        .setQueueCapacity(1)
+        .setOverflowPolicy(InMemoryQueueWorker.OverflowPolicy.DropOldest)
+        .startComponent();
+    TestTriggerEvent event1 = new TestTriggerEvent();
+    TestTriggerEvent event2 = new TestTriggerEvent();
+    TestTriggerEvent event3 = new TestTriggerEvent();
+    worker.submit(event1);
+    worker.submit(event2);
+    worker.submit(event3);
+
+    assertEquals(1L, getWorkerMetric("totalDroppedEvents"));
+    release.countDown();
+    assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("totalCompletedTasks") == 2, 10, TimeUnit.SECONDS));
+    verify(engine).evaluate(event1);
+    verify(engine, never()).evaluate(event2);
+    verify(engine).evaluate(event3);
+  }
+
+  @Test
+  public void testSubmitWithRejectPolicyFailsImmediately() {
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(i -> release.await(10, TimeUnit.SECONDS)).when(engine).evaluate(any());
+
+    try {
+      worker.setNumberOfWorkerThreads(1)
+          .setOverflowPolicy(InMemoryQueueWorker.OverflowPolicy.Reject)
+          .startComponent();
+      assertDoesNotThrow(() -> worker.submit(new TestTriggerEvent()));
+
+      long start = System.currentTimeMillis();
+      assertThrows(SubmissionException.class, () -> worker.submit(new TestTriggerEvent()));
+      assertTrue(System.currentTimeMillis() - start < 1_000);
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testSubmitWithVirtualThreads() throws Exception {
+    AtomicReference<Thread> evaluationThread = new AtomicReference<>();
+    doAnswer(i -> {
+      evaluationThread.set(Thread.currentThread());
+      return null;
+    }).when(engine).evaluate(any());
+
+    worker.setUseVirtualThreads(true)
+        .setMaximumConcurrentTasks(10)
+        .startComponent();
+    worker.submit(new TestTriggerEvent());
+
+    assertTrue(LambdaUtils.waitFor(() -> evaluationThread.get() != null, 10, TimeUnit.SECONDS));
+    // Falls back to platform worker threads if the running JDK doesn't support virtual threads.
+    assertEquals(VirtualThreads.isSupported(), VirtualThreads.isVirtual(evaluationThread.get()));
+    assertEquals(VirtualThreads.isSupported() ? 10L : 4L, getWorkerMetric("maximumActiveTasks"));
+  }
+
+  @Test
+  public void testSubmitAsyncAccepted() throws Exception {
+    TestTriggerEvent event = new TestTriggerEvent();
+    worker.submitAsync(event).toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+    assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("totalCompletedTasks") == 1, 10, TimeUnit.SECONDS));
+    verify(engine).evaluate(event);
+  }
+
+  @Test
+  public void testSubmitAsyncInvalidEventFails() {
+    CompletableFuture<Void> future = worker.submitAsync(new TestTriggerEvent().setId(null)).toCompletableFuture();
+    assertEquals(InvalidTriggerEvent, getSubmissionError(future).getErrorCode());
+  }
+
+  @Test
+  public void testSubmitAsyncWaitsWithoutBlocking() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(i -> release.await(10, TimeUnit.SECONDS)).when(engine).evaluate(any());
+
+    worker.setNumberOfWorkerThreads(1)
+        .startComponent();
+    TestTriggerEvent event1 = new TestTriggerEvent();
+    TestTriggerEvent event2 = new TestTriggerEvent();
+    worker.submitAsync(event1).toCompletableFuture().get(10, TimeUnit.SECONDS);
+    CompletableFuture<Void> future = worker.submitAsync(event2).toCompletableFuture();
+    assertFalse(future.isDone());
+    assertEquals(1L, getWorkerMetric("pendingSubmissions"));
+    assertEquals(1, worker.getScheduledSubmissionTimeouts());
+
+    release.countDown();
+    future.get(10, TimeUnit.SECONDS);
+    assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("totalCompletedTasks") == 2, 10, TimeUnit.SECONDS));
+    assertEquals(0L, getWorkerMetric("pendingSubmissions"));
+    // The timeout of the accepted submission has been cancelled.
+    assertEquals(0, worker.getScheduledSubmissionTimeouts());
+    verify(engine).evaluate(event2);
+  }
+
+  @Test
+  public void testBlockingSubmissionsDontOvertakePendingSubmissions() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    List<TriggerEvent> evaluated = new CopyOnWriteArrayList<>();
+    doAnswer(i -> {
+      release.await(10, TimeUnit.SECONDS);
+      return evaluated.add(i.getArgument(0));
+    }).when(engine).evaluate(any());
+
+    try {
+      worker.setNumberOfWorkerThreads(1)
+          .startComponent();
+      worker.submitAsync(new TestTriggerEvent()).toCompletableFuture().get(10, TimeUnit.SECONDS);
+      TestTriggerEvent event2 = new TestTriggerEvent();
+      TestTriggerEvent event3 = new TestTriggerEvent();
+      TestTriggerEvent event4 = new TestTriggerEvent();
+      CompletableFuture<Void> future2 = worker.submitAsync(event2).toCompletableFuture();
+      CompletableFuture<Void> future3 = CompletableFuture.runAsync(() -> LambdaUtils.tryTo(() -> worker.submit(event3)));
+      assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("pendingSubmissions") == 2, 10, TimeUnit.SECONDS));
+      CompletableFuture<List<SubmissionResult>> future4 = CompletableFuture.supplyAsync(() -> worker.submitAll(List.of(event4)));
+      assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("pendingSubmissions") == 3, 10, TimeUnit.SECONDS));
+
+      // Waiting submissions are accepted in submission order, regardless of how they were submitted.
+      release.countDown();
+      future2.get(10, TimeUnit.SECONDS);
+      future3.get(10, TimeUnit.SECONDS);
+      assertTrue(future4.get(10, TimeUnit.SECONDS).get(0).isAccepted());
+      assertTrue(LambdaUtils.waitFor(() -> evaluated.size() == 4, 10, TimeUnit.SECONDS));
+      assertEquals(List.of(event2, event3, event4), evaluated.subList(1, 4));
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testSubmitAsyncPendingSubmissionExpires() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(i -> release.await(10, TimeUnit.SECONDS)).when(engine).evaluate(any());
+
+    try {
+      worker.setNumberOfWorkerThreads(1)
+          .setSubmissionWaitTimeSeconds(1)
+          .startComponent();
+      TestTriggerEvent event2 = new TestTriggerEvent();
+      worker.submitAsync(new TestTriggerEvent()).toCompletableFuture().get(10, TimeUnit.SECONDS);
+      CompletableFuture<Void> future = worker.submitAsync(event2).toCompletableFuture();
+
+      assertEquals(NoResourcesAvailable, getSubmissionError(future).getErrorCode());
+      assertEquals(0L, getWorkerMetric("pendingSubmissions"));
+      release.countDown();
+      assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("totalCompletedTasks") == 1, 10, TimeUnit.SECONDS));
+      verify(engine, never()).evaluate(event2);
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testSubmitAsyncWithRejectPolicyFailsImmediately() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(i -> release.await(10, TimeUnit.SECONDS)).when(engine).evaluate(any());
+
+    try {
+      worker.setNumberOfWorkerThreads(1)
+          .setOverflowPolicy(InMemoryQueueWorker.OverflowPolicy.Reject)
+          .startComponent();
+      worker.submitAsync(new TestTriggerEvent()).toCompletableFuture().get(10, TimeUnit.SECONDS);
+      CompletableFuture<Void> future = worker.submitAsync(new TestTriggerEvent()).toCompletableFuture();
+
+      assertTrue(future.isCompletedExceptionally());
+      assertEquals(NoResourcesAvailable, getSubmissionError(future).getErrorCode());
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testStopComponentRejectsPendingSubmissions() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(i -> release.await(10, TimeUnit.SECONDS)).when(engine).evaluate(any());
+
+    try {
+      worker.setNumberOfWorkerThreads(1)
+          .startComponent();
+      worker.submitAsync(new TestTriggerEvent()).toCompletableFuture().get(10, TimeUnit.SECONDS);
+      CompletableFuture<Void> future = worker.submitAsync(new TestTriggerEvent()).toCompletableFuture();
+
+      // Stopping waits for the running task, thus, stop the worker in the background.
+      CompletableFuture.runAsync(worker::stopComponent);
+      assertEquals(ComponentUnavailable, getSubmissionError(future).getErrorCode());
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testSubmitAllWithoutEvents() {
+    assertTrue(worker.submitAll(null).isEmpty());
+    assertTrue(worker.submitAll(List.of()).isEmpty());
+  }
+
+  @Test
+  public void testSubmitAllReturnsResultPerEvent() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(i -> release.await(10, TimeUnit.SECONDS)).when(engine).evaluate(any());
+
+    try {
+      worker.setNumberOfWorkerThreads(1)
+          .setQueueCapacity(1)
+          .setOverflowPolicy(InMemoryQueueWorker.OverflowPolicy.Reject)
+          .startComponent();
+      List<TestTriggerEvent> events = List.of(new TestTriggerEvent(), new TestTriggerEvent().setId(null),
+          new TestTriggerEvent(), new TestTriggerEvent());
+      List<SubmissionResult> results = worker.submitAll(events);
+
+      assertEquals(4, results.size());
+      for (int i = 0; i < events.size(); i++) {
+        assertSame(events.get(i), results.get(i).getEvent());
+      }
+      assertTrue(results.get(0).isAccepted());
+      assertEquals(InvalidTriggerEvent, results.get(1).getError().getErrorCode());
+      assertTrue(results.get(2).isAccepted());
+      assertEquals(NoResourcesAvailable, results.get(3).getError().getErrorCode());
+
+      release.countDown();
+      assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("totalCompletedTasks") == 2, 10, TimeUnit.SECONDS));
+      verify(engine).evaluate(events.get(0));
+      verify(engine).evaluate(events.get(2));
+      verify(engine, never()).evaluate(events.get(3));
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testSubmitAllWaitsForAvailableThreads() throws Exception {
+    AtomicInteger taskCounter = new AtomicInteger();
+    doAnswer(i -> {
+      Thread.sleep(100);
+      return taskCounter.incrementAndGet();
+    }).when(engine).evaluate(any());
+
+    worker.setNumberOfWorkerThreads(2)
+        .startComponent();
+    List<SubmissionResult> results = worker.submitAll(List.of(new TestTriggerEvent(), new TestTriggerEvent(),
+        new TestTriggerEvent(), new TestTriggerEvent(), new TestTriggerEvent()));
+
+    assertTrue(results.stream().allMatch(SubmissionResult::isAccepted));
+    assertTrue(LambdaUtils.waitFor(() -> taskCounter.get() == 5, 10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testValidateWithInvalidFairSchedulingWeightFails() {
+    ValidationContext context = new ValidationContext();
+    worker.setFairSchedulingWeights(Map.of("TestService", 0))
+        .validate(context);
+    assertFalse(context.isValid());
+  }
+
+  @Test
+  public void testSubmitWithFairSchedulingServesOrganizationsRoundRobin() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    List<UUID> evaluatedOrganizations = new CopyOnWriteArrayList<>();
+    doAnswer(i -> {
+      evaluatedOrganizations.add(i.<TestTriggerEvent>getArgument(0).getOrganization());
+      return release.await(10, TimeUnit.SECONDS);
+    }).when(engine).evaluate(any());
+
+    try {
+      worker.setNumberOfWorkerThreads(1)
+          .setQueueCapacity(10)
+          .setSchedulingMode(InMemoryQueueWorker.SchedulingMode.Fair)
+          .startComponent();
+      UUID flooding = UUID.randomUUID();
+      UUID other = UUID.randomUUID();
+      for (int i = 0; i < 4; i++) {
+        worker.submit(new TestTriggerEvent().setOrganization(flooding));
+      }
+      worker.submit(new TestTriggerEvent().setOrganization(other));
+
+      Metrics fairQueues = worker.getMetrics().getSubMetrics("fairQueues");
+      assertTrue(LambdaUtils.waitFor(() -> evaluatedOrganizations.size() == 1, 10, TimeUnit.SECONDS));
+      assertEquals(3, fairQueues.getSubMetrics(flooding.toString()).getData("queueDepth").intValue());
+      assertEquals(1, fairQueues.getSubMetrics(other.toString()).getData("queueDepth").intValue());
+
+      release.countDown();
+      assertTrue(LambdaUtils.waitFor(() -> evaluatedOrganizations.size() == 5, 10, TimeUnit.SECONDS));
+      // The other organization doesn't have to wait for all events of the flooding organization.
+      assertEquals(List.of(flooding, flooding, other, flooding, flooding), evaluatedOrganizations);
+    } finally {
+      release.countDown();
+    }
+  }
+
+  private SubmissionException getSubmissionError(CompletableFuture<Void> future) {
+    ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+    return assertInstanceOf(SubmissionException.class, ex.getCause());
+  }
+
+  private long getWorkerMetric(String name) {
+    try {
+      return worker.getMetrics().getSubMetrics("inMemoryQueueWorker").getData(name).longValue();
+    } catch (MetricException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
 }
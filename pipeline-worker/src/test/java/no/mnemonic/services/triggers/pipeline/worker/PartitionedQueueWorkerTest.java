@@ -0,0 +1,213 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.component.ValidationContext;
+import no.mnemonic.commons.metrics.MetricException;
+import no.mnemonic.commons.metrics.MetricsData;
+import no.mnemonic.commons.utilities.lambda.LambdaUtils;
+import no.mnemonic.services.triggers.api.service.v1.TriggerAdministrationService;
+import no.mnemonic.services.triggers.pipeline.api.SubmissionException;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static no.mnemonic.services.triggers.pipeline.api.SubmissionException.ErrorCode.NoResourcesAvailable;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PartitionedQueueWorkerTest {
+
+  @Mock
+  private TriggerAdministrationService service;
+  @Mock
+  private RuleEvaluationEngine engine;
+
+  private final List<UUID> evaluatedEvents = new CopyOnWriteArrayList<>();
+  private PartitionedQueueWorker worker;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    lenient().when(engine.getMetrics()).thenReturn(new MetricsData());
+    lenient().doAnswer(i -> {
+      // Random processing time, such that unordered processing would mix up the events.
+      Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+      evaluatedEvents.add(i.<TriggerEvent>getArgument(0).getId());
+      i.<Runnable>getArgument(1).run();
+      return null;
+    }).when(engine).evaluate(any(), any());
+
+    worker = new PartitionedQueueWorker(service)
+        .setRuleEvaluationEngine(engine);
+  }
+
+  @AfterEach
+  public void cleanUp() {
+    worker.stopComponent();
+  }
+
+  @Test
+  public void testValidateWithZeroPartitionsFails() {
+    ValidationContext context = new ValidationContext();
+    worker.setNumberOfPartitions(0)
+        .validate(context);
+    assertFalse(context.isValid());
+  }
+
+  @Test
+  public void testValidateWithZeroPartitionCapacityFails() {
+    ValidationContext context = new ValidationContext();
+    worker.setPartitionCapacity(0)
+        .validate(context);
+    assertFalse(context.isValid());
+  }
+
+  @Test
+  public void testValidateContextParameterKeyWithoutParameterFails() {
+    ValidationContext context = new ValidationContext();
+    worker.setPartitionKey(PartitionedQueueWorker.PartitionKey.ContextParameter)
+        .validate(context);
+    assertFalse(context.isValid());
+  }
+
+  @Test
+  public void testSubmitWithoutStartThrowsException() {
+    assertThrows(IllegalStateException.class, () -> worker.submit(new TestTriggerEvent()));
+  }
+
+  @Test
+  public void testSubmitInvalidEventThrowsException() {
+    worker.startComponent();
+    assertThrows(SubmissionException.class, () -> worker.submit(new TestTriggerEvent().setOrganization(null)));
+  }
+
+  @Test
+  public void testStopComponentClosesRuleEvaluationEngine() {
+    worker.startComponent();
+    worker.stopComponent();
+    verify(engine).close();
+  }
+
+  @Test
+  public void testSubmitPreservesOrderPerOrganization() throws Exception {
+    worker.startComponent();
+
+    UUID organization = UUID.randomUUID();
+    List<UUID> submitted = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      TestTriggerEvent event = new TestTriggerEvent().setOrganization(organization);
+      submitted.add(event.getId());
+      worker.submit(event);
+    }
+
+    assertTrue(LambdaUtils.waitFor(() -> evaluatedEvents.size() == 50, 10, TimeUnit.SECONDS));
+    assertEquals(submitted, evaluatedEvents);
+  }
+
+  @Test
+  public void testSubmitPreservesOrderPerContextParameter() throws Exception {
+    worker.setPartitionKey(PartitionedQueueWorker.PartitionKey.ContextParameter)
+        .setPartitionContextParameter("objectId")
+        .startComponent();
+
+    List<UUID> submitted = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      // Different organizations, but the same object.
+      TestTriggerEvent event = new TestTriggerEvent().addContextParameter("objectId", "object");
+      submitted.add(event.getId());
+      worker.submit(event);
+    }
+
+    assertTrue(LambdaUtils.waitFor(() -> evaluatedEvents.size() == 50, 10, TimeUnit.SECONDS));
+    assertEquals(submitted, evaluatedEvents);
+  }
+
+  @Test
+  public void testSubmitWaitsForAsyncTriggerActionsBeforeNextEvent() throws Exception {
+    // Simulate an asynchronous TriggerAction completing in the background after the evaluation has returned. The action
+    // of the first event takes longest, such that it would finish last if the partition didn't wait for it.
+    AtomicInteger remainingDelay = new AtomicInteger(50);
+    List<UUID> completedEvents = new CopyOnWriteArrayList<>();
+    doAnswer(i -> {
+      UUID id = i.<TriggerEvent>getArgument(0).getId();
+      Runnable onCompletion = i.getArgument(1);
+      CompletableFuture.runAsync(() -> {
+        completedEvents.add(id);
+        onCompletion.run();
+      }, CompletableFuture.delayedExecutor(remainingDelay.addAndGet(-10), TimeUnit.MILLISECONDS));
+      return null;
+    }).when(engine).evaluate(any(), any());
+    worker.setPartitionCapacity(10).startComponent();
+
+    UUID organization = UUID.randomUUID();
+    List<UUID> submitted = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      TestTriggerEvent event = new TestTriggerEvent().setOrganization(organization);
+      submitted.add(event.getId());
+      worker.submit(event);
+    }
+
+    assertTrue(LambdaUtils.waitFor(() -> completedEvents.size() == 5, 10, TimeUnit.SECONDS));
+    assertEquals(submitted, completedEvents);
+  }
+
+  @Test
+  public void testSubmitEventsForManyOrganizations() throws Exception {
+    worker.startComponent();
+    for (int i = 0; i < 100; i++) {
+      worker.submit(new TestTriggerEvent());
+    }
+
+    assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("totalCompletedTasks") == 100, 10, TimeUnit.SECONDS));
+    assertEquals(0L, getWorkerMetric("totalFailedTasks"));
+    assertEquals(4, worker.getMetrics().getSubMetrics("partitions").getSubMetrics().size());
+  }
+
+  @Test
+  public void testSubmitToFullPartitionFails() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(i -> {
+      release.await(10, TimeUnit.SECONDS);
+      i.<Runnable>getArgument(1).run();
+      return null;
+    }).when(engine).evaluate(any(), any());
+
+    try {
+      worker.setNumberOfPartitions(1)
+          .setPartitionCapacity(2)
+          .setSubmissionWaitTimeSeconds(1)
+          .startComponent();
+      worker.submit(new TestTriggerEvent());
+      worker.submit(new TestTriggerEvent());
+
+      SubmissionException ex = assertThrows(SubmissionException.class, () -> worker.submit(new TestTriggerEvent()));
+      assertEquals(NoResourcesAvailable, ex.getErrorCode());
+      assertEquals(1L, getWorkerMetric("totalRejectedEvents"));
+      assertEquals(1, worker.getMetrics().getSubMetrics("partitions").getSubMetrics("0").getData("queueDepth").intValue());
+    } finally {
+      release.countDown();
+    }
+  }
+
+  private long getWorkerMetric(String name) {
+    try {
+      return worker.getMetrics().getSubMetrics("partitionedQueueWorker").getData(name).longValue();
+    } catch (MetricException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.component.ValidationContext;
+import no.mnemonic.commons.metrics.MetricException;
+import no.mnemonic.commons.metrics.MetricsData;
+import no.mnemonic.commons.utilities.lambda.LambdaUtils;
+import no.mnemonic.services.triggers.api.service.v1.TriggerAdministrationService;
+import no.mnemonic.services.triggers.pipeline.api.SubmissionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static no.mnemonic.services.triggers.pipeline.api.SubmissionException.ErrorCode.NoResourcesAvailable;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class RingBufferWorkerTest {
+
+  @Mock
+  private TriggerAdministrationService service;
+  @Mock
+  private RuleEvaluationEngine engine;
+
+  private RingBufferWorker worker;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    lenient().when(engine.getMetrics()).thenReturn(new MetricsData());
+    worker = new RingBufferWorker(service)
+        .setRuleEvaluationEngine(engine);
+  }
+
+  @AfterEach
+  public void cleanUp() {
+    worker.stopComponent();
+  }
+
+  @Test
+  public void testValidateWithInvalidBufferSizeFails() {
+    ValidationContext context = new ValidationContext();
+    worker.setBufferSize(1000)
+        .validate(context);
+    assertFalse(context.isValid());
+  }
+
+  @Test
+  public void testValidateWithZeroConsumerThreadsFails() {
+    ValidationContext context = new ValidationContext();
+    worker.setNumberOfConsumerThreads(0)
+        .validate(context);
+    assertFalse(context.isValid());
+  }
+
+  @Test
+  public void testValidateWithoutWaitStrategyFails() {
+    ValidationContext context = new ValidationContext();
+    worker.setWaitStrategy(null)
+        .validate(context);
+    assertFalse(context.isValid());
+  }
+
+  @Test
+  public void testSubmitWithoutStartThrowsException() {
+    assertThrows(IllegalStateException.class, () -> worker.submit(new TestTriggerEvent()));
+  }
+
+  @Test
+  public void testSubmitInvalidEventThrowsException() {
+    worker.startComponent();
+    assertThrows(SubmissionException.class, () -> worker.submit(new TestTriggerEvent().setService(null)));
+  }
+
+  @Test
+  public void testSubmitAndEvaluateEvents() throws Exception {
+    worker.startComponent();
+    for (int i = 0; i < 100; i++) {
+      worker.submit(new TestTriggerEvent());
+    }
+
+    assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("totalProcessedEvents") == 100, 10, TimeUnit.SECONDS));
+    assertEquals(100L, getWorkerMetric("totalPublishedEvents"));
+    assertEquals(0L, getWorkerMetric("totalFailedTasks"));
+    verify(engine, times(100)).evaluate(any());
+  }
+
+  @Test
+  public void testSubmitAndEvaluateFailure() throws Exception {
+    doThrow(new RuntimeException()).when(engine).evaluate(any());
+
+    worker.setWaitStrategy(RingBufferWorker.WaitStrategy.Yielding)
+        .startComponent();
+    worker.submit(new TestTriggerEvent());
+
+    assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("totalFailedTasks") == 1, 10, TimeUnit.SECONDS));
+    // The consumer thread survives the failure.
+    worker.submit(new TestTriggerEvent());
+    assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("totalProcessedEvents") == 2, 10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testSubmitToFullRingBufferFails() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(i -> release.await(10, TimeUnit.SECONDS)).when(engine).evaluate(any());
+
+    try {
+      worker.setBufferSize(2)
+          .setNumberOfConsumerThreads(1)
+          .setSubmissionWaitTimeSeconds(1)
+          .startComponent();
+      worker.submit(new TestTriggerEvent());
+      worker.submit(new TestTriggerEvent());
+
+      SubmissionException ex = assertThrows(SubmissionException.class, () -> worker.submit(new TestTriggerEvent()));
+      assertEquals(NoResourcesAvailable, ex.getErrorCode());
+      assertEquals(1L, getWorkerMetric("totalRejectedEvents"));
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testStopComponentProcessesAcceptedEvents() throws Exception {
+    doAnswer(i -> {
+      Thread.sleep(10);
+      return null;
+    }).when(engine).evaluate(any());
+
+    worker.startComponent();
+    for (int i = 0; i < 20; i++) {
+      worker.submit(new TestTriggerEvent());
+    }
+    worker.stopComponent();
+
+    verify(engine, times(20)).evaluate(any());
+    verify(engine).close();
+  }
+
+  private long getWorkerMetric(String name) {
+    try {
+      return worker.getMetrics().getSubMetrics("ringBufferWorker").getData(name).longValue();
+    } catch (MetricException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
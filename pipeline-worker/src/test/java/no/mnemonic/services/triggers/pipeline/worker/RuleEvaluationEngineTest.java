@@ -1,5 +1,6 @@
 package no.mnemonic.services.triggers.pipeline.worker;
 
+import no.mnemonic.services.triggers.action.AsyncTriggerAction;
 import no.mnemonic.services.triggers.action.TriggerAction;
 import no.mnemonic.services.triggers.action.exceptions.ParameterException;
 import no.mnemonic.services.triggers.action.exceptions.TriggerExecutionException;
@@ -12,17 +13,26 @@ import no.mnemonic.services.triggers.pipeline.api.AccessMode;
 import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
-
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -31,10 +41,13 @@ public class RuleEvaluationEngineTest {
 
   @Mock
   private static TriggerAction action;
+  private static CompletableFuture<Void> asyncExecution;
   @Mock
   private TriggerAdministrationService service;
   @InjectMocks
   private RuleEvaluationEngine engine;
+  @TempDir
+  Path deadLetterDirectory;
 
   @Test
   public void testInitializeEngineWithoutServiceThrowsException() {
@@ -53,6 +66,21 @@ public class RuleEvaluationEngineTest {
         && Objects.equals(request.getEvent(), event.getEvent())));
   }
 
+  @Test
+  public void testEvaluateUsesSnapshotForWholeEvent() throws Exception {
+    TriggerAdministrationService snapshot = mock(TriggerAdministrationService.class);
+    when(service.getSnapshot()).thenReturn(snapshot);
+    when(snapshot.getTriggerEventDefinition(any())).thenReturn(TriggerEventDefinition.builder().build());
+    when(snapshot.searchTriggerRules(any())).thenReturn(Collections.emptyList());
+
+    engine.evaluate(new TestTriggerEvent());
+
+    verify(snapshot).getTriggerEventDefinition(any());
+    verify(snapshot, atLeastOnce()).searchTriggerRules(any());
+    verify(service).getSnapshot();
+    verifyNoMoreInteractions(service);
+  }
+
   @Test
   public void testEvaluateTriggerRulesNotFound() throws Exception {
     mockFetchTriggerEventDefinition();
@@ -145,6 +173,132 @@ public class RuleEvaluationEngineTest {
     assertEquals(1L, engine.getMetrics().getData("expressionEvaluationError"));
   }
 
+  @Test
+  public void testEvaluateCompilesSnapshotRulesOnce() throws Exception {
+    TriggerAdministrationService snapshot = mockSnapshot();
+    TriggerRule rule = mockEvaluatingTriggerRules(snapshot, "1 == 1");
+
+    TriggerEvent event = new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId());
+    engine.evaluate(event);
+    engine.evaluate(event);
+
+    assertEquals(2L, engine.getMetrics().getData("matchingTriggerRules"));
+    assertEquals(2L, engine.getMetrics().getData("successfulActionInvocations"));
+    // Rules are fetched once for compilation and once per event.
+    verify(snapshot, times(1)).searchTriggerRules(argThat(request -> request.getService() == null && request.getEvent() == null));
+    verify(snapshot, times(3)).searchTriggerRules(any());
+  }
+
+  @Test
+  public void testEvaluateRejectsInvalidSnapshotRulesAtLoad() throws Exception {
+    TriggerAdministrationService snapshot = mockSnapshot();
+    TriggerRule rule = mockEvaluatingTriggerRules(snapshot, "1 ==");
+
+    TriggerEvent event = new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId());
+    engine.evaluate(event);
+    engine.evaluate(event);
+
+    // The rule is only reported once and never evaluated.
+    assertEquals(1L, engine.getMetrics().getData("invalidTriggerRules"));
+    assertEquals(0L, engine.getMetrics().getData("expressionEvaluationError"));
+    assertEquals(0L, engine.getMetrics().getData("matchingTriggerRules"));
+    verify(action, never()).trigger(any());
+  }
+
+  @Test
+  public void testEvaluateRecompilesRulesForNewSnapshot() throws Exception {
+    TriggerAdministrationService snapshot1 = mock(TriggerAdministrationService.class);
+    TriggerAdministrationService snapshot2 = mock(TriggerAdministrationService.class);
+    when(service.getSnapshot()).thenReturn(snapshot1, snapshot2);
+    TriggerRule rule1 = mockEvaluatingTriggerRules(snapshot1, "1 ==");
+    mockEvaluatingTriggerRules(snapshot2, "1 ==");
+
+    TriggerEvent event = new TestTriggerEvent().setOrganization(rule1.getOrganizations().iterator().next().getId());
+    engine.evaluate(event);
+    engine.evaluate(event);
+
+    assertEquals(2L, engine.getMetrics().getData("invalidTriggerRules"));
+  }
+
+  @Test
+  public void testEvaluateKeepsRulesOfPreviousSnapshot() throws Exception {
+    TriggerAdministrationService snapshot1 = mock(TriggerAdministrationService.class);
+    TriggerAdministrationService snapshot2 = mock(TriggerAdministrationService.class);
+    // Events of the old and the new configuration are interleaved while the configuration changes.
+    when(service.getSnapshot()).thenReturn(snapshot1, snapshot2, snapshot1, snapshot2);
+    TriggerRule rule1 = mockEvaluatingTriggerRules(snapshot1, "1 ==");
+    mockEvaluatingTriggerRules(snapshot2, "1 ==");
+
+    TriggerEvent event = new TestTriggerEvent().setOrganization(rule1.getOrganizations().iterator().next().getId());
+    for (int i = 0; i < 4; i++) {
+      engine.evaluate(event);
+    }
+
+    assertEquals(2L, engine.getMetrics().getData("invalidTriggerRules"));
+  }
+
+  @Test
+  public void testEvaluateDoesNotWaitForCompilationOfOtherSnapshot() throws Exception {
+    TriggerAdministrationService snapshot1 = mock(TriggerAdministrationService.class);
+    TriggerAdministrationService snapshot2 = mock(TriggerAdministrationService.class);
+    when(service.getSnapshot()).thenReturn(snapshot1, snapshot2);
+    mockFetchTriggerEventDefinition(snapshot1);
+    mockFetchTriggerEventDefinition(snapshot2);
+    CountDownLatch compiling = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(snapshot1.searchTriggerRules(any())).thenAnswer(i -> {
+      compiling.countDown();
+      release.await(10, TimeUnit.SECONDS);
+      return Collections.emptyList();
+    });
+    when(snapshot2.searchTriggerRules(any())).thenReturn(Collections.emptyList());
+
+    Thread slow = new Thread(() -> engine.evaluate(new TestTriggerEvent()));
+    slow.start();
+    try {
+      assertTrue(compiling.await(10, TimeUnit.SECONDS));
+      assertTimeout(Duration.ofSeconds(1), () -> engine.evaluate(new TestTriggerEvent()));
+      verify(snapshot2, times(2)).searchTriggerRules(any());
+    } finally {
+      release.countDown();
+      slow.join();
+    }
+  }
+
+  @Test
+  public void testEvaluateCachesCompiledScripts() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+
+    TriggerEvent event = new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId());
+    engine.evaluate(event);
+    engine.evaluate(event);
+
+    // The rule has one expression and three trigger parameters.
+    assertEquals(1L, engine.getMetrics().getData("expressionCacheMisses"));
+    assertEquals(1L, engine.getMetrics().getData("expressionCacheHits"));
+    assertEquals(3L, engine.getMetrics().getData("templateCacheMisses"));
+    assertEquals(3L, engine.getMetrics().getData("templateCacheHits"));
+    assertEquals(0L, engine.getMetrics().getData("expressionCacheEvictions"));
+    assertEquals(0L, engine.getMetrics().getData("templateCacheEvictions"));
+  }
+
+  @Test
+  public void testEvaluateExpressionAssignsVariablesLocally() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules("(i = 2) == 2 && (name = 'Other') == 'Other'");
+
+    TestTriggerEvent event = new TestTriggerEvent()
+        .setOrganization(rule.getOrganizations().iterator().next().getId())
+        .addContextParameter("i", 1)
+        .addContextParameter("name", "World");
+    engine.evaluate(event);
+
+    assertEquals(1L, engine.getMetrics().getData("matchingTriggerRules"));
+    assertEquals(0L, engine.getMetrics().getData("expressionEvaluationError"));
+    // Neither the context parameters nor the evaluation of the trigger parameters are affected by the assignment.
+    assertEquals(1, event.getContextParameters().get("i"));
+    verify(action).trigger(argThat(parameters -> "Hello World!".equals(parameters.get("expressionParameter"))));
+  }
+
   @Test
   public void testEvaluateTriggerActionDefinitionNotFound() throws Exception {
     TriggerRule rule = mockEvaluatingTriggerRules();
@@ -197,6 +351,449 @@ public class RuleEvaluationEngineTest {
     verify(action).trigger(notNull());
   }
 
+  @Test
+  public void testEvaluateTriggerActionReusesInitializedAction() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+
+    TriggerEvent event = new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId());
+    engine.evaluate(event);
+    engine.evaluate(event);
+
+    assertEquals(2L, engine.getMetrics().getData("successfulActionInvocations"));
+    assertEquals(1L, engine.getMetrics().getData("createdTriggerActions"));
+    assertEquals(1L, engine.getMetrics().getData("idleTriggerActions"));
+    verify(action).init(notNull());
+    verify(action, times(2)).trigger(notNull());
+
+    engine.close();
+    assertEquals(0L, engine.getMetrics().getData("idleTriggerActions"));
+    assertEquals(1L, engine.getMetrics().getData("closedTriggerActions"));
+  }
+
+  @Test
+  public void testEvaluateTriggerActionCancelledAfterDeadline() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    doAnswer(i -> {
+      try {
+        Thread.sleep(5000);
+        return null;
+      } catch (InterruptedException ex) {
+        throw new TriggerExecutionException("Interrupted!", ex);
+      }
+    }).when(action).trigger(any());
+
+    long start = System.nanoTime();
+    engine.setActionExecutionDeadlineMillis(100)
+        .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+    assertFalse(Thread.currentThread().isInterrupted());
+    assertEquals(1L, engine.getMetrics().getData("timedOutActionInvocations"));
+    assertEquals(1L, engine.getMetrics().getData("failedActionInvocations"));
+    // The cancelled instance isn't reused.
+    assertEquals(1L, engine.getMetrics().getData("closedTriggerActions"));
+    assertEquals(0L, engine.getMetrics().getData("idleTriggerActions"));
+  }
+
+  @Test
+  public void testEvaluateTriggerActionCompletingAfterDeadlineCountsAsLateSuccess() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    mockRetryingTriggerActionDefinition(3);
+    ExecutorService retryExecutor = Executors.newSingleThreadExecutor();
+    // The action ignores the interrupt and completes anyway, e.g. the webhook was delivered.
+    doAnswer(i -> {
+      long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+      while (System.nanoTime() < end) {
+        Thread.onSpinWait();
+      }
+      return null;
+    }).when(action).trigger(any());
+
+    try {
+      engine.setActionExecutionDeadlineMillis(50)
+          .setRetryExecutor(retryExecutor)
+          .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+
+      assertFalse(Thread.currentThread().isInterrupted());
+      assertEquals(1L, engine.getMetrics().getData("lateActionInvocations"));
+      assertEquals(0L, engine.getMetrics().getData("timedOutActionInvocations"));
+      assertEquals(1L, engine.getMetrics().getData("successfulActionInvocations"));
+      assertEquals(0L, engine.getMetrics().getData("retriedActionInvocations"));
+      verify(action, times(1)).trigger(any());
+    } finally {
+      retryExecutor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testEvaluateTriggerActionCompletesBeforeDeadline() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+
+    engine.setActionExecutionDeadlineMillis(10_000)
+        .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+
+    assertEquals(0L, engine.getMetrics().getData("timedOutActionInvocations"));
+    assertEquals(1L, engine.getMetrics().getData("successfulActionInvocations"));
+    assertEquals(1L, engine.getMetrics().getData("idleTriggerActions"));
+  }
+
+  @Test
+  public void testEvaluateTriggerActionRetriesRetryableFailure() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    mockRetryingTriggerActionDefinition(3);
+    doThrow(new TriggerExecutionException("Unavailable", null, true))
+        .doNothing()
+        .when(action).trigger(any());
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      engine.setRetryExecutor(executor)
+          .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+      // The first attempt failed, the retry is executed in the background.
+      assertEquals(1L, engine.getMetrics().getData("retriedActionInvocations"));
+      waitForMetric("successfulActionInvocations", 1L);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(0L, engine.getMetrics().getData("failedActionInvocations"));
+    assertEquals(0L, engine.getMetrics().getData("pendingActionRetries"));
+    // Trigger parameters are evaluated once and reused for the retry.
+    verify(action, times(2)).trigger(argThat(parameters -> "staticValue".equals(parameters.get("staticParameter"))));
+  }
+
+  @Test
+  public void testEvaluateTriggerActionGivesUpAfterMaxAttempts() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    mockRetryingTriggerActionDefinition(3);
+    doThrow(new TriggerExecutionException("Unavailable", null, true)).when(action).trigger(any());
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      engine.setRetryExecutor(executor)
+          .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+      waitForMetric("failedActionInvocations", 1L);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(2L, engine.getMetrics().getData("retriedActionInvocations"));
+    assertEquals(0L, engine.getMetrics().getData("successfulActionInvocations"));
+    verify(action, times(3)).trigger(any());
+  }
+
+  @Test
+  public void testEvaluateTriggerActionDoesNotRetryNonRetryableFailure() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    mockRetryingTriggerActionDefinition(3);
+    doThrow(new TriggerExecutionException("Bad request")).when(action).trigger(any());
+
+    engine.setRetryExecutor(Runnable::run)
+        .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+
+    assertEquals(0L, engine.getMetrics().getData("retriedActionInvocations"));
+    assertEquals(1L, engine.getMetrics().getData("failedActionInvocations"));
+    verify(action).trigger(any());
+  }
+
+  @Test
+  public void testEvaluateTriggerActionDoesNotRetryWithoutRetryPolicy() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    doThrow(new TriggerExecutionException("Unavailable", null, true)).when(action).trigger(any());
+
+    engine.setRetryExecutor(Runnable::run)
+        .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+
+    assertEquals(0L, engine.getMetrics().getData("retriedActionInvocations"));
+    assertEquals(1L, engine.getMetrics().getData("failedActionInvocations"));
+  }
+
+  @Test
+  public void testCloseDropsPendingRetries() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    TriggerActionDefinition definition = TriggerActionDefinition.builder()
+        .setId(UUID.randomUUID())
+        .setName("TestAction")
+        .setTriggerActionClass("no.mnemonic.services.triggers.pipeline.worker.RuleEvaluationEngineTest$TestTriggerAction")
+        .setRetryPolicy(RetryPolicy.builder().setMaxAttempts(2).setInitialBackoffMillis(60_000).build())
+        .build();
+    when(service.getTriggerActionDefinition(any())).thenReturn(definition);
+    doThrow(new TriggerExecutionException("Unavailable", null, true)).when(action).trigger(any());
+
+    engine.setRetryExecutor(Runnable::run)
+        .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+    assertEquals(1L, engine.getMetrics().getData("pendingActionRetries"));
+
+    engine.close();
+    assertEquals(0L, engine.getMetrics().getData("pendingActionRetries"));
+    assertEquals(1L, engine.getMetrics().getData("failedActionInvocations"));
+    verify(action).trigger(any());
+  }
+
+  @Test
+  public void testEvaluateAsyncTriggerActionCountsSuccessOnCompletion() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    mockAsyncTriggerActionDefinition();
+
+    engine.evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+    assertEquals(0L, engine.getMetrics().getData("successfulActionInvocations"));
+
+    asyncExecution.complete(null);
+    assertEquals(1L, engine.getMetrics().getData("successfulActionInvocations"));
+    assertEquals(0L, engine.getMetrics().getData("failedActionInvocations"));
+  }
+
+  @Test
+  public void testEvaluateAsyncTriggerActionRetriesRetryableFailure() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    mockAsyncTriggerActionDefinition();
+
+    engine.setRetryExecutor(Runnable::run)
+        .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+    CompletableFuture<Void> first = asyncExecution;
+    asyncExecution = new CompletableFuture<>();
+    first.completeExceptionally(new TriggerExecutionException("Unavailable", null, true));
+    assertEquals(1L, engine.getMetrics().getData("retriedActionInvocations"));
+
+    waitForMetric("pendingActionRetries", 0L);
+    asyncExecution.complete(null);
+    waitForMetric("successfulActionInvocations", 1L);
+    assertEquals(0L, engine.getMetrics().getData("failedActionInvocations"));
+  }
+
+  @Test
+  public void testEvaluateAsyncTriggerActionStoresFailureInDeadLetterStore() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    mockAsyncTriggerActionDefinition();
+
+    try (DeadLetterStore store = DeadLetterStore.open(deadLetterDirectory)) {
+      engine.setDeadLetterStore(store)
+          .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+      asyncExecution.completeExceptionally(new TriggerExecutionException("Forbidden", null, false));
+
+      assertEquals(1L, engine.getMetrics().getData("failedActionInvocations"));
+      assertEquals(1L, engine.getMetrics().getData("deadLetteredActionInvocations"));
+      assertEquals(1, store.getPendingDeadLetters());
+    }
+  }
+
+  @Test
+  public void testEvaluateInvokesCompletionCallbackWithoutMatchingRules() throws Exception {
+    when(service.getTriggerEventDefinition(any())).thenThrow(ObjectNotFoundException.class);
+
+    CountDownLatch completed = new CountDownLatch(1);
+    engine.evaluate(new TestTriggerEvent(), completed::countDown);
+    assertEquals(0, completed.getCount());
+  }
+
+  @Test
+  public void testEvaluateInvokesCompletionCallbackAfterPendingRetries() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    TriggerActionDefinition definition = TriggerActionDefinition.builder()
+        .setId(UUID.randomUUID())
+        .setName("TestAction")
+        .setTriggerActionClass("no.mnemonic.services.triggers.pipeline.worker.RuleEvaluationEngineTest$TestTriggerAction")
+        .setRetryPolicy(RetryPolicy.builder().setMaxAttempts(2).setInitialBackoffMillis(60_000).build())
+        .build();
+    when(service.getTriggerActionDefinition(any())).thenReturn(definition);
+    doThrow(new TriggerExecutionException("Unavailable", null, true)).when(action).trigger(any());
+
+    CountDownLatch completed = new CountDownLatch(1);
+    engine.setRetryExecutor(Runnable::run)
+        .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()), completed::countDown);
+    // The retry is still pending.
+    assertEquals(1, completed.getCount());
+
+    engine.close();
+    assertEquals(0, completed.getCount());
+  }
+
+  @Test
+  public void testEvaluateInvokesCompletionCallbackAfterAsyncTriggerAction() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    mockAsyncTriggerActionDefinition();
+
+    CountDownLatch completed = new CountDownLatch(1);
+    engine.evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()), completed::countDown);
+    assertEquals(1, completed.getCount());
+
+    asyncExecution.complete(null);
+    assertEquals(0, completed.getCount());
+  }
+
+  @Test
+  public void testCloseStoresPendingRetriesInDeadLetterStore() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    TriggerActionDefinition definition = TriggerActionDefinition.builder()
+        .setId(UUID.randomUUID())
+        .setName("TestAction")
+        .setTriggerActionClass("no.mnemonic.services.triggers.pipeline.worker.RuleEvaluationEngineTest$TestTriggerAction")
+        .setRetryPolicy(RetryPolicy.builder().setMaxAttempts(2).setInitialBackoffMillis(60_000).build())
+        .build();
+    when(service.getTriggerActionDefinition(any())).thenReturn(definition);
+    doThrow(new TriggerExecutionException("Unavailable", null, true)).when(action).trigger(any());
+
+    try (DeadLetterStore store = DeadLetterStore.open(deadLetterDirectory)) {
+      TestTriggerEvent event = new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId());
+      engine.setRetryExecutor(Runnable::run)
+          .setDeadLetterStore(store)
+          .evaluate(event);
+      assertEquals(0, store.getPendingDeadLetters());
+
+      engine.close();
+      assertEquals(1L, engine.getMetrics().getData("deadLetteredActionInvocations"));
+      assertEquals(1, store.getPendingDeadLetters());
+      store.replay(1, 0, deadLetter -> {
+        assertEquals(event.getId(), deadLetter.getEventId());
+        assertTrue(deadLetter.getError().contains("Unavailable"));
+        return true;
+      });
+    }
+  }
+
+  @Test
+  public void testAbandonPendingRetriesWithoutDeadLetterStoreReportsLostRetries() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    TriggerActionDefinition definition = TriggerActionDefinition.builder()
+        .setId(UUID.randomUUID())
+        .setName("TestAction")
+        .setTriggerActionClass("no.mnemonic.services.triggers.pipeline.worker.RuleEvaluationEngineTest$TestTriggerAction")
+        .setRetryPolicy(RetryPolicy.builder().setMaxAttempts(2).setInitialBackoffMillis(60_000).build())
+        .build();
+    when(service.getTriggerActionDefinition(any())).thenReturn(definition);
+    doThrow(new TriggerExecutionException("Unavailable", null, true)).when(action).trigger(any());
+
+    engine.setRetryExecutor(Runnable::run)
+        .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+    assertEquals(1L, engine.getMetrics().getData("pendingActionRetries"));
+
+    assertEquals(1, engine.abandonPendingRetries());
+    assertEquals(0L, engine.getMetrics().getData("pendingActionRetries"));
+    assertEquals(1L, engine.getMetrics().getData("failedActionInvocations"));
+    // Nothing left to abandon.
+    assertEquals(0, engine.abandonPendingRetries());
+  }
+
+  @Test
+  public void testRejectedRetryIsStoredInDeadLetterStore() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    mockRetryingTriggerActionDefinition(2);
+    doThrow(new TriggerExecutionException("Unavailable", null, true)).when(action).trigger(any());
+
+    try (DeadLetterStore store = DeadLetterStore.open(deadLetterDirectory)) {
+      engine.setRetryExecutor(r -> {
+        throw new RejectedExecutionException();
+      }).setDeadLetterStore(store)
+          .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+
+      waitForMetric("deadLetteredActionInvocations", 1L);
+      assertEquals(1, store.getPendingDeadLetters());
+      assertEquals(0L, engine.getMetrics().getData("pendingActionRetries"));
+      assertEquals(1L, engine.getMetrics().getData("failedActionInvocations"));
+      verify(action).trigger(any());
+    }
+  }
+
+  @Test
+  public void testEvaluateTriggerActionStoresFailedInvocationInDeadLetterStore() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    doThrow(new TriggerExecutionException("Unavailable", null, true)).when(action).trigger(any());
+
+    try (DeadLetterStore store = DeadLetterStore.open(deadLetterDirectory)) {
+      TestTriggerEvent event = new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId());
+      engine.setDeadLetterStore(store)
+          .evaluate(event);
+
+      assertEquals(1L, engine.getMetrics().getData("deadLetteredActionInvocations"));
+      assertEquals(1, store.getPendingDeadLetters());
+      store.replay(1, 0, deadLetter -> {
+        assertEquals(rule.getId(), deadLetter.getRuleId());
+        assertEquals(event.getId(), deadLetter.getEventId());
+        assertEquals("TestAction", deadLetter.getActionDefinitionName());
+        assertEquals("staticValue", deadLetter.getTriggerParameters().get("staticParameter"));
+        assertTrue(deadLetter.getError().contains("Unavailable"));
+        return true;
+      });
+    }
+  }
+
+  @Test
+  public void testEvaluateTriggerActionDoesNotStoreParameterFailureInDeadLetterStore() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    doThrow(ParameterException.class).when(action).trigger(any());
+
+    try (DeadLetterStore store = DeadLetterStore.open(deadLetterDirectory)) {
+      engine.setDeadLetterStore(store)
+          .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+      assertEquals(0, store.getPendingDeadLetters());
+    }
+  }
+
+  @Test
+  public void testReplayDeadLettersExecutesActionAgain() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    doThrow(new TriggerExecutionException("Unavailable", null, true)).doNothing().when(action).trigger(any());
+
+    try (DeadLetterStore store = DeadLetterStore.open(deadLetterDirectory)) {
+      engine.setDeadLetterStore(store)
+          .evaluate(new TestTriggerEvent()
+              .setOrganization(rule.getOrganizations().iterator().next().getId())
+              .addContextParameter("name", "World"));
+      DeadLetterReplayResult result = engine.replayDeadLetters(2, 0);
+
+      assertEquals(1, result.getReplayedInvocations());
+      assertEquals(1, result.getSuccessfulInvocations());
+      assertEquals(0, store.getPendingDeadLetters());
+      assertEquals(1L, engine.getMetrics().getData("replayedActionInvocations"));
+      assertEquals(1L, engine.getMetrics().getData("successfulActionInvocations"));
+      // The event isn't evaluated again, the action is executed with the original parameters.
+      verify(service, times(1)).searchTriggerRules(any());
+      verify(action, times(2)).trigger(argThat(parameters -> "Hello World!".equals(parameters.get("expressionParameter"))));
+    }
+  }
+
+  @Test
+  public void testReplayDeadLettersKeepsFailedInvocationsWithoutRetrying() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    mockRetryingTriggerActionDefinition(1);
+    doThrow(new TriggerExecutionException("Unavailable", null, true)).when(action).trigger(any());
+
+    try (DeadLetterStore store = DeadLetterStore.open(deadLetterDirectory)) {
+      engine.setRetryExecutor(Runnable::run)
+          .setDeadLetterStore(store)
+          .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+      mockRetryingTriggerActionDefinition(3);
+      DeadLetterReplayResult result = engine.replayDeadLetters(1, 0);
+
+      assertEquals(1, result.getFailedInvocations());
+      assertEquals(1, store.getPendingDeadLetters());
+      assertEquals(0L, engine.getMetrics().getData("retriedActionInvocations"));
+      verify(action, times(2)).trigger(any());
+    }
+  }
+
+  @Test
+  public void testReplayDeadLettersDropsInvocationsOfRemovedDefinitions() throws Exception {
+    TriggerRule rule = mockEvaluatingTriggerRules();
+    doThrow(new TriggerExecutionException("Unavailable", null, true)).when(action).trigger(any());
+
+    try (DeadLetterStore store = DeadLetterStore.open(deadLetterDirectory)) {
+      engine.setDeadLetterStore(store)
+          .evaluate(new TestTriggerEvent().setOrganization(rule.getOrganizations().iterator().next().getId()));
+      when(service.getTriggerActionDefinition(any())).thenThrow(ObjectNotFoundException.class);
+      DeadLetterReplayResult result = engine.replayDeadLetters(1, 0);
+
+      assertEquals(1, result.getFailedInvocations());
+      assertEquals(0, store.getPendingDeadLetters());
+      verify(action, times(1)).trigger(any());
+    }
+  }
+
+  @Test
+  public void testReplayDeadLettersWithoutStoreFails() {
+    assertThrows(IllegalStateException.class, () -> engine.replayDeadLetters(1, 0));
+  }
+
   @Test
   public void testEvaluateTriggerActionEvaluatesTriggerParameters() throws Exception {
     TriggerRule rule = mockEvaluatingTriggerRules();
@@ -222,6 +819,10 @@ public class RuleEvaluationEngineTest {
   }
 
   private void mockFetchTriggerEventDefinition() throws Exception {
+    mockFetchTriggerEventDefinition(service);
+  }
+
+  private void mockFetchTriggerEventDefinition(TriggerAdministrationService service) throws Exception {
     TriggerEventDefinition definition = TriggerEventDefinition.builder()
         .setId(UUID.randomUUID())
         .setService("TestService")
@@ -230,7 +831,7 @@ public class RuleEvaluationEngineTest {
     lenient().when(service.getTriggerEventDefinition(any())).thenReturn(definition);
   }
 
-  private void mockFetchTriggerActionDefinition() throws Exception {
+  private void mockFetchTriggerActionDefinition(TriggerAdministrationService service) throws Exception {
     TriggerActionDefinition definition = TriggerActionDefinition.builder()
         .setId(UUID.randomUUID())
         .setName("TestAction")
@@ -241,11 +842,46 @@ public class RuleEvaluationEngineTest {
     lenient().when(service.getTriggerActionDefinition(any())).thenReturn(definition);
   }
 
+  private void mockRetryingTriggerActionDefinition(int maxAttempts) throws Exception {
+    TriggerActionDefinition definition = TriggerActionDefinition.builder()
+        .setId(UUID.randomUUID())
+        .setName("TestAction")
+        .setTriggerActionClass("no.mnemonic.services.triggers.pipeline.worker.RuleEvaluationEngineTest$TestTriggerAction")
+        .setRetryPolicy(RetryPolicy.builder()
+            .setMaxAttempts(maxAttempts)
+            .setInitialBackoffMillis(10)
+            .build())
+        .build();
+    when(service.getTriggerActionDefinition(any())).thenReturn(definition);
+  }
+
+  private void mockAsyncTriggerActionDefinition() throws Exception {
+    asyncExecution = new CompletableFuture<>();
+    TriggerActionDefinition definition = TriggerActionDefinition.builder()
+        .setId(UUID.randomUUID())
+        .setName("TestAction")
+        .setTriggerActionClass("no.mnemonic.services.triggers.pipeline.worker.RuleEvaluationEngineTest$TestAsyncTriggerAction")
+        .setRetryPolicy(RetryPolicy.builder()
+            .setMaxAttempts(2)
+            .setInitialBackoffMillis(10)
+            .build())
+        .build();
+    when(service.getTriggerActionDefinition(any())).thenReturn(definition);
+  }
+
+  private void waitForMetric(String name, long expected) throws Exception {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!Objects.equals(expected, engine.getMetrics().getData(name)) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, engine.getMetrics().getData(name));
+  }
+
   private TriggerRule mockEvaluatingTriggerRules() throws Exception {
     return mockEvaluatingTriggerRules("1 == 1");
   }
 
-  private TriggerRule mockFetchTriggerRules(String expression) throws InvalidArgumentException {
+  private TriggerRule mockFetchTriggerRules(TriggerAdministrationService service, String expression) throws InvalidArgumentException {
     TriggerRule rule = TriggerRule.builder()
         .setId(UUID.randomUUID())
         .setService("TestService")
@@ -274,9 +910,19 @@ public class RuleEvaluationEngineTest {
   }
 
   private TriggerRule mockEvaluatingTriggerRules(String expression) throws Exception {
-    mockFetchTriggerEventDefinition();
-    mockFetchTriggerActionDefinition();
-    return mockFetchTriggerRules(expression);
+    return mockEvaluatingTriggerRules(service, expression);
+  }
+
+  private TriggerRule mockEvaluatingTriggerRules(TriggerAdministrationService service, String expression) throws Exception {
+    mockFetchTriggerEventDefinition(service);
+    mockFetchTriggerActionDefinition(service);
+    return mockFetchTriggerRules(service, expression);
+  }
+
+  private TriggerAdministrationService mockSnapshot() {
+    TriggerAdministrationService snapshot = mock(TriggerAdministrationService.class);
+    when(service.getSnapshot()).thenReturn(snapshot);
+    return snapshot;
   }
 
   public static class TestTriggerAction implements TriggerAction {
@@ -290,4 +936,20 @@ public class RuleEvaluationEngineTest {
       action.trigger(triggerParameters);
     }
   }
+
+  public static class TestAsyncTriggerAction implements AsyncTriggerAction {
+    @Override
+    public void init(Map<String, String> initParameters) {
+    }
+
+    @Override
+    public void trigger(Map<String, String> triggerParameters) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CompletionStage<Void> triggerAsync(Map<String, String> triggerParameters) {
+      return asyncExecution;
+    }
+  }
 }
@@ -0,0 +1,99 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpilledEventsFileTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void testReadAllFromMissingDirectory() throws Exception {
+    assertTrue(SpilledEventsFile.readAll(directory.resolve("missing")).isEmpty());
+  }
+
+  @Test
+  public void testWriteWithoutEventsCreatesNoFile() throws Exception {
+    assertEquals(0, SpilledEventsFile.write(directory, List.of()));
+    assertTrue(SpilledEventsFile.readAll(directory).isEmpty());
+  }
+
+  @Test
+  public void testWriteAndReadEvents() throws Exception {
+    TestTriggerEvent first = new TestTriggerEvent().addContextParameter("key", "value");
+    TestTriggerEvent second = new TestTriggerEvent();
+    assertEquals(2, SpilledEventsFile.write(directory.resolve("spill"), List.of(first, second)));
+
+    List<SpilledEventsFile> files = SpilledEventsFile.readAll(directory.resolve("spill"));
+    assertEquals(1, files.size());
+    assertEquals(0, files.get(0).getCorruptedEvents());
+    List<TriggerEvent> events = files.get(0).getEvents();
+    assertEquals(2, events.size());
+    assertEquals(first.getId(), events.get(0).getId());
+    assertEquals(first.getOrganization(), events.get(0).getOrganization());
+    assertEquals(Map.of("key", "value"), events.get(0).getContextParameters());
+    assertEquals(second.getId(), events.get(1).getId());
+  }
+
+  @Test
+  public void testWriteSkipsEventsWhichCannotBeEncoded() throws Exception {
+    TestTriggerEvent unsupported = new TestTriggerEvent().addContextParameter("key", new Object());
+    TestTriggerEvent supported = new TestTriggerEvent();
+    assertEquals(1, SpilledEventsFile.write(directory, List.of(unsupported, supported)));
+
+    List<TriggerEvent> events = SpilledEventsFile.readAll(directory).get(0).getEvents();
+    assertEquals(1, events.size());
+    assertEquals(supported.getId(), events.get(0).getId());
+  }
+
+  @Test
+  public void testReadAllReturnsFilesInWriteOrder() throws Exception {
+    TestTriggerEvent first = new TestTriggerEvent();
+    TestTriggerEvent second = new TestTriggerEvent();
+    SpilledEventsFile.write(directory, List.of(first));
+    SpilledEventsFile.write(directory, List.of(second));
+
+    List<SpilledEventsFile> files = SpilledEventsFile.readAll(directory);
+    assertEquals(2, files.size());
+    assertEquals(first.getId(), files.get(0).getEvents().get(0).getId());
+    assertEquals(second.getId(), files.get(1).getEvents().get(0).getId());
+  }
+
+  @Test
+  public void testReadAllIgnoresTemporaryAndUnrelatedFiles() throws Exception {
+    Files.write(directory.resolve(SpilledEventsFile.SPILL_FILE_PREFIX + "1" + SpilledEventsFile.SPILL_FILE_SUFFIX + ".tmp"), new byte[]{1, 2, 3});
+    Files.write(directory.resolve("unrelated"), new byte[]{1, 2, 3});
+    assertTrue(SpilledEventsFile.readAll(directory).isEmpty());
+  }
+
+  @Test
+  public void testReadAllKeepsTruncatedFile() throws Exception {
+    SpilledEventsFile.write(directory, List.of(new TestTriggerEvent()));
+    Path file = SpilledEventsFile.readAll(directory).get(0).getFile();
+    byte[] data = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(data, data.length - 4));
+
+    assertTrue(SpilledEventsFile.readAll(directory).isEmpty());
+    assertTrue(Files.exists(file));
+  }
+
+  @Test
+  public void testDeleteRemovesFile() throws Exception {
+    SpilledEventsFile.write(directory, List.of(new TestTriggerEvent()));
+    SpilledEventsFile file = SpilledEventsFile.readAll(directory).get(0);
+    file.delete();
+
+    assertFalse(Files.exists(file.getFile()));
+    assertTrue(SpilledEventsFile.readAll(directory).isEmpty());
+  }
+}
@@ -0,0 +1,249 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.services.triggers.action.TriggerAction;
+import no.mnemonic.services.triggers.action.exceptions.ParameterException;
+import no.mnemonic.services.triggers.action.exceptions.TriggerInitializationException;
+import no.mnemonic.services.triggers.api.model.v1.TriggerActionDefinition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TriggerActionRegistryTest {
+
+  private static final AtomicInteger initialized = new AtomicInteger();
+  private static final AtomicInteger closed = new AtomicInteger();
+  private static volatile CountDownLatch blockClose;
+
+  private final UUID definitionId = UUID.randomUUID();
+  private final TriggerActionRegistry registry = new TriggerActionRegistry(2);
+
+  @BeforeEach
+  public void setUp() {
+    initialized.set(0);
+    closed.set(0);
+  }
+
+  @Test
+  public void testCreateRegistryWithInvalidMaximum() {
+    assertThrows(IllegalArgumentException.class, () -> new TriggerActionRegistry(0));
+  }
+
+  @Test
+  public void testBorrowReusesInstance() throws Exception {
+    TriggerActionDefinition definition = createDefinition("value");
+    TriggerActionRegistry.Lease lease1 = registry.borrow(definition);
+    registry.release(lease1);
+    TriggerActionRegistry.Lease lease2 = registry.borrow(definition);
+    registry.release(lease2);
+
+    assertSame(lease1.getAction(), lease2.getAction());
+    assertEquals(1, initialized.get());
+    assertEquals(0, closed.get());
+    assertEquals(1, registry.getCreatedInstances());
+    assertEquals(1, registry.getIdleInstances());
+  }
+
+  @Test
+  public void testBorrowConcurrentlyCreatesSeparateInstances() throws Exception {
+    TriggerActionDefinition definition = createDefinition("value");
+    TriggerActionRegistry.Lease lease1 = registry.borrow(definition);
+    TriggerActionRegistry.Lease lease2 = registry.borrow(definition);
+
+    assertNotSame(lease1.getAction(), lease2.getAction());
+    assertEquals(2, initialized.get());
+  }
+
+  @Test
+  public void testReleaseClosesInstancesExceedingMaximum() throws Exception {
+    TriggerActionDefinition definition = createDefinition("value");
+    TriggerActionRegistry.Lease lease1 = registry.borrow(definition);
+    TriggerActionRegistry.Lease lease2 = registry.borrow(definition);
+    TriggerActionRegistry.Lease lease3 = registry.borrow(definition);
+    registry.release(lease1);
+    registry.release(lease2);
+    registry.release(lease3);
+    registry.awaitClosing();
+
+    assertEquals(2, registry.getIdleInstances());
+    assertEquals(1, closed.get());
+  }
+
+  @Test
+  public void testBorrowReinitializesChangedDefinition() throws Exception {
+    TriggerActionRegistry.Lease lease1 = registry.borrow(createDefinition("value1"));
+    registry.release(lease1);
+    TriggerActionRegistry.Lease lease2 = registry.borrow(createDefinition("value2"));
+
+    assertNotSame(lease1.getAction(), lease2.getAction());
+    assertEquals(2, initialized.get());
+  }
+
+  @Test
+  public void testBorrowKeepsPoolOfPreviousDefinitionUntilPruned() throws Exception {
+    TriggerActionDefinition previous = createDefinition("value1");
+    TriggerActionDefinition current = createDefinition("value2");
+    registry.release(registry.borrow(previous));
+
+    // Events evaluated against the previous and the current snapshot interleave, both reuse their instances.
+    registry.prune();
+    for (int i = 0; i < 3; i++) {
+      registry.release(registry.borrow(current));
+      registry.release(registry.borrow(previous));
+    }
+    registry.awaitClosing();
+    assertEquals(2, initialized.get());
+    assertEquals(0, closed.get());
+
+    // The previous definition isn't used with the current snapshot anymore.
+    registry.prune();
+    registry.release(registry.borrow(current));
+    registry.prune();
+    registry.awaitClosing();
+    assertEquals(1, closed.get());
+    assertEquals(1, registry.getIdleInstances());
+  }
+
+  @Test
+  public void testReleaseClosesInstanceOfPrunedDefinition() throws Exception {
+    TriggerActionRegistry.Lease lease1 = registry.borrow(createDefinition("value1"));
+    registry.prune();
+    registry.release(registry.borrow(createDefinition("value2")));
+    registry.prune();
+    registry.awaitClosing();
+    assertEquals(0, closed.get());
+
+    // Instance of the previous definition was still in use.
+    registry.release(lease1);
+    registry.awaitClosing();
+    assertEquals(1, closed.get());
+    assertEquals(1, registry.getIdleInstances());
+  }
+
+  @Test
+  public void testBorrowFailsOnInitialization() {
+    assertThrows(ParameterException.class, () -> registry.borrow(createDefinition("invalid")));
+    assertEquals(1, closed.get());
+    assertEquals(0, registry.getCreatedInstances());
+    assertEquals(0, registry.getIdleInstances());
+  }
+
+  @Test
+  public void testBorrowFailsOnUnknownClass() {
+    assertThrows(TriggerInitializationException.class, () -> registry.borrow(TriggerActionDefinition.builder()
+        .setId(definitionId)
+        .setTriggerActionClass("does.not.Exist")
+        .build()));
+  }
+
+  @Test
+  public void testBorrowFailsOnClassNotImplementingTriggerAction() {
+    assertThrows(TriggerInitializationException.class, () -> registry.borrow(TriggerActionDefinition.builder()
+        .setId(definitionId)
+        .setTriggerActionClass(String.class.getName())
+        .build()));
+  }
+
+  @Test
+  public void testCloseClosesIdleInstances() throws Exception {
+    TriggerActionDefinition definition = createDefinition("value");
+    TriggerActionRegistry.Lease inUse = registry.borrow(definition);
+    registry.release(registry.borrow(definition));
+
+    registry.close();
+    assertEquals(1, closed.get());
+    assertEquals(0, registry.getIdleInstances());
+
+    registry.release(inUse);
+    registry.awaitClosing();
+    assertEquals(2, closed.get());
+
+    // Registry can still be used after closing.
+    registry.release(registry.borrow(definition));
+    assertEquals(3, initialized.get());
+  }
+
+  @Test
+  public void testPruneRemovesUnusedDefinitions() throws Exception {
+    TriggerActionDefinition used = createDefinition("value");
+    TriggerActionDefinition removed = createDefinition(UUID.randomUUID(), "value");
+    registry.release(registry.borrow(used));
+    registry.release(registry.borrow(removed));
+
+    // Definitions used with the previous snapshot are kept.
+    registry.prune();
+    registry.release(registry.borrow(used));
+    registry.prune();
+    registry.awaitClosing();
+
+    assertEquals(1, closed.get());
+    assertEquals(1, registry.getIdleInstances());
+    assertEquals(2, registry.getCreatedInstances());
+  }
+
+  @Test
+  public void testBorrowDoesNotWaitForClosingInstances() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    blockClose = release;
+    try {
+      registry.release(registry.borrow(createDefinition("value1")));
+      assertTimeout(Duration.ofSeconds(1), () -> {
+        registry.prune();
+        registry.prune();
+        registry.release(registry.borrow(createDefinition("value2")));
+      });
+      assertEquals(0, closed.get());
+    } finally {
+      release.countDown();
+      blockClose = null;
+    }
+    registry.awaitClosing();
+    assertEquals(1, closed.get());
+  }
+
+  private TriggerActionDefinition createDefinition(String value) {
+    return createDefinition(definitionId, value);
+  }
+
+  private TriggerActionDefinition createDefinition(UUID id, String value) {
+    return TriggerActionDefinition.builder()
+        .setId(id)
+        .setName("action")
+        .setTriggerActionClass(CountingTriggerAction.class.getName())
+        .addInitParameter("parameter", value)
+        .build();
+  }
+
+  public static class CountingTriggerAction implements TriggerAction {
+    @Override
+    public void init(Map<String, String> initParameters) throws ParameterException {
+      if ("invalid".equals(initParameters.get("parameter"))) {
+        throw new ParameterException("Invalid parameter", "parameter");
+      }
+      initialized.incrementAndGet();
+    }
+
+    @Override
+    public void trigger(Map<String, String> triggerParameters) {
+      // Noop
+    }
+
+    @Override
+    public void close() {
+      CountDownLatch latch = blockClose;
+      try {
+        if (latch != null) latch.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      closed.incrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.services.triggers.pipeline.api.AccessMode;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TriggerEventCodecTest {
+
+  @Test
+  public void testEncodeAndDecodeEvent() {
+    TestTriggerEvent original = new TestTriggerEvent()
+        .setAccessMode(AccessMode.RoleBased);
+    TriggerEvent decoded = TriggerEventCodec.decode(TriggerEventCodec.encode(original));
+
+    assertEquals(original.getId(), decoded.getId());
+    assertEquals(original.getTimestamp(), decoded.getTimestamp());
+    assertEquals(original.getService(), decoded.getService());
+    assertEquals(original.getEvent(), decoded.getEvent());
+    assertEquals(original.getOrganization(), decoded.getOrganization());
+    assertEquals(original.getAccessMode(), decoded.getAccessMode());
+    assertEquals(original.getScope(), decoded.getScope());
+    assertEquals(Collections.emptyMap(), decoded.getContextParameters());
+  }
+
+  @Test
+  public void testEncodeAndDecodeEventWithNullFields() {
+    TriggerEvent decoded = TriggerEventCodec.decode(TriggerEventCodec.encode(new TestTriggerEvent()
+        .setId(null)
+        .setOrganization(null)
+        .setAccessMode(null)
+        .setScope(null)));
+
+    assertNull(decoded.getId());
+    assertNull(decoded.getOrganization());
+    assertNull(decoded.getAccessMode());
+    assertNull(decoded.getScope());
+  }
+
+  @Test
+  public void testEncodeAndDecodeContextParameters() {
+    UUID uuid = UUID.randomUUID();
+    Map<String, Object> nested = new LinkedHashMap<>();
+    nested.put("key", "value");
+    nested.put("null", null);
+
+    TestTriggerEvent original = new TestTriggerEvent()
+        .addContextParameter("string", "äöü ☃")
+        .addContextParameter("boolean", true)
+        .addContextParameter("byte", (byte) 1)
+        .addContextParameter("short", (short) 2)
+        .addContextParameter("integer", 3)
+        .addContextParameter("long", 4L)
+        .addContextParameter("float", 5.5f)
+        .addContextParameter("double", 6.6)
+        .addContextParameter("character", 'x')
+        .addContextParameter("uuid", uuid)
+        .addContextParameter("bigInteger", new BigInteger("123456789012345678901234567890"))
+        .addContextParameter("bigDecimal", new BigDecimal("1234.5678"))
+        .addContextParameter("list", Arrays.asList(1, "two", null))
+        .addContextParameter("set", new LinkedHashSet<>(Arrays.asList("a", "b")))
+        .addContextParameter("map", nested)
+        .addContextParameter("null", null);
+    Map<String, ?> decoded = TriggerEventCodec.decode(TriggerEventCodec.encode(original)).getContextParameters();
+
+    assertEquals(original.getContextParameters(), decoded);
+    assertTrue(decoded.get("set") instanceof Set);
+    assertTrue(decoded.get("list") instanceof List);
+  }
+
+  @Test
+  public void testEncodeEnumAsName() {
+    TriggerEvent decoded = TriggerEventCodec.decode(TriggerEventCodec.encode(new TestTriggerEvent()
+        .addContextParameter("enum", AccessMode.Public)));
+    assertEquals("Public", decoded.getContextParameters().get("enum"));
+  }
+
+  @Test
+  public void testDecodedContextParametersAreImmutable() {
+    TriggerEvent decoded = TriggerEventCodec.decode(TriggerEventCodec.encode(new TestTriggerEvent()
+        .addContextParameter("list", Arrays.asList(1, 2))));
+    assertThrows(UnsupportedOperationException.class, () -> decoded.getContextParameters().clear());
+    assertThrows(UnsupportedOperationException.class, () -> ((List<?>) decoded.getContextParameters().get("list")).clear());
+  }
+
+  @Test
+  public void testEncodeUnsupportedValueFails() {
+    TestTriggerEvent event = new TestTriggerEvent().addContextParameter("object", new Object());
+    assertThrows(IllegalArgumentException.class, () -> TriggerEventCodec.encode(event));
+  }
+
+  @Test
+  public void testDecodeCorruptedDataFails() {
+    byte[] data = TriggerEventCodec.encode(new TestTriggerEvent().addContextParameter("key", "value"));
+    assertThrows(IllegalArgumentException.class, () -> TriggerEventCodec.decode(Arrays.copyOf(data, data.length - 3)));
+    assertThrows(IllegalArgumentException.class, () -> TriggerEventCodec.decode(Arrays.copyOf(data, data.length + 1)));
+    data[0] = 42;
+    assertThrows(IllegalArgumentException.class, () -> TriggerEventCodec.decode(data));
+  }
+}
@@ -0,0 +1,57 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UUIDSetTest {
+
+  @Test
+  public void testEmptySet() {
+    UUIDSet set = new UUIDSet(null);
+    assertEquals(0, set.size());
+    assertFalse(set.contains(UUID.randomUUID()));
+    assertFalse(set.contains(null));
+  }
+
+  @Test
+  public void testContains() {
+    UUID id1 = UUID.randomUUID();
+    UUID id2 = UUID.randomUUID();
+    UUIDSet set = new UUIDSet(List.of(id1, id2));
+
+    assertEquals(2, set.size());
+    assertTrue(set.contains(id1));
+    // Equal but not identical UUID.
+    assertTrue(set.contains(UUID.fromString(id2.toString())));
+    assertFalse(set.contains(UUID.randomUUID()));
+  }
+
+  @Test
+  public void testSkipsDuplicatesAndNull() {
+    UUID id = UUID.randomUUID();
+    UUIDSet set = new UUIDSet(Arrays.asList(id, null, UUID.fromString(id.toString())));
+    assertEquals(1, set.size());
+    assertTrue(set.contains(id));
+  }
+
+  @Test
+  public void testContainsManyWithCollidingBits() {
+    List<UUID> ids = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      // Identical most and least significant bits all hash to the same value.
+      ids.add(new UUID(i, i));
+    }
+    UUIDSet set = new UUIDSet(ids);
+
+    assertEquals(1000, set.size());
+    ids.forEach(id -> assertTrue(set.contains(id)));
+    assertFalse(set.contains(new UUID(1000, 1000)));
+    assertFalse(set.contains(new UUID(1, 2)));
+  }
+}
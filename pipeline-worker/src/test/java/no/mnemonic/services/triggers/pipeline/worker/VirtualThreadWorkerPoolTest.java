@@ -0,0 +1,112 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VirtualThreadWorkerPoolTest {
+
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final AtomicInteger started = new AtomicInteger();
+  // The pool doesn't depend on virtual threads, platform threads allow testing it on every JDK.
+  private final VirtualThreadWorkerPool pool = new VirtualThreadWorkerPool(2, new LinkedBlockingQueue<>(), Thread::new);
+
+  @AfterEach
+  public void cleanUp() {
+    release.countDown();
+  }
+
+  @Test
+  public void testCreatePoolWithInvalidSize() {
+    assertThrows(IllegalArgumentException.class, () -> new VirtualThreadWorkerPool(0, new LinkedBlockingQueue<>(), Thread::new));
+  }
+
+  @Test
+  public void testExecuteLimitsConcurrentTasks() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      pool.execute(this::blockingTask);
+    }
+
+    waitFor(() -> started.get() == 2);
+    assertEquals(2, pool.getActiveCount());
+    assertEquals(1, pool.getQueue().size());
+    assertEquals(3, pool.getTaskCount());
+
+    // The queued task is started once a running task has completed.
+    release.countDown();
+    waitFor(() -> pool.getCompletedTaskCount() == 3);
+    assertEquals(3, started.get());
+    assertEquals(0, pool.getActiveCount());
+  }
+
+  @Test
+  public void testIncreasingMaximumPoolSizeStartsQueuedTasks() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      pool.execute(this::blockingTask);
+    }
+    waitFor(() -> started.get() == 2);
+
+    pool.setMaximumPoolSize(3);
+    waitFor(() -> started.get() == 3);
+    assertEquals(3, pool.getMaximumPoolSize());
+    assertTrue(pool.getQueue().isEmpty());
+  }
+
+  @Test
+  public void testRemoveQueuedTask() throws Exception {
+    pool.execute(this::blockingTask);
+    pool.execute(this::blockingTask);
+    Runnable queued = this::blockingTask;
+    pool.execute(queued);
+
+    assertTrue(pool.remove(queued));
+    release.countDown();
+    waitFor(() -> pool.getCompletedTaskCount() == 2);
+    assertEquals(2, started.get());
+  }
+
+  @Test
+  public void testShutdownExecutesQueuedTasks() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      pool.execute(this::blockingTask);
+    }
+    pool.shutdown();
+    assertThrows(RejectedExecutionException.class, () -> pool.execute(this::blockingTask));
+    assertFalse(pool.awaitTermination(10, TimeUnit.MILLISECONDS));
+
+    release.countDown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(3, started.get());
+  }
+
+  @Test
+  public void testAwaitTerminationOfIdlePool() throws Exception {
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(0, TimeUnit.SECONDS));
+  }
+
+  private void blockingTask() {
+    started.incrementAndGet();
+    try {
+      release.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      if (System.nanoTime() > deadline) fail("Condition not met in time!");
+      Thread.sleep(10);
+    }
+  }
+}
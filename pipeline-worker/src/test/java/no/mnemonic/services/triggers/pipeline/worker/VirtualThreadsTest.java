@@ -0,0 +1,41 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ThreadFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class VirtualThreadsTest {
+
+  @Test
+  public void testIsVirtualWithPlatformThread() {
+    assertFalse(VirtualThreads.isVirtual(Thread.currentThread()));
+    assertFalse(VirtualThreads.isVirtual(null));
+  }
+
+  @Test
+  public void testCreateThreadFactoryWithoutNamePrefixThrowsException() {
+    assertThrows(RuntimeException.class, () -> VirtualThreads.createThreadFactory(null));
+  }
+
+  @Test
+  public void testCreateThreadFactoryCreatesVirtualThreads() {
+    assumeTrue(VirtualThreads.isSupported());
+
+    ThreadFactory factory = VirtualThreads.createThreadFactory("test-");
+    Thread thread1 = factory.newThread(() -> {});
+    Thread thread2 = factory.newThread(() -> {});
+    assertTrue(VirtualThreads.isVirtual(thread1));
+    assertEquals("test-0", thread1.getName());
+    assertEquals("test-1", thread2.getName());
+  }
+
+  @Test
+  public void testCreateThreadFactoryUnsupportedThrowsException() {
+    assumeFalse(VirtualThreads.isSupported());
+    assertThrows(UnsupportedOperationException.class, () -> VirtualThreads.createThreadFactory("test-"));
+  }
+}
@@ -0,0 +1,283 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.utilities.lambda.LambdaUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogTest {
+
+  private static final int SEGMENT_SIZE = 1024;
+
+  @TempDir
+  Path directory;
+
+  private WriteAheadLog log;
+
+  @AfterEach
+  public void cleanUp() {
+    if (log != null) log.close();
+  }
+
+  @Test
+  public void testOpenWithInvalidSegmentSizeFails() {
+    assertThrows(IllegalArgumentException.class, () -> WriteAheadLog.open(directory, 100));
+  }
+
+  @Test
+  public void testAppendAndRead() throws Exception {
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    assertEquals(1, log.append(bytes("first")));
+    assertEquals(2, log.append(bytes("second")));
+
+    WriteAheadLog.Cursor cursor = log.openCursor(0);
+    assertRecord(cursor.next(), 1, "first");
+    assertRecord(cursor.next(), 2, "second");
+    assertNull(cursor.next());
+
+    assertEquals(3, log.append(bytes("third")));
+    assertRecord(cursor.next(), 3, "third");
+  }
+
+  @Test
+  public void testAppendEmptyRecordFails() throws Exception {
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    assertThrows(IllegalArgumentException.class, () -> log.append(new byte[0]));
+    assertEquals(0, log.getAppendedSequence());
+  }
+
+  @Test
+  public void testAppendTooLargeRecordFails() throws Exception {
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    assertThrows(IllegalArgumentException.class, () -> log.append(new byte[SEGMENT_SIZE]));
+  }
+
+  @Test
+  public void testAppendAfterCloseFails() throws Exception {
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    log.close();
+    assertThrows(IllegalStateException.class, () -> log.append(bytes("record")));
+  }
+
+  @Test
+  public void testAwaitDurable() throws Exception {
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    long sequence = log.append(bytes("record"));
+    assertTrue(log.awaitDurable(sequence, TimeUnit.SECONDS.toNanos(10)));
+    assertTrue(log.getDurableSequence() >= sequence);
+    assertTrue(log.getTotalFlushes() >= 1);
+  }
+
+  @Test
+  public void testConcurrentAppendsShareFlushes() throws Exception {
+    log = WriteAheadLog.open(directory, 64 * 1024);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < 100; j++) {
+            assertTrue(log.awaitDurable(log.append(bytes("record")), TimeUnit.SECONDS.toNanos(10)));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(800, log.getAppendedSequence());
+    assertEquals(800, log.getDurableSequence());
+    assertTrue(log.getTotalFlushes() <= 800);
+    assertEquals(800, readAll(log.openCursor(0)).size());
+  }
+
+  @Test
+  public void testRollSegments() throws Exception {
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    for (int i = 1; i <= 50; i++) {
+      log.append(new byte[100]);
+    }
+
+    assertTrue(log.getNumberOfSegments() > 1);
+    assertEquals(log.getNumberOfSegments(), listSegmentFiles().size());
+    List<WriteAheadLog.Record> records = readAll(log.openCursor(0));
+    assertEquals(50, records.size());
+    for (int i = 0; i < records.size(); i++) {
+      assertEquals(i + 1, records.get(i).getSequence());
+    }
+  }
+
+  @Test
+  public void testCheckpointDeletesProcessedSegments() throws Exception {
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    for (int i = 1; i <= 50; i++) {
+      log.append(new byte[100]);
+    }
+    int segments = log.getNumberOfSegments();
+
+    log.checkpoint(20);
+    assertEquals(20, log.getCheckpointSequence());
+    assertTrue(log.getNumberOfSegments() < segments);
+    assertEquals(log.getNumberOfSegments(), listSegmentFiles().size());
+    assertEquals(21, log.openCursor(20).next().getSequence());
+
+    // The active segment is never deleted.
+    log.checkpoint(50);
+    assertEquals(1, log.getNumberOfSegments());
+    // Lower checkpoints are ignored.
+    log.checkpoint(10);
+    assertEquals(50, log.getCheckpointSequence());
+  }
+
+  @Test
+  public void testCheckpointedSegmentsAreUnmapped() throws Exception {
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    for (int i = 1; i <= 50; i++) {
+      log.append(new byte[100]);
+    }
+    WriteAheadLog.Cursor cursor = log.openCursor(0);
+    // Each segment holds eight records, read up to the end of the second segment.
+    for (int i = 1; i <= 16; i++) {
+      cursor.next();
+    }
+
+    log.checkpoint(16);
+    // The cursor still references the second segment.
+    assertTrue(LambdaUtils.waitFor(() -> log.getNumberOfRetiredSegments() == 1, 5, TimeUnit.SECONDS));
+
+    // Once the cursor has moved on, all deleted segments are unmapped.
+    readAll(cursor);
+    assertTrue(LambdaUtils.waitFor(() -> log.getNumberOfRetiredSegments() == 0, 5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testCheckpointUnknownRecordFails() throws Exception {
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    log.append(bytes("record"));
+    assertThrows(IllegalArgumentException.class, () -> log.checkpoint(2));
+  }
+
+  @Test
+  public void testReopenReturnsRecordsAfterCheckpoint() throws Exception {
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    for (int i = 1; i <= 30; i++) {
+      log.append(bytes("record" + i));
+    }
+    log.checkpoint(25);
+    log.close();
+
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    assertEquals(30, log.getAppendedSequence());
+    assertEquals(25, log.getCheckpointSequence());
+    List<WriteAheadLog.Record> records = readAll(log.openCursor(log.getCheckpointSequence()));
+    assertEquals(5, records.size());
+    assertRecord(records.get(0), 26, "record26");
+
+    // Sequence numbers continue after reopening.
+    assertEquals(31, log.append(bytes("record31")));
+  }
+
+  @Test
+  public void testReopenFullyCheckpointedLog() throws Exception {
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    for (int i = 1; i <= 5; i++) {
+      log.append(bytes("record" + i));
+    }
+    log.checkpoint(5);
+    log.close();
+
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    assertNull(log.openCursor(log.getCheckpointSequence()).next());
+    assertEquals(6, log.append(bytes("record6")));
+  }
+
+  @Test
+  public void testReopenDiscardsTornRecord() throws Exception {
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    log.append(bytes("first"));
+    log.append(bytes("second"));
+    log.close();
+    log = null;
+
+    // Simulate a crash while the second record was written by corrupting its payload.
+    Path segment = listSegmentFiles().get(0);
+    int secondPayloadPosition = 16 + "first".length() + 16;
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0}), secondPayloadPosition);
+    }
+
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    assertEquals(1, log.getAppendedSequence());
+    assertEquals(2, log.append(bytes("replacement")));
+    List<WriteAheadLog.Record> records = readAll(log.openCursor(0));
+    assertEquals(2, records.size());
+    assertRecord(records.get(1), 2, "replacement");
+  }
+
+  @Test
+  public void testReopenDiscardsSegmentsAfterTornRecord() throws Exception {
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    for (int i = 1; i <= 50; i++) {
+      log.append(new byte[100]);
+    }
+    log.close();
+    log = null;
+
+    List<Path> segments = listSegmentFiles();
+    assertTrue(segments.size() > 2);
+    try (FileChannel channel = FileChannel.open(segments.get(0), StandardOpenOption.WRITE)) {
+      // Corrupt the sequence number of the first record.
+      channel.write(ByteBuffer.allocate(8).putLong(0, 42), 8);
+    }
+
+    log = WriteAheadLog.open(directory, SEGMENT_SIZE);
+    assertEquals(0, log.getAppendedSequence());
+    assertEquals(1, listSegmentFiles().size());
+    assertNull(log.openCursor(0).next());
+  }
+
+  private List<Path> listSegmentFiles() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(file -> file.toString().endsWith(WriteAheadLog.SEGMENT_FILE_SUFFIX))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static List<WriteAheadLog.Record> readAll(WriteAheadLog.Cursor cursor) {
+    List<WriteAheadLog.Record> records = new ArrayList<>();
+    for (WriteAheadLog.Record record = cursor.next(); record != null; record = cursor.next()) {
+      records.add(record);
+    }
+    return records;
+  }
+
+  private static void assertRecord(WriteAheadLog.Record record, long sequence, String payload) {
+    assertNotNull(record);
+    assertEquals(sequence, record.getSequence());
+    assertEquals(payload, new String(record.getPayload(), StandardCharsets.UTF_8));
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
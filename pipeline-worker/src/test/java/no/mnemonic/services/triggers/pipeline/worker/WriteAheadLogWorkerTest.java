@@ -0,0 +1,234 @@
+package no.mnemonic.services.triggers.pipeline.worker;
+
+import no.mnemonic.commons.component.ValidationContext;
+import no.mnemonic.commons.metrics.MetricException;
+import no.mnemonic.commons.metrics.MetricsData;
+import no.mnemonic.commons.utilities.lambda.LambdaUtils;
+import no.mnemonic.services.triggers.api.service.v1.TriggerAdministrationService;
+import no.mnemonic.services.triggers.pipeline.api.SubmissionException;
+import no.mnemonic.services.triggers.pipeline.api.TriggerEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static no.mnemonic.services.triggers.pipeline.api.SubmissionException.ErrorCode.InvalidTriggerEvent;
+import static no.mnemonic.services.triggers.pipeline.api.SubmissionException.ErrorCode.NoResourcesAvailable;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class WriteAheadLogWorkerTest {
+
+  @Mock
+  private TriggerAdministrationService service;
+  @Mock
+  private RuleEvaluationEngine engine;
+  @TempDir
+  Path directory;
+
+  private WriteAheadLogWorker worker;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    lenient().when(engine.getMetrics()).thenReturn(new MetricsData());
+    lenient().doAnswer(i -> {
+      i.<Runnable>getArgument(1).run();
+      return null;
+    }).when(engine).evaluate(any(), any());
+    worker = createWorker();
+  }
+
+  @AfterEach
+  public void cleanUp() {
+    worker.stopComponent();
+  }
+
+  @Test
+  public void testValidateWithoutDirectoryFails() {
+    ValidationContext context = new ValidationContext();
+    worker.setDirectory(null)
+        .validate(context);
+    assertFalse(context.isValid());
+  }
+
+  @Test
+  public void testValidateWithInvalidSegmentSizeFails() {
+    ValidationContext context = new ValidationContext();
+    worker.setSegmentSizeBytes(100)
+        .validate(context);
+    assertFalse(context.isValid());
+  }
+
+  @Test
+  public void testSubmitWithoutStartThrowsException() {
+    assertThrows(IllegalStateException.class, () -> worker.submit(new TestTriggerEvent()));
+  }
+
+  @Test
+  public void testSubmitInvalidEventThrowsException() {
+    worker.startComponent();
+    assertThrows(SubmissionException.class, () -> worker.submit(new TestTriggerEvent().setService(null)));
+  }
+
+  @Test
+  public void testSubmitEventWithUnsupportedContextParameterThrowsException() {
+    worker.startComponent();
+    SubmissionException ex = assertThrows(SubmissionException.class,
+        () -> worker.submit(new TestTriggerEvent().addContextParameter("object", new Object())));
+    assertEquals(InvalidTriggerEvent, ex.getErrorCode());
+  }
+
+  @Test
+  public void testSubmitTooLargeEventThrowsException() {
+    worker.setSegmentSizeBytes(1024)
+        .startComponent();
+    SubmissionException ex = assertThrows(SubmissionException.class,
+        () -> worker.submit(new TestTriggerEvent().addContextParameter("large", "x".repeat(2048))));
+    assertEquals(InvalidTriggerEvent, ex.getErrorCode());
+  }
+
+  @Test
+  public void testSubmitAndEvaluateEvents() throws Exception {
+    worker.startComponent();
+    TestTriggerEvent event = new TestTriggerEvent().addContextParameter("key", "value");
+    for (int i = 0; i < 100; i++) {
+      worker.submit(event);
+    }
+
+    assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("totalProcessedEvents") == 100, 10, TimeUnit.SECONDS));
+    assertEquals(100L, getWorkerMetric("lastDurableSequence"));
+    assertEquals(0L, getWorkerMetric("unprocessedEvents"));
+
+    ArgumentCaptor<TriggerEvent> captor = ArgumentCaptor.forClass(TriggerEvent.class);
+    verify(engine, times(100)).evaluate(captor.capture(), any());
+    assertEquals(event.getId(), captor.getValue().getId());
+    assertEquals("value", captor.getValue().getContextParameters().get("key"));
+  }
+
+  @Test
+  public void testSubmitWithTooManyUnprocessedEventsFails() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(i -> {
+      release.await(10, TimeUnit.SECONDS);
+      i.<Runnable>getArgument(1).run();
+      return null;
+    }).when(engine).evaluate(any(), any());
+
+    try {
+      worker.setMaximumUnprocessedEvents(2)
+          .setSubmissionWaitTimeSeconds(1)
+          .startComponent();
+      worker.submit(new TestTriggerEvent());
+      worker.submit(new TestTriggerEvent());
+
+      SubmissionException ex = assertThrows(SubmissionException.class, () -> worker.submit(new TestTriggerEvent()));
+      assertEquals(NoResourcesAvailable, ex.getErrorCode());
+      assertEquals(1L, getWorkerMetric("totalRejectedEvents"));
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testCheckpointProcessedEvents() throws Exception {
+    worker.setCheckpointIntervalMillis(10)
+        .startComponent();
+    worker.submit(new TestTriggerEvent());
+    worker.submit(new TestTriggerEvent());
+
+    assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("checkpointSequence") == 2, 10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testEventWithPendingActionsIsNotCheckpointed() throws Exception {
+    AtomicReference<Runnable> completion = new AtomicReference<>();
+    doAnswer(i -> {
+      completion.set(i.getArgument(1));
+      return null;
+    }).when(engine).evaluate(any(), any());
+
+    worker.setCheckpointIntervalMillis(10)
+        .startComponent();
+    worker.submit(new TestTriggerEvent());
+    assertTrue(LambdaUtils.waitFor(() -> completion.get() != null, 10, TimeUnit.SECONDS));
+    // The evaluation has returned, but e.g. a retry of an action is still pending.
+    Thread.sleep(50);
+    assertEquals(0L, getWorkerMetric("checkpointSequence"));
+    assertEquals(1L, getWorkerMetric("unprocessedEvents"));
+
+    completion.get().run();
+    assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("checkpointSequence") == 1, 10, TimeUnit.SECONDS));
+    assertEquals(1L, getWorkerMetric("totalProcessedEvents"));
+  }
+
+  @Test
+  public void testRestartDoesNotReplayProcessedEvents() throws Exception {
+    worker.startComponent();
+    worker.submit(new TestTriggerEvent());
+    assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("totalProcessedEvents") == 1, 10, TimeUnit.SECONDS));
+    worker.stopComponent();
+
+    worker = createWorker();
+    worker.startComponent();
+    assertEquals(0L, getWorkerMetric("totalReplayedEvents"));
+    verify(engine, times(1)).evaluate(any(), any());
+  }
+
+  @Test
+  public void testStartReplaysUncheckpointedEvents() throws Exception {
+    // Simulate a crash after five events were persisted, but only the first two were checkpointed.
+    List<TestTriggerEvent> events = List.of(new TestTriggerEvent(), new TestTriggerEvent(), new TestTriggerEvent(),
+        new TestTriggerEvent(), new TestTriggerEvent());
+    try (WriteAheadLog log = WriteAheadLog.open(directory, 1024 * 1024)) {
+      for (TestTriggerEvent event : events) {
+        log.append(TriggerEventCodec.encode(event));
+      }
+      log.checkpoint(2);
+    }
+
+    worker.startComponent();
+    assertEquals(3L, getWorkerMetric("totalReplayedEvents"));
+    assertTrue(LambdaUtils.waitFor(() -> getWorkerMetric("totalProcessedEvents") == 3, 10, TimeUnit.SECONDS));
+
+    ArgumentCaptor<TriggerEvent> captor = ArgumentCaptor.forClass(TriggerEvent.class);
+    verify(engine, times(3)).evaluate(captor.capture(), any());
+    Set<UUID> replayed = captor.getAllValues().stream().map(TriggerEvent::getId).collect(Collectors.toSet());
+    assertEquals(Set.of(events.get(2).getId(), events.get(3).getId(), events.get(4).getId()), replayed);
+  }
+
+  @Test
+  public void testStopComponentClosesEngine() {
+    worker.startComponent();
+    worker.stopComponent();
+    verify(engine).close();
+  }
+
+  private WriteAheadLogWorker createWorker() {
+    return new WriteAheadLogWorker(service)
+        .setDirectory(directory.toString())
+        .setRuleEvaluationEngine(engine);
+  }
+
+  private long getWorkerMetric(String name) {
+    try {
+      return worker.getMetrics().getSubMetrics("writeAheadLogWorker").getData(name).longValue();
+    } catch (MetricException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package no.mnemonic.services.triggers.pipeline.worker.jexl;
+
+import no.mnemonic.commons.utilities.collections.MapUtils;
+import org.apache.commons.jexl3.JexlBuilder;
+import org.apache.commons.jexl3.JexlContext;
+import org.apache.commons.jexl3.JexlEngine;
+import org.apache.commons.jexl3.JexlException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static no.mnemonic.commons.utilities.collections.MapUtils.Pair.T;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReadOnlyContextTest {
+
+  private final JexlEngine engine = new JexlBuilder()
+      .strict(true)
+      .silent(false)
+      .create();
+
+  @Test
+  public void testEmptyContext() {
+    assertSame(ReadOnlyContext.of(null), ReadOnlyContext.of(MapUtils.map()));
+    assertFalse(ReadOnlyContext.of(null).has("a"));
+    assertNull(ReadOnlyContext.of(null).get("a"));
+  }
+
+  @Test
+  public void testReadVariables() {
+    ReadOnlyContext context = ReadOnlyContext.of(MapUtils.map(T("a", 1), T("b", 2)));
+    assertTrue(context.has("a"));
+    assertFalse(context.has("c"));
+    assertEquals(3, engine.createExpression("a + b").evaluate(context));
+  }
+
+  @Test
+  public void testVariablesAreNotCopied() {
+    Map<String, Object> variables = MapUtils.map(T("a", 1));
+    ReadOnlyContext context = ReadOnlyContext.of(variables);
+    variables.put("a", 2);
+    assertEquals(2, context.get("a"));
+  }
+
+  @Test
+  public void testSetVariableFails() {
+    ReadOnlyContext context = ReadOnlyContext.of(MapUtils.map(T("a", 1)));
+    assertThrows(UnsupportedOperationException.class, () -> context.set("a", 2));
+    assertThrows(JexlException.class, () -> engine.createScript("a = 2").execute(context));
+    assertThrows(JexlException.class, () -> engine.createScript("b = 2").execute(context));
+    assertEquals(1, context.get("a"));
+    assertFalse(context.has("b"));
+  }
+
+  @Test
+  public void testOverlayAllowsAssigningVariables() {
+    ReadOnlyContext context = ReadOnlyContext.of(MapUtils.map(T("a", 1)));
+    JexlContext overlay = context.overlay();
+    assertEquals(5, engine.createScript("a = 2; b = 3; a + b").execute(overlay));
+    assertEquals(2, overlay.get("a"));
+    assertTrue(overlay.has("b"));
+    // The shared variables and other overlays are not affected.
+    assertEquals(1, context.get("a"));
+    assertFalse(context.has("b"));
+    assertEquals(1, context.overlay().get("a"));
+    assertFalse(context.overlay().has("b"));
+  }
+
+  @Test
+  public void testOverlayReadsVariables() {
+    Map<String, Object> variables = MapUtils.map(T("a", 1));
+    JexlContext overlay = ReadOnlyContext.of(variables).overlay();
+    assertTrue(overlay.has("a"));
+    assertFalse(overlay.has("b"));
+    assertEquals(1, overlay.get("a"));
+  }
+
+  @Test
+  public void testLocalVariablesAreAllowed() {
+    ReadOnlyContext context = ReadOnlyContext.of(MapUtils.map(T("a", 1)));
+    assertEquals(3, engine.createScript("var b = 2; a + b").execute(context));
+  }
+}
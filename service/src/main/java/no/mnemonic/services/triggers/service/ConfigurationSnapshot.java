@@ -0,0 +1,202 @@
+package no.mnemonic.services.triggers.service;
+
+import no.mnemonic.commons.logging.Logger;
+import no.mnemonic.commons.logging.Logging;
+import no.mnemonic.commons.utilities.ObjectUtils;
+import no.mnemonic.commons.utilities.StringUtils;
+import no.mnemonic.services.triggers.api.exceptions.InvalidArgumentException;
+import no.mnemonic.services.triggers.api.exceptions.ObjectNotFoundException;
+import no.mnemonic.services.triggers.api.model.v1.*;
+import no.mnemonic.services.triggers.api.request.v1.*;
+import no.mnemonic.services.triggers.api.service.v1.TriggerAdministrationService;
+import no.mnemonic.services.triggers.service.converters.MemoizingConverter;
+import no.mnemonic.services.triggers.service.converters.TriggerActionDefinitionConverter;
+import no.mnemonic.services.triggers.service.converters.TriggerEventDefinitionConverter;
+import no.mnemonic.services.triggers.service.converters.TriggerRuleConverter;
+import no.mnemonic.services.triggers.service.dao.*;
+import no.mnemonic.services.triggers.service.delegates.*;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Immutable, versioned snapshot of all TriggerActionDefinitions, TriggerEventDefinitions and TriggerRules.
+ * <p>
+ * All requests against a snapshot are answered from the same version of the configuration, regardless of whether
+ * the configuration changes in the meantime. Entities are indexed and converted once when the snapshot is created
+ * and the converted objects are shared between requests.
+ */
+public class ConfigurationSnapshot implements TriggerAdministrationService {
+
+  private static final Logger LOGGER = Logging.getLogger(ConfigurationSnapshot.class);
+
+  private final long version;
+  private final TriggerActionDefinitionIndex triggerActionDefinitionIndex;
+  private final TriggerEventDefinitionIndex triggerEventDefinitionIndex;
+  private final TriggerRuleIndex triggerRuleIndex;
+  private final Function<TriggerActionDefinitionEntity, TriggerActionDefinition> triggerActionDefinitionConverter;
+  private final Function<TriggerEventDefinitionEntity, TriggerEventDefinition> triggerEventDefinitionConverter;
+  private final Function<TriggerRuleEntity, TriggerRule> triggerRuleConverter;
+
+  private ConfigurationSnapshot(long version,
+                                Collection<TriggerActionDefinitionEntity> triggerActionDefinitions,
+                                Collection<TriggerEventDefinitionEntity> triggerEventDefinitions,
+                                Collection<TriggerRuleEntity> triggerRules) {
+    this.version = version;
+    this.triggerActionDefinitionIndex = new TriggerActionDefinitionIndex(ObjectUtils.notNull(triggerActionDefinitions, "'triggerActionDefinitions' is required!"));
+    this.triggerEventDefinitionIndex = new TriggerEventDefinitionIndex(ObjectUtils.notNull(triggerEventDefinitions, "'triggerEventDefinitions' is required!"));
+    this.triggerRuleIndex = new TriggerRuleIndex(ObjectUtils.notNull(triggerRules, "'triggerRules' is required!"));
+
+    Function<String, FunctionInfo> functionResolver = createFunctionResolver();
+    this.triggerActionDefinitionConverter = new MemoizingConverter<>(triggerActionDefinitions, TriggerActionDefinitionConverter.builder()
+        .setFunctionResolver(functionResolver)
+        .build());
+    this.triggerEventDefinitionConverter = new MemoizingConverter<>(triggerEventDefinitions, TriggerEventDefinitionConverter.builder()
+        .setFunctionResolver(functionResolver)
+        .build());
+    // Must be created last because converting rules resolves the already converted action definitions.
+    this.triggerRuleConverter = new MemoizingConverter<>(triggerRules, TriggerRuleConverter.builder()
+        .setOrganizationResolver(createOrganizationResolver())
+        .setTriggerActionResolver(createTriggerActionResolver())
+        .build());
+  }
+
+  /**
+   * Return the version of this snapshot. A newer snapshot always has a higher version.
+   *
+   * @return Version of snapshot
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  @Override
+  public TriggerAdministrationService getSnapshot() {
+    // A snapshot never changes, thus, it's a consistent view of itself.
+    return this;
+  }
+
+  @Override
+  public TriggerActionDefinition getTriggerActionDefinition(TriggerActionDefinitionGetByNameRequest request)
+      throws InvalidArgumentException, ObjectNotFoundException {
+    return TriggerActionDefinitionGetByNameDelegate.builder()
+        .setIndexSupplier(() -> triggerActionDefinitionIndex)
+        .setEntityConverter(triggerActionDefinitionConverter)
+        .build()
+        .handle(request);
+  }
+
+  @Override
+  public Iterable<TriggerActionDefinition> searchTriggerActionDefinitions(TriggerActionDefinitionSearchRequest request)
+      throws InvalidArgumentException {
+    return TriggerActionDefinitionSearchDelegate.builder()
+        .setEntitiesSupplier(triggerActionDefinitionIndex::getEntities)
+        .setEntityConverter(triggerActionDefinitionConverter)
+        .build()
+        .handle(request);
+  }
+
+  @Override
+  public TriggerEventDefinition getTriggerEventDefinition(TriggerEventDefinitionGetByServiceEventRequest request)
+      throws InvalidArgumentException, ObjectNotFoundException {
+    return TriggerEventDefinitionGetByServiceEventDelegate.builder()
+        .setIndexSupplier(() -> triggerEventDefinitionIndex)
+        .setEntityConverter(triggerEventDefinitionConverter)
+        .build()
+        .handle(request);
+  }
+
+  @Override
+  public Iterable<TriggerEventDefinition> searchTriggerEventDefinitions(TriggerEventDefinitionSearchRequest request)
+      throws InvalidArgumentException {
+    return TriggerEventDefinitionSearchDelegate.builder()
+        .setEntitiesSupplier(triggerEventDefinitionIndex::getEntities)
+        .setEntityConverter(triggerEventDefinitionConverter)
+        .build()
+        .handle(request);
+  }
+
+  @Override
+  public Iterable<TriggerRule> searchTriggerRules(TriggerRuleSearchRequest request)
+      throws InvalidArgumentException {
+    return TriggerRuleSearchDelegate.builder()
+        .setIndexSupplier(() -> triggerRuleIndex)
+        .setEntityConverter(triggerRuleConverter)
+        .build()
+        .handle(request);
+  }
+
+  private Function<String, FunctionInfo> createFunctionResolver() {
+    return name -> {
+      if (StringUtils.isBlank(name)) return null;
+      // Directly derive id from name until functions are resolved from an access controller.
+      // A function's name is supposed to be unique, thus, a derived id will also be unique.
+      return FunctionInfo.builder()
+          .setId(UUID.nameUUIDFromBytes(name.getBytes()))
+          .setName(name)
+          .build();
+    };
+  }
+
+  private Function<UUID, OrganizationInfo> createOrganizationResolver() {
+    return id -> {
+      if (id == null) return null;
+      // Set name and short name to id until organizations are resolved from an access controller.
+      return OrganizationInfo.builder()
+          .setId(id)
+          .setShortName(id.toString())
+          .setName(id.toString())
+          .build();
+    };
+  }
+
+  private Function<String, TriggerActionDefinition> createTriggerActionResolver() {
+    // Resolve actions from the already converted action definitions instead of fetching them for every rule.
+    return name -> {
+      TriggerActionDefinition definition = triggerActionDefinitionConverter.apply(triggerActionDefinitionIndex.get(name));
+      if (definition == null) {
+        LOGGER.warning("Could not resolve TriggerActionDefinition for name = %s.", name);
+      }
+      return definition;
+    };
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+    private long version;
+    private Collection<TriggerActionDefinitionEntity> triggerActionDefinitions;
+    private Collection<TriggerEventDefinitionEntity> triggerEventDefinitions;
+    private Collection<TriggerRuleEntity> triggerRules;
+
+    private Builder() {
+    }
+
+    public ConfigurationSnapshot build() {
+      return new ConfigurationSnapshot(version, triggerActionDefinitions, triggerEventDefinitions, triggerRules);
+    }
+
+    public Builder setVersion(long version) {
+      this.version = version;
+      return this;
+    }
+
+    public Builder setTriggerActionDefinitions(Collection<TriggerActionDefinitionEntity> triggerActionDefinitions) {
+      this.triggerActionDefinitions = triggerActionDefinitions;
+      return this;
+    }
+
+    public Builder setTriggerEventDefinitions(Collection<TriggerEventDefinitionEntity> triggerEventDefinitions) {
+      this.triggerEventDefinitions = triggerEventDefinitions;
+      return this;
+    }
+
+    public Builder setTriggerRules(Collection<TriggerRuleEntity> triggerRules) {
+      this.triggerRules = triggerRules;
+      return this;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package no.mnemonic.services.triggers.service;
+
+import no.mnemonic.commons.logging.Logger;
+import no.mnemonic.commons.logging.Logging;
+import no.mnemonic.commons.utilities.ObjectUtils;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Set;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the configuration directory in a background thread and invokes a callback whenever one of the watched
+ * configuration files is created, modified or deleted. Multiple events arriving in short succession (e.g. when an
+ * editor writes a file in several steps) only invoke the callback once.
+ */
+class ConfigurationWatcher {
+
+  private static final Logger LOGGER = Logging.getLogger(ConfigurationWatcher.class);
+  private static final long DEBOUNCE_MILLIS = 100;
+
+  private final Path directory;
+  private final Set<String> fileNames;
+  private final Runnable callback;
+
+  private WatchService watchService;
+  private Thread thread;
+
+  ConfigurationWatcher(Path directory, Set<String> fileNames, Runnable callback) {
+    this.directory = ObjectUtils.notNull(directory, "'directory' is required!");
+    this.fileNames = ObjectUtils.notNull(fileNames, "'fileNames' is required!");
+    this.callback = ObjectUtils.notNull(callback, "'callback' is required!");
+  }
+
+  /**
+   * Start watching the configuration directory.
+   */
+  synchronized void start() {
+    if (thread != null) return;
+
+    try {
+      watchService = directory.getFileSystem().newWatchService();
+      directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+    } catch (IOException ex) {
+      throw new IllegalStateException("Cannot watch configuration directory: " + directory, ex);
+    }
+
+    thread = new Thread(this::run, "configuration-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stop watching the configuration directory. Blocks until the background thread has terminated.
+   */
+  synchronized void stop() {
+    if (thread == null) return;
+
+    try {
+      // Closing the WatchService wakes up the background thread.
+      watchService.close();
+      thread.join();
+    } catch (IOException ex) {
+      LOGGER.warning(ex, "Could not close WatchService for configuration directory %s.", directory);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      thread = null;
+      watchService = null;
+    }
+  }
+
+  private void run() {
+    WatchService service = watchService;
+    try {
+      while (true) {
+        WatchKey key = service.take();
+        boolean changed = consume(key);
+
+        // Wait a bit and collect all following events in order to not reload half-written files multiple times.
+        Thread.sleep(DEBOUNCE_MILLIS);
+        for (WatchKey next = service.poll(); next != null; next = service.poll()) {
+          changed |= consume(next);
+        }
+
+        if (changed) invokeCallback();
+      }
+    } catch (ClosedWatchServiceException ex) {
+      LOGGER.debug("Stopped watching configuration directory %s.", directory);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private boolean consume(WatchKey key) {
+    boolean changed = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      // An overflow means that events have been lost, thus, assume that the configuration has changed.
+      if (event.kind() == OVERFLOW || fileNames.contains(String.valueOf(event.context()))) {
+        changed = true;
+      }
+    }
+    key.reset();
+    return changed;
+  }
+
+  private void invokeCallback() {
+    try {
+      callback.run();
+    } catch (RuntimeException ex) {
+      // Keep watching, the next change might fix the configuration.
+      LOGGER.warning(ex, "Could not process change of configuration directory %s.", directory);
+    }
+  }
+}
@@ -1,142 +1,159 @@
 package no.mnemonic.services.triggers.service;
 
+import no.mnemonic.commons.component.LifecycleAspect;
 import no.mnemonic.commons.logging.Logger;
 import no.mnemonic.commons.logging.Logging;
-import no.mnemonic.commons.utilities.StringUtils;
+import no.mnemonic.commons.utilities.collections.SetUtils;
 import no.mnemonic.services.triggers.api.exceptions.InvalidArgumentException;
 import no.mnemonic.services.triggers.api.exceptions.ObjectNotFoundException;
-import no.mnemonic.services.triggers.api.model.v1.*;
+import no.mnemonic.services.triggers.api.model.v1.TriggerActionDefinition;
+import no.mnemonic.services.triggers.api.model.v1.TriggerEventDefinition;
+import no.mnemonic.services.triggers.api.model.v1.TriggerRule;
 import no.mnemonic.services.triggers.api.request.v1.*;
 import no.mnemonic.services.triggers.api.service.v1.TriggerAdministrationService;
-import no.mnemonic.services.triggers.service.converters.TriggerActionDefinitionConverter;
-import no.mnemonic.services.triggers.service.converters.TriggerEventDefinitionConverter;
-import no.mnemonic.services.triggers.service.converters.TriggerRuleConverter;
 import no.mnemonic.services.triggers.service.dao.TriggerActionDefinitionEntity;
 import no.mnemonic.services.triggers.service.dao.TriggerEventDefinitionEntity;
 import no.mnemonic.services.triggers.service.dao.TriggerRuleEntity;
 import no.mnemonic.services.triggers.service.dao.YamlReader;
-import no.mnemonic.services.triggers.service.delegates.*;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.UUID;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class TriggerAdministrationServiceImpl implements TriggerAdministrationService {
+public class TriggerAdministrationServiceImpl implements TriggerAdministrationService, LifecycleAspect {
 
   private static final Logger LOGGER = Logging.getLogger(TriggerAdministrationServiceImpl.class);
 
   private static final String TRIGGER_ACTION_DEFINITION_FILE = "triggerActionDefinition.yaml";
   private static final String TRIGGER_EVENT_DEFINITION_FILE = "triggerEventDefinition.yaml";
   private static final String TRIGGER_RULE_FILE = "triggerRule.yaml";
+  // Check for changes of the configuration files every few seconds, also while the watcher is running.
+  private static final long CONFIGURATION_CHANGE_DETECTION_INTERVAL_MILLIS = 5_000;
 
   private final YamlReader<TriggerActionDefinitionEntity> triggerActionDefinitionReader;
   private final YamlReader<TriggerEventDefinitionEntity> triggerEventDefinitionReader;
   private final YamlReader<TriggerRuleEntity> triggerRuleReader;
-  private final TriggerActionDefinitionConverter triggerActionDefinitionConverter;
-  private final TriggerEventDefinitionConverter triggerEventDefinitionConverter;
-  private final TriggerRuleConverter triggerRuleConverter;
+  private final ConfigurationWatcher watcher;
+
+  // The current snapshot is replaced as a whole whenever the configuration changes. Readers never lock.
+  private volatile ConfigurationSnapshot snapshot;
+  private final AtomicLong nextChangeDetection = new AtomicLong();
 
   @Inject
   public TriggerAdministrationServiceImpl(@Named("trigger.administration.service.configuration.directory") String configDir) {
-    triggerActionDefinitionReader = new YamlReader<>(Paths.get(configDir, TRIGGER_ACTION_DEFINITION_FILE), TriggerActionDefinitionEntity.class);
-    triggerEventDefinitionReader = new YamlReader<>(Paths.get(configDir, TRIGGER_EVENT_DEFINITION_FILE), TriggerEventDefinitionEntity.class);
-    triggerRuleReader = new YamlReader<>(Paths.get(configDir, TRIGGER_RULE_FILE), TriggerRuleEntity.class);
-    triggerActionDefinitionConverter = TriggerActionDefinitionConverter.builder()
-        .setFunctionResolver(createFunctionResolver())
-        .build();
-    triggerEventDefinitionConverter = TriggerEventDefinitionConverter.builder()
-        .setFunctionResolver(createFunctionResolver())
-        .build();
-    triggerRuleConverter = TriggerRuleConverter.builder()
-        .setOrganizationResolver(createOrganizationResolver())
-        .setTriggerActionResolver(createTriggerActionResolver())
-        .build();
+    triggerActionDefinitionReader = new YamlReader<>(Paths.get(configDir, TRIGGER_ACTION_DEFINITION_FILE), TriggerActionDefinitionEntity.class,
+        CONFIGURATION_CHANGE_DETECTION_INTERVAL_MILLIS);
+    triggerEventDefinitionReader = new YamlReader<>(Paths.get(configDir, TRIGGER_EVENT_DEFINITION_FILE), TriggerEventDefinitionEntity.class,
+        CONFIGURATION_CHANGE_DETECTION_INTERVAL_MILLIS);
+    triggerRuleReader = new YamlReader<>(Paths.get(configDir, TRIGGER_RULE_FILE), TriggerRuleEntity.class,
+        CONFIGURATION_CHANGE_DETECTION_INTERVAL_MILLIS);
+    watcher = new ConfigurationWatcher(Path.of(configDir),
+        SetUtils.set(TRIGGER_ACTION_DEFINITION_FILE, TRIGGER_EVENT_DEFINITION_FILE, TRIGGER_RULE_FILE),
+        this::reloadConfiguration);
+  }
+
+  @Override
+  public void startComponent() {
+    // Make sure that the configuration is valid before starting to watch for changes.
+    getConfigurationSnapshot();
+    watcher.start();
+  }
+
+  @Override
+  public void stopComponent() {
+    watcher.stop();
+  }
+
+  /**
+   * Return the current snapshot of the configuration. The returned snapshot never changes, i.e. it stays consistent
+   * even if the configuration is reloaded in the meantime.
+   *
+   * @return Current snapshot of the configuration
+   */
+  public ConfigurationSnapshot getConfigurationSnapshot() {
+    ConfigurationSnapshot current = snapshot;
+    if (current == null) {
+      reloadConfiguration();
+      return snapshot;
+    }
+
+    // The watcher only sees events for the configuration files themselves, thus, it misses changes made by swapping a
+    // symlinked directory (e.g. a mounted Kubernetes ConfigMap). Keep checking for changes once the interval has passed
+    // as a fallback, which is cheap if nothing has changed. Only one caller checks for changes and all other callers
+    // continue with the current snapshot.
+    long next = nextChangeDetection.get();
+    if (System.currentTimeMillis() >= next && nextChangeDetection.compareAndSet(next, Long.MAX_VALUE)) {
+      reloadConfiguration();
+      current = snapshot;
+    }
+    return current;
+  }
+
+  /**
+   * Check immediately whether any of the configuration files has changed and swap in a new snapshot if it has.
+   * Files which cannot be read keep their previous version.
+   *
+   * @return True if a new snapshot has been created
+   */
+  public synchronized boolean reloadConfiguration() {
+    try {
+      // Always reload all files, i.e. don't short-circuit.
+      boolean changed = triggerActionDefinitionReader.reload()
+          | triggerEventDefinitionReader.reload()
+          | triggerRuleReader.reload();
+      if (!changed && snapshot != null) return false;
+
+      ConfigurationSnapshot current = snapshot;
+      long version = current != null ? current.getVersion() + 1 : 1;
+      snapshot = ConfigurationSnapshot.builder()
+          .setVersion(version)
+          .setTriggerActionDefinitions(triggerActionDefinitionReader.readAll())
+          .setTriggerEventDefinitions(triggerEventDefinitionReader.readAll())
+          .setTriggerRules(triggerRuleReader.readAll())
+          .build();
+      if (current != null) {
+        LOGGER.info("Reloaded configuration (version %d).", version);
+      }
+      return true;
+    } finally {
+      nextChangeDetection.set(System.currentTimeMillis() + CONFIGURATION_CHANGE_DETECTION_INTERVAL_MILLIS);
+    }
+  }
+
+  @Override
+  public TriggerAdministrationService getSnapshot() {
+    return getConfigurationSnapshot();
   }
 
   @Override
   public TriggerActionDefinition getTriggerActionDefinition(TriggerActionDefinitionGetByNameRequest request)
       throws InvalidArgumentException, ObjectNotFoundException {
-    return TriggerActionDefinitionGetByNameDelegate.builder()
-        .setEntitiesSupplier(triggerActionDefinitionReader::readAll)
-        .setEntityConverter(triggerActionDefinitionConverter)
-        .build()
-        .handle(request);
+    return getConfigurationSnapshot().getTriggerActionDefinition(request);
   }
 
   @Override
   public Iterable<TriggerActionDefinition> searchTriggerActionDefinitions(TriggerActionDefinitionSearchRequest request)
       throws InvalidArgumentException {
-    return TriggerActionDefinitionSearchDelegate.builder()
-        .setEntitiesSupplier(triggerActionDefinitionReader::readAll)
-        .setEntityConverter(triggerActionDefinitionConverter)
-        .build()
-        .handle(request);
+    return getConfigurationSnapshot().searchTriggerActionDefinitions(request);
   }
 
   @Override
   public TriggerEventDefinition getTriggerEventDefinition(TriggerEventDefinitionGetByServiceEventRequest request)
       throws InvalidArgumentException, ObjectNotFoundException {
-    return TriggerEventDefinitionGetByServiceEventDelegate.builder()
-        .setEntitiesSupplier(triggerEventDefinitionReader::readAll)
-        .setEntityConverter(triggerEventDefinitionConverter)
-        .build()
-        .handle(request);
+    return getConfigurationSnapshot().getTriggerEventDefinition(request);
   }
 
   @Override
   public Iterable<TriggerEventDefinition> searchTriggerEventDefinitions(TriggerEventDefinitionSearchRequest request)
       throws InvalidArgumentException {
-    return TriggerEventDefinitionSearchDelegate.builder()
-        .setEntitiesSupplier(triggerEventDefinitionReader::readAll)
-        .setEntityConverter(triggerEventDefinitionConverter)
-        .build()
-        .handle(request);
+    return getConfigurationSnapshot().searchTriggerEventDefinitions(request);
   }
 
   @Override
   public Iterable<TriggerRule> searchTriggerRules(TriggerRuleSearchRequest request)
       throws InvalidArgumentException {
-    return TriggerRuleSearchDelegate.builder()
-        .setEntitiesSupplier(triggerRuleReader::readAll)
-        .setEntityConverter(triggerRuleConverter)
-        .build()
-        .handle(request);
-  }
-
-  private Function<String, FunctionInfo> createFunctionResolver() {
-    return name -> {
-      if (StringUtils.isBlank(name)) return null;
-      // Directly derive id from name until functions are resolved from an access controller.
-      // A function's name is supposed to be unique, thus, a derived id will also be unique.
-      return FunctionInfo.builder()
-          .setId(UUID.nameUUIDFromBytes(name.getBytes()))
-          .setName(name)
-          .build();
-    };
-  }
-
-  private Function<UUID, OrganizationInfo> createOrganizationResolver() {
-    return id -> {
-      if (id == null) return null;
-      // Set name and short name to id until organizations are resolved from an access controller.
-      return OrganizationInfo.builder()
-          .setId(id)
-          .setShortName(id.toString())
-          .setName(id.toString())
-          .build();
-    };
-  }
-
-  private Function<String, TriggerActionDefinition> createTriggerActionResolver() {
-    return name -> {
-      try {
-        return getTriggerActionDefinition(new TriggerActionDefinitionGetByNameRequest().setName(name));
-      } catch (InvalidArgumentException | ObjectNotFoundException ex) {
-        LOGGER.warning(ex, "Could not resolve TriggerActionDefinition for name = %s.", name);
-        return null;
-      }
-    };
+    return getConfigurationSnapshot().searchTriggerRules(request);
   }
 }
@@ -0,0 +1,40 @@
+package no.mnemonic.services.triggers.service.converters;
+
+import no.mnemonic.commons.utilities.ObjectUtils;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Converter which converts a fixed collection of entities once up front and afterwards returns the same converted
+ * objects on every invocation. Converted objects are shared between callers, thus, they must be immutable.
+ * <p>
+ * Entities are looked up by identity, i.e. the converter should be recreated whenever the collection of entities is
+ * replaced. Entities which were not part of the collection are converted on every invocation using the wrapped converter.
+ *
+ * @param <E> Type of entities
+ * @param <M> Type of converted objects
+ */
+public class MemoizingConverter<E, M> implements Function<E, M> {
+
+  private final Function<E, M> converter;
+  private final Map<E, M> converted = new IdentityHashMap<>();
+
+  public MemoizingConverter(Collection<E> entities, Function<E, M> converter) {
+    ObjectUtils.notNull(entities, "'entities' is required!");
+    this.converter = ObjectUtils.notNull(converter, "'converter' is required!");
+
+    for (E entity : entities) {
+      converted.put(entity, converter.apply(entity));
+    }
+  }
+
+  @Override
+  public M apply(E entity) {
+    if (entity == null) return null;
+    M result = converted.get(entity);
+    return result != null ? result : converter.apply(entity);
+  }
+}
@@ -4,8 +4,10 @@ import no.mnemonic.commons.utilities.ObjectUtils;
 import no.mnemonic.commons.utilities.collections.MapUtils;
 import no.mnemonic.services.triggers.api.model.v1.FunctionInfo;
 import no.mnemonic.services.triggers.api.model.v1.ParameterDefinition;
+import no.mnemonic.services.triggers.api.model.v1.RetryPolicy;
 import no.mnemonic.services.triggers.api.model.v1.TriggerActionDefinition;
 import no.mnemonic.services.triggers.service.dao.ParameterDefinitionEntity;
+import no.mnemonic.services.triggers.service.dao.RetryPolicyEntity;
 import no.mnemonic.services.triggers.service.dao.TriggerActionDefinitionEntity;
 
 import java.util.Map;
@@ -32,6 +34,7 @@ public class TriggerActionDefinitionConverter implements Function<TriggerActionD
         .setRequiredPermission(functionResolver.apply(entity.getRequiredPermission()))
         .setInitParameters(MapUtils.map(entity.getInitParameters()))
         .setTriggerParameters(convertTriggerParameters(entity))
+        .setRetryPolicy(convertRetryPolicy(entity.getRetryPolicy()))
         .build();
   }
 
@@ -49,6 +52,17 @@ public class TriggerActionDefinitionConverter implements Function<TriggerActionD
         .build();
   }
 
+  private RetryPolicy convertRetryPolicy(RetryPolicyEntity entity) {
+    if (entity == null) return null;
+    RetryPolicy.Builder builder = RetryPolicy.builder()
+        .setMaxAttempts(entity.getMaxAttempts());
+    // Use the model's defaults for all optional settings not specified in the entity.
+    if (entity.getInitialBackoffMillis() != null) builder.setInitialBackoffMillis(entity.getInitialBackoffMillis());
+    if (entity.getMaxBackoffMillis() != null) builder.setMaxBackoffMillis(entity.getMaxBackoffMillis());
+    if (entity.getBackoffMultiplier() != null) builder.setBackoffMultiplier(entity.getBackoffMultiplier());
+    return builder.build();
+  }
+
   public static Builder builder() {
     return new Builder();
   }
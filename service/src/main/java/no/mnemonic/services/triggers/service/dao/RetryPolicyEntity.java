@@ -0,0 +1,80 @@
+package no.mnemonic.services.triggers.service.dao;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import no.mnemonic.commons.utilities.ObjectUtils;
+
+@JsonDeserialize(builder = RetryPolicyEntity.Builder.class)
+public class RetryPolicyEntity {
+
+  private final Integer maxAttempts;
+  private final Long initialBackoffMillis;
+  private final Long maxBackoffMillis;
+  private final Double backoffMultiplier;
+
+  private RetryPolicyEntity(Integer maxAttempts, Long initialBackoffMillis, Long maxBackoffMillis, Double backoffMultiplier) {
+    this.maxAttempts = ObjectUtils.notNull(maxAttempts, "'maxAttempts' is required!");
+    if (maxAttempts <= 0) throw new IllegalArgumentException("'maxAttempts' must be > 0!");
+    if (initialBackoffMillis != null && initialBackoffMillis < 0) throw new IllegalArgumentException("'initialBackoffMillis' must be >= 0!");
+    if (maxBackoffMillis != null && maxBackoffMillis < 0) throw new IllegalArgumentException("'maxBackoffMillis' must be >= 0!");
+    if (backoffMultiplier != null && backoffMultiplier < 1) throw new IllegalArgumentException("'backoffMultiplier' must be >= 1!");
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+    this.backoffMultiplier = backoffMultiplier;
+  }
+
+  public Integer getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public Long getInitialBackoffMillis() {
+    return initialBackoffMillis;
+  }
+
+  public Long getMaxBackoffMillis() {
+    return maxBackoffMillis;
+  }
+
+  public Double getBackoffMultiplier() {
+    return backoffMultiplier;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  @JsonPOJOBuilder(withPrefix = "set")
+  public static class Builder {
+    private Integer maxAttempts;
+    private Long initialBackoffMillis;
+    private Long maxBackoffMillis;
+    private Double backoffMultiplier;
+
+    private Builder() {
+    }
+
+    public RetryPolicyEntity build() {
+      return new RetryPolicyEntity(maxAttempts, initialBackoffMillis, maxBackoffMillis, backoffMultiplier);
+    }
+
+    public Builder setMaxAttempts(Integer maxAttempts) {
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    public Builder setInitialBackoffMillis(Long initialBackoffMillis) {
+      this.initialBackoffMillis = initialBackoffMillis;
+      return this;
+    }
+
+    public Builder setMaxBackoffMillis(Long maxBackoffMillis) {
+      this.maxBackoffMillis = maxBackoffMillis;
+      return this;
+    }
+
+    public Builder setBackoffMultiplier(Double backoffMultiplier) {
+      this.backoffMultiplier = backoffMultiplier;
+      return this;
+    }
+  }
+}
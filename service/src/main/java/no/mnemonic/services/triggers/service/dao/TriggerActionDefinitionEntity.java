@@ -19,9 +19,11 @@ public class TriggerActionDefinitionEntity {
   private final String requiredPermission;
   private final Map<String, String> initParameters;
   private final Map<String, ParameterDefinitionEntity> triggerParameters;
+  private final RetryPolicyEntity retryPolicy;
 
   private TriggerActionDefinitionEntity(UUID id, String name, String description, String triggerActionClass, String requiredPermission,
-                                        Map<String, String> initParameters, Map<String, ParameterDefinitionEntity> triggerParameters) {
+                                        Map<String, String> initParameters, Map<String, ParameterDefinitionEntity> triggerParameters,
+                                        RetryPolicyEntity retryPolicy) {
     this.id = ObjectUtils.notNull(id, "'id' is required!");
     this.name = ObjectUtils.notNull(name, "'name' is required!");
     this.description = ObjectUtils.notNull(description, "'description' is required!");
@@ -29,6 +31,7 @@ public class TriggerActionDefinitionEntity {
     this.requiredPermission = ObjectUtils.notNull(requiredPermission, "'requiredPermission' is required!");
     this.initParameters = ObjectUtils.ifNotNull(initParameters, Collections::unmodifiableMap);
     this.triggerParameters = ObjectUtils.ifNotNull(triggerParameters, Collections::unmodifiableMap);
+    this.retryPolicy = retryPolicy;
   }
 
   public UUID getId() {
@@ -59,6 +62,10 @@ public class TriggerActionDefinitionEntity {
     return triggerParameters;
   }
 
+  public RetryPolicyEntity getRetryPolicy() {
+    return retryPolicy;
+  }
+
   public static Builder builder() {
     return new Builder();
   }
@@ -72,12 +79,14 @@ public class TriggerActionDefinitionEntity {
     private String requiredPermission;
     private Map<String, String> initParameters;
     private Map<String, ParameterDefinitionEntity> triggerParameters;
+    private RetryPolicyEntity retryPolicy;
 
     private Builder() {
     }
 
     public TriggerActionDefinitionEntity build() {
-      return new TriggerActionDefinitionEntity(id, name, description, triggerActionClass, requiredPermission, initParameters, triggerParameters);
+      return new TriggerActionDefinitionEntity(id, name, description, triggerActionClass, requiredPermission, initParameters,
+          triggerParameters, retryPolicy);
     }
 
     public Builder setId(UUID id) {
@@ -124,5 +133,10 @@ public class TriggerActionDefinitionEntity {
       this.triggerParameters = MapUtils.addToMap(this.triggerParameters, parameterName, parameterDefinition);
       return this;
     }
+
+    public Builder setRetryPolicy(RetryPolicyEntity retryPolicy) {
+      this.retryPolicy = retryPolicy;
+      return this;
+    }
   }
 }
@@ -0,0 +1,46 @@
+package no.mnemonic.services.triggers.service.dao;
+
+import no.mnemonic.commons.utilities.ObjectUtils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable index over {@link TriggerActionDefinitionEntity}s by name.
+ * <p>
+ * The index is built once from a collection of entities and must be rebuilt whenever those entities change.
+ * If multiple entities share the same name the first one in the collection wins.
+ */
+public class TriggerActionDefinitionIndex {
+
+  private final Collection<TriggerActionDefinitionEntity> entities;
+  private final Map<String, TriggerActionDefinitionEntity> byName = new HashMap<>();
+
+  public TriggerActionDefinitionIndex(Collection<TriggerActionDefinitionEntity> entities) {
+    this.entities = ObjectUtils.notNull(entities, "'entities' is required!");
+
+    for (TriggerActionDefinitionEntity action : entities) {
+      byName.putIfAbsent(action.getName(), action);
+    }
+  }
+
+  /**
+   * Return the collection of entities this index was built from.
+   *
+   * @return All indexed entities
+   */
+  public Collection<TriggerActionDefinitionEntity> getEntities() {
+    return entities;
+  }
+
+  /**
+   * Fetch the TriggerActionDefinitionEntity identified by name.
+   *
+   * @param name Action name
+   * @return Identified entity or null if it does not exist
+   */
+  public TriggerActionDefinitionEntity get(String name) {
+    return byName.get(name);
+  }
+}
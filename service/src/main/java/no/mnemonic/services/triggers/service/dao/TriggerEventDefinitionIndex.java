@@ -0,0 +1,49 @@
+package no.mnemonic.services.triggers.service.dao;
+
+import no.mnemonic.commons.utilities.ObjectUtils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable index over {@link TriggerEventDefinitionEntity}s by service and event name.
+ * <p>
+ * The index is built once from a collection of entities and must be rebuilt whenever those entities change.
+ * If multiple entities share the same service and event name the first one in the collection wins.
+ */
+public class TriggerEventDefinitionIndex {
+
+  private final Collection<TriggerEventDefinitionEntity> entities;
+  private final Map<String, Map<String, TriggerEventDefinitionEntity>> byServiceAndName = new HashMap<>();
+
+  public TriggerEventDefinitionIndex(Collection<TriggerEventDefinitionEntity> entities) {
+    this.entities = ObjectUtils.notNull(entities, "'entities' is required!");
+
+    for (TriggerEventDefinitionEntity event : entities) {
+      byServiceAndName.computeIfAbsent(event.getService(), k -> new HashMap<>())
+          .putIfAbsent(event.getName(), event);
+    }
+  }
+
+  /**
+   * Return the collection of entities this index was built from.
+   *
+   * @return All indexed entities
+   */
+  public Collection<TriggerEventDefinitionEntity> getEntities() {
+    return entities;
+  }
+
+  /**
+   * Fetch the TriggerEventDefinitionEntity identified by service and event name.
+   *
+   * @param service Service name
+   * @param name    Event name
+   * @return Identified entity or null if it does not exist
+   */
+  public TriggerEventDefinitionEntity get(String service, String name) {
+    Map<String, TriggerEventDefinitionEntity> serviceEvents = byServiceAndName.get(service);
+    return serviceEvents != null ? serviceEvents.get(name) : null;
+  }
+}
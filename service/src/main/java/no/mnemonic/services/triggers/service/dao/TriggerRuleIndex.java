@@ -0,0 +1,100 @@
+package no.mnemonic.services.triggers.service.dao;
+
+import no.mnemonic.commons.utilities.ObjectUtils;
+import no.mnemonic.commons.utilities.collections.CollectionUtils;
+
+import java.util.*;
+
+/**
+ * Immutable inverted index over {@link TriggerRuleEntity}s by service and event name.
+ * <p>
+ * The index is built once from a collection of entities and must be rebuilt whenever those entities change. Looking up
+ * the rules for a single service and a single event returns a pre-built list, i.e. the cost of a lookup is independent
+ * of the total number of indexed rules.
+ */
+public class TriggerRuleIndex {
+
+  private final Collection<TriggerRuleEntity> entities;
+  private final Map<String, Map<String, List<TriggerRuleEntity>>> byServiceAndEvent = new HashMap<>();
+  private final Map<String, List<TriggerRuleEntity>> byService = new HashMap<>();
+  private final Map<String, List<TriggerRuleEntity>> byEvent = new HashMap<>();
+
+  public TriggerRuleIndex(Collection<TriggerRuleEntity> entities) {
+    this.entities = ObjectUtils.notNull(entities, "'entities' is required!");
+
+    for (TriggerRuleEntity rule : entities) {
+      byService.computeIfAbsent(rule.getService(), k -> new ArrayList<>()).add(rule);
+      for (String event : rule.getEvents()) {
+        byEvent.computeIfAbsent(event, k -> new ArrayList<>()).add(rule);
+        byServiceAndEvent.computeIfAbsent(rule.getService(), k -> new HashMap<>())
+            .computeIfAbsent(event, k -> new ArrayList<>())
+            .add(rule);
+      }
+    }
+
+    // Wrap lists once such that lookups can hand them out directly.
+    byService.replaceAll((service, rules) -> Collections.unmodifiableList(rules));
+    byEvent.replaceAll((event, rules) -> Collections.unmodifiableList(rules));
+    byServiceAndEvent.values().forEach(serviceRules -> serviceRules.replaceAll((event, rules) -> Collections.unmodifiableList(rules)));
+  }
+
+  /**
+   * Return the collection of entities this index was built from.
+   *
+   * @return All indexed entities
+   */
+  public Collection<TriggerRuleEntity> getEntities() {
+    return entities;
+  }
+
+  /**
+   * Find all rules defined for one of the given services and at least one of the given events. An empty set of
+   * services or events matches any service or event, respectively.
+   * <p>
+   * The returned collection must not be modified.
+   *
+   * @param services Set of service names
+   * @param events   Set of event names
+   * @return All matching rules
+   */
+  public Collection<TriggerRuleEntity> find(Set<String> services, Set<String> events) {
+    boolean anyService = CollectionUtils.isEmpty(services);
+    boolean anyEvent = CollectionUtils.isEmpty(events);
+
+    if (anyService && anyEvent) return Collections.unmodifiableCollection(entities);
+    // A rule is defined for exactly one service, thus, the lists of different services never overlap.
+    if (anyEvent) return union(services, byService, false);
+    // A rule can be defined for multiple events, thus, the lists of different events might overlap.
+    if (anyService) return union(events, byEvent, events.size() > 1);
+
+    // Fast path for the common case of looking up the rules for one event emitted by one service.
+    if (services.size() == 1 && events.size() == 1) {
+      return lookup(byServiceAndEvent.get(services.iterator().next()), events.iterator().next());
+    }
+
+    Collection<TriggerRuleEntity> result = events.size() > 1 ? new LinkedHashSet<>() : new ArrayList<>();
+    for (String service : services) {
+      Map<String, List<TriggerRuleEntity>> serviceRules = byServiceAndEvent.get(service);
+      if (serviceRules == null) continue;
+      for (String event : events) {
+        result.addAll(lookup(serviceRules, event));
+      }
+    }
+    return result;
+  }
+
+  private Collection<TriggerRuleEntity> union(Set<String> keys, Map<String, List<TriggerRuleEntity>> index, boolean deduplicate) {
+    if (keys.size() == 1) return lookup(index, keys.iterator().next());
+
+    Collection<TriggerRuleEntity> result = deduplicate ? new LinkedHashSet<>() : new ArrayList<>();
+    for (String key : keys) {
+      result.addAll(lookup(index, key));
+    }
+    return result;
+  }
+
+  private List<TriggerRuleEntity> lookup(Map<String, List<TriggerRuleEntity>> index, String key) {
+    if (index == null) return Collections.emptyList();
+    return index.getOrDefault(key, Collections.emptyList());
+  }
+}
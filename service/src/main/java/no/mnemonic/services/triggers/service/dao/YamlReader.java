@@ -9,13 +9,19 @@ import no.mnemonic.commons.logging.Logger;
 import no.mnemonic.commons.logging.Logging;
 import no.mnemonic.commons.utilities.ObjectUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 public class YamlReader<T> {
@@ -24,25 +30,145 @@ public class YamlReader<T> {
   private static final ObjectMapper MAPPER = YAMLMapper.builder()
       .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
       .build();
+  private static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+  private static final long SNAPSHOT_MODE_DISABLED = -1;
 
   private final Path filePath;
   private final Class<T> entityClass;
   private final ObjectReader reader;
+  private final long changeDetectionIntervalMillis;
 
+  // Only used in snapshot mode.
+  private volatile Snapshot<T> snapshot;
+  private volatile long nextChangeDetection;
+
+  /**
+   * Create a reader which re-reads the whole file on every invocation of {@link #readAll()}.
+   *
+   * @param filePath    Path to YAML file
+   * @param entityClass Class of the entities stored in the YAML file
+   */
   public YamlReader(Path filePath, Class<T> entityClass) {
+    this(filePath, entityClass, SNAPSHOT_MODE_DISABLED);
+  }
+
+  /**
+   * Create a reader in snapshot mode. The file is parsed once and the entities are kept in memory. {@link #readAll()}
+   * will check at most once per {@code changeDetectionIntervalMillis} whether the file has changed, i.e. whether its
+   * modification time and content hash differ from the in-memory snapshot, and will only re-parse the file in that case.
+   * All other invocations of {@link #readAll()} are served from memory without any I/O.
+   *
+   * @param filePath                      Path to YAML file
+   * @param entityClass                   Class of the entities stored in the YAML file
+   * @param changeDetectionIntervalMillis Minimum time between two checks for changes of the file (must be &gt;= 0)
+   */
+  public YamlReader(Path filePath, Class<T> entityClass, long changeDetectionIntervalMillis) {
     this.filePath = ObjectUtils.notNull(filePath, "'filePath' is required!");
     this.entityClass = ObjectUtils.notNull(entityClass, "'entityClass' is required!");
     this.reader = MAPPER.readerFor(entityClass);
+    this.changeDetectionIntervalMillis = changeDetectionIntervalMillis;
 
     // Fail early if file is not readable.
     if (!Files.isReadable(filePath)) throw new IllegalArgumentException("Cannot read file: " + filePath);
+    if (changeDetectionIntervalMillis < 0 && changeDetectionIntervalMillis != SNAPSHOT_MODE_DISABLED) {
+      throw new IllegalArgumentException("'changeDetectionIntervalMillis' must be >= 0!");
+    }
   }
 
+  /**
+   * Read all entities from the YAML file. In snapshot mode the returned collection is unmodifiable and shared between
+   * invocations as long as the file has not changed.
+   *
+   * @return All entities which could be deserialized
+   */
   public Collection<T> readAll() {
+    if (!isSnapshotMode()) return parse(filePath);
+
+    if (snapshot == null || System.currentTimeMillis() >= nextChangeDetection) {
+      reload();
+    }
+
+    return snapshot.getEntities();
+  }
+
+  /**
+   * Check immediately whether the YAML file has changed and re-parse it if it has. This is independent of the change
+   * detection interval and can be used to force a reload, e.g. when being notified about a file change.
+   * <p>
+   * Should only be used in snapshot mode. Failing to read a changed file keeps the previous snapshot.
+   *
+   * @return True if the entities have been reloaded from the file
+   */
+  public synchronized boolean reload() {
+    if (!isSnapshotMode()) throw new IllegalStateException("Reloading is only supported in snapshot mode!");
+
+    Snapshot<T> current = snapshot;
+    try {
+      FileTime lastModified = Files.getLastModifiedTime(filePath);
+      // Fast path, file hasn't been touched.
+      if (current != null && current.getLastModified().equals(lastModified)) return false;
+
+      byte[] content = Files.readAllBytes(filePath);
+      byte[] contentHash = hash(content);
+      if (current != null && Arrays.equals(current.getContentHash(), contentHash)) {
+        // File has been touched but its content is the same, keep entities but remember new modification time.
+        snapshot = new Snapshot<>(current.getVersion(), lastModified, contentHash, current.getEntities());
+        return false;
+      }
+
+      long version = current != null ? current.getVersion() + 1 : 1;
+      snapshot = new Snapshot<>(version, lastModified, contentHash, Collections.unmodifiableList(parse(content)));
+      if (current != null) {
+        LOGGER.info("Reloaded entities for class %s from file %s (version %d).", entityClass.getSimpleName(), filePath, version);
+      }
+      return true;
+    } catch (IOException | RuntimeException ex) {
+      // Without any previous snapshot there's nothing to fall back to.
+      if (current == null) throw new IllegalStateException("Cannot read entities from file: " + filePath, ex);
+      LOGGER.warning(ex, "Cannot reload entities from file %s. Keep previous version.", filePath);
+      return false;
+    } finally {
+      nextChangeDetection = System.currentTimeMillis() + changeDetectionIntervalMillis;
+    }
+  }
+
+  /**
+   * Return the version of the in-memory snapshot. The version is increased every time the entities are reloaded from
+   * a changed file, thus, it can be used to detect changes without comparing entities. Returns 0 if not in snapshot
+   * mode or if the file hasn't been read yet.
+   *
+   * @return Version of the snapshot
+   */
+  public long getVersion() {
+    Snapshot<T> current = snapshot;
+    return current != null ? current.getVersion() : 0;
+  }
+
+  private boolean isSnapshotMode() {
+    return changeDetectionIntervalMillis != SNAPSHOT_MODE_DISABLED;
+  }
+
+  private List<T> parse(Path path) {
+    try (InputStream data = new FileInputStream(path.toFile())) {
+      return parse(data);
+    } catch (IOException ex) {
+      // Unexpected exception when setting up reader. Re-throw as runtime exception.
+      throw new IllegalStateException("Cannot read entities from file: " + filePath, ex);
+    }
+  }
+
+  private List<T> parse(byte[] content) {
+    try (InputStream data = new ByteArrayInputStream(content)) {
+      return parse(data);
+    } catch (IOException ex) {
+      throw new IllegalStateException("Cannot read entities from file: " + filePath, ex);
+    }
+  }
+
+  private List<T> parse(InputStream data) throws IOException {
     List<T> result = new ArrayList<>();
 
-    try (InputStream data = new FileInputStream(filePath.toFile());
-         MappingIterator<T> values = reader.readValues(data)) {
+    try (MappingIterator<T> values = reader.readValues(data)) {
       while (values.hasNext()) {
         try {
           result.add(values.nextValue());
@@ -51,12 +177,47 @@ public class YamlReader<T> {
           LOGGER.warning(ex, "Cannot deserialize entity for class %s. Skip it.", entityClass.getSimpleName());
         }
       }
-    } catch (IOException ex) {
-      // Unexpected exception when setting up reader. Re-throw as runtime exception.
-      throw new IllegalStateException("Cannot read entities from file: " + filePath, ex);
     }
 
     return result;
   }
 
+  private static byte[] hash(byte[] content) {
+    try {
+      return MessageDigest.getInstance(CONTENT_HASH_ALGORITHM).digest(content);
+    } catch (NoSuchAlgorithmException ex) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private static class Snapshot<T> {
+    private final long version;
+    private final FileTime lastModified;
+    private final byte[] contentHash;
+    private final Collection<T> entities;
+
+    private Snapshot(long version, FileTime lastModified, byte[] contentHash, Collection<T> entities) {
+      this.version = version;
+      this.lastModified = lastModified;
+      this.contentHash = contentHash;
+      this.entities = entities;
+    }
+
+    private long getVersion() {
+      return version;
+    }
+
+    private FileTime getLastModified() {
+      return lastModified;
+    }
+
+    private byte[] getContentHash() {
+      return contentHash;
+    }
+
+    private Collection<T> getEntities() {
+      return entities;
+    }
+  }
 }
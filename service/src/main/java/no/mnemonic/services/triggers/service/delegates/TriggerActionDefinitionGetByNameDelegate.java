@@ -7,20 +7,19 @@ import no.mnemonic.services.triggers.api.exceptions.ObjectNotFoundException;
 import no.mnemonic.services.triggers.api.model.v1.TriggerActionDefinition;
 import no.mnemonic.services.triggers.api.request.v1.TriggerActionDefinitionGetByNameRequest;
 import no.mnemonic.services.triggers.service.dao.TriggerActionDefinitionEntity;
+import no.mnemonic.services.triggers.service.dao.TriggerActionDefinitionIndex;
 
-import java.util.Collection;
-import java.util.Objects;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
 public class TriggerActionDefinitionGetByNameDelegate {
 
-  private final Supplier<Collection<TriggerActionDefinitionEntity>> entitiesSupplier;
+  private final Supplier<TriggerActionDefinitionIndex> indexSupplier;
   private final Function<TriggerActionDefinitionEntity, TriggerActionDefinition> entityConverter;
 
-  private TriggerActionDefinitionGetByNameDelegate(Supplier<Collection<TriggerActionDefinitionEntity>> entitiesSupplier,
+  private TriggerActionDefinitionGetByNameDelegate(Supplier<TriggerActionDefinitionIndex> indexSupplier,
                                                    Function<TriggerActionDefinitionEntity, TriggerActionDefinition> entityConverter) {
-    this.entitiesSupplier = ObjectUtils.notNull(entitiesSupplier, "Cannot instantiate TriggerActionDefinitionGetByNameDelegate without 'entitiesSupplier'.");
+    this.indexSupplier = ObjectUtils.notNull(indexSupplier, "Cannot instantiate TriggerActionDefinitionGetByNameDelegate without 'indexSupplier'.");
     this.entityConverter = ObjectUtils.notNull(entityConverter, "Cannot instantiate TriggerActionDefinitionGetByNameDelegate without 'entityConverter'.");
   }
 
@@ -29,11 +28,12 @@ public class TriggerActionDefinitionGetByNameDelegate {
     if (request == null) throw new InvalidArgumentException("Request object is required.");
     if (StringUtils.isBlank(request.getName())) throw new InvalidArgumentException("'name' parameter is required in request.");
 
-    return entitiesSupplier.get().stream()
-        .filter(action -> Objects.equals(action.getName(), request.getName()))
-        .map(entityConverter)
-        .findFirst()
-        .orElseThrow(() -> new ObjectNotFoundException(String.format("TriggerActionDefinition with name = %s does not exist.", request.getName())));
+    TriggerActionDefinitionEntity entity = indexSupplier.get().get(request.getName());
+    if (entity == null) {
+      throw new ObjectNotFoundException(String.format("TriggerActionDefinition with name = %s does not exist.", request.getName()));
+    }
+
+    return entityConverter.apply(entity);
   }
 
   public static Builder builder() {
@@ -41,18 +41,18 @@ public class TriggerActionDefinitionGetByNameDelegate {
   }
 
   public static class Builder {
-    private Supplier<Collection<TriggerActionDefinitionEntity>> entitiesSupplier;
+    private Supplier<TriggerActionDefinitionIndex> indexSupplier;
     private Function<TriggerActionDefinitionEntity, TriggerActionDefinition> entityConverter;
 
     private Builder() {
     }
 
     public TriggerActionDefinitionGetByNameDelegate build() {
-      return new TriggerActionDefinitionGetByNameDelegate(entitiesSupplier, entityConverter);
+      return new TriggerActionDefinitionGetByNameDelegate(indexSupplier, entityConverter);
     }
 
-    public Builder setEntitiesSupplier(Supplier<Collection<TriggerActionDefinitionEntity>> entitiesSupplier) {
-      this.entitiesSupplier = entitiesSupplier;
+    public Builder setIndexSupplier(Supplier<TriggerActionDefinitionIndex> indexSupplier) {
+      this.indexSupplier = indexSupplier;
       return this;
     }
 
@@ -7,20 +7,19 @@ import no.mnemonic.services.triggers.api.exceptions.ObjectNotFoundException;
 import no.mnemonic.services.triggers.api.model.v1.TriggerEventDefinition;
 import no.mnemonic.services.triggers.api.request.v1.TriggerEventDefinitionGetByServiceEventRequest;
 import no.mnemonic.services.triggers.service.dao.TriggerEventDefinitionEntity;
+import no.mnemonic.services.triggers.service.dao.TriggerEventDefinitionIndex;
 
-import java.util.Collection;
-import java.util.Objects;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
 public class TriggerEventDefinitionGetByServiceEventDelegate {
 
-  private final Supplier<Collection<TriggerEventDefinitionEntity>> entitiesSupplier;
+  private final Supplier<TriggerEventDefinitionIndex> indexSupplier;
   private final Function<TriggerEventDefinitionEntity, TriggerEventDefinition> entityConverter;
 
-  private TriggerEventDefinitionGetByServiceEventDelegate(Supplier<Collection<TriggerEventDefinitionEntity>> entitiesSupplier,
+  private TriggerEventDefinitionGetByServiceEventDelegate(Supplier<TriggerEventDefinitionIndex> indexSupplier,
                                                           Function<TriggerEventDefinitionEntity, TriggerEventDefinition> entityConverter) {
-    this.entitiesSupplier = ObjectUtils.notNull(entitiesSupplier, "Cannot instantiate TriggerEventDefinitionGetByServiceEventDelegate without 'entitiesSupplier'.");
+    this.indexSupplier = ObjectUtils.notNull(indexSupplier, "Cannot instantiate TriggerEventDefinitionGetByServiceEventDelegate without 'indexSupplier'.");
     this.entityConverter = ObjectUtils.notNull(entityConverter, "Cannot instantiate TriggerEventDefinitionGetByServiceEventDelegate without 'entityConverter'.");
   }
 
@@ -30,12 +29,12 @@ public class TriggerEventDefinitionGetByServiceEventDelegate {
     if (StringUtils.isBlank(request.getService())) throw new InvalidArgumentException("'service' parameter is required in request.");
     if (StringUtils.isBlank(request.getEvent())) throw new InvalidArgumentException("'event' parameter is required in request.");
 
-    return entitiesSupplier.get().stream()
-        .filter(event -> Objects.equals(event.getService(), request.getService()))
-        .filter(event -> Objects.equals(event.getName(), request.getEvent()))
-        .map(entityConverter)
-        .findFirst()
-        .orElseThrow(() -> new ObjectNotFoundException(String.format("TriggerEventDefinition with service = %s and name = %s does not exist.", request.getService(), request.getEvent())));
+    TriggerEventDefinitionEntity entity = indexSupplier.get().get(request.getService(), request.getEvent());
+    if (entity == null) {
+      throw new ObjectNotFoundException(String.format("TriggerEventDefinition with service = %s and name = %s does not exist.", request.getService(), request.getEvent()));
+    }
+
+    return entityConverter.apply(entity);
   }
 
   public static Builder builder() {
@@ -43,18 +42,18 @@ public class TriggerEventDefinitionGetByServiceEventDelegate {
   }
 
   public static class Builder {
-    private Supplier<Collection<TriggerEventDefinitionEntity>> entitiesSupplier;
+    private Supplier<TriggerEventDefinitionIndex> indexSupplier;
     private Function<TriggerEventDefinitionEntity, TriggerEventDefinition> entityConverter;
 
     private Builder() {
     }
 
     public TriggerEventDefinitionGetByServiceEventDelegate build() {
-      return new TriggerEventDefinitionGetByServiceEventDelegate(entitiesSupplier, entityConverter);
+      return new TriggerEventDefinitionGetByServiceEventDelegate(indexSupplier, entityConverter);
     }
 
-    public Builder setEntitiesSupplier(Supplier<Collection<TriggerEventDefinitionEntity>> entitiesSupplier) {
-      this.entitiesSupplier = entitiesSupplier;
+    public Builder setIndexSupplier(Supplier<TriggerEventDefinitionIndex> indexSupplier) {
+      this.indexSupplier = indexSupplier;
       return this;
     }
 
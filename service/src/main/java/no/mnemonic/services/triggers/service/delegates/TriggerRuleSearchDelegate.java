@@ -1,37 +1,32 @@
 package no.mnemonic.services.triggers.service.delegates;
 
 import no.mnemonic.commons.utilities.ObjectUtils;
-import no.mnemonic.commons.utilities.collections.CollectionUtils;
-import no.mnemonic.commons.utilities.collections.SetUtils;
+import no.mnemonic.commons.utilities.collections.ListUtils;
 import no.mnemonic.services.triggers.api.exceptions.InvalidArgumentException;
 import no.mnemonic.services.triggers.api.model.v1.TriggerRule;
 import no.mnemonic.services.triggers.api.request.v1.TriggerRuleSearchRequest;
 import no.mnemonic.services.triggers.service.dao.TriggerRuleEntity;
+import no.mnemonic.services.triggers.service.dao.TriggerRuleIndex;
 
-import java.util.Collection;
 import java.util.function.Function;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 public class TriggerRuleSearchDelegate {
 
-  private final Supplier<Collection<TriggerRuleEntity>> entitiesSupplier;
+  private final Supplier<TriggerRuleIndex> indexSupplier;
   private final Function<TriggerRuleEntity, TriggerRule> entityConverter;
 
-  private TriggerRuleSearchDelegate(Supplier<Collection<TriggerRuleEntity>> entitiesSupplier,
+  private TriggerRuleSearchDelegate(Supplier<TriggerRuleIndex> indexSupplier,
                                     Function<TriggerRuleEntity, TriggerRule> entityConverter) {
-    this.entitiesSupplier = ObjectUtils.notNull(entitiesSupplier, "Cannot instantiate TriggerRuleSearchDelegate without 'entitiesSupplier'.");
+    this.indexSupplier = ObjectUtils.notNull(indexSupplier, "Cannot instantiate TriggerRuleSearchDelegate without 'indexSupplier'.");
     this.entityConverter = ObjectUtils.notNull(entityConverter, "Cannot instantiate TriggerRuleSearchDelegate without 'entityConverter'.");
   }
 
   public Iterable<TriggerRule> handle(TriggerRuleSearchRequest request) throws InvalidArgumentException {
     if (request == null) throw new InvalidArgumentException("Request object is required.");
 
-    return entitiesSupplier.get().stream()
-        .filter(rule -> CollectionUtils.isEmpty(request.getService()) || request.getService().contains(rule.getService()))
-        .filter(rule -> CollectionUtils.isEmpty(request.getEvent()) || SetUtils.intersects(request.getEvent(), rule.getEvents()))
-        .map(entityConverter)
-        .collect(Collectors.toList());
+    // Only convert the rules returned from the index instead of filtering all rules.
+    return ListUtils.list(indexSupplier.get().find(request.getService(), request.getEvent()), entityConverter);
   }
 
   public static Builder builder() {
@@ -39,18 +34,18 @@ public class TriggerRuleSearchDelegate {
   }
 
   public static class Builder {
-    private Supplier<Collection<TriggerRuleEntity>> entitiesSupplier;
+    private Supplier<TriggerRuleIndex> indexSupplier;
     private Function<TriggerRuleEntity, TriggerRule> entityConverter;
 
     private Builder() {
     }
 
     public TriggerRuleSearchDelegate build() {
-      return new TriggerRuleSearchDelegate(entitiesSupplier, entityConverter);
+      return new TriggerRuleSearchDelegate(indexSupplier, entityConverter);
     }
 
-    public Builder setEntitiesSupplier(Supplier<Collection<TriggerRuleEntity>> entitiesSupplier) {
-      this.entitiesSupplier = entitiesSupplier;
+    public Builder setIndexSupplier(Supplier<TriggerRuleIndex> indexSupplier) {
+      this.indexSupplier = indexSupplier;
       return this;
     }
 
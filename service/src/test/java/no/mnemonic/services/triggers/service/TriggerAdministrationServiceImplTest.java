@@ -7,11 +7,16 @@ import no.mnemonic.services.triggers.api.model.v1.TriggerRule;
 import no.mnemonic.services.triggers.api.request.v1.*;
 import no.mnemonic.services.triggers.api.service.v1.TriggerAdministrationService;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
 import java.util.UUID;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class TriggerAdministrationServiceImplTest {
 
@@ -58,4 +63,112 @@ public class TriggerAdministrationServiceImplTest {
     assertNotNull(result);
     assertEquals(1, ListUtils.list(result.iterator()).size());
   }
+
+  @Test
+  public void testSearchTriggerRulesResolvesTriggerAction() throws Exception {
+    TriggerRule rule = service.searchTriggerRules(new TriggerRuleSearchRequest()
+        .addService("service2")
+        .addEvent("event2")).iterator().next();
+    assertEquals("action2", rule.getTriggerAction().getName());
+    assertEquals(UUID.fromString("123e4567-e89b-12d3-a456-426655442222"), rule.getTriggerAction().getId());
+  }
+
+  @Test
+  public void testConvertedObjectsAreSharedBetweenRequests() throws Exception {
+    TriggerActionDefinitionGetByNameRequest actionRequest = new TriggerActionDefinitionGetByNameRequest().setName("action1");
+    assertSame(service.getTriggerActionDefinition(actionRequest), service.getTriggerActionDefinition(actionRequest));
+
+    TriggerEventDefinitionGetByServiceEventRequest eventRequest = new TriggerEventDefinitionGetByServiceEventRequest()
+        .setService("service1")
+        .setEvent("event1");
+    assertSame(service.getTriggerEventDefinition(eventRequest), service.getTriggerEventDefinition(eventRequest));
+
+    TriggerRuleSearchRequest ruleRequest = new TriggerRuleSearchRequest().addService("service1").addEvent("event1");
+    assertSame(service.searchTriggerRules(ruleRequest).iterator().next(), service.searchTriggerRules(ruleRequest).iterator().next());
+  }
+
+  @Test
+  public void testGetSnapshotReturnsSameSnapshotWithoutChanges() {
+    TriggerAdministrationServiceImpl impl = (TriggerAdministrationServiceImpl) service;
+    ConfigurationSnapshot snapshot = impl.getConfigurationSnapshot();
+    assertEquals(1, snapshot.getVersion());
+    assertSame(snapshot, impl.getSnapshot());
+    assertFalse(impl.reloadConfiguration());
+    assertSame(snapshot, impl.getConfigurationSnapshot());
+  }
+
+  @Test
+  public void testReloadConfigurationSwapsSnapshot(@TempDir Path configDir) throws Exception {
+    TriggerAdministrationServiceImpl impl = createServiceWithCopiedConfiguration(configDir);
+    ConfigurationSnapshot before = impl.getConfigurationSnapshot();
+
+    removeFirstTriggerActionDefinition(configDir);
+    assertTrue(impl.reloadConfiguration());
+
+    ConfigurationSnapshot after = impl.getConfigurationSnapshot();
+    assertEquals(before.getVersion() + 1, after.getVersion());
+    // The old snapshot stays unchanged while the new snapshot reflects the changed configuration.
+    assertEquals(3, ListUtils.list(before.searchTriggerActionDefinitions(new TriggerActionDefinitionSearchRequest()).iterator()).size());
+    assertEquals(2, ListUtils.list(after.searchTriggerActionDefinitions(new TriggerActionDefinitionSearchRequest()).iterator()).size());
+  }
+
+  @Test
+  public void testWatcherReloadsConfiguration(@TempDir Path configDir) throws Exception {
+    TriggerAdministrationServiceImpl impl = createServiceWithCopiedConfiguration(configDir);
+    impl.startComponent();
+    try {
+      long version = impl.getConfigurationSnapshot().getVersion();
+      removeFirstTriggerActionDefinition(configDir);
+
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (impl.getConfigurationSnapshot().getVersion() == version && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+      assertEquals(version + 1, impl.getConfigurationSnapshot().getVersion());
+    } finally {
+      impl.stopComponent();
+    }
+  }
+
+  @Test
+  public void testChangeDetectionReloadsConfigurationWhileWatching(@TempDir Path configDir) throws Exception {
+    // Mimic a mounted ConfigMap: the configuration files are symlinks into another directory, such that changing
+    // them doesn't produce any events for the watched file names.
+    Path dataDir = Files.createDirectory(configDir.resolve("data"));
+    createServiceWithCopiedConfiguration(dataDir);
+    for (String file : List.of("triggerActionDefinition.yaml", "triggerEventDefinition.yaml", "triggerRule.yaml")) {
+      Files.createSymbolicLink(configDir.resolve(file), dataDir.resolve(file));
+    }
+    TriggerAdministrationServiceImpl impl = new TriggerAdministrationServiceImpl(configDir.toString());
+    impl.startComponent();
+    try {
+      long version = impl.getConfigurationSnapshot().getVersion();
+      removeFirstTriggerActionDefinition(dataDir);
+
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (impl.getConfigurationSnapshot().getVersion() == version && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+      assertEquals(version + 1, impl.getConfigurationSnapshot().getVersion());
+    } finally {
+      impl.stopComponent();
+    }
+  }
+
+  private TriggerAdministrationServiceImpl createServiceWithCopiedConfiguration(Path configDir) throws Exception {
+    Path source = Paths.get(ClassLoader.getSystemResource("").toURI());
+    for (String file : List.of("triggerActionDefinition.yaml", "triggerEventDefinition.yaml", "triggerRule.yaml")) {
+      Files.copy(source.resolve(file), configDir.resolve(file));
+    }
+    return new TriggerAdministrationServiceImpl(configDir.toString());
+  }
+
+  private void removeFirstTriggerActionDefinition(Path configDir) throws Exception {
+    Path file = configDir.resolve("triggerActionDefinition.yaml");
+    String content = Files.readString(file);
+    // Drop the first document (the file starts with a document separator).
+    Files.writeString(file, content.substring(content.indexOf("---", 3)));
+    // Make sure that the modification time changes even on file systems with a coarse resolution.
+    Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2_000));
+  }
 }
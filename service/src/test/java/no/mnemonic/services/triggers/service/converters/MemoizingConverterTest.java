@@ -0,0 +1,52 @@
+package no.mnemonic.services.triggers.service.converters;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoizingConverterTest {
+
+  private final AtomicInteger invocations = new AtomicInteger();
+  private final Function<String, StringBuilder> converter = entity -> {
+    invocations.incrementAndGet();
+    return new StringBuilder(entity);
+  };
+
+  @Test
+  public void testInitializeWithoutEntities() {
+    assertThrows(RuntimeException.class, () -> new MemoizingConverter<>(null, converter));
+  }
+
+  @Test
+  public void testInitializeWithoutConverter() {
+    assertThrows(RuntimeException.class, () -> new MemoizingConverter<String, String>(List.of(), null));
+  }
+
+  @Test
+  public void testApplyReturnsNullForNull() {
+    assertNull(new MemoizingConverter<>(List.of(), converter).apply(null));
+  }
+
+  @Test
+  public void testApplyConvertsEntitiesOnce() {
+    String entity = "entity";
+    MemoizingConverter<String, StringBuilder> memoizing = new MemoizingConverter<>(List.of(entity), converter);
+    assertEquals(1, invocations.get());
+
+    StringBuilder first = memoizing.apply(entity);
+    assertSame(first, memoizing.apply(entity));
+    assertEquals(1, invocations.get());
+  }
+
+  @Test
+  public void testApplyConvertsUnknownEntitiesOnEveryInvocation() {
+    MemoizingConverter<String, StringBuilder> memoizing = new MemoizingConverter<>(List.of(), converter);
+    assertEquals("unknown", memoizing.apply("unknown").toString());
+    assertEquals("unknown", memoizing.apply("unknown").toString());
+    assertEquals(2, invocations.get());
+  }
+}
@@ -2,8 +2,10 @@ package no.mnemonic.services.triggers.service.converters;
 
 import no.mnemonic.services.triggers.api.model.v1.FunctionInfo;
 import no.mnemonic.services.triggers.api.model.v1.ParameterDefinition;
+import no.mnemonic.services.triggers.api.model.v1.RetryPolicy;
 import no.mnemonic.services.triggers.api.model.v1.TriggerActionDefinition;
 import no.mnemonic.services.triggers.service.dao.ParameterDefinitionEntity;
+import no.mnemonic.services.triggers.service.dao.RetryPolicyEntity;
 import no.mnemonic.services.triggers.service.dao.TriggerActionDefinitionEntity;
 import org.junit.jupiter.api.Test;
 
@@ -38,6 +40,33 @@ public class TriggerActionDefinitionConverterTest {
     assertModel(entity, converter.apply(entity));
   }
 
+  @Test
+  public void testConverterWithoutRetryPolicy() {
+    assertNull(converter.apply(createEntity()).getRetryPolicy());
+  }
+
+  @Test
+  public void testConverterWithRetryPolicy() {
+    TriggerActionDefinitionEntity entity = TriggerActionDefinitionEntity.builder()
+        .setId(UUID.randomUUID())
+        .setName("name")
+        .setDescription("description")
+        .setTriggerActionClass("triggerActionClass")
+        .setRequiredPermission("requiredPermission")
+        .setRetryPolicy(RetryPolicyEntity.builder()
+            .setMaxAttempts(3)
+            .setInitialBackoffMillis(100L)
+            .build())
+        .build();
+
+    RetryPolicy model = converter.apply(entity).getRetryPolicy();
+    assertEquals(3, model.getMaxAttempts());
+    assertEquals(100, model.getInitialBackoffMillis());
+    // Settings not specified in the entity fall back to the defaults.
+    assertEquals(RetryPolicy.builder().build().getMaxBackoffMillis(), model.getMaxBackoffMillis());
+    assertEquals(RetryPolicy.builder().build().getBackoffMultiplier(), model.getBackoffMultiplier());
+  }
+
   private TriggerActionDefinitionEntity createEntity() {
     return TriggerActionDefinitionEntity.builder()
         .setId(UUID.randomUUID())
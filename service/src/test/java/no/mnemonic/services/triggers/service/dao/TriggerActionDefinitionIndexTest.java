@@ -0,0 +1,52 @@
+package no.mnemonic.services.triggers.service.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TriggerActionDefinitionIndexTest {
+
+  private final TriggerActionDefinitionEntity action1 = createAction("action1");
+  private final TriggerActionDefinitionEntity action2 = createAction("action2");
+  private final TriggerActionDefinitionEntity duplicate = createAction("action1");
+  private final TriggerActionDefinitionIndex index = new TriggerActionDefinitionIndex(List.of(action1, action2, duplicate));
+
+  @Test
+  public void testInitializeWithoutEntities() {
+    assertThrows(RuntimeException.class, () -> new TriggerActionDefinitionIndex(null));
+  }
+
+  @Test
+  public void testGetEntities() {
+    assertEquals(3, index.getEntities().size());
+  }
+
+  @Test
+  public void testGetByName() {
+    assertSame(action2, index.get("action2"));
+  }
+
+  @Test
+  public void testGetReturnsFirstEntityForDuplicates() {
+    assertSame(action1, index.get("action1"));
+  }
+
+  @Test
+  public void testGetNonExisting() {
+    assertNull(index.get("unknown"));
+    assertNull(index.get(null));
+  }
+
+  private TriggerActionDefinitionEntity createAction(String name) {
+    return TriggerActionDefinitionEntity.builder()
+        .setId(UUID.randomUUID())
+        .setName(name)
+        .setDescription("description")
+        .setTriggerActionClass("triggerActionClass")
+        .setRequiredPermission("requiredPermission")
+        .build();
+  }
+}
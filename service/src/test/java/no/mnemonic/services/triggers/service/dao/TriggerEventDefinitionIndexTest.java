@@ -0,0 +1,53 @@
+package no.mnemonic.services.triggers.service.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TriggerEventDefinitionIndexTest {
+
+  private final TriggerEventDefinitionEntity event1 = createEvent("service1", "event1");
+  private final TriggerEventDefinitionEntity event2 = createEvent("service1", "event2");
+  private final TriggerEventDefinitionEntity event3 = createEvent("service2", "event1");
+  private final TriggerEventDefinitionEntity duplicate = createEvent("service1", "event1");
+  private final TriggerEventDefinitionIndex index = new TriggerEventDefinitionIndex(List.of(event1, event2, event3, duplicate));
+
+  @Test
+  public void testInitializeWithoutEntities() {
+    assertThrows(RuntimeException.class, () -> new TriggerEventDefinitionIndex(null));
+  }
+
+  @Test
+  public void testGetEntities() {
+    assertEquals(4, index.getEntities().size());
+  }
+
+  @Test
+  public void testGetByServiceAndName() {
+    assertSame(event2, index.get("service1", "event2"));
+    assertSame(event3, index.get("service2", "event1"));
+  }
+
+  @Test
+  public void testGetReturnsFirstEntityForDuplicates() {
+    assertSame(event1, index.get("service1", "event1"));
+  }
+
+  @Test
+  public void testGetNonExisting() {
+    assertNull(index.get("service2", "event2"));
+    assertNull(index.get("unknown", "event1"));
+    assertNull(index.get(null, null));
+  }
+
+  private TriggerEventDefinitionEntity createEvent(String service, String name) {
+    return TriggerEventDefinitionEntity.builder()
+        .setId(UUID.randomUUID())
+        .setService(service)
+        .setName(name)
+        .build();
+  }
+}
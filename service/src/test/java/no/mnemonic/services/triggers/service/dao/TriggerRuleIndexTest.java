@@ -0,0 +1,81 @@
+package no.mnemonic.services.triggers.service.dao;
+
+import no.mnemonic.commons.utilities.collections.SetUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TriggerRuleIndexTest {
+
+  private final TriggerRuleEntity rule1 = createRule("service1", "event1", "event2");
+  private final TriggerRuleEntity rule2 = createRule("service1", "event2", "event3");
+  private final TriggerRuleEntity rule3 = createRule("service2", "event1");
+  private final TriggerRuleIndex index = new TriggerRuleIndex(List.of(rule1, rule2, rule3));
+
+  @Test
+  public void testInitializeWithoutEntities() {
+    assertThrows(RuntimeException.class, () -> new TriggerRuleIndex(null));
+  }
+
+  @Test
+  public void testFindWithoutFiltering() {
+    assertEquals(3, index.find(null, null).size());
+    assertEquals(3, index.find(SetUtils.set(), SetUtils.set()).size());
+  }
+
+  @Test
+  public void testFindByService() {
+    assertRules(index.find(SetUtils.set("service1"), null), rule1, rule2);
+    assertRules(index.find(SetUtils.set("service1", "service2"), null), rule1, rule2, rule3);
+    assertRules(index.find(SetUtils.set("unknown"), null));
+  }
+
+  @Test
+  public void testFindByEvent() {
+    assertRules(index.find(null, SetUtils.set("event1")), rule1, rule3);
+    assertRules(index.find(null, SetUtils.set("event1", "event2")), rule1, rule2, rule3);
+    assertRules(index.find(null, SetUtils.set("unknown")));
+  }
+
+  @Test
+  public void testFindByServiceAndEvent() {
+    assertRules(index.find(SetUtils.set("service1"), SetUtils.set("event2")), rule1, rule2);
+    assertRules(index.find(SetUtils.set("service2"), SetUtils.set("event1")), rule3);
+    assertRules(index.find(SetUtils.set("service2"), SetUtils.set("event2")));
+    assertRules(index.find(SetUtils.set("unknown"), SetUtils.set("event1")));
+  }
+
+  @Test
+  public void testFindByMultipleServicesAndEvents() {
+    assertRules(index.find(SetUtils.set("service1", "service2"), SetUtils.set("event1", "event2")), rule1, rule2, rule3);
+    assertRules(index.find(SetUtils.set("service1", "service2"), SetUtils.set("event3")), rule2);
+  }
+
+  @Test
+  public void testFindReturnsSameResultForSameLookup() {
+    assertSame(index.find(SetUtils.set("service1"), SetUtils.set("event2")),
+        index.find(SetUtils.set("service1"), SetUtils.set("event2")));
+  }
+
+  private void assertRules(Collection<TriggerRuleEntity> actual, TriggerRuleEntity... expected) {
+    assertEquals(expected.length, actual.size());
+    assertEquals(SetUtils.set(expected), SetUtils.set(new ArrayList<>(actual)));
+  }
+
+  private TriggerRuleEntity createRule(String service, String... events) {
+    return TriggerRuleEntity.builder()
+        .setId(UUID.randomUUID())
+        .setService(service)
+        .setEvents(SetUtils.set(events))
+        .setAccessMode(AccessMode.Public)
+        .setExpression("expression")
+        .setTriggerAction("triggerAction")
+        .addOrganization(UUID.randomUUID())
+        .build();
+  }
+}
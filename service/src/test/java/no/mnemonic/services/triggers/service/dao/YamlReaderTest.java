@@ -5,8 +5,11 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.FileWriter;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
 import java.util.Collection;
 import java.util.Map;
 import java.util.UUID;
@@ -15,6 +18,12 @@ import static org.junit.jupiter.api.Assertions.*;
 
 public class YamlReaderTest {
 
+  private static final String MINIMAL_TRIGGER_EVENT_DEFINITION = """
+      id: 123e4567-e89b-12d3-a456-426655441111
+      service: service
+      name: name
+      """;
+
   private Path tmpYamlFile;
 
   @BeforeEach
@@ -129,6 +138,43 @@ public class YamlReaderTest {
     assertEquals(1, reader.readAll().size());
   }
 
+  @Test
+  public void testReadAllTriggerActionDefinitionsWithRetryPolicy() throws Exception {
+    writeContent("""
+        id: 123e4567-e89b-12d3-a456-426655441111
+        name: name
+        description: description
+        triggerActionClass: triggerActionClass
+        requiredPermission: requiredPermission
+        retryPolicy:
+          maxAttempts: 5
+          initialBackoffMillis: 500
+          maxBackoffMillis: 10000
+          backoffMultiplier: 1.5
+        """);
+    YamlReader<TriggerActionDefinitionEntity> reader = new YamlReader<>(tmpYamlFile, TriggerActionDefinitionEntity.class);
+    RetryPolicyEntity retryPolicy = reader.readAll().iterator().next().getRetryPolicy();
+    assertEquals(5, retryPolicy.getMaxAttempts());
+    assertEquals(500L, retryPolicy.getInitialBackoffMillis());
+    assertEquals(10000L, retryPolicy.getMaxBackoffMillis());
+    assertEquals(1.5, retryPolicy.getBackoffMultiplier());
+  }
+
+  @Test
+  public void testReadAllTriggerActionDefinitionsWithInvalidRetryPolicy() throws Exception {
+    writeContent("""
+        id: 123e4567-e89b-12d3-a456-426655441111
+        name: name
+        description: description
+        triggerActionClass: triggerActionClass
+        requiredPermission: requiredPermission
+        retryPolicy:
+          maxAttempts: 0
+        """);
+    YamlReader<TriggerActionDefinitionEntity> reader = new YamlReader<>(tmpYamlFile, TriggerActionDefinitionEntity.class);
+    assertEquals(0, reader.readAll().size());
+  }
+
   @Test
   public void testReadAllTriggerActionDefinitionsMinimalMissingID() throws Exception {
     writeContent("""
@@ -330,6 +376,79 @@ public class YamlReaderTest {
     assertEquals(0, reader.readAll().size());
   }
 
+  @Test
+  public void testInitializeWithNegativeChangeDetectionInterval() throws Exception {
+    writeContent("");
+    assertThrows(IllegalArgumentException.class, () -> new YamlReader<>(tmpYamlFile, TriggerEventDefinitionEntity.class, -42));
+  }
+
+  @Test
+  public void testReloadWithoutSnapshotMode() throws Exception {
+    writeContent("");
+    YamlReader<TriggerEventDefinitionEntity> reader = new YamlReader<>(tmpYamlFile, TriggerEventDefinitionEntity.class);
+    assertThrows(IllegalStateException.class, reader::reload);
+  }
+
+  @Test
+  public void testReadAllInSnapshotModeReturnsSameEntities() throws Exception {
+    writeContent(MINIMAL_TRIGGER_EVENT_DEFINITION);
+    YamlReader<TriggerEventDefinitionEntity> reader = new YamlReader<>(tmpYamlFile, TriggerEventDefinitionEntity.class, 0);
+
+    Collection<TriggerEventDefinitionEntity> first = reader.readAll();
+    assertEquals(1, first.size());
+    assertSame(first, reader.readAll());
+    assertEquals(1, reader.getVersion());
+  }
+
+  @Test
+  public void testReadAllInSnapshotModeReloadsChangedFile() throws Exception {
+    writeContent(MINIMAL_TRIGGER_EVENT_DEFINITION);
+    YamlReader<TriggerEventDefinitionEntity> reader = new YamlReader<>(tmpYamlFile, TriggerEventDefinitionEntity.class, 0);
+    assertEquals(1, reader.readAll().size());
+
+    writeContent(MINIMAL_TRIGGER_EVENT_DEFINITION + "---\n" + MINIMAL_TRIGGER_EVENT_DEFINITION);
+    touch(1);
+    assertEquals(2, reader.readAll().size());
+    assertEquals(2, reader.getVersion());
+  }
+
+  @Test
+  public void testReadAllInSnapshotModeSkipsTouchedFileWithSameContent() throws Exception {
+    writeContent(MINIMAL_TRIGGER_EVENT_DEFINITION);
+    YamlReader<TriggerEventDefinitionEntity> reader = new YamlReader<>(tmpYamlFile, TriggerEventDefinitionEntity.class, 0);
+    Collection<TriggerEventDefinitionEntity> first = reader.readAll();
+
+    touch(1);
+    assertFalse(reader.reload());
+    assertSame(first, reader.readAll());
+    assertEquals(1, reader.getVersion());
+  }
+
+  @Test
+  public void testReadAllInSnapshotModeDoesNotCheckFileWithinInterval() throws Exception {
+    writeContent(MINIMAL_TRIGGER_EVENT_DEFINITION);
+    YamlReader<TriggerEventDefinitionEntity> reader = new YamlReader<>(tmpYamlFile, TriggerEventDefinitionEntity.class, 60_000);
+    assertEquals(1, reader.readAll().size());
+
+    writeContent("");
+    touch(1);
+    assertEquals(1, reader.readAll().size());
+    // Forcing a reload picks up the change immediately.
+    assertTrue(reader.reload());
+    assertEquals(0, reader.readAll().size());
+  }
+
+  @Test
+  public void testReloadKeepsPreviousSnapshotIfFileIsMissing() throws Exception {
+    writeContent(MINIMAL_TRIGGER_EVENT_DEFINITION);
+    YamlReader<TriggerEventDefinitionEntity> reader = new YamlReader<>(tmpYamlFile, TriggerEventDefinitionEntity.class, 0);
+    assertEquals(1, reader.readAll().size());
+
+    Files.delete(tmpYamlFile);
+    assertFalse(reader.reload());
+    assertEquals(1, reader.readAll().size());
+  }
+
   private void assertTriggerEventDefinitions(Collection<TriggerEventDefinitionEntity> entities) {
     assertEquals(3, entities.size());
     for (TriggerEventDefinitionEntity entity : entities) {
@@ -383,6 +502,11 @@ public class YamlReaderTest {
     }
   }
 
+  private void touch(long secondsInFuture) throws Exception {
+    // Modification times might have a coarse granularity, thus, explicitly move them forward.
+    Files.setLastModifiedTime(tmpYamlFile, FileTime.from(Instant.now().plusSeconds(secondsInFuture)));
+  }
+
   private void writeContent(String content) throws Exception {
     try (FileWriter writer = new FileWriter(tmpYamlFile.toFile())) {
       writer.write(content);
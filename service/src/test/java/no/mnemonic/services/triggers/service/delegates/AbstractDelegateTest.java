@@ -3,10 +3,7 @@ package no.mnemonic.services.triggers.service.delegates;
 import no.mnemonic.services.triggers.api.model.v1.TriggerActionDefinition;
 import no.mnemonic.services.triggers.api.model.v1.TriggerEventDefinition;
 import no.mnemonic.services.triggers.api.model.v1.TriggerRule;
-import no.mnemonic.services.triggers.service.dao.AccessMode;
-import no.mnemonic.services.triggers.service.dao.TriggerActionDefinitionEntity;
-import no.mnemonic.services.triggers.service.dao.TriggerEventDefinitionEntity;
-import no.mnemonic.services.triggers.service.dao.TriggerRuleEntity;
+import no.mnemonic.services.triggers.service.dao.*;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -31,6 +28,11 @@ abstract class AbstractDelegateTest {
     return () -> entities;
   }
 
+  Supplier<TriggerActionDefinitionIndex> createTriggerActionDefinitionIndexSupplier() {
+    TriggerActionDefinitionIndex index = new TriggerActionDefinitionIndex(createTriggerActionDefinitionEntitiesSupplier().get());
+    return () -> index;
+  }
+
   Supplier<Collection<TriggerEventDefinitionEntity>> createTriggerEventDefinitionEntitiesSupplier() {
     Collection<TriggerEventDefinitionEntity> entities = new ArrayList<>();
     for (int i = 1; i <= 3; i++) {
@@ -44,7 +46,12 @@ abstract class AbstractDelegateTest {
     return () -> entities;
   }
 
-  Supplier<Collection<TriggerRuleEntity>> createTriggerRuleEntitiesSupplier() {
+  Supplier<TriggerEventDefinitionIndex> createTriggerEventDefinitionIndexSupplier() {
+    TriggerEventDefinitionIndex index = new TriggerEventDefinitionIndex(createTriggerEventDefinitionEntitiesSupplier().get());
+    return () -> index;
+  }
+
+  Supplier<TriggerRuleIndex> createTriggerRuleIndexSupplier() {
     Collection<TriggerRuleEntity> entities = new ArrayList<>();
     for (int i = 1; i <= 3; i++) {
       entities.add(TriggerRuleEntity.builder()
@@ -59,7 +66,8 @@ abstract class AbstractDelegateTest {
           .build());
     }
 
-    return () -> entities;
+    TriggerRuleIndex index = new TriggerRuleIndex(entities);
+    return () -> index;
   }
 
   Function<TriggerActionDefinitionEntity, TriggerActionDefinition> createTriggerActionDefinitionEntityConverter() {
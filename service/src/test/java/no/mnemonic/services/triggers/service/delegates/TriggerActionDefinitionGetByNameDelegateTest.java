@@ -11,12 +11,12 @@ import static org.junit.jupiter.api.Assertions.*;
 public class TriggerActionDefinitionGetByNameDelegateTest extends AbstractDelegateTest {
 
   private final TriggerActionDefinitionGetByNameDelegate delegate = TriggerActionDefinitionGetByNameDelegate.builder()
-      .setEntitiesSupplier(createTriggerActionDefinitionEntitiesSupplier())
+      .setIndexSupplier(createTriggerActionDefinitionIndexSupplier())
       .setEntityConverter(createTriggerActionDefinitionEntityConverter())
       .build();
 
   @Test
-  public void testInitializeDelegateWithoutEntitiesSupplier() {
+  public void testInitializeDelegateWithoutIndexSupplier() {
     assertThrows(RuntimeException.class, () -> TriggerActionDefinitionGetByNameDelegate.builder()
         .setEntityConverter(createTriggerActionDefinitionEntityConverter())
         .build());
@@ -25,7 +25,7 @@ public class TriggerActionDefinitionGetByNameDelegateTest extends AbstractDelega
   @Test
   public void testInitializeDelegateWithoutEntityConverter() {
     assertThrows(RuntimeException.class, () -> TriggerActionDefinitionGetByNameDelegate.builder()
-        .setEntitiesSupplier(createTriggerActionDefinitionEntitiesSupplier())
+        .setIndexSupplier(createTriggerActionDefinitionIndexSupplier())
         .build());
   }
 
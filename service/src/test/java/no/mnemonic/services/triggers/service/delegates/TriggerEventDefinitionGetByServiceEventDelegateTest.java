@@ -11,12 +11,12 @@ import static org.junit.jupiter.api.Assertions.*;
 public class TriggerEventDefinitionGetByServiceEventDelegateTest extends AbstractDelegateTest {
 
   private final TriggerEventDefinitionGetByServiceEventDelegate delegate = TriggerEventDefinitionGetByServiceEventDelegate.builder()
-      .setEntitiesSupplier(createTriggerEventDefinitionEntitiesSupplier())
+      .setIndexSupplier(createTriggerEventDefinitionIndexSupplier())
       .setEntityConverter(createTriggerEventDefinitionEntityConverter())
       .build();
 
   @Test
-  public void testInitializeDelegateWithoutEntitiesSupplier() {
+  public void testInitializeDelegateWithoutIndexSupplier() {
     assertThrows(RuntimeException.class, () -> TriggerEventDefinitionGetByServiceEventDelegate.builder()
         .setEntityConverter(createTriggerEventDefinitionEntityConverter())
         .build());
@@ -25,7 +25,7 @@ public class TriggerEventDefinitionGetByServiceEventDelegateTest extends Abstrac
   @Test
   public void testInitializeDelegateWithoutEntityConverter() {
     assertThrows(RuntimeException.class, () -> TriggerEventDefinitionGetByServiceEventDelegate.builder()
-        .setEntitiesSupplier(createTriggerEventDefinitionEntitiesSupplier())
+        .setIndexSupplier(createTriggerEventDefinitionIndexSupplier())
         .build());
   }
 
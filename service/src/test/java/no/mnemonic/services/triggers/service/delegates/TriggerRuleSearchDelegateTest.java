@@ -11,12 +11,12 @@ import static org.junit.jupiter.api.Assertions.*;
 public class TriggerRuleSearchDelegateTest extends AbstractDelegateTest {
 
   private final TriggerRuleSearchDelegate delegate = TriggerRuleSearchDelegate.builder()
-      .setEntitiesSupplier(createTriggerRuleEntitiesSupplier())
+      .setIndexSupplier(createTriggerRuleIndexSupplier())
       .setEntityConverter(createTriggerRuleEntityConverter())
       .build();
 
   @Test
-  public void testInitializeDelegateWithoutEntitiesSupplier() {
+  public void testInitializeDelegateWithoutIndexSupplier() {
     assertThrows(RuntimeException.class, () -> TriggerRuleSearchDelegate.builder()
         .setEntityConverter(createTriggerRuleEntityConverter())
         .build());
@@ -25,7 +25,7 @@ public class TriggerRuleSearchDelegateTest extends AbstractDelegateTest {
   @Test
   public void testInitializeDelegateWithoutEntityConverter() {
     assertThrows(RuntimeException.class, () -> TriggerRuleSearchDelegate.builder()
-        .setEntitiesSupplier(createTriggerRuleEntitiesSupplier())
+        .setIndexSupplier(createTriggerRuleIndexSupplier())
         .build());
   }
 